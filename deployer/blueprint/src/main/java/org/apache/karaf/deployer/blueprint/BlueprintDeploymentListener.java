@@ -20,6 +20,9 @@ package org.apache.karaf.deployer.blueprint;
 import java.io.File;
 import java.net.URL;
 
+import javax.xml.namespace.QName;
+
+import org.apache.karaf.util.RootElementSniffer;
 import org.apache.karaf.util.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,15 +39,15 @@ import org.xml.sax.SAXParseException;
  */
 public class BlueprintDeploymentListener implements ArtifactUrlTransformer {
 
+    private static final QName BLUEPRINT_ROOT = new QName("http://www.osgi.org/xmlns/blueprint/v1.0.0", "blueprint");
+
     private final Logger logger = LoggerFactory.getLogger(BlueprintDeploymentListener.class);
 
     public boolean canHandle(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                Document doc = parse(artifact);
-                String name = doc.getDocumentElement().getLocalName();
-                String uri  = doc.getDocumentElement().getNamespaceURI();
-                if ("blueprint".equals(name) && "http://www.osgi.org/xmlns/blueprint/v1.0.0".equals(uri)) {
+                QName root = RootElementSniffer.getRootElement(artifact);
+                if (BLUEPRINT_ROOT.equals(root)) {
                     return true;
                 }
             }
@@ -63,6 +66,11 @@ public class BlueprintDeploymentListener implements ArtifactUrlTransformer {
         }
     }
 
+    /**
+     * @deprecated {@link #canHandle(File)} only reads the root element of the artifact, use
+     *             {@link RootElementSniffer#getRootElement(File)} instead.
+     */
+    @Deprecated
     protected Document parse(File artifact) throws Exception {
         return XmlUtils.parse(artifact, new ErrorHandler() {
             public void warning(SAXParseException exception) throws SAXException {
@@ -24,7 +24,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
@@ -33,6 +36,8 @@ import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
@@ -45,14 +50,46 @@ import org.apache.karaf.util.XmlUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
 
 import org.osgi.framework.Constants;
 
 public class BlueprintTransformer {
 
+    private static final String BLUEPRINT_NS = "http://www.osgi.org/xmlns/blueprint/v1.0.0";
+
+    private static final SAXParserFactory SAX_PARSER_FACTORY;
+
+    static {
+        SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+        SAX_PARSER_FACTORY.setNamespaceAware(true);
+    }
+
     public static void transform(URL url, OutputStream os) throws Exception {
-        // Build dom document
-        Document doc = parse(url);
+        InputStream is = url.openStream();
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            copyInputStream(is, bout);
+            transform(url, bout.toByteArray(), os);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Transform the given blueprint xml into a bundle.
+     *
+     * The xml is analyzed in a single SAX pass and copied as is into the bundle, unless it contains
+     * manifest elements, which need to be removed from the copy.
+     *
+     * @param url the url of the blueprint xml, used to compute the bundle name and version
+     * @param xml the content of the blueprint xml
+     * @param os the stream to write the bundle to
+     */
+    public static void transform(URL url, byte[] xml, OutputStream os) throws Exception {
+        Analyzer analyzer = new Analyzer();
+        saxParser().parse(new ByteArrayInputStream(xml), analyzer);
         // Heuristicly retrieve name and version
         String name = getPath(url);
         int idx = name.lastIndexOf('/');
@@ -66,28 +103,25 @@ public class BlueprintTransformer {
         m.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
         m.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, str[0]);
         m.getMainAttributes().putValue(Constants.BUNDLE_VERSION, str[1]);
-        String importPkgs = getImportPackages(analyze(new DOMSource(doc)));
+        String importPkgs = getImportPackages(analyzer.refers);
         if (importPkgs != null && importPkgs.length() > 0) {
             m.getMainAttributes().putValue(Constants.IMPORT_PACKAGE, importPkgs);
         }
         m.getMainAttributes().putValue(Constants.DYNAMICIMPORT_PACKAGE, "*");
-        // Extract manifest entries from the DOM
-        NodeList l = doc.getElementsByTagName("manifest");
-        if (l != null) {
-            for (int i = 0; i < l.getLength(); i++) {
-                Element e = (Element) l.item(i);
-                String text = e.getTextContent();
-                Properties props = new Properties();
-                props.load(new ByteArrayInputStream(text.trim().getBytes()));
-                Enumeration en = props.propertyNames();
-                while (en.hasMoreElements()) {
-                    String k = (String) en.nextElement();
-                    String v = props.getProperty(k);
-                    m.getMainAttributes().putValue(k, v);
-                }
-                e.getParentNode().removeChild(e);
+        // Extract manifest entries from the manifest elements
+        for (String text : analyzer.manifests) {
+            Properties props = new Properties();
+            props.load(new ByteArrayInputStream(text.trim().getBytes()));
+            Enumeration en = props.propertyNames();
+            while (en.hasMoreElements()) {
+                String k = (String) en.nextElement();
+                String v = props.getProperty(k);
+                m.getMainAttributes().putValue(k, v);
             }
         }
+        if (!analyzer.manifests.isEmpty()) {
+            xml = removeManifests(xml);
+        }
 
         JarOutputStream out = new JarOutputStream(os);
         ZipEntry e = new ZipEntry(JarFile.MANIFEST_NAME);
@@ -105,12 +139,28 @@ public class BlueprintTransformer {
         }
         e = new ZipEntry("OSGI-INF/blueprint/" + name);
         out.putNextEntry(e);
-        // Copy the new DOM
-        XmlUtils.transform(new DOMSource(doc), new StreamResult(out));
+        out.write(xml);
         out.closeEntry();
         out.close();
     }
 
+    private static byte[] removeManifests(byte[] xml) throws Exception {
+        Document doc = XmlUtils.parse(new ByteArrayInputStream(xml));
+        NodeList l = doc.getElementsByTagName("manifest");
+        for (int i = l.getLength() - 1; i >= 0; i--) {
+            Element e = (Element) l.item(i);
+            e.getParentNode().removeChild(e);
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        XmlUtils.transform(new DOMSource(doc), new StreamResult(bout));
+        return bout.toByteArray();
+    }
+
+    private static SAXParser saxParser() throws Exception {
+        // the configured factory is only read, a new parser is created for each transformation
+        return SAX_PARSER_FACTORY.newSAXParser();
+    }
+
     public static Set<String> analyze(Source source) throws Exception {
 
         Set<String> refers = new TreeSet<String>();
@@ -126,6 +176,15 @@ public class BlueprintTransformer {
 
         String line = br.readLine();
         while (line != null) {
+            addClasses(refers, line);
+            line = br.readLine();
+        }
+        br.close();
+        return refers;
+    }
+
+    private static void addClasses(Set<String> refers, String value) {
+        for (String line : value.split("[\\r\\n]+")) {
             line = line.trim();
             if (line.length() > 0) {
                 String parts[] = line.split("\\s*,\\s*");
@@ -139,10 +198,85 @@ public class BlueprintTransformer {
                     }
                 }
             }
-            line = br.readLine();
         }
-        br.close();
-        return refers;
+    }
+
+    /**
+     * Collects the same class references as extract.xsl, and the content of the manifest elements.
+     */
+    private static class Analyzer extends DefaultHandler {
+
+        final Set<String> refers = new TreeSet<String>();
+        final List<String> manifests = new ArrayList<String>();
+
+        private final LinkedList<String> elements = new LinkedList<String>();
+        private StringBuilder value;
+        private StringBuilder manifest;
+        private int manifestDepth;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String element = BLUEPRINT_NS.equals(uri) ? localName : "{" + uri + "}" + localName;
+            String parent = elements.peek();
+            if ("bean".equals(element)) {
+                addClass(attributes.getValue("", "class"));
+            } else if ("service".equals(element) || "reference".equals(element) || "reference-list".equals(element)) {
+                addClass(attributes.getValue("", "interface"));
+            } else if ("argument".equals(element) && "bean".equals(parent)) {
+                addType(attributes.getValue("", "type"));
+            } else if ("list".equals(element) || "set".equals(element) || "array".equals(element)) {
+                addType(attributes.getValue("", "value-type"));
+            } else if ("map".equals(element)) {
+                addType(attributes.getValue("", "key-type"));
+                addType(attributes.getValue("", "value-type"));
+            } else if ("value".equals(element) && "interfaces".equals(parent)
+                    && elements.size() > 1 && "service".equals(elements.get(1))) {
+                value = new StringBuilder();
+            }
+            if (manifest != null) {
+                manifestDepth++;
+            } else if ("manifest".equals(qName)) {
+                manifest = new StringBuilder();
+                manifestDepth = 1;
+            }
+            elements.push(element);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            elements.pop();
+            if (value != null) {
+                addClass(value.toString());
+                value = null;
+            }
+            if (manifest != null && --manifestDepth == 0) {
+                manifests.add(manifest.toString());
+                manifest = null;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (value != null) {
+                value.append(ch, start, length);
+            }
+            if (manifest != null) {
+                manifest.append(ch, start, length);
+            }
+        }
+
+        private void addClass(String value) {
+            if (value != null) {
+                addClasses(refers, value);
+            }
+        }
+
+        private void addType(String type) {
+            if (type != null) {
+                int idx = type.indexOf('[');
+                addClasses(refers, idx >= 0 ? type.substring(0, idx) : type);
+            }
+        }
     }
 
     protected static String getImportPackages(Set<String> packages) {
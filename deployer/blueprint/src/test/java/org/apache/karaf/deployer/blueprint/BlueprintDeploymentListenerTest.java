@@ -17,11 +17,14 @@
  */
 package org.apache.karaf.deployer.blueprint;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.jar.JarInputStream;
@@ -30,6 +33,7 @@ import java.util.zip.ZipEntry;
 import javax.xml.transform.dom.DOMSource;
 
 import junit.framework.TestCase;
+import org.osgi.framework.Constants;
 
 public class BlueprintDeploymentListenerTest extends TestCase {
 	
@@ -45,6 +49,35 @@ public class BlueprintDeploymentListenerTest extends TestCase {
         assertEquals("org.apache.aries.blueprint.sample", it.next());
     }
 
+    public void testTransformImportsAnalyzedPackages() throws Exception {
+        URL url = getClass().getClassLoader().getResource("test.xml");
+        Set<String> pkgs = BlueprintTransformer.analyze(new DOMSource(BlueprintTransformer.parse(url)));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BlueprintTransformer.transform(url, os);
+        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(BlueprintTransformer.getImportPackages(pkgs),
+                jar.getManifest().getMainAttributes().getValue(Constants.IMPORT_PACKAGE));
+        jar.close();
+    }
+
+    public void testCanHandle() throws Exception {
+        BlueprintDeploymentListener l = new BlueprintDeploymentListener();
+        File f = new File(getClass().getClassLoader().getResource("test.xml").toURI());
+        assertTrue(l.canHandle(f));
+        // the root element is cached, a second check gives the same answer
+        assertTrue(l.canHandle(f));
+
+        File other = File.createTempFile("smx", ".xml");
+        try {
+            OutputStream os = new FileOutputStream(other);
+            os.write("<beans xmlns=\"http://www.springframework.org/schema/beans\"/>".getBytes("UTF-8"));
+            os.close();
+            assertFalse(l.canHandle(other));
+        } finally {
+            other.delete();
+        }
+    }
+
     public void testCustomManifest() throws Exception {
         File f = File.createTempFile("smx", ".jar");
         try {
@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 
+import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -46,6 +47,7 @@ import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeaturesNamespaces;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.Repository;
+import org.apache.karaf.util.RootElementSniffer;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
@@ -158,9 +160,9 @@ public class FeatureDeploymentListener implements ArtifactUrlTransformer, Bundle
     public boolean canHandle(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                Document doc = parse(artifact);
-                String name = doc.getDocumentElement().getLocalName();
-                String uri  = doc.getDocumentElement().getNamespaceURI();
+                QName root = RootElementSniffer.getRootElement(artifact);
+                String name = root != null ? root.getLocalPart() : null;
+                String uri  = root != null && root.getNamespaceURI().length() > 0 ? root.getNamespaceURI() : null;
                 if ("features".equals(name) ) {
                 	if(isKnownFeaturesURI(uri)){
                         return true;
@@ -289,6 +291,11 @@ public class FeatureDeploymentListener implements ArtifactUrlTransformer, Bundle
             }
     }
 
+    /**
+     * @deprecated {@link #canHandle(File)} only reads the root element of the artifact, use
+     *             {@link RootElementSniffer#getRootElement(File)} instead.
+     */
+    @Deprecated
     protected Document parse(File artifact) throws Exception {
         if (dbf == null) {
             dbf = DocumentBuilderFactory.newInstance();
@@ -29,6 +29,7 @@ import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 
 import org.apache.felix.fileinstall.ArtifactUrlTransformer;
+import org.apache.karaf.util.RootElementSniffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,8 +46,8 @@ public class SpringDeploymentListener implements ArtifactUrlTransformer {
     public boolean canHandle(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                StartElement element = getRootElement(artifact);
-                if (element != null && SPRING_DM_ROOT.equals(element.getName())) {
+                QName root = RootElementSniffer.getRootElement(artifact);
+                if (SPRING_DM_ROOT.equals(root)) {
                     return true;
                 }
             }
@@ -65,6 +66,11 @@ public class SpringDeploymentListener implements ArtifactUrlTransformer {
         }
     }
 
+	/**
+	 * @deprecated {@link #canHandle(File)} only reads the root element of the artifact, use
+	 *             {@link RootElementSniffer#getRootElement(File)} instead.
+	 */
+	@Deprecated
 	protected StartElement getRootElement(File artifact) throws Exception {
     	XMLEventReader parser = null;
     	InputStream in = null;
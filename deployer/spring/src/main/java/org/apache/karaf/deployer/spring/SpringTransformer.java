@@ -24,7 +24,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
@@ -33,6 +36,8 @@ import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
@@ -44,16 +49,55 @@ import org.apache.karaf.util.XmlUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
 import org.osgi.framework.Constants;
 
 public class SpringTransformer {
 
+    private static final String BEANS_NS = "http://www.springframework.org/schema/beans";
+    private static final String AOP_NS = "http://www.springframework.org/schema/aop";
+    private static final String CONTEXT_NS = "http://www.springframework.org/schema/context";
+    private static final String JEE_NS = "http://www.springframework.org/schema/jee";
+    private static final String LANG_NS = "http://www.springframework.org/schema/lang";
+    private static final String OSGI_NS = "http://www.springframework.org/schema/osgi";
+    private static final String UTIL_NS = "http://www.springframework.org/schema/util";
+    private static final String WEBFLOW_CONFIG_NS = "http://www.springframework.org/schema/webflow-config";
+
+    private static final SAXParserFactory SAX_PARSER_FACTORY;
+
+    static {
+        SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+        SAX_PARSER_FACTORY.setNamespaceAware(true);
+    }
+
     public static void transform(URL url, OutputStream os) throws Exception {
-        // Build dom document
-        Document doc = parse(url);
+        InputStream is = url.openStream();
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            copyInputStream(is, bout);
+            transform(url, bout.toByteArray(), os);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Transform the given spring xml into a bundle.
+     *
+     * The xml is analyzed in a single SAX pass and copied as is into the bundle, unless it contains
+     * manifest elements, which need to be removed from the copy.
+     *
+     * @param url the url of the spring xml, used to compute the bundle name and version
+     * @param xml the content of the spring xml
+     * @param os the stream to write the bundle to
+     */
+    public static void transform(URL url, byte[] xml, OutputStream os) throws Exception {
+        Analyzer analyzer = new Analyzer();
+        saxParser().parse(new ByteArrayInputStream(xml), analyzer);
         // Heuristicly retrieve name and version
         String name = getPath(url);
         int idx = name.lastIndexOf('/');
@@ -68,28 +112,25 @@ public class SpringTransformer {
         m.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, str[0]);
         m.getMainAttributes().putValue(Constants.BUNDLE_VERSION, str[1]);
         m.getMainAttributes().putValue("Spring-Context", "*;publish-context:=false;create-asynchronously:=true");
-        String importPkgs = getImportPackages(analyze(new DOMSource(doc)));
+        String importPkgs = getImportPackages(analyzer.refers);
         if (importPkgs != null && importPkgs.length() > 0) {
             m.getMainAttributes().putValue(Constants.IMPORT_PACKAGE, importPkgs);
         }
         m.getMainAttributes().putValue(Constants.DYNAMICIMPORT_PACKAGE, "*");
-        // Extract manifest entries from the DOM
-        NodeList l = doc.getElementsByTagName("manifest");
-        if (l != null) {
-            for (int i = 0; i < l.getLength(); i++) {
-                Element e = (Element) l.item(i);
-                String text = e.getTextContent();
-                Properties props = new Properties();
-                props.load(new ByteArrayInputStream(text.trim().getBytes()));
-                Enumeration<?> en = props.propertyNames();
-                while (en.hasMoreElements()) {
-                    String k = (String) en.nextElement();
-                    String v = props.getProperty(k);
-                    m.getMainAttributes().putValue(k, v);
-                }
-                e.getParentNode().removeChild(e);
+        // Extract manifest entries from the manifest elements
+        for (String text : analyzer.manifests) {
+            Properties props = new Properties();
+            props.load(new ByteArrayInputStream(text.trim().getBytes()));
+            Enumeration<?> en = props.propertyNames();
+            while (en.hasMoreElements()) {
+                String k = (String) en.nextElement();
+                String v = props.getProperty(k);
+                m.getMainAttributes().putValue(k, v);
             }
         }
+        if (!analyzer.manifests.isEmpty()) {
+            xml = removeManifests(xml);
+        }
 
         JarOutputStream out = new JarOutputStream(os);
         ZipEntry e = new ZipEntry(JarFile.MANIFEST_NAME);
@@ -103,12 +144,28 @@ public class SpringTransformer {
         out.closeEntry();
         e = new ZipEntry("META-INF/spring/" + name);
         out.putNextEntry(e);
-        // Copy the new DOM
-        XmlUtils.transform(new DOMSource(doc), new StreamResult(out));
+        out.write(xml);
         out.closeEntry();
         out.close();
     }
 
+    private static byte[] removeManifests(byte[] xml) throws Exception {
+        Document doc = XmlUtils.parse(new ByteArrayInputStream(xml));
+        NodeList l = doc.getElementsByTagName("manifest");
+        for (int i = l.getLength() - 1; i >= 0; i--) {
+            Element e = (Element) l.item(i);
+            e.getParentNode().removeChild(e);
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        XmlUtils.transform(new DOMSource(doc), new StreamResult(bout));
+        return bout.toByteArray();
+    }
+
+    private static SAXParser saxParser() throws Exception {
+        // the configured factory is only read, a new parser is created for each transformation
+        return SAX_PARSER_FACTORY.newSAXParser();
+    }
+
     public static Set<String> analyze(Source source) throws Exception {
 
         Set<String> refers = new TreeSet<String>();
@@ -124,6 +181,15 @@ public class SpringTransformer {
 
         String line = br.readLine();
         while (line != null) {
+            addClasses(refers, line);
+            line = br.readLine();
+        }
+        br.close();
+        return refers;
+    }
+
+    private static void addClasses(Set<String> refers, String value) {
+        for (String line : value.split("[\\r\\n]+")) {
             line = line.trim();
             if (line.length() > 0) {
                 String parts[] = line.split("\\s*,\\s*");
@@ -132,15 +198,101 @@ public class SpringTransformer {
                     if (n > 0) {
                         String pkg = parts[i].substring(0, n);
                         if (!pkg.startsWith("java.")) {
-                            refers.add(parts[i].substring(0, n));
+                            refers.add(pkg);
                         }
                     }
                 }
             }
-            line = br.readLine();
         }
-        br.close();
-        return refers;
+    }
+
+    /**
+     * Collects the same class references as extract.xsl, and the content of the manifest elements.
+     */
+    private static class Analyzer extends DefaultHandler {
+
+        final Set<String> refers = new TreeSet<String>();
+        final List<String> manifests = new ArrayList<String>();
+
+        // for each open element, whether it is a spring-dm factory bean whose interfaces property is imported
+        private final LinkedList<Boolean> factoryBeans = new LinkedList<Boolean>();
+        private StringBuilder manifest;
+        private int manifestDepth;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            boolean factoryBean = false;
+            if (BEANS_NS.equals(uri)) {
+                if ("bean".equals(localName)) {
+                    String clazz = attributes.getValue("", "class");
+                    addClass(clazz);
+                    factoryBean = "org.springframework.osgi.service.exporter.support.OsgiServiceFactoryBean".equals(clazz)
+                            || "org.springframework.osgi.service.importer.support.OsgiServiceProxyFactoryBean".equals(clazz);
+                } else if ("property".equals(localName) && Boolean.TRUE.equals(factoryBeans.peek())
+                        && "interfaces".equals(attributes.getValue("", "name"))) {
+                    addClass(attributes.getValue("", "value"));
+                }
+                addClass(attributes.getValue("", "value-type"));
+            } else if (AOP_NS.equals(uri)) {
+                addClass(attributes.getValue("", "implement-interface"));
+                addClass(attributes.getValue("", "default-impl"));
+            } else if (CONTEXT_NS.equals(uri)) {
+                if ("load-time-weaver".equals(localName)) {
+                    addClass(attributes.getValue("", "weaver-class"));
+                }
+            } else if (JEE_NS.equals(uri)) {
+                if ("jndi-lookup".equals(localName)) {
+                    addClass(attributes.getValue("", "expected-type"));
+                    addClass(attributes.getValue("", "proxy-interface"));
+                } else if ("remote-slsb".equals(localName)) {
+                    addClass(attributes.getValue("", "ejbType"));
+                }
+                addClass(attributes.getValue("", "business-interface"));
+            } else if (LANG_NS.equals(uri)) {
+                addClass(attributes.getValue("", "script-interfaces"));
+            } else if (OSGI_NS.equals(uri)) {
+                addClass(attributes.getValue("", "interface"));
+            } else if (UTIL_NS.equals(uri)) {
+                if ("list".equals(localName)) {
+                    addClass(attributes.getValue("", "list-class"));
+                } else if ("set".equals(localName)) {
+                    addClass(attributes.getValue("", "set-class"));
+                } else if ("map".equals(localName)) {
+                    addClass(attributes.getValue("", "map-class"));
+                }
+            } else if (WEBFLOW_CONFIG_NS.equals(uri)) {
+                addClass(attributes.getValue("", "class"));
+            }
+            if (manifest != null) {
+                manifestDepth++;
+            } else if ("manifest".equals(qName)) {
+                manifest = new StringBuilder();
+                manifestDepth = 1;
+            }
+            factoryBeans.push(factoryBean);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            factoryBeans.pop();
+            if (manifest != null && --manifestDepth == 0) {
+                manifests.add(manifest.toString());
+                manifest = null;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (manifest != null) {
+                manifest.append(ch, start, length);
+            }
+        }
+
+        private void addClass(String value) {
+            if (value != null) {
+                addClasses(refers, value);
+            }
+        }
     }
 
     protected static String getImportPackages(Set<String> packages) {
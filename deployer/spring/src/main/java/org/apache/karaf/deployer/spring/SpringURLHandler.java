@@ -25,6 +25,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 
+import org.apache.karaf.util.BundleCache;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.url.AbstractURLStreamHandlerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +41,16 @@ public class SpringURLHandler extends AbstractURLStreamHandlerService {
 
 	private static String SYNTAX = "spring: spring-xml-uri";
 
+    private static final int MAX_CACHED_BUNDLES = 1024;
+
+    private BundleContext bundleContext;
+    private BundleCache cache;
+
+    public void setBundleContext(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+        this.cache = new BundleCache(bundleContext.getDataFile("bundles"), MAX_CACHED_BUNDLES);
+    }
+
     /**
      * Open the connection for the given URL.
      *
@@ -69,10 +81,33 @@ public class SpringURLHandler extends AbstractURLStreamHandlerService {
         @Override
         public InputStream getInputStream() throws IOException {
             try {
+                URL xmlUrl = new URL(url.getPath());
                 ByteArrayOutputStream os = new ByteArrayOutputStream();
-                SpringTransformer.transform(new URL(url.getPath()), os);
+                InputStream is = xmlUrl.openStream();
+                try {
+                    SpringTransformer.copyInputStream(is, os);
+                } finally {
+                    is.close();
+                }
+                byte[] xml = os.toByteArray();
+                // the generated bundle depends on the url, the xml and the transformer itself
+                String key = null;
+                if (cache != null) {
+                    key = BundleCache.key(bundleContext.getBundle().getLastModified() + ":" + url.getPath(), xml);
+                    byte[] bundle = cache.get(key);
+                    if (bundle != null) {
+                        logger.debug("Using cached bundle for spring xml [" + url.getPath() + "]");
+                        return new ByteArrayInputStream(bundle);
+                    }
+                }
+                os = new ByteArrayOutputStream();
+                SpringTransformer.transform(xmlUrl, xml, os);
                 os.close();
-                return new ByteArrayInputStream(os.toByteArray());
+                byte[] bundle = os.toByteArray();
+                if (cache != null) {
+                    cache.put(key, bundle);
+                }
+                return new ByteArrayInputStream(bundle);
             } catch (Exception e) {
                 logger.error("Error opening Spring xml url", e);
                 throw (IOException) new IOException("Error opening Spring xml url").initCause(e);
@@ -17,18 +17,24 @@
  */
 package org.apache.karaf.deployer.spring;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
 import javax.xml.transform.dom.DOMSource;
 
 import junit.framework.TestCase;
 
+import org.osgi.framework.Constants;
+
 public class SpringDeploymentListenerTest extends TestCase {
 
     public void testPackagesExtraction() throws Exception {
@@ -42,6 +48,19 @@ public class SpringDeploymentListenerTest extends TestCase {
         assertEquals("org.osgi.service.url", it.next());
     }
 
+    public void testTransformImportsAnalyzedPackages() throws Exception {
+        URL url = getClass().getClassLoader().getResource("test.xml");
+        Set<String> pkgs = SpringTransformer.analyze(new DOMSource(SpringTransformer.parse(url)));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        SpringTransformer.transform(url, os);
+        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(os.toByteArray()));
+        Manifest manifest = jar.getManifest();
+        assertEquals(SpringTransformer.getImportPackages(pkgs),
+                manifest.getMainAttributes().getValue(Constants.IMPORT_PACKAGE));
+        assertEquals("value", manifest.getMainAttributes().getValue("Header"));
+        jar.close();
+    }
+
     public void testCustomManifest() throws Exception {
         File f = File.createTempFile("smx", ".jar");
         try {
@@ -42,6 +42,8 @@ public class InstallFeatureCommand extends FeaturesCommandSupport {
     boolean noRefresh;
     @Option(name = "-v", aliases = "--verbose", description = "Explain what is being done", required = false, multiValued = false)
     boolean verbose;
+    @Option(name = "-p", aliases = "--parallel-start", description = "Start the bundles of the same start level concurrently", required = false, multiValued = false)
+    boolean parallelStart;
 
     protected void doExecute(FeaturesService admin) throws Exception {
         for (String feature : features) {
@@ -64,6 +66,9 @@ public class InstallFeatureCommand extends FeaturesCommandSupport {
             if (verbose) {
                 options.add(FeaturesService.Option.Verbose);
             }
+            if (parallelStart) {
+                options.add(FeaturesService.Option.ConcurrentBundleStart);
+            }
             admin.installFeature(name, version, options);
         }
     }
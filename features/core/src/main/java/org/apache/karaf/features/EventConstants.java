@@ -31,11 +31,17 @@ public final class EventConstants {
     public static final String REPOSITORY_NAME = "name";
     public static final String REPOSITORY_URI = "uri";
 
+    public static final String BUNDLE_ID = "bundle.id";
+    public static final String BUNDLE_SYMBOLICNAME = "bundle.symbolicName";
+    public static final String BUNDLE_VERSION = "bundle.version";
+    public static final String DURATION = "duration";
+
     public static final String TOPIC_EVENTS = "org/apache/karaf/features";
     public static final String TOPIC_FEATURES_INSTALLED = TOPIC_EVENTS + "/features/INSTALLED";
     public static final String TOPIC_FEATURES_UNINSTALLED = TOPIC_EVENTS + "/features/UNINSTALLED";
     public static final String TOPIC_REPOSITORY_ADDED = TOPIC_EVENTS + "/repositories/ADDED";
     public static final String TOPIC_REPOSITORY_REMOVED = TOPIC_EVENTS + "/repositories/REMOVED";
+    public static final String TOPIC_BUNDLES_STARTED = TOPIC_EVENTS + "/bundles/STARTED";
 
     private EventConstants() {
         // non-instantiable class
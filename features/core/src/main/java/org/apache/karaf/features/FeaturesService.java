@@ -30,7 +30,8 @@ public interface FeaturesService {
         PrintBundlesToRefresh,
         NoAutoRefreshBundles,
         ContinueBatchOnFailure,
-        Verbose
+        Verbose,
+        ConcurrentBundleStart
     }
 
     /**
@@ -81,6 +82,14 @@ public interface FeaturesService {
 
     Feature getFeature(String name) throws Exception;
 
+    /**
+     * Get the installed features that installed the given bundle.
+     *
+     * @param bundleId the id of the bundle.
+     * @return the installed features, an empty array if the bundle has not been installed by a feature.
+     */
+    Feature[] getInstalledFeaturesForBundle(long bundleId);
+
 	void refreshRepository(URI uri) throws Exception;
 
     public URI getRepositoryUriFor(String name, String version);
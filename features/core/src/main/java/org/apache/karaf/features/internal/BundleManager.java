@@ -18,10 +18,13 @@ package org.apache.karaf.features.internal;
 
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -31,10 +34,20 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
@@ -67,6 +80,9 @@ public class BundleManager {
 	private final BundleContext bundleContext;
 	private final RegionsPersistence regionsPersistence;
 	private final long refreshTimeout;
+	// bundles downloaded by prefetchBundles() and not yet installed, by location
+	private final ConcurrentMap<String, StagedBundle> staged = new ConcurrentHashMap<String, StagedBundle>();
+	private InstalledBundles installedBundles;
 
 	public BundleManager(BundleContext bundleContext) {
 		this(bundleContext, null);
@@ -84,6 +100,34 @@ public class BundleManager {
 		this.refreshTimeout = refreshTimeout;
 	}
 
+	/**
+	 * Removes the bundles left in the staging area by a previous run that
+	 * stopped before installing or releasing them.
+	 */
+	public void init() {
+		File stagingDir = bundleContext.getDataFile("staging");
+		File[] files = stagingDir != null ? stagingDir.listFiles() : null;
+		if (files != null) {
+			for (File file : files) {
+				if (!file.delete()) {
+					LOGGER.debug("Unable to delete staged bundle " + file);
+				}
+			}
+		}
+	}
+
+	public InstalledBundles getInstalledBundles() {
+		return installedBundles;
+	}
+
+	/**
+	 * Set the index used to look up the installed bundles. Without it, the
+	 * installed bundles are scanned for each lookup.
+	 */
+	public void setInstalledBundles(InstalledBundles installedBundles) {
+		this.installedBundles = installedBundles;
+	}
+
 	public BundleInstallerResult installBundleIfNeeded(String bundleLocation,
 			int startLevel, String regionName) throws IOException,
 			BundleException {
@@ -96,35 +140,23 @@ public class BundleManager {
 	private BundleInstallerResult doInstallBundleIfNeeded(
 			String bundleLocation, int startLevel) throws IOException,
 			BundleException {
+		StagedBundle stagedBundle = staged.remove(bundleLocation);
+		if (stagedBundle != null) {
+			try {
+				return doInstallStagedBundle(bundleLocation, stagedBundle,
+						startLevel);
+			} finally {
+				stagedBundle.file.delete();
+			}
+		}
 		InputStream is = getInputStreamForBundle(bundleLocation);
 		try {
 			is.mark(256 * 1024);
 			@SuppressWarnings("resource")
 			JarInputStream jar = new JarInputStream(is);
-			Manifest m = jar.getManifest();
-			if (m == null) {
-				throw new BundleException(
-						"Manifest not present in the first entry of the zip "
-								+ bundleLocation);
-			}
-			String sn = m.getMainAttributes().getValue(
-					Constants.BUNDLE_SYMBOLICNAME);
-			if (sn == null) {
-				throw new BundleException(
-						"Jar is not a bundle, no Bundle-SymbolicName "
-								+ bundleLocation);
-			}
-			// remove attributes from the symbolic name (like
-			// ;blueprint.graceperiod:=false suffix)
-			int attributeIndexSep = sn.indexOf(';');
-			if (attributeIndexSep != -1) {
-				sn = sn.substring(0, attributeIndexSep);
-			}
-			String vStr = m.getMainAttributes().getValue(
-					Constants.BUNDLE_VERSION);
-			Version v = vStr == null ? Version.emptyVersion : Version
-					.parseVersion(vStr);
-			Bundle existingBundle = findInstalled(sn, v);
+			BundleIdentity id = getBundleIdentity(jar.getManifest(),
+					bundleLocation);
+			Bundle existingBundle = findInstalled(id.symbolicName, id.version);
 			if (existingBundle != null) {
 				LOGGER.debug("Found installed bundle: " + existingBundle);
 				return new BundleInstallerResult(existingBundle, false);
@@ -137,30 +169,182 @@ public class BundleManager {
 				// is = new BufferedInputStream(new
 				// URL(bundleLocation).openStream());
 			}
-			is = new BufferedInputStream(new FilterInputStream(is) {
-				@Override
-				public int read(byte b[], int off, int len) throws IOException {
-					if (Thread.currentThread().isInterrupted()) {
-						throw new InterruptedIOException();
-					}
-					return super.read(b, off, len);
+			return doInstallBundle(bundleLocation, is, startLevel);
+		} finally {
+			is.close();
+		}
+	}
+
+	private BundleInstallerResult doInstallStagedBundle(String bundleLocation,
+			StagedBundle stagedBundle, int startLevel) throws IOException,
+			BundleException {
+		Bundle existingBundle = findInstalled(stagedBundle.symbolicName,
+				stagedBundle.version);
+		if (existingBundle != null) {
+			LOGGER.debug("Found installed bundle: " + existingBundle);
+			return new BundleInstallerResult(existingBundle, false);
+		}
+		InputStream is = new FileInputStream(stagedBundle.file);
+		try {
+			return doInstallBundle(bundleLocation, is, startLevel);
+		} finally {
+			is.close();
+		}
+	}
+
+	private BundleInstallerResult doInstallBundle(String bundleLocation,
+			InputStream is, int startLevel) throws BundleException {
+		is = new BufferedInputStream(new FilterInputStream(is) {
+			@Override
+			public int read(byte b[], int off, int len) throws IOException {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException();
 				}
-			});
+				return super.read(b, off, len);
+			}
+		});
+
+		LOGGER.debug("Installing bundle " + bundleLocation);
+		Bundle b = bundleContext.installBundle(bundleLocation, is);
+
+		if (startLevel > 0) {
+			b.adapt(BundleStartLevel.class).setStartLevel(startLevel);
+		}
+
+		return new BundleInstallerResult(b, true);
+	}
 
-			LOGGER.debug("Installing bundle " + bundleLocation);
-			Bundle b = bundleContext.installBundle(bundleLocation, is);
+	private static BundleIdentity getBundleIdentity(Manifest m,
+			String bundleLocation) throws BundleException {
+		if (m == null) {
+			throw new BundleException(
+					"Manifest not present in the first entry of the zip "
+							+ bundleLocation);
+		}
+		String sn = m.getMainAttributes().getValue(
+				Constants.BUNDLE_SYMBOLICNAME);
+		if (sn == null) {
+			throw new BundleException(
+					"Jar is not a bundle, no Bundle-SymbolicName "
+							+ bundleLocation);
+		}
+		// remove attributes from the symbolic name (like
+		// ;blueprint.graceperiod:=false suffix)
+		int attributeIndexSep = sn.indexOf(';');
+		if (attributeIndexSep != -1) {
+			sn = sn.substring(0, attributeIndexSep);
+		}
+		String vStr = m.getMainAttributes().getValue(
+				Constants.BUNDLE_VERSION);
+		Version v = vStr == null ? Version.emptyVersion : Version
+				.parseVersion(vStr);
+		return new BundleIdentity(sn, v);
+	}
 
-			if (startLevel > 0) {
-				b.adapt(BundleStartLevel.class).setStartLevel(startLevel);
+	/**
+	 * Downloads the given bundles concurrently into a local staging area and
+	 * reads their manifest, so that a later
+	 * {@link #installBundleIfNeeded(String, int, String)} for one of these
+	 * locations does not need any network access.
+	 * <p>
+	 * Locations that are already installed, or that can't be downloaded, are
+	 * not staged: they are handled as usual when they are installed, which
+	 * also reports the errors in the usual way.
+	 * 
+	 * @param bundleLocations
+	 *            the locations of the bundles to download.
+	 * @param threads
+	 *            the maximum number of concurrent downloads.
+	 * @return the staged locations, to be given to
+	 *         {@link #releaseStagedBundles(Collection)} once the installation
+	 *         is done.
+	 */
+	public Collection<String> prefetchBundles(
+			Collection<String> bundleLocations, int threads)
+			throws InterruptedException {
+		File stagingDir = bundleContext.getDataFile("staging");
+		if (stagingDir == null || (!stagingDir.isDirectory() && !stagingDir.mkdirs())) {
+			LOGGER.debug("No staging directory available, bundles will not be prefetched");
+			return new ArrayList<String>();
+		}
+		final Set<String> locations = new LinkedHashSet<String>();
+		Set<String> protocols = new HashSet<String>();
+		for (String location : bundleLocations) {
+			if (staged.containsKey(location) || isInstalled(location)) {
+				continue;
+			}
+			locations.add(location);
+			int protocolIndex = location.indexOf(":");
+			if (protocolIndex != -1
+					&& protocols.add(location.substring(0, protocolIndex))) {
+				waitForUrlHandler(location.substring(0, protocolIndex));
 			}
+		}
+		List<String> result = new ArrayList<String>();
+		if (locations.isEmpty()) {
+			return result;
+		}
 
-			return new BundleInstallerResult(b, true);
+		long t0 = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(threads, locations.size())),
+				new DownloadThreadFactory());
+		try {
+			Map<String, Future<StagedBundle>> futures = new HashMap<String, Future<StagedBundle>>();
+			for (String location : locations) {
+				futures.put(location,
+						executor.submit(new Downloader(location, stagingDir)));
+			}
+			for (String location : locations) {
+				StagedBundle stagedBundle;
+				try {
+					stagedBundle = futures.get(location).get();
+				} catch (ExecutionException e) {
+					LOGGER.debug("Unable to prefetch bundle " + location,
+							e.getCause());
+					continue;
+				}
+				if (staged.putIfAbsent(location, stagedBundle) == null) {
+					result.add(location);
+				} else {
+					stagedBundle.file.delete();
+				}
+			}
+		} catch (InterruptedException e) {
+			releaseStagedBundles(result);
+			throw e;
 		} finally {
-			is.close();
+			executor.shutdownNow();
+		}
+		LOGGER.debug("Prefetched {} bundles in {} ms", result.size(),
+				System.currentTimeMillis() - t0);
+		return result;
+	}
+
+	private boolean isInstalled(String location) {
+		if (installedBundles != null) {
+			return installedBundles.getBundle(location) != null;
+		}
+		return bundleContext.getBundle(location) != null;
+	}
+
+	/**
+	 * Removes the bundles staged by
+	 * {@link #prefetchBundles(Collection, int)} that have not been installed.
+	 */
+	public void releaseStagedBundles(Collection<String> bundleLocations) {
+		for (String location : bundleLocations) {
+			StagedBundle stagedBundle = staged.remove(location);
+			if (stagedBundle != null) {
+				stagedBundle.file.delete();
+			}
 		}
 	}
 
 	private Bundle findInstalled(String symbolicName, Version version) {
+		if (installedBundles != null) {
+			return installedBundles.getBundle(symbolicName, version);
+		}
 		String vStr;
 		for (Bundle b : bundleContext.getBundles()) {
 			if (b.getSymbolicName() != null
@@ -504,6 +688,78 @@ public class BundleManager {
 	    return this.bundleContext;
 	}
 	
+	private static class BundleIdentity {
+		final String symbolicName;
+		final Version version;
+
+		BundleIdentity(String symbolicName, Version version) {
+			this.symbolicName = symbolicName;
+			this.version = version;
+		}
+	}
+
+	private static class StagedBundle extends BundleIdentity {
+		final File file;
+
+		StagedBundle(File file, BundleIdentity id) {
+			super(id.symbolicName, id.version);
+			this.file = file;
+		}
+	}
+
+	private static class Downloader implements Callable<StagedBundle> {
+		private final String location;
+		private final File stagingDir;
+
+		Downloader(String location, File stagingDir) {
+			this.location = location;
+			this.stagingDir = stagingDir;
+		}
+
+		public StagedBundle call() throws Exception {
+			File file = File.createTempFile("bundle", ".jar", stagingDir);
+			try {
+				InputStream is = new URL(location).openStream();
+				try {
+					OutputStream os = new FileOutputStream(file);
+					try {
+						byte[] buffer = new byte[8192];
+						int len;
+						while ((len = is.read(buffer)) != -1) {
+							if (Thread.currentThread().isInterrupted()) {
+								throw new InterruptedIOException();
+							}
+							os.write(buffer, 0, len);
+						}
+					} finally {
+						os.close();
+					}
+				} finally {
+					is.close();
+				}
+				JarInputStream jar = new JarInputStream(new FileInputStream(file));
+				try {
+					return new StagedBundle(file, getBundleIdentity(jar.getManifest(), location));
+				} finally {
+					jar.close();
+				}
+			} catch (Exception e) {
+				file.delete();
+				throw e;
+			}
+		}
+	}
+
+	private static class DownloadThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Karaf Features Download-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
 	public static class BundleInstallerResult {
 		Bundle bundle;
 		boolean isNew;
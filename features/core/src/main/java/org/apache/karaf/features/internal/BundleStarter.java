@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * Starts a set of bundles on a bounded pool of threads.
+ * Bundles are started one start level after the other, in ascending order. Within a start level,
+ * a bundle is only started once the bundles of the same level it imports packages from or requires
+ * have been started, so that bundles which do not depend on each other are started concurrently.
+ * If the remaining bundles of a level depend on each other in a cycle, they are started one at a
+ * time in the order they were given.
+ */
+public class BundleStarter {
+
+    /**
+     * The action performed for each bundle.
+     */
+    public interface StartTask {
+
+        /**
+         * Start the given bundle.
+         *
+         * @return <code>true</code> if the bundle has been started, <code>false</code> if it has been skipped.
+         */
+        boolean start(Bundle bundle) throws Exception;
+
+        /**
+         * Called from the starting thread once a bundle has been started.
+         *
+         * @param duration the time spent in {@link #start(Bundle)}, in milliseconds.
+         */
+        void started(Bundle bundle, long duration);
+    }
+
+    private final int threads;
+
+    public BundleStarter(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Start the given bundles and wait for them to be started.
+     *
+     * @param bundles the bundles to start, in the order they should be started when there is no other constraint.
+     * @param startLevels the start level of each bundle.
+     * @param task the action starting each bundle.
+     * @throws Exception the first failure of <code>task</code>, once all the bundles being started have been started.
+     */
+    public void startBundles(List<Bundle> bundles, Map<Bundle, Integer> startLevels, StartTask task) throws Exception {
+        Map<Integer, List<Bundle>> levels = new TreeMap<Integer, List<Bundle>>();
+        for (Bundle bundle : bundles) {
+            Integer level = startLevels.get(bundle);
+            if (level == null) {
+                level = 0;
+            }
+            List<Bundle> list = levels.get(level);
+            if (list == null) {
+                list = new ArrayList<Bundle>();
+                levels.put(level, list);
+            }
+            list.add(bundle);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new StartThreadFactory());
+        try {
+            for (List<Bundle> level : levels.values()) {
+                startLevel(level, executor, task);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void startLevel(List<Bundle> bundles, ExecutorService executor, StartTask task) throws Exception {
+        // the bundles of this level each bundle is waiting for
+        Map<Bundle, Set<Bundle>> waiting = new HashMap<Bundle, Set<Bundle>>();
+        Set<Bundle> pending = new LinkedHashSet<Bundle>(bundles);
+        for (Bundle bundle : bundles) {
+            Set<Bundle> providers = getProviders(bundle);
+            providers.retainAll(pending);
+            providers.remove(bundle);
+            waiting.put(bundle, providers);
+        }
+
+        CompletionService<Bundle> completion = new ExecutorCompletionService<Bundle>(executor);
+        int running = 0;
+        Exception failure = null;
+        while (true) {
+            if (failure == null) {
+                for (Bundle bundle : new ArrayList<Bundle>(pending)) {
+                    if (waiting.get(bundle).isEmpty()) {
+                        pending.remove(bundle);
+                        completion.submit(new Starter(bundle, task));
+                        running++;
+                    }
+                }
+                if (running == 0 && !pending.isEmpty()) {
+                    // cyclic dependencies: break the cycle by starting the first remaining bundle
+                    Bundle bundle = pending.iterator().next();
+                    pending.remove(bundle);
+                    completion.submit(new Starter(bundle, task));
+                    running++;
+                }
+            }
+            if (running == 0) {
+                break;
+            }
+            Future<Bundle> future = completion.take();
+            running--;
+            try {
+                Bundle started = future.get();
+                for (Set<Bundle> providers : waiting.values()) {
+                    providers.remove(started);
+                }
+            } catch (ExecutionException e) {
+                // let the bundles being started finish, but do not start new ones
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Set<Bundle> getProviders(Bundle bundle) {
+        Set<Bundle> providers = new HashSet<Bundle>();
+        BundleWiring wiring = bundle.adapt(BundleWiring.class);
+        if (wiring != null) {
+            addProviders(wiring.getRequiredWires(BundleRevision.PACKAGE_NAMESPACE), providers);
+            addProviders(wiring.getRequiredWires(BundleRevision.BUNDLE_NAMESPACE), providers);
+        }
+        return providers;
+    }
+
+    private void addProviders(List<BundleWire> wires, Set<Bundle> providers) {
+        if (wires != null) {
+            for (BundleWire wire : wires) {
+                providers.add(wire.getProviderWiring().getBundle());
+            }
+        }
+    }
+
+    private static class Starter implements Callable<Bundle> {
+        private final Bundle bundle;
+        private final StartTask task;
+
+        Starter(Bundle bundle, StartTask task) {
+            this.bundle = bundle;
+            this.task = task;
+        }
+
+        public Bundle call() throws Exception {
+            long t0 = System.currentTimeMillis();
+            if (task.start(bundle)) {
+                task.started(bundle, System.currentTimeMillis() - t0);
+            }
+            return bundle;
+        }
+    }
+
+    private static class StartThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Karaf Features Start-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
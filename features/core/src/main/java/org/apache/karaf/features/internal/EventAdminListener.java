@@ -23,6 +23,7 @@ import org.apache.karaf.features.EventConstants;
 import org.apache.karaf.features.FeatureEvent;
 import org.apache.karaf.features.FeaturesListener;
 import org.apache.karaf.features.RepositoryEvent;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
@@ -89,4 +90,23 @@ public class EventAdminListener implements FeaturesListener {
         }
         eventAdmin.postEvent(new Event(topic, props));
     }
+
+    /**
+     * Publish the time spent starting a bundle of a feature being installed.
+     */
+    public void bundleStarted(Bundle bundle, long duration) {
+        EventAdmin eventAdmin = tracker.getService();
+        if (eventAdmin == null) {
+            return;
+        }
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(EventConstants.TIMESTAMP, System.currentTimeMillis());
+        props.put(EventConstants.BUNDLE_ID, bundle.getBundleId());
+        if (bundle.getSymbolicName() != null) {
+            props.put(EventConstants.BUNDLE_SYMBOLICNAME, bundle.getSymbolicName());
+        }
+        props.put(EventConstants.BUNDLE_VERSION, bundle.getVersion().toString());
+        props.put(EventConstants.DURATION, duration);
+        eventAdmin.postEvent(new Event(EventConstants.TOPIC_BUNDLES_STARTED, props));
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.karaf.features.BundleInfo;
+import org.apache.karaf.features.Feature;
+import org.apache.karaf.features.Repository;
+
+/**
+ * Reverse index from bundles to features, maintained incrementally when
+ * repositories are added or removed and when features are installed or uninstalled:
+ * <ul>
+ *     <li>bundle location to the available features containing that bundle</li>
+ *     <li>bundle id to the installed features that installed that bundle</li>
+ * </ul>
+ */
+public class FeatureBundleIndex {
+
+    // a feature is listed once for each repository containing it
+    private final Map<String, List<Feature>> featuresByLocation = new HashMap<String, List<Feature>>();
+    private final Map<Long, Set<Feature>> installedFeaturesByBundle = new HashMap<Long, Set<Feature>>();
+
+    public synchronized void addRepository(Repository repository) throws Exception {
+        for (Feature feature : repository.getFeatures()) {
+            for (String location : getLocations(feature)) {
+                List<Feature> features = featuresByLocation.get(location);
+                if (features == null) {
+                    features = new ArrayList<Feature>(1);
+                    featuresByLocation.put(location, features);
+                }
+                features.add(feature);
+            }
+        }
+    }
+
+    public synchronized void removeRepository(Repository repository) throws Exception {
+        for (Feature feature : repository.getFeatures()) {
+            for (String location : getLocations(feature)) {
+                List<Feature> features = featuresByLocation.get(location);
+                if (features != null) {
+                    int index = indexOf(features, feature);
+                    if (index >= 0) {
+                        features.remove(index);
+                    }
+                    if (features.isEmpty()) {
+                        featuresByLocation.remove(location);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void addInstalled(Feature feature, Set<Long> bundleIds) {
+        for (Long id : bundleIds) {
+            Set<Feature> features = installedFeaturesByBundle.get(id);
+            if (features == null) {
+                features = new HashSet<Feature>();
+                installedFeaturesByBundle.put(id, features);
+            }
+            features.add(feature);
+        }
+    }
+
+    public synchronized void removeInstalled(Feature feature, Set<Long> bundleIds) {
+        for (Long id : bundleIds) {
+            Set<Feature> features = installedFeaturesByBundle.get(id);
+            if (features != null) {
+                features.remove(feature);
+                if (features.isEmpty()) {
+                    installedFeaturesByBundle.remove(id);
+                }
+            }
+        }
+    }
+
+    public synchronized void setInstalled(Map<Feature, Set<Long>> installed) {
+        installedFeaturesByBundle.clear();
+        for (Map.Entry<Feature, Set<Long>> entry : installed.entrySet()) {
+            addInstalled(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the available features containing a bundle with the given location.
+     */
+    public synchronized Set<Feature> getFeatures(String location) {
+        List<Feature> features = featuresByLocation.get(location);
+        return features != null ? new HashSet<Feature>(features) : new HashSet<Feature>();
+    }
+
+    /**
+     * @return the installed features that installed the bundle with the given id.
+     */
+    public synchronized Set<Feature> getInstalledFeatures(long bundleId) {
+        Set<Feature> features = installedFeaturesByBundle.get(bundleId);
+        return features != null ? new HashSet<Feature>(features) : new HashSet<Feature>();
+    }
+
+    /**
+     * @return the index of the given feature instance, else of the first feature equal to it,
+     * or <code>-1</code>.
+     */
+    static int indexOf(List<Feature> features, Feature feature) {
+        for (int i = 0; i < features.size(); i++) {
+            if (features.get(i) == feature) {
+                return i;
+            }
+        }
+        return features.indexOf(feature);
+    }
+
+    private static Set<String> getLocations(Feature feature) {
+        Set<String> locations = new HashSet<String>();
+        for (BundleInfo info : feature.getBundles()) {
+            locations.add(info.getLocation());
+        }
+        return locations;
+    }
+
+}
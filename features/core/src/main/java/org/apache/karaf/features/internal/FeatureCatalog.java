@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.felix.utils.version.VersionRange;
+import org.apache.felix.utils.version.VersionTable;
+import org.apache.karaf.features.Feature;
+import org.apache.karaf.features.Repository;
+import org.osgi.framework.Version;
+
+/**
+ * The features available from the registered repositories, by name and version.
+ * <p>
+ * The catalog is updated incrementally when a repository is added or removed, and
+ * can be read concurrently. The versions of each feature name are kept in an immutable
+ * snapshot sorted by {@link Version}, so that looking up the best version of a feature
+ * does not parse all the available versions again.
+ */
+public class FeatureCatalog {
+
+    private final ConcurrentMap<String, Versions> features = new ConcurrentHashMap<String, Versions>();
+    private final Map<String, Map<String, Feature>> view = new CatalogView();
+
+    public void addRepository(Repository repository) throws Exception {
+        for (Feature feature : repository.getFeatures()) {
+            for (;;) {
+                Versions current = features.get(feature.getName());
+                if (current == null) {
+                    if (features.putIfAbsent(feature.getName(), new Versions(Collections.singletonList(feature))) == null) {
+                        break;
+                    }
+                } else if (features.replace(feature.getName(), current, current.add(feature))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    public void removeRepository(Repository repository) throws Exception {
+        for (Feature feature : repository.getFeatures()) {
+            for (;;) {
+                Versions current = features.get(feature.getName());
+                if (current == null) {
+                    break;
+                }
+                Versions updated = current.remove(feature);
+                if (updated == current) {
+                    break;
+                } else if (updated == null) {
+                    if (features.remove(feature.getName(), current)) {
+                        break;
+                    }
+                } else if (features.replace(feature.getName(), current, updated)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the versions available for the given feature name, or <code>null</code>.
+     */
+    public Versions get(String name) {
+        return features.get(name);
+    }
+
+    /**
+     * @return a read-only live view of the catalog: the outer map's key is the feature name,
+     * the inner map's key is the feature version.
+     */
+    public Map<String, Map<String, Feature>> asMap() {
+        return view;
+    }
+
+    /**
+     * An immutable snapshot of the available versions of a feature.
+     */
+    public static class Versions {
+
+        private static final Comparator<Feature> COMPARATOR = new Comparator<Feature>() {
+            public int compare(Feature f1, Feature f2) {
+                return VersionTable.getVersion(f1.getVersion()).compareTo(VersionTable.getVersion(f2.getVersion()));
+            }
+        };
+
+        // all the features with this name, one for each repository providing it
+        private final List<Feature> all;
+        private final Map<String, Feature> byVersion;
+        private final Feature[] sorted;
+        private final Version[] versions;
+
+        public Versions(List<Feature> all) {
+            this.all = all;
+            Map<String, Feature> map = new HashMap<String, Feature>();
+            for (Feature feature : all) {
+                map.put(feature.getVersion(), feature);
+            }
+            this.byVersion = Collections.unmodifiableMap(map);
+            this.sorted = map.values().toArray(new Feature[map.size()]);
+            Arrays.sort(this.sorted, COMPARATOR);
+            this.versions = new Version[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                versions[i] = VersionTable.getVersion(sorted[i].getVersion());
+            }
+        }
+
+        /**
+         * Builds the snapshot from a version to feature map.
+         */
+        public static Versions of(Map<String, Feature> features) {
+            return new Versions(new ArrayList<Feature>(features.values()));
+        }
+
+        Versions add(Feature feature) {
+            List<Feature> list = new ArrayList<Feature>(all.size() + 1);
+            list.addAll(all);
+            list.add(feature);
+            return new Versions(list);
+        }
+
+        Versions remove(Feature feature) {
+            int index = FeatureBundleIndex.indexOf(all, feature);
+            if (index < 0) {
+                return this;
+            }
+            if (all.size() == 1) {
+                return null;
+            }
+            List<Feature> list = new ArrayList<Feature>(all);
+            list.remove(index);
+            return new Versions(list);
+        }
+
+        public boolean isEmpty() {
+            return sorted.length == 0;
+        }
+
+        public Map<String, Feature> asMap() {
+            return byVersion;
+        }
+
+        /**
+         * @return the feature with exactly the given version string, or <code>null</code>.
+         */
+        public Feature get(String version) {
+            return byVersion.get(version);
+        }
+
+        /**
+         * @return the feature with the highest version, or <code>null</code>.
+         */
+        public Feature getLatest() {
+            return sorted.length > 0 ? sorted[sorted.length - 1] : null;
+        }
+
+        /**
+         * @return the feature with the highest version in the given range, or <code>null</code>.
+         */
+        public Feature getLatest(VersionRange range) {
+            // binary search for the highest version not above the ceiling
+            int low = 0;
+            int high = versions.length;
+            Version ceiling = range.getCeiling();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int c = versions[mid].compareTo(ceiling);
+                if (c < 0 || (c == 0 && !range.isOpenCeiling())) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low - 1; i >= 0; i--) {
+                if (range.contains(versions[i])) {
+                    return sorted[i];
+                }
+                if (versions[i].compareTo(range.getFloor()) < 0) {
+                    break;
+                }
+            }
+            return null;
+        }
+    }
+
+    private class CatalogView extends AbstractMap<String, Map<String, Feature>> {
+
+        @Override
+        public Map<String, Feature> get(Object key) {
+            Versions versions = features.get(key);
+            return versions != null ? versions.asMap() : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return features.containsKey(key);
+        }
+
+        @Override
+        public Set<Entry<String, Map<String, Feature>>> entrySet() {
+            return new AbstractSet<Entry<String, Map<String, Feature>>>() {
+                @Override
+                public Iterator<Entry<String, Map<String, Feature>>> iterator() {
+                    final Iterator<Entry<String, Versions>> it = features.entrySet().iterator();
+                    return new Iterator<Entry<String, Map<String, Feature>>>() {
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Entry<String, Map<String, Feature>> next() {
+                            Entry<String, Versions> e = it.next();
+                            return new SimpleImmutableEntry<String, Map<String, Feature>>(e.getKey(), e.getValue().asMap());
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return features.size();
+                }
+            };
+        }
+    }
+
+}
@@ -58,6 +58,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -90,13 +91,19 @@ public class FeaturesServiceImpl implements FeaturesService {
     private long resolverTimeout = 5000;
     private Set<URI> uris;
     private Map<URI, Repository> repositories = new HashMap<URI, Repository>();
-    private Map<String, Map<String, Feature>> features;
+    private final FeatureCatalog catalog = new FeatureCatalog();
+    private volatile boolean dependentRepositoriesLoaded;
+    private RepositoryCache repositoryCache;
     private Map<Feature, Set<Long>> installed = new HashMap<Feature, Set<Long>>();
+    private final FeatureBundleIndex bundleIndex = new FeatureBundleIndex();
     private List<FeaturesListener> listeners = new CopyOnWriteArrayIdentityList<FeaturesListener>();
     private ThreadLocal<Repository> repo = new ThreadLocal<Repository>();
     private EventAdminListener eventAdminListener;
     private String overrides;
     private FeatureFinder featureFinder;
+    private int downloadThreads;
+    private int startThreads = 4;
+    private InstalledBundles installedBundles;
     
     public FeaturesServiceImpl(BundleManager bundleManager) {
         this(bundleManager, null);
@@ -127,6 +134,42 @@ public class FeaturesServiceImpl implements FeaturesService {
         this.overrides = overrides;
     }
 
+    public int getDownloadThreads() {
+        return downloadThreads;
+    }
+
+    /**
+     * Set the number of threads used to download the bundles of the features before installing them.
+     * A value of 0 disables the prefetch, the bundles are then downloaded one at a time while being installed.
+     */
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
+    public int getStartThreads() {
+        return startThreads;
+    }
+
+    /**
+     * Set the number of threads used to start the bundles of the features when the
+     * {@link Option#ConcurrentBundleStart} option is used.
+     */
+    public void setStartThreads(int startThreads) {
+        this.startThreads = startThreads;
+    }
+
+    public InstalledBundles getInstalledBundles() {
+        return installedBundles;
+    }
+
+    /**
+     * Set the index of installed bundles, used to avoid reading the manifest
+     * of bundles that are already installed when applying overrides.
+     */
+    public void setInstalledBundles(InstalledBundles installedBundles) {
+        this.installedBundles = installedBundles;
+    }
+
     public FeatureFinder getFeatureFinder() {
         return featureFinder;
     }
@@ -238,12 +281,17 @@ public class FeaturesServiceImpl implements FeaturesService {
      * @throws Exception in case of adding failure.
      */
     protected Repository internalAddRepository(URI uri) throws Exception {
-        validateRepository(uri);
-        RepositoryImpl repo = new RepositoryImpl(uri);
+        RepositoryImpl repo = new RepositoryImpl(uri, repositoryCache);
+        // cached repositories have been validated when they were first added
+        if (!repo.loadFromCache()) {
+            validateRepository(uri);
+        }
         repositories.put(uri, repo);
         repo.load();
+        catalog.addRepository(repo);
+        bundleIndex.addRepository(repo);
         callListeners(new RepositoryEvent(repo, RepositoryEvent.EventType.RepositoryAdded, false));
-        features = null;
+        dependentRepositoriesLoaded = false;
         return repo;
         
     }
@@ -286,8 +334,15 @@ public class FeaturesServiceImpl implements FeaturesService {
     protected void internalRemoveRepository(URI uri) {
         Repository repo = repositories.remove(uri);
         this.repo.set(repo);
+        if (repo != null) {
+            try {
+                catalog.removeRepository(repo);
+                bundleIndex.removeRepository(repo);
+            } catch (Exception e) {
+                LOGGER.warn(format("Unable to remove features repository %s from the features index", uri), e);
+            }
+        }
         callListeners(new RepositoryEvent(repo, RepositoryEvent.EventType.RepositoryRemoved, false));
-        features = null;
     }
 
     /**
@@ -297,9 +352,20 @@ public class FeaturesServiceImpl implements FeaturesService {
      * @throws Exception in case of restore failure.
      */
     public void restoreRepository(URI uri) throws Exception {
-    	repositories.put(uri, repo.get());
+    	Repository failed = repositories.put(uri, repo.get());
+    	if (failed != repo.get()) {
+    	    // drop the features of the repository that failed to replace the previous one
+    	    if (failed != null) {
+    	        catalog.removeRepository(failed);
+    	        bundleIndex.removeRepository(failed);
+    	    }
+    	    if (repo.get() != null) {
+    	        catalog.addRepository(repo.get());
+    	        bundleIndex.addRepository(repo.get());
+    	    }
+    	}
     	callListeners(new RepositoryEvent(repo.get(), RepositoryEvent.EventType.RepositoryAdded, false));
-        features = null;
+        dependentRepositoriesLoaded = false;
     }
 
     /**
@@ -394,6 +460,7 @@ public class FeaturesServiceImpl implements FeaturesService {
         final InstallationState state = new InstallationState();
         final InstallationState failure = new InstallationState();
         boolean verbose = options.contains(FeaturesService.Option.Verbose);
+        Collection<String> prefetched = prefetchBundles(features);
         try {
             // Install everything
             for (Feature f : features) {
@@ -442,9 +509,13 @@ public class FeaturesServiceImpl implements FeaturesService {
                     }
                 });
             }
-            for (Bundle b : bundlesSortedByStartLvl) {
-                LOGGER.debug("Starting bundle: {}", b.getSymbolicName());
-                startBundle(state, b);
+            if (options.contains(Option.ConcurrentBundleStart)) {
+                startBundles(state, bundlesSortedByStartLvl, verbose);
+            } else {
+                for (Bundle b : bundlesSortedByStartLvl) {
+                    LOGGER.debug("Starting bundle: {}", b.getSymbolicName());
+                    startBundle(state, b);
+                }
             }
             // Clean up for batch
             if (!options.contains(Option.NoCleanIfFailure)) {
@@ -457,13 +528,101 @@ public class FeaturesServiceImpl implements FeaturesService {
                 callListeners(new FeatureEvent(f, FeatureEvent.EventType.FeatureInstalled, false));
             }
             for (Map.Entry<Feature, Set<Long>> e : state.features.entrySet()) {
-                installed.put(e.getKey(), e.getValue());
+                Set<Long> previous = installed.put(e.getKey(), e.getValue());
+                if (previous != null) {
+                    bundleIndex.removeInstalled(e.getKey(), previous);
+                }
+                bundleIndex.addInstalled(e.getKey(), e.getValue());
             }
             saveState();
         } catch (Exception e) {
             boolean noCleanIfFailure = options.contains(Option.NoCleanIfFailure);
             cleanUpOnFailure(state, failure, noCleanIfFailure);
             throw e;
+        } finally {
+            if (!prefetched.isEmpty()) {
+                bundleManager.releaseStagedBundles(prefetched);
+            }
+        }
+    }
+
+    /**
+     * Download all the bundles needed by the given features and their dependencies
+     * concurrently, so that installing them does not wait on the network for each bundle.
+     *
+     * @param features the features about to be installed.
+     * @return the prefetched bundle locations.
+     */
+    protected Collection<String> prefetchBundles(Set<Feature> features) throws Exception {
+        if (downloadThreads <= 0) {
+            return Collections.emptyList();
+        }
+        Set<String> locations = new LinkedHashSet<String>();
+        Set<Feature> visited = new HashSet<Feature>();
+        for (Feature feature : features) {
+            collectBundleLocations(feature, visited, locations);
+        }
+        if (locations.size() <= 1) {
+            return Collections.emptyList();
+        }
+        return bundleManager.prefetchBundles(locations, downloadThreads);
+    }
+
+    private void collectBundleLocations(Feature feature, Set<Feature> visited, Set<String> locations) throws Exception {
+        if (!visited.add(feature)) {
+            return;
+        }
+        for (Dependency dependency : feature.getDependencies()) {
+            Feature fi = getFeatureForDependency(dependency);
+            if (fi != null) {
+                collectBundleLocations(fi, visited, locations);
+            }
+        }
+        // the bundles of features using a resolver and of conditionals are only known
+        // at installation time, they are downloaded when they are installed
+        String resolver = feature.getResolver();
+        if (resolver == null || resolver.length() == 0) {
+            for (BundleInfo bInfo : Overrides.override(feature.getBundles(), this.overrides, installedBundles)) {
+                locations.add(bInfo.getLocation());
+            }
+        }
+    }
+
+    /**
+     * Start bundles concurrently, grouped by start level, a bundle waiting for the
+     * bundles of the same start level it is wired to. The time spent starting each
+     * bundle is logged, printed in verbose mode and published to EventAdmin.
+     *
+     * @param state the current bundle installation state.
+     * @param bundles the bundles to start.
+     * @param verbose if the start time of each bundle should be printed.
+     * @throws Exception in case of start failure.
+     */
+    private void startBundles(final InstallationState state, List<Bundle> bundles, final boolean verbose) throws Exception {
+        Map<Bundle, Integer> startLevels = respectStartLvlDuringFeatureStartup
+                ? state.bundleStartLevels : Collections.<Bundle, Integer>emptyMap();
+        long t0 = System.currentTimeMillis();
+        new BundleStarter(startThreads).startBundles(bundles, startLevels, new BundleStarter.StartTask() {
+            public boolean start(Bundle bundle) throws Exception {
+                LOGGER.debug("Starting bundle: {}", bundle.getSymbolicName());
+                return startBundle(state, bundle);
+            }
+
+            public void started(Bundle bundle, long duration) {
+                bundleStarted(bundle, duration, verbose);
+            }
+        });
+        LOGGER.debug("Started {} bundles in {} ms", bundles.size(), System.currentTimeMillis() - t0);
+    }
+
+    private void bundleStarted(Bundle bundle, long duration, boolean verbose) {
+        String msg = "Started bundle " + bundle.getSymbolicName() + " / " + bundle.getVersion() + " in " + duration + " ms";
+        LOGGER.debug(msg);
+        if (verbose) {
+            System.out.println(msg);
+        }
+        if (eventAdminListener != null) {
+            eventAdminListener.bundleStarted(bundle, duration);
         }
     }
 
@@ -472,9 +631,10 @@ public class FeaturesServiceImpl implements FeaturesService {
      *
      * @param state the current bundle installation state.
      * @param bundle the bundle to start.
+     * @return <code>true</code> if the bundle has been started.
      * @throws Exception in case of start failure.
      */
-	private void startBundle(InstallationState state, Bundle bundle) throws Exception {
+	private boolean startBundle(InstallationState state, Bundle bundle) throws Exception {
 		if (!isFragment(bundle)) {
 		    // do not start bundles that are persistently stopped
 		    if (state.installed.contains(bundle)
@@ -486,6 +646,7 @@ public class FeaturesServiceImpl implements FeaturesService {
 		        if (bundleInfo == null || bundleInfo.isStart()) {
 		            try {
 		                bundle.start();
+		                return true;
 		            } catch (BundleException be) {
 		                String msg = format("Could not start bundle %s in feature(s) %s: %s", bundle.getLocation(), getFeaturesContainingBundleList(bundle), be.getMessage());
 		                throw new Exception(msg, be);
@@ -493,6 +654,7 @@ public class FeaturesServiceImpl implements FeaturesService {
 		    	}
 		    }
 		}
+		return false;
 	}
 	
 	private boolean isFragment(Bundle b) {
@@ -537,7 +699,7 @@ public class FeaturesServiceImpl implements FeaturesService {
         }
         Set<Long> bundles = new TreeSet<Long>();
         
-        for (BundleInfo bInfo : Overrides.override(resolve(feature), this.overrides)) {
+        for (BundleInfo bInfo : Overrides.override(resolve(feature), this.overrides, installedBundles)) {
             int startLevel = getBundleStartLevel(bInfo.getStartLevel(),feature.getStartLevel());
             BundleInstallerResult result = bundleManager.installBundleIfNeeded(bInfo.getLocation(), startLevel, feature.getRegion());
             state.bundles.add(result.bundle);
@@ -670,12 +832,15 @@ public class FeaturesServiceImpl implements FeaturesService {
         // and remove all those who will still be in use.
         // This gives this list of bundles to uninstall.
         Set<Long> bundles = installed.remove(feature);
+        bundleIndex.removeInstalled(feature, bundles);
 
         //Also remove bundles installed as conditionals
         for (Conditional conditional : feature.getConditional()) {
             Feature conditionalFeature = conditional.asFeature(feature.getName(),feature.getVersion());
             if (installed.containsKey(conditionalFeature)) {
-            	bundles.addAll(installed.remove(conditionalFeature));
+            	Set<Long> conditionalBundles = installed.remove(conditionalFeature);
+            	bundleIndex.removeInstalled(conditionalFeature, conditionalBundles);
+            	bundles.addAll(conditionalBundles);
             } else {
             	LOGGER.info("Conditional feature {}, hasn't been installed!");
             }
@@ -734,37 +899,39 @@ public class FeaturesServiceImpl implements FeaturesService {
         if (version != null) {
             version = version.trim();
         }
-        Map<String, Feature> versions = getFeatures().get(name);
+        FeatureCatalog.Versions versions = getFeatureVersions(name);
         if (versions == null || versions.isEmpty()) {
             return null;
         } else {
             Feature feature = versions.get(version);
             if (feature == null) {
                 if (org.apache.karaf.features.internal.model.Feature.DEFAULT_VERSION.equals(version)) {
-                    Version latest = new Version(cleanupVersion(version));
-                    for (String available : versions.keySet()) {
-                        Version availableVersion = new Version(cleanupVersion(available));
-                        if (availableVersion.compareTo(latest) > 0) {
-                            feature = versions.get(available);
-                            latest = availableVersion;
-                        }
-                    }
+                    feature = versions.getLatest();
                 } else {
-                    Version latest = new Version(cleanupVersion(org.apache.karaf.features.internal.model.Feature.DEFAULT_VERSION));
-                    VersionRange versionRange = new VersionRange(version, true, true);
-                    for (String available : versions.keySet()) {
-                        Version availableVersion = new Version(cleanupVersion(available));
-                        if (availableVersion.compareTo(latest) > 0 && versionRange.contains(availableVersion)) {
-                            feature = versions.get(available);
-                            latest = availableVersion;
-                        }
-                    }
+                    feature = versions.getLatest(new VersionRange(version, true, true));
+                }
+                // only versions above the default one are looked for
+                if (feature != null && VersionTable.getVersion(feature.getVersion()).compareTo(Version.emptyVersion) <= 0) {
+                    feature = null;
                 }
             }
             return feature;
         }
     }
 
+    /**
+     * Get the available versions of a feature, sorted by version.
+     */
+    protected FeatureCatalog.Versions getFeatureVersions(String name) throws Exception {
+        Map<String, Map<String, Feature>> all = getFeatures();
+        if (all == catalog.asMap()) {
+            return catalog.get(name);
+        }
+        // getFeatures() has been overridden
+        Map<String, Feature> versions = all.get(name);
+        return versions != null ? FeatureCatalog.Versions.of(versions) : null;
+    }
+
     @Override
     public URI getRepositoryUriFor(String name, String version) {
         return featureFinder.getUriFor(name, version);
@@ -776,11 +943,8 @@ public class FeaturesServiceImpl implements FeaturesService {
     }
 
     protected Map<String, Map<String, Feature>> getFeatures() throws Exception {
-        if (features == null) {
-        	//the outer map's key is feature name, the inner map's key is feature version       
-            Map<String, Map<String, Feature>> map = new HashMap<String, Map<String, Feature>>();
-            // Two phase load:
-            // * first load dependent repositories
+        if (!dependentRepositoriesLoaded) {
+            // load the repositories referenced by the registered ones
             for (;;) {
                 boolean newRepo = false;
                 for (Repository repo : listRepositories()) {
@@ -795,21 +959,10 @@ public class FeaturesServiceImpl implements FeaturesService {
                     break;
                 }
             }
-            // * then load all features
-            for (Repository repo : repositories.values()) {
-                for (Feature f : repo.getFeatures()) {
-                	if (map.get(f.getName()) == null) {
-                		Map<String, Feature> versionMap = new HashMap<String, Feature>();
-                		versionMap.put(f.getVersion(), f);
-                		map.put(f.getName(), versionMap);
-                	} else {
-                		map.get(f.getName()).put(f.getVersion(), f);
-                	}
-                }
-            }
-            features = map;
+            dependentRepositoriesLoaded = true;
         }
-        return features;
+        //the outer map's key is feature name, the inner map's key is feature version
+        return catalog.asMap();
     }
 
 	private void initState() {
@@ -829,6 +982,10 @@ public class FeaturesServiceImpl implements FeaturesService {
     
     public void start() throws Exception {
         this.eventAdminListener = bundleManager.createAndRegisterEventAdminListener();
+        File cacheDir = bundleManager.getDataFile("repositories");
+        if (cacheDir != null && (cacheDir.isDirectory() || cacheDir.mkdirs())) {
+            repositoryCache = new RepositoryCache(cacheDir);
+        }
         initState();
     }
 
@@ -877,6 +1034,7 @@ public class FeaturesServiceImpl implements FeaturesService {
             	}
             }
             installed = loadMap(props, "features.");
+            bundleIndex.setInstalled(installed);
             for (Feature f : installed.keySet()) {
                 callListeners(new FeatureEvent(f, FeatureEvent.EventType.FeatureInstalled, true));
             }
@@ -1040,18 +1198,14 @@ public class FeaturesServiceImpl implements FeaturesService {
     }
 
     public Set<Feature> getFeaturesContainingBundle (Bundle bundle) throws Exception {
-        Set<Feature> features = new HashSet<Feature>();
-        for (Map<String, Feature> featureMap : this.getFeatures().values()) {
-            for (Feature f : featureMap.values()) {
-                for (BundleInfo bi : f.getBundles()) {
-                    if (bi.getLocation().equals(bundle.getLocation())) {
-                        features.add(f);
-                        break;
-                    }
-                }
-            }
-        }
-        return features;
+        // make sure the dependent repositories are loaded
+        getFeatures();
+        return bundleIndex.getFeatures(bundle.getLocation());
+    }
+
+    public Feature[] getInstalledFeaturesForBundle(long bundleId) {
+        Set<Feature> result = bundleIndex.getInstalledFeatures(bundleId);
+        return result.toArray(new Feature[result.size()]);
     }
 
     private String getFeaturesContainingBundleList(Bundle bundle) throws Exception {
@@ -1089,16 +1243,9 @@ public class FeaturesServiceImpl implements FeaturesService {
             }
         }
         if (fi == null) {
-            Map<String, Feature> avail = getFeatures().get(dependency.getName());
+            FeatureCatalog.Versions avail = getFeatureVersions(dependency.getName());
             if (avail != null) {
-                for (Feature f : avail.values()) {
-                    Version v = VersionTable.getVersion(f.getVersion());
-                    if (range.contains(v)) {
-                        if (fi == null || VersionTable.getVersion(fi.getVersion()).compareTo(v) < 0) {
-                            fi = f;
-                        }
-                    }
-                }
+                fi = avail.getLatest(range);
             }
         }
         return fi;
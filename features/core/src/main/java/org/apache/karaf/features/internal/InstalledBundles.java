@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.Version;
+
+/**
+ * Index of the installed bundles by symbolic name and version, and by location.
+ * It is kept up to date by a synchronous bundle listener, so that a bundle installed
+ * by a thread can be found by that thread right after.
+ */
+public class InstalledBundles implements SynchronousBundleListener {
+
+    private final BundleContext bundleContext;
+    private final ConcurrentMap<String, Bundle> bySymbolicNameAndVersion = new ConcurrentHashMap<String, Bundle>();
+    private final ConcurrentMap<String, Bundle> byLocation = new ConcurrentHashMap<String, Bundle>();
+    // the keys each bundle is indexed with, to be able to remove them when the bundle is updated
+    private final ConcurrentMap<Long, String[]> keys = new ConcurrentHashMap<Long, String[]>();
+
+    public InstalledBundles(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    public void open() {
+        // register first, so that no bundle is missed between the initial scan and the events
+        bundleContext.addBundleListener(this);
+        for (Bundle bundle : bundleContext.getBundles()) {
+            add(bundle);
+        }
+    }
+
+    public void close() {
+        bundleContext.removeBundleListener(this);
+        bySymbolicNameAndVersion.clear();
+        byLocation.clear();
+        keys.clear();
+    }
+
+    public void bundleChanged(BundleEvent event) {
+        Bundle bundle = event.getBundle();
+        switch (event.getType()) {
+        case BundleEvent.INSTALLED:
+        case BundleEvent.UPDATED:
+            remove(bundle);
+            add(bundle);
+            break;
+        case BundleEvent.UNINSTALLED:
+            remove(bundle);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * @return the installed bundle with the given symbolic name and version, or <code>null</code>.
+     */
+    public Bundle getBundle(String symbolicName, Version version) {
+        return bySymbolicNameAndVersion.get(key(symbolicName, version));
+    }
+
+    /**
+     * @return the installed bundle with the given location, or <code>null</code>.
+     */
+    public Bundle getBundle(String location) {
+        return byLocation.get(location);
+    }
+
+    private void add(Bundle bundle) {
+        if (bundle.getState() == Bundle.UNINSTALLED) {
+            return;
+        }
+        String location = bundle.getLocation();
+        String key = bundle.getSymbolicName() != null ? key(bundle.getSymbolicName(), bundle.getVersion()) : null;
+        keys.put(bundle.getBundleId(), new String[] { key, location });
+        if (key != null) {
+            bySymbolicNameAndVersion.put(key, bundle);
+        }
+        if (location != null) {
+            byLocation.put(location, bundle);
+        }
+    }
+
+    private void remove(Bundle bundle) {
+        String[] k = keys.remove(bundle.getBundleId());
+        if (k != null) {
+            if (k[0] != null) {
+                bySymbolicNameAndVersion.remove(k[0], bundle);
+            }
+            if (k[1] != null) {
+                byLocation.remove(k[1], bundle);
+            }
+        }
+    }
+
+    private static String key(String symbolicName, Version version) {
+        return symbolicName + "/" + (version != null ? version : Version.emptyVersion);
+    }
+
+}
@@ -71,6 +71,21 @@ public class Overrides {
      * @return a new list of bundles to install
      */
     public static List<BundleInfo> override(List<BundleInfo> infos, String overridesUrl) {
+        return override(infos, overridesUrl, null);
+    }
+
+    /**
+     * Compute a list of bundles to install, taking into account overrides.
+     *
+     * The symbolic name, version and vendor of the bundles that are already installed
+     * are taken from the installed bundles instead of reading their manifest again.
+     *
+     * @param infos the list of bundles to install
+     * @param overridesUrl url pointing to the file containing the list of override bundles
+     * @param installed the index of installed bundles, may be <code>null</code>
+     * @return a new list of bundles to install
+     */
+    public static List<BundleInfo> override(List<BundleInfo> infos, String overridesUrl, InstalledBundles installed) {
         List<Clause> overrides = loadOverrides(overridesUrl);
         if (overrides.isEmpty()) {
             return infos;
@@ -83,11 +98,24 @@ public class Overrides {
             }
             List<BundleInfo> newInfos = new ArrayList<BundleInfo>();
             for (BundleInfo info : infos) {
-                Manifest manifest = getManifest(info.getLocation());
-                if (manifest != null) {
-                    String bsn = getBundleSymbolicName(manifest);
-                    Version ver = getBundleVersion(manifest);
-                    String ven = getBundleVendor(manifest);
+                org.osgi.framework.Bundle installedBundle = installed != null ? installed.getBundle(info.getLocation()) : null;
+                if (installedBundle != null && installedBundle.getSymbolicName() == null) {
+                    installedBundle = null;
+                }
+                Manifest manifest = installedBundle == null ? getManifest(info.getLocation()) : null;
+                if (installedBundle != null || manifest != null) {
+                    String bsn;
+                    Version ver;
+                    String ven;
+                    if (installedBundle != null) {
+                        bsn = installedBundle.getSymbolicName();
+                        ver = installedBundle.getVersion();
+                        ven = (String) installedBundle.getHeaders().get(Constants.BUNDLE_VENDOR);
+                    } else {
+                        bsn = getBundleSymbolicName(manifest);
+                        ver = getBundleVersion(manifest);
+                        ven = getBundleVendor(manifest);
+                    }
                     String url = info.getLocation();
                     for (Clause override : overrides) {
                         Manifest overMan = manifests.get(override.getName());
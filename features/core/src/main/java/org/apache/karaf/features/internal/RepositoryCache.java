@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.apache.karaf.features.internal.model.BinaryUtil;
+import org.apache.karaf.features.internal.model.Features;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of parsed features repositories.
+ * <p>
+ * Each repository is stored in its own file, in the compact binary form of {@link BinaryUtil},
+ * along with the digest of the XML it has been parsed from. An entry is only used when the
+ * repository content has the same digest. For <code>file:</code> repositories, the size and
+ * last modification time are checked first, so that unchanged files don't even need to be read.
+ */
+public class RepositoryCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryCache.class);
+
+    private static final int MAGIC = 0x4b524331; // KRC1
+
+    private final File directory;
+
+    public RepositoryCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * A repository location, with the information needed to check whether a cache entry is up to date.
+     */
+    public static class Source {
+        final URI uri;
+        final long lastModified;
+        final long length;
+        byte[] data;
+        byte[] digest;
+
+        Source(URI uri, long lastModified, long length) {
+            this.uri = uri;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        public byte[] getData() throws IOException {
+            if (data == null) {
+                data = readFully(uri.toURL().openStream());
+            }
+            return data;
+        }
+
+        byte[] getDigest() throws IOException {
+            if (digest == null) {
+                digest = digest(getData());
+            }
+            return digest;
+        }
+    }
+
+    /**
+     * Get the state of the given repository, to be used with {@link #get(Source)} and {@link #put(Source, Features)}.
+     */
+    public Source getSource(URI uri) {
+        if ("file".equals(uri.getScheme())) {
+            try {
+                File file = new File(uri);
+                return new Source(uri, file.lastModified(), file.length());
+            } catch (IllegalArgumentException e) {
+                // not a hierarchical file uri, fall back to the digest check
+            }
+        }
+        return new Source(uri, -1, -1);
+    }
+
+    /**
+     * @return the cached features for the given repository, or <code>null</code> if the cache
+     * does not contain an up to date entry for it.
+     */
+    public Features get(Source source) {
+        File file = getFile(source.uri);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || !source.uri.toString().equals(in.readUTF())) {
+                    return null;
+                }
+                long lastModified = in.readLong();
+                long length = in.readLong();
+                byte[] digest = new byte[in.readInt()];
+                in.readFully(digest);
+                boolean unchanged = source.lastModified > 0
+                        && source.lastModified == lastModified && source.length == length;
+                if (!unchanged && !Arrays.equals(digest, source.getDigest())) {
+                    return null;
+                }
+                return BinaryUtil.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Unable to read cached features repository " + source.uri, e);
+            return null;
+        }
+    }
+
+    public void put(Source source, Features features) {
+        File file = getFile(source.uri);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeUTF(source.uri.toString());
+                out.writeLong(source.lastModified);
+                out.writeLong(source.length);
+                byte[] digest = source.getDigest();
+                out.writeInt(digest.length);
+                out.write(digest);
+                BinaryUtil.write(features, out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Unable to cache features repository " + source.uri, e);
+            tmp.delete();
+        }
+    }
+
+    private File getFile(URI uri) {
+        try {
+            return new File(directory, toHex(digest(uri.toString().getBytes("UTF-8"))) + ".bin");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] digest(byte[] data) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw (IOException) new IOException(e.getMessage()).initCause(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                baos.write(buffer, 0, len);
+            }
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+}
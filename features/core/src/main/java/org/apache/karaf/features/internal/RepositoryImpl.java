@@ -17,6 +17,7 @@
 package org.apache.karaf.features.internal;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,9 +35,16 @@ public class RepositoryImpl implements Repository {
     private URI uri;
     private boolean valid;
     private Features features;
+    private final RepositoryCache cache;
+    private RepositoryCache.Source source;
 
     public RepositoryImpl(URI uri) {
+        this(uri, null);
+    }
+
+    public RepositoryImpl(URI uri, RepositoryCache cache) {
         this.uri = uri;
+        this.cache = cache;
     }
 
     public String getName() {
@@ -64,8 +72,36 @@ public class RepositoryImpl implements Repository {
     }
 
 
+    /**
+     * Load the repository from the cache, if it contains an up to date entry for it.
+     *
+     * @return <code>true</code> if the repository has been loaded from the cache.
+     */
+    public boolean loadFromCache() {
+        if (features == null && cache != null) {
+            source = cache.getSource(uri);
+            features = cache.get(source);
+            valid = features != null;
+        }
+        return features != null;
+    }
+
     public void load() throws IOException {
-        if (features == null) {
+        if (features == null && cache != null) {
+            try {
+                if (source == null) {
+                    source = cache.getSource(uri);
+                }
+                features = JaxbUtil.unmarshal(new ByteArrayInputStream(source.getData()), false);
+                cache.put(source, features);
+                source = null;
+                valid = true;
+            } catch (IllegalArgumentException e) {
+                throw (IOException) new IOException(e.getMessage() + " : " + uri).initCause(e);
+            } catch (Exception e) {
+                throw (IOException) new IOException(e.getMessage() + " : " + uri).initCause(e);
+            }
+        } else if (features == null) {
             try {
                 InputStream inputStream = uri.toURL().openStream();
                 inputStream = new FilterInputStream(inputStream) {
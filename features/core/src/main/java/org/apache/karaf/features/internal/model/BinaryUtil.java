@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of the features model, used to cache parsed repositories.
+ * Unlike the XML form, reading it does not involve any parsing nor validation.
+ */
+public class BinaryUtil {
+
+    private static final int FORMAT_VERSION = 1;
+
+    public static void write(Features features, DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, features.name);
+        writeStrings(out, features.repository);
+        if (features.feature == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(features.feature.size());
+            for (Feature f : features.feature) {
+                writeContent(out, f);
+                writeString(out, f.details);
+                writeString(out, f.name);
+                writeString(out, f.version);
+                writeString(out, f.description);
+                writeString(out, f.resolver);
+                writeString(out, f.install);
+                writeInteger(out, f.startLevel);
+                writeString(out, f.region);
+                if (f.conditional == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(f.conditional.size());
+                    for (Conditional c : f.conditional) {
+                        writeContent(out, c);
+                        writeDependencies(out, c.condition);
+                    }
+                }
+            }
+        }
+    }
+
+    public static Features read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version: " + version);
+        }
+        Features features = new Features();
+        features.name = readString(in);
+        features.repository = readStrings(in);
+        int nb = in.readInt();
+        if (nb >= 0) {
+            features.feature = new ArrayList<Feature>(nb);
+            for (int i = 0; i < nb; i++) {
+                Feature f = new Feature();
+                readContent(in, f);
+                f.details = readString(in);
+                f.name = readString(in);
+                f.version = readString(in);
+                f.description = readString(in);
+                f.resolver = readString(in);
+                f.install = readString(in);
+                f.startLevel = readInteger(in);
+                f.region = readString(in);
+                int nbc = in.readInt();
+                if (nbc >= 0) {
+                    f.conditional = new ArrayList<Conditional>(nbc);
+                    for (int j = 0; j < nbc; j++) {
+                        Conditional c = new Conditional();
+                        readContent(in, c);
+                        c.condition = readDependencies(in);
+                        f.conditional.add(c);
+                    }
+                }
+                features.feature.add(f);
+            }
+        }
+        return features;
+    }
+
+    private static void writeContent(DataOutputStream out, Content content) throws IOException {
+        if (content.config == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(content.config.size());
+            for (Config c : content.config) {
+                writeString(out, c.name);
+                writeString(out, c.value);
+            }
+        }
+        if (content.configfile == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(content.configfile.size());
+            for (ConfigFile c : content.configfile) {
+                writeString(out, c.value);
+                writeString(out, c.finalname);
+                writeBoolean(out, c.override);
+            }
+        }
+        writeDependencies(out, content.feature);
+        if (content.bundle == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(content.bundle.size());
+            for (Bundle b : content.bundle) {
+                writeString(out, b.value);
+                writeInteger(out, b.startLevel);
+                writeBoolean(out, b.start);
+                writeBoolean(out, b.dependency);
+            }
+        }
+    }
+
+    private static void readContent(DataInputStream in, Content content) throws IOException {
+        int nb = in.readInt();
+        if (nb >= 0) {
+            content.config = new ArrayList<Config>(nb);
+            for (int i = 0; i < nb; i++) {
+                Config c = new Config();
+                c.name = readString(in);
+                c.value = readString(in);
+                content.config.add(c);
+            }
+        }
+        nb = in.readInt();
+        if (nb >= 0) {
+            content.configfile = new ArrayList<ConfigFile>(nb);
+            for (int i = 0; i < nb; i++) {
+                ConfigFile c = new ConfigFile();
+                c.value = readString(in);
+                c.finalname = readString(in);
+                c.override = readBoolean(in);
+                content.configfile.add(c);
+            }
+        }
+        content.feature = readDependencies(in);
+        nb = in.readInt();
+        if (nb >= 0) {
+            content.bundle = new ArrayList<Bundle>(nb);
+            for (int i = 0; i < nb; i++) {
+                Bundle b = new Bundle();
+                b.value = readString(in);
+                b.startLevel = readInteger(in);
+                b.start = readBoolean(in);
+                b.dependency = readBoolean(in);
+                content.bundle.add(b);
+            }
+        }
+    }
+
+    private static void writeDependencies(DataOutputStream out, List<Dependency> dependencies) throws IOException {
+        if (dependencies == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(dependencies.size());
+            for (Dependency d : dependencies) {
+                writeString(out, d.value);
+                writeString(out, d.version);
+            }
+        }
+    }
+
+    private static List<Dependency> readDependencies(DataInputStream in) throws IOException {
+        int nb = in.readInt();
+        if (nb < 0) {
+            return null;
+        }
+        List<Dependency> dependencies = new ArrayList<Dependency>(nb);
+        for (int i = 0; i < nb; i++) {
+            Dependency d = new Dependency();
+            d.value = readString(in);
+            d.version = readString(in);
+            dependencies.add(d);
+        }
+        return dependencies;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                writeString(out, s);
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int nb = in.readInt();
+        if (nb < 0) {
+            return null;
+        }
+        List<String> strings = new ArrayList<String>(nb);
+        for (int i = 0; i < nb; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer i) throws IOException {
+        out.writeBoolean(i != null);
+        if (i != null) {
+            out.writeInt(i);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+    }
+
+    // 0 for null, 1 for false, 2 for true
+    private static void writeBoolean(DataOutputStream out, Boolean b) throws IOException {
+        out.writeByte(b == null ? 0 : b ? 2 : 1);
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte b = in.readByte();
+        return b == 0 ? null : Boolean.valueOf(b == 2);
+    }
+
+}
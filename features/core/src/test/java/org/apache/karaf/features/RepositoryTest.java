@@ -16,14 +16,47 @@
  */
 package org.apache.karaf.features;
 
+import java.io.File;
 import java.net.URI;
 
 import junit.framework.TestCase;
+import org.apache.karaf.features.internal.RepositoryCache;
 import org.apache.karaf.features.internal.RepositoryImpl;
 
 
 public class RepositoryTest extends TestCase {
 
+    public void testLoadFromCache() throws Exception {
+        File dir = new File("target/repository-cache");
+        dir.mkdirs();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        RepositoryCache cache = new RepositoryCache(dir);
+        URI uri = getClass().getResource("repo1.xml").toURI();
+
+        RepositoryImpl r = new RepositoryImpl(uri, cache);
+        assertFalse(r.loadFromCache());
+        r.load();
+        assertEquals(1, dir.listFiles().length);
+
+        r = new RepositoryImpl(uri, cache);
+        assertTrue(r.loadFromCache());
+        assertTrue(r.isValid());
+        assertEquals("test", r.getName());
+        assertEquals(URI.create("urn:r1"), r.getRepositories()[0]);
+        Feature[] features = r.getFeatures();
+        assertEquals(3, features.length);
+        assertEquals("f1", features[0].getName());
+        assertEquals("foo", features[0].getRegion());
+        assertEquals("v", features[0].getConfigurations().get("c1").get("k"));
+        assertEquals("b2", features[0].getBundles().get(1).getLocation());
+        assertEquals("f1" + org.apache.karaf.features.internal.model.Feature.SPLIT_FOR_NAME_AND_VERSION + org.apache.karaf.features.internal.model.Feature.DEFAULT_VERSION, features[1].getDependencies().get(0).toString());
+        assertEquals("cf1", features[2].getConfigurationFiles().get(0).getFinalname());
+        assertTrue(features[2].getConfigurationFiles().get(0).isOverride());
+    }
+
+
     public void testLoad() throws Exception {
         RepositoryImpl r = new RepositoryImpl(getClass().getResource("repo1.xml").toURI());
         // Check repo
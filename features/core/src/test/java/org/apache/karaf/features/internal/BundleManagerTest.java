@@ -16,11 +16,19 @@
  */
 package org.apache.karaf.features.internal;
 
+import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 import junit.framework.Assert;
 
@@ -29,6 +37,7 @@ import org.junit.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
 
 public class BundleManagerTest extends TestBase {
     
@@ -71,4 +80,63 @@ public class BundleManagerTest extends TestBase {
         Assert.assertEquals(1, bundles.size());
         Assert.assertEquals(importerBundle, bundles.iterator().next());
     }
+
+    @Test
+    public void testPrefetchBundles() throws Exception {
+        File dir = new File("target/bundle-manager-test");
+        File stagingDir = new File(dir, "staging");
+        dir.mkdirs();
+        File jar = new File(dir, "prefetched.jar");
+        createBundleJar(jar, "prefetched", "1.0.0");
+        String location = jar.toURI().toURL().toString();
+        String missing = new File(dir, "missing.jar").toURI().toURL().toString();
+
+        Bundle installedBundle = createDummyBundle(12345l, "prefetched", headers());
+        BundleContext bundleContext = EasyMock.createMock(BundleContext.class);
+        expect(bundleContext.getDataFile("staging")).andReturn(stagingDir);
+        expect(bundleContext.getBundle(location)).andReturn(null);
+        expect(bundleContext.getBundle(missing)).andReturn(null);
+        expect(bundleContext.createFilter(EasyMock.<String>anyObject())).andReturn((Filter) null);
+        expect(bundleContext.getBundles()).andReturn(new Bundle[0]);
+        expect(bundleContext.installBundle(EasyMock.eq(location), EasyMock.<InputStream>anyObject())).andReturn(installedBundle);
+        replay(bundleContext);
+
+        BundleManager bundleManager = new BundleManager(bundleContext);
+        Collection<String> prefetched = bundleManager.prefetchBundles(Arrays.asList(location, missing), 2);
+        Assert.assertEquals(Arrays.asList(location), prefetched);
+
+        // the bundle is installed from the staging area
+        Assert.assertTrue(jar.delete());
+        Assert.assertEquals(1, stagingDir.list().length);
+        Assert.assertSame(installedBundle, bundleManager.installBundleIfNeeded(location, 0, null).bundle);
+        Assert.assertEquals(0, stagingDir.list().length);
+
+        bundleManager.releaseStagedBundles(prefetched);
+        EasyMock.verify(bundleContext);
+    }
+
+    @Test
+    public void testInitPurgesStagingArea() throws Exception {
+        File stagingDir = new File("target/bundle-manager-test/staging-init");
+        stagingDir.mkdirs();
+        File leftover = new File(stagingDir, "bundle123.jar");
+        new FileOutputStream(leftover).close();
+
+        BundleContext bundleContext = EasyMock.createMock(BundleContext.class);
+        expect(bundleContext.getDataFile("staging")).andReturn(stagingDir);
+        replay(bundleContext);
+
+        new BundleManager(bundleContext).init();
+        Assert.assertFalse(leftover.exists());
+        EasyMock.verify(bundleContext);
+    }
+
+    private void createBundleJar(File file, String symbolicName, String version) throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+        manifest.getMainAttributes().putValue(Constants.BUNDLE_VERSION, version);
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest);
+        jos.close();
+    }
 }
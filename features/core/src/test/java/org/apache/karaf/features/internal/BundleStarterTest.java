@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+public class BundleStarterTest {
+
+    @Test
+    public void testStartOrder() throws Exception {
+        Bundle b1 = createBundle(1);
+        Bundle b2 = createBundle(2);
+        Bundle b3 = createBundle(3);
+        Bundle b4 = createBundle(4);
+        // b3 imports a package from b4, b4 requires b1 which is in a lower start level
+        wire(b3, BundleRevision.PACKAGE_NAMESPACE, b4);
+        wire(b4, BundleRevision.BUNDLE_NAMESPACE, b1);
+        wire(b2, BundleRevision.PACKAGE_NAMESPACE);
+        wire(b1, BundleRevision.PACKAGE_NAMESPACE);
+        replay(b1, b2, b3, b4);
+
+        Map<Bundle, Integer> startLevels = new HashMap<Bundle, Integer>();
+        startLevels.put(b1, 10);
+        startLevels.put(b2, 20);
+        startLevels.put(b3, 20);
+        startLevels.put(b4, 20);
+
+        RecordingTask task = new RecordingTask(null);
+        new BundleStarter(4).startBundles(Arrays.asList(b3, b2, b4, b1), startLevels, task);
+
+        Assert.assertEquals(4, task.started.size());
+        Assert.assertEquals(4, task.timed.size());
+        Assert.assertSame(b1, task.started.get(0));
+        Assert.assertTrue(task.started.indexOf(b4) < task.started.indexOf(b3));
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        Bundle b1 = createBundle(1);
+        Bundle b2 = createBundle(2);
+        wire(b1, BundleRevision.PACKAGE_NAMESPACE, b2);
+        wire(b2, BundleRevision.PACKAGE_NAMESPACE, b1);
+        replay(b1, b2);
+
+        RecordingTask task = new RecordingTask(null);
+        new BundleStarter(2).startBundles(Arrays.asList(b1, b2), Collections.<Bundle, Integer>emptyMap(), task);
+
+        Assert.assertEquals(Arrays.asList(b1, b2), task.started);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Bundle b1 = createBundle(1);
+        Bundle b2 = createBundle(2);
+        wire(b1, BundleRevision.PACKAGE_NAMESPACE);
+        wire(b2, BundleRevision.PACKAGE_NAMESPACE, b1);
+        replay(b1, b2);
+
+        RecordingTask task = new RecordingTask(b1);
+        try {
+            new BundleStarter(2).startBundles(Arrays.asList(b1, b2), Collections.<Bundle, Integer>emptyMap(), task);
+            Assert.fail("Expected an exception");
+        } catch (Exception e) {
+            Assert.assertEquals("Could not start bundle 1", e.getMessage());
+        }
+        // b2 depends on the bundle that failed to start, it must not be started
+        Assert.assertEquals(Collections.singletonList(b1), task.started);
+    }
+
+    private Bundle createBundle(long id) {
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        return bundle;
+    }
+
+    private void wire(Bundle bundle, String namespace, Bundle... providers) {
+        BundleWiring wiring = EasyMock.createMock(BundleWiring.class);
+        List<BundleWire> wires = new ArrayList<BundleWire>();
+        for (Bundle provider : providers) {
+            BundleWiring providerWiring = EasyMock.createMock(BundleWiring.class);
+            expect(providerWiring.getBundle()).andReturn(provider).anyTimes();
+            BundleWire wire = EasyMock.createMock(BundleWire.class);
+            expect(wire.getProviderWiring()).andReturn(providerWiring).anyTimes();
+            replay(providerWiring, wire);
+            wires.add(wire);
+        }
+        expect(wiring.getRequiredWires(namespace)).andReturn(wires).anyTimes();
+        expect(wiring.getRequiredWires(EasyMock.<String>anyObject())).andReturn(Collections.<BundleWire>emptyList()).anyTimes();
+        replay(wiring);
+        expect(bundle.adapt(BundleWiring.class)).andReturn(wiring).anyTimes();
+    }
+
+    private static class RecordingTask implements BundleStarter.StartTask {
+        final List<Bundle> started = Collections.synchronizedList(new ArrayList<Bundle>());
+        final List<Bundle> timed = Collections.synchronizedList(new ArrayList<Bundle>());
+        final Bundle failing;
+
+        RecordingTask(Bundle failing) {
+            this.failing = failing;
+        }
+
+        public boolean start(Bundle bundle) throws Exception {
+            started.add(bundle);
+            if (bundle == failing) {
+                throw new Exception("Could not start bundle " + bundle.getBundleId());
+            }
+            return true;
+        }
+
+        public void started(Bundle bundle, long duration) {
+            timed.add(bundle);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import junit.framework.Assert;
+
+import org.apache.karaf.features.Repository;
+import org.apache.karaf.features.internal.model.Bundle;
+import org.apache.karaf.features.internal.model.Feature;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class FeatureBundleIndexTest {
+
+    @Test
+    public void testLocationIndex() throws Exception {
+        Feature f1 = createFeature("f1", "mvn:a", "mvn:b");
+        Feature f2 = createFeature("f2", "mvn:b");
+        Repository r1 = createRepository(f1, f2);
+        Repository r2 = createRepository(createFeature("f2", "mvn:b"));
+
+        FeatureBundleIndex index = new FeatureBundleIndex();
+        index.addRepository(r1);
+        index.addRepository(r2);
+        Assert.assertEquals(Collections.singleton(f1), index.getFeatures("mvn:a"));
+        Assert.assertEquals(new HashSet<Feature>(Arrays.asList(f1, f2)), index.getFeatures("mvn:b"));
+
+        // f2 is still available from the second repository
+        index.removeRepository(r1);
+        Assert.assertTrue(index.getFeatures("mvn:a").isEmpty());
+        Assert.assertEquals(Collections.singleton(f2), index.getFeatures("mvn:b"));
+
+        index.removeRepository(r2);
+        Assert.assertTrue(index.getFeatures("mvn:b").isEmpty());
+    }
+
+    @Test
+    public void testInstalledIndex() throws Exception {
+        Feature f1 = createFeature("f1");
+        Feature f2 = createFeature("f2");
+
+        FeatureBundleIndex index = new FeatureBundleIndex();
+        index.addInstalled(f1, new HashSet<Long>(Arrays.asList(1l, 2l)));
+        index.addInstalled(f2, new HashSet<Long>(Arrays.asList(2l)));
+        Assert.assertEquals(Collections.singleton(f1), index.getInstalledFeatures(1));
+        Assert.assertEquals(new HashSet<Feature>(Arrays.asList(f1, f2)), index.getInstalledFeatures(2));
+
+        index.removeInstalled(f1, new HashSet<Long>(Arrays.asList(1l, 2l)));
+        Assert.assertTrue(index.getInstalledFeatures(1).isEmpty());
+        Assert.assertEquals(Collections.singleton(f2), index.getInstalledFeatures(2));
+    }
+
+    private Feature createFeature(String name, String... locations) {
+        Feature feature = new Feature(name, "1.0.0");
+        for (String location : locations) {
+            feature.getBundle().add(new Bundle(location));
+        }
+        return feature;
+    }
+
+    private Repository createRepository(Feature... features) throws Exception {
+        Repository repository = EasyMock.createMock(Repository.class);
+        expect(repository.getFeatures()).andReturn(features).anyTimes();
+        replay(repository);
+        return repository;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import junit.framework.Assert;
+
+import org.apache.felix.utils.version.VersionRange;
+import org.apache.karaf.features.Repository;
+import org.apache.karaf.features.internal.model.Feature;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class FeatureCatalogTest {
+
+    @Test
+    public void testVersionLookups() throws Exception {
+        Feature f100 = new Feature("f", "1.0.0");
+        Feature f110 = new Feature("f", "1.1.0");
+        Feature f200 = new Feature("f", "2.0.0");
+        Feature g = new Feature("g", "1.0.0");
+        FeatureCatalog catalog = new FeatureCatalog();
+        catalog.addRepository(createRepository(f200, g, f100, f110));
+
+        FeatureCatalog.Versions versions = catalog.get("f");
+        Assert.assertSame(f110, versions.get("1.1.0"));
+        Assert.assertSame(f200, versions.getLatest());
+        Assert.assertSame(f110, versions.getLatest(new VersionRange("[1,2)", true, true)));
+        Assert.assertSame(f200, versions.getLatest(new VersionRange("[1,2]", true, true)));
+        Assert.assertSame(f100, versions.getLatest(new VersionRange("1.0.0", true, true)));
+        Assert.assertNull(versions.getLatest(new VersionRange("[3,4)", true, true)));
+        Assert.assertSame(f200, versions.getLatest(VersionRange.ANY_VERSION));
+
+        Assert.assertEquals(2, catalog.asMap().size());
+        Assert.assertEquals(3, catalog.asMap().get("f").size());
+    }
+
+    @Test
+    public void testRemoveRepository() throws Exception {
+        Feature f1 = new Feature("f", "1.0.0");
+        Feature f1bis = new Feature("f", "1.0.0");
+        Feature f2 = new Feature("f", "2.0.0");
+        Repository r1 = createRepository(f1, f2);
+        Repository r2 = createRepository(f1bis);
+        FeatureCatalog catalog = new FeatureCatalog();
+        catalog.addRepository(r1);
+        catalog.addRepository(r2);
+        Assert.assertSame(f1bis, catalog.get("f").get("1.0.0"));
+
+        // the feature provided by the remaining repository is kept
+        catalog.removeRepository(r1);
+        Assert.assertSame(f1bis, catalog.get("f").get("1.0.0"));
+        Assert.assertNull(catalog.get("f").get("2.0.0"));
+        Assert.assertSame(f1bis, catalog.get("f").getLatest());
+
+        catalog.removeRepository(r2);
+        Assert.assertNull(catalog.get("f"));
+        Assert.assertTrue(catalog.asMap().isEmpty());
+    }
+
+    @Test
+    public void testRemoveEqualFeature() throws Exception {
+        Feature f1 = new Feature("f", "1.0.0");
+        Feature f1bis = new Feature("f", "1.0.0");
+        Repository r1 = createRepository(f1);
+        Repository r2 = createRepository(f1bis);
+        FeatureCatalog catalog = new FeatureCatalog();
+        catalog.addRepository(r1);
+        catalog.addRepository(r2);
+
+        // the instance of the removed repository goes first
+        catalog.removeRepository(r2);
+        Assert.assertSame(f1, catalog.get("f").get("1.0.0"));
+
+        // an equal feature removes the entry even if it is another instance
+        catalog.removeRepository(createRepository(new Feature("f", "1.0.0")));
+        Assert.assertNull(catalog.get("f"));
+    }
+
+    private Repository createRepository(Feature... features) throws Exception {
+        Repository repository = EasyMock.createMock(Repository.class);
+        expect(repository.getFeatures()).andReturn(features).anyTimes();
+        replay(repository);
+        return repository;
+    }
+
+}
@@ -22,10 +22,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -35,10 +39,12 @@ import java.util.Set;
 
 import org.apache.felix.utils.manifest.Clause;
 import org.apache.karaf.features.Feature;
+import org.apache.karaf.features.FeaturesService.Option;
 import org.apache.karaf.features.internal.BundleManager.BundleInstallerResult;
 import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
+import org.osgi.framework.Bundle;
 
 /**
  * Test cases for {@link FeaturesServiceImpl}
@@ -163,6 +169,65 @@ public class FeaturesServiceImplTest extends TestBase {
         assertEquals("Every feature should only have been installed once", installed.size(), noduplicates.size());
     }
 
+    @Test
+    public void testRefreshRepositoryRestoresPreviousFeatures() throws Exception {
+        File repoFile = File.createTempFile("features", ".xml");
+        repoFile.deleteOnExit();
+        writeRepository(repoFile, "old", "mvn:test/old/1.0");
+        URI uri = repoFile.toURI();
+        final FeaturesServiceImpl impl = new FeaturesServiceImpl(null, null) {
+            @Override
+            protected void saveState() {
+            }
+
+            @Override
+            public void uninstallFeature(String name, String version) throws Exception {
+            }
+
+            @Override
+            public void installFeature(Feature feature, EnumSet<Option> options) throws Exception {
+                throw new Exception("Unable to install " + feature.getName());
+            }
+        };
+        impl.addRepository(uri);
+
+        writeRepository(repoFile, "new", "mvn:test/new/1.0");
+        try {
+            impl.refreshRepository(uri, true);
+            fail("The refresh should fail when the features of the new repository can't be installed");
+        } catch (Exception e) {
+            // expected
+        }
+
+        // only the features of the previous repository are available
+        assertNotNull(impl.getFeature("old", "1.0.0"));
+        assertNull(impl.getFeature("new", "1.0.0"));
+        assertNull(impl.getFeatures().get("new"));
+        assertEquals(1, impl.listRepositories().length);
+        assertEquals(1, impl.getFeaturesContainingBundle(bundle("mvn:test/old/1.0")).size());
+        assertTrue(impl.getFeaturesContainingBundle(bundle("mvn:test/new/1.0")).isEmpty());
+    }
+
+    private void writeRepository(File file, String feature, String bundle) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write("<features name=\"test\">\n"
+                    + "    <feature name=\"" + feature + "\" version=\"1.0.0\">\n"
+                    + "        <bundle>" + bundle + "</bundle>\n"
+                    + "    </feature>\n"
+                    + "</features>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Bundle bundle(String location) {
+        Bundle bundle = EasyMock.createNiceMock(Bundle.class);
+        expect(bundle.getLocation()).andReturn(location).anyTimes();
+        replay(bundle);
+        return bundle;
+    }
+
     @Test
     public void testGetOptionalImportsOnly() {
         BundleManager bundleManager = new BundleManager(null, null, 0l);
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Version;
+
+public class InstalledBundlesTest {
+
+    @Test
+    public void testIndexFollowsBundleEvents() throws Exception {
+        Bundle b1 = createBundle(1, "b1", "1.0.0", "mvn:b1");
+        Bundle b2 = createBundle(2, "b2", "2.0.0", "mvn:b2");
+
+        BundleContext bundleContext = EasyMock.createMock(BundleContext.class);
+        InstalledBundles installedBundles = new InstalledBundles(bundleContext);
+        bundleContext.addBundleListener(installedBundles);
+        expect(bundleContext.getBundles()).andReturn(new Bundle[] { b1 });
+        bundleContext.removeBundleListener(installedBundles);
+        replay(bundleContext);
+
+        installedBundles.open();
+        Assert.assertSame(b1, installedBundles.getBundle("b1", new Version("1.0.0")));
+        Assert.assertSame(b1, installedBundles.getBundle("mvn:b1"));
+        Assert.assertNull(installedBundles.getBundle("b1", new Version("1.0.1")));
+        Assert.assertNull(installedBundles.getBundle("b2", new Version("2.0.0")));
+
+        installedBundles.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, b2));
+        Assert.assertSame(b2, installedBundles.getBundle("b2", new Version("2.0.0")));
+        Assert.assertSame(b2, installedBundles.getBundle("mvn:b2"));
+
+        installedBundles.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, b1));
+        Assert.assertNull(installedBundles.getBundle("b1", new Version("1.0.0")));
+        Assert.assertNull(installedBundles.getBundle("mvn:b1"));
+
+        installedBundles.close();
+        verify(bundleContext);
+    }
+
+    private Bundle createBundle(long id, String symbolicName, String version, String location) {
+        Bundle bundle = EasyMock.createNiceMock(Bundle.class);
+        expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        expect(bundle.getSymbolicName()).andReturn(symbolicName).anyTimes();
+        expect(bundle.getVersion()).andReturn(new Version(version)).anyTimes();
+        expect(bundle.getLocation()).andReturn(location).anyTimes();
+        expect(bundle.getState()).andReturn(Bundle.INSTALLED).anyTimes();
+        replay(bundle);
+        return bundle;
+    }
+
+}
@@ -16,11 +16,14 @@
  */
 package org.apache.karaf.instance.command;
 
+import java.util.EnumSet;
+
 import org.apache.karaf.instance.command.completers.InstanceCompleter;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
 import org.apache.karaf.shell.commands.Completer;
 import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.instance.core.InstanceService;
 import org.apache.karaf.instance.core.InstanceSettings;
 import org.apache.karaf.shell.inject.Service;
 
@@ -49,6 +52,12 @@ public class CloneCommand extends InstanceCommandSupport {
     @Option(name = "-v", aliases = {"--verbose"}, description = "Display actions performed by the command (disabled by default)", required = false, multiValued = false)
     boolean verbose = false;
 
+    @Option(name = "--link", description = "Share the system repository and the archives with the source instance using hard links instead of copying them", required = false, multiValued = false)
+    boolean link = false;
+
+    @Option(name = "--no-cache", description = "Do not copy the bundle cache of the source instance, it is rebuilt when the clone is started", required = false, multiValued = false)
+    boolean noCache = false;
+
     @Argument(index = 0, name = "name", description = "The name of the source container instance", required = true, multiValued = false)
     @Completer(InstanceCompleter.class)
     String name;
@@ -59,7 +68,14 @@ public class CloneCommand extends InstanceCommandSupport {
 
     protected Object doExecute() throws Exception {
         InstanceSettings settings = new InstanceSettings(sshPort, rmiRegistryPort, rmiServerPort, location, javaOpts, null, null);
-        getInstanceService().cloneInstance(name, cloneName, settings, verbose);
+        EnumSet<InstanceService.CloneOption> options = EnumSet.noneOf(InstanceService.CloneOption.class);
+        if (link) {
+            options.add(InstanceService.CloneOption.LinkImmutableFiles);
+        }
+        if (noCache) {
+            options.add(InstanceService.CloneOption.NoCache);
+        }
+        getInstanceService().cloneInstance(name, cloneName, settings, verbose, options);
         return null;
     }
 
@@ -16,6 +16,10 @@
  */
 package org.apache.karaf.instance.command;
 
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import org.apache.karaf.instance.core.Instance;
 import org.apache.karaf.instance.core.InstanceService;
 import org.apache.karaf.shell.console.OsgiCommandSupport;
@@ -42,4 +46,24 @@ public abstract class InstanceCommandSupport extends OsgiCommandSupport {
         return i;
     }
 
+    /**
+     * Wait for the lifecycle operations on several instances to complete, printing the outcome for each instance.
+     *
+     * @throws IllegalStateException if the operation failed for any instance.
+     */
+    protected void waitFor(Map<String, Future<String>> futures) throws InterruptedException {
+        int failures = 0;
+        for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+            try {
+                System.out.println(entry.getKey() + ": " + entry.getValue().get());
+            } catch (ExecutionException e) {
+                failures++;
+                System.err.println(entry.getKey() + ": " + e.getCause().getMessage());
+            }
+        }
+        if (failures > 0) {
+            throw new IllegalStateException(failures + " instance(s) failed");
+        }
+    }
+
 }
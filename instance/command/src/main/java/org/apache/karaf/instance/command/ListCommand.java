@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.instance.command;
 
+import java.util.Map;
+
 import org.apache.karaf.instance.core.Instance;
 import org.apache.karaf.shell.commands.Command;
 import org.apache.karaf.shell.commands.Option;
@@ -38,6 +40,7 @@ public class ListCommand extends InstanceCommandSupport {
     protected Object doExecute() throws Exception {
         getInstanceService().refreshInstance();
         Instance[] instances = getInstanceService().getInstances();
+        Map<String, String> states = getInstanceService().getInstanceStates();
         ShellTable table = new ShellTable();
         table.column("SSH Port").alignRight();
         table.column("RMI Registry").alignRight();
@@ -50,7 +53,7 @@ public class ListCommand extends InstanceCommandSupport {
                     instance.getSshPort(),
                     instance.getRmiRegistryPort(),
                     instance.getRmiServerPort(),
-                    instance.getState(),
+                    getState(instance, states),
                     instance.getPid(),
                     getRightColumnValue(instance));
         }
@@ -58,6 +61,11 @@ public class ListCommand extends InstanceCommandSupport {
         return null;
     }
 
+    private String getState(Instance instance, Map<String, String> states) throws Exception {
+        String state = states.get(instance.getName());
+        return state != null ? state : instance.getState();
+    }
+
     private String getRightColumnHeader() {
         if (javaOpts) {
             return "JavaOpts";
@@ -16,6 +16,10 @@
  */
 package org.apache.karaf.instance.command;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
 import org.apache.karaf.instance.command.completers.InstanceCompleter;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
@@ -37,15 +41,22 @@ public class StartCommand extends InstanceCommandSupport {
     @Option(name = "-w", aliases = { "--wait"}, description = "Wait for the instance to be fully started", required = false, multiValued = false)
     private boolean wait;
 
-    @Argument(index = 0, name = "name", description = "The name of the container instance", required = true, multiValued = false)
+    @Option(name = "-p", aliases = { "--parallelism"}, description = "Maximum number of instances started at the same time when several instances are given", required = false, multiValued = false)
+    private int parallelism = 4;
+
+    @Argument(index = 0, name = "name", description = "The name of the container instances", required = true, multiValued = true)
     @Completer(InstanceCompleter.class)
-    private String instance = null;
+    private List<String> instances = null;
 
     static final String DEBUG_OPTS = " -Xdebug -Xnoagent -Djava.compiler=NONE -Xrunjdwp:transport=dt_socket,server=y,suspend=n,address=5005";
     static final String DEFAULT_OPTS = "-server -Xmx512M -Dcom.sun.management.jmxremote";
 
     protected Object doExecute() throws Exception {
-        Instance child = getExistingInstance(instance);
+        if (instances.size() > 1) {
+            startInstances();
+            return null;
+        }
+        Instance child = getExistingInstance(instances.get(0));
         String opts = javaOpts;
         if (opts == null) {
             opts = child.getJavaOpts();
@@ -73,4 +84,17 @@ public class StartCommand extends InstanceCommandSupport {
         return null;
     }
 
+    private void startInstances() throws Exception {
+        if (debug) {
+            throw new IllegalArgumentException("The debug mode can only be used when starting a single instance");
+        }
+        for (String name : instances) {
+            getExistingInstance(name);
+        }
+        Map<String, Future<String>> futures = getInstanceService().startInstances(instances, javaOpts, parallelism);
+        if (wait) {
+            waitFor(futures);
+        }
+    }
+
 }
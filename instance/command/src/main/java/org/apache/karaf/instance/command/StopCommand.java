@@ -16,22 +16,35 @@
  */
 package org.apache.karaf.instance.command;
 
+import java.util.List;
+
 import org.apache.karaf.instance.command.completers.InstanceCompleter;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
 import org.apache.karaf.shell.commands.Completer;
+import org.apache.karaf.shell.commands.Option;
 import org.apache.karaf.shell.inject.Service;
 
 @Command(scope = "instance", name = "stop", description = "Stop an existing container instance.")
 @Service
 public class StopCommand extends InstanceCommandSupport {
 
-    @Argument(index = 0, name = "name", description = "The name of the container instance", required = true, multiValued = false)
+    @Option(name = "-p", aliases = { "--parallelism"}, description = "Maximum number of instances stopped at the same time when several instances are given", required = false, multiValued = false)
+    private int parallelism = 4;
+
+    @Argument(index = 0, name = "name", description = "The name of the container instances", required = true, multiValued = true)
     @Completer(InstanceCompleter.class)
-    private String instance = null;
+    private List<String> instances = null;
 
     protected Object doExecute() throws Exception {
-        getExistingInstance(instance).stop();
+        if (instances.size() == 1) {
+            getExistingInstance(instances.get(0)).stop();
+            return null;
+        }
+        for (String name : instances) {
+            getExistingInstance(name);
+        }
+        waitFor(getInstanceService().stopInstances(instances, parallelism));
         return null;
     }
 
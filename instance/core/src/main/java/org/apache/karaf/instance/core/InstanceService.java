@@ -16,8 +16,24 @@
  */
 package org.apache.karaf.instance.core;
 
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
 public interface InstanceService {
 
+    enum CloneOption {
+        /**
+         * Hard link the files which are never modified (system repository, archives) instead of copying them.
+         */
+        LinkImmutableFiles,
+        /**
+         * Do not copy the bundle cache, it is rebuilt when the clone is started for the first time.
+         */
+        NoCache
+    }
+
     Instance createInstance(String name, InstanceSettings settings, boolean printOutput) throws Exception;
 
     void renameInstance(String name, String newName, boolean printOutput) throws Exception;
@@ -27,7 +43,36 @@ public interface InstanceService {
 
     Instance cloneInstance(String name, String cloneName, InstanceSettings settings, boolean printOutput) throws Exception;
 
+    Instance cloneInstance(String name, String cloneName, InstanceSettings settings, boolean printOutput, EnumSet<CloneOption> options) throws Exception;
+
     Instance[] getInstances();
 
     Instance getInstance(String name);    
+
+    /**
+     * Retrieve the state of all the instances at once, checking their processes in one pass.
+     *
+     * @return the state of each instance, by instance name.
+     */
+    Map<String, String> getInstanceStates();
+
+    /**
+     * Start several instances concurrently.
+     *
+     * @param names the names of the instances to start.
+     * @param javaOpts the java options to use, or <code>null</code> to use the options of each instance.
+     * @param parallelism the maximum number of instances being started at the same time.
+     * @return a future for each instance, which completes with the state of the instance once it is ready,
+     *         i.e. once its SSH port accepts connections and it has finished booting.
+     */
+    Map<String, Future<String>> startInstances(List<String> names, String javaOpts, int parallelism);
+
+    /**
+     * Stop several instances concurrently.
+     *
+     * @param names the names of the instances to stop.
+     * @param parallelism the maximum number of instances being stopped at the same time.
+     * @return a future for each instance, which completes once the instance is stopped.
+     */
+    Map<String, Future<String>> stopInstances(List<String> names, int parallelism);
 }
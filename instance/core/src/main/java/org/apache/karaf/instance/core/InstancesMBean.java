@@ -45,6 +45,8 @@ public interface InstancesMBean {
     void startInstance(String name, String opts) throws MBeanException;
     void startInstance(String name, String opts, boolean wait, boolean debug) throws MBeanException;
     void stopInstance(String name) throws MBeanException;
+    void startInstances(String names, String opts, boolean wait, int parallelism) throws MBeanException;
+    void stopInstances(String names, boolean wait, int parallelism) throws MBeanException;
     void renameInstance(String originalName, String newName) throws MBeanException;
     void renameInstance(String originalName, String newName, boolean verbose) throws MBeanException;
     void cloneInstance(String name, String cloneName, int sshPort, int rmiRegistryPort, int rmiServerPort, String location, String javaOpts) throws MBeanException;
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies the directory of an instance when it is cloned.
+ * <p/>
+ * When linking is enabled, the files which are never modified once installed (the jars of the system
+ * repository and the deployed archives) are hard linked instead of being copied, so that they are shared
+ * between the instances. Snapshot artifacts can be redeployed in place, they are always copied. Files which
+ * can not be linked, for instance because the clone is on another file system, are copied.
+ * The bundle cache of the instance (<code>data/cache</code>) can be left out, it is then rebuilt when the
+ * clone is started for the first time.
+ */
+class InstanceCopier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstanceCopier.class);
+
+    private final boolean link;
+    private final boolean copyCache;
+    private final Set<String> excluded;
+
+    private boolean linkSupported = true;
+    private long copiedBytes;
+    private long linkedBytes;
+
+    /**
+     * @param link whether immutable files should be hard linked.
+     * @param copyCache whether the bundle cache should be copied.
+     * @param excluded the paths, relative to the instance directory and using '/' as separator, of files not to copy.
+     */
+    InstanceCopier(boolean link, boolean copyCache, Set<String> excluded) {
+        this.link = link;
+        this.copyCache = copyCache;
+        this.excluded = excluded;
+    }
+
+    void copy(File source, File destination) throws IOException {
+        copy(source, destination, "");
+    }
+
+    long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    long getLinkedBytes() {
+        return linkedBytes;
+    }
+
+    private void copy(File source, File destination, String path) throws IOException {
+        String name = source.getName();
+        if (name.equals("cache.lock") || name.equals("lock") || name.matches("transaction_\\d+\\.log")) {
+            // ignore lock files and active txlog files
+            return;
+        }
+        if (excluded.contains(path) || (!copyCache && path.equals("data/cache"))) {
+            return;
+        }
+        if (source.isDirectory()) {
+            if (!destination.exists()) {
+                destination.mkdirs();
+            }
+            String[] children = source.list();
+            for (String child : children) {
+                if (!child.contains("instances") && !child.contains("lib")) {
+                    copy(new File(source, child), new File(destination, child), path.length() > 0 ? path + "/" + child : child);
+                }
+            }
+        } else if (link && isImmutable(path) && !isSnapshot(name) && createLink(source, destination)) {
+            linkedBytes += source.length();
+        } else {
+            copyFile(source, destination);
+            copiedBytes += source.length();
+        }
+    }
+
+    private static boolean isImmutable(String path) {
+        if (path.startsWith("system/")) {
+            return true;
+        }
+        if (path.startsWith("etc/") || path.startsWith("bin/") || path.startsWith("data/")) {
+            return false;
+        }
+        return path.endsWith(".jar") || path.endsWith(".kar");
+    }
+
+    private static boolean isSnapshot(String name) {
+        // a snapshot can be updated in the system repository of the source instance, which would also modify
+        // the file of the clone if it was linked
+        return name.contains("-SNAPSHOT");
+    }
+
+    private boolean createLink(File source, File destination) {
+        if (!linkSupported) {
+            return false;
+        }
+        try {
+            if (destination.exists()) {
+                destination.delete();
+            }
+            link(source, destination);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            LOGGER.debug("Hard links are not supported, files will be copied", e);
+            linkSupported = false;
+        } catch (IOException e) {
+            // only this file is copied, the next ones may still be linked
+            LOGGER.debug("Unable to link " + destination + " to " + source + ", the file will be copied", e);
+        }
+        return false;
+    }
+
+    void link(File source, File destination) throws IOException {
+        Files.createLink(destination.toPath(), source.toPath());
+    }
+
+    private static void copyFile(File source, File destination) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += inChannel.transferTo(position, size - position, outChannel);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+}
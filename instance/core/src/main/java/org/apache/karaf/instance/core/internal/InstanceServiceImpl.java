@@ -21,7 +21,9 @@ import org.apache.karaf.instance.core.InstanceService;
 import org.apache.karaf.instance.core.InstanceSettings;
 import org.apache.karaf.jpm.Process;
 import org.apache.karaf.jpm.impl.ProcessBuilderFactoryImpl;
+import org.apache.karaf.jpm.impl.ProcessLiveness;
 import org.apache.karaf.jpm.impl.ScriptUtils;
+import org.apache.karaf.util.FileTimestamps;
 import org.apache.karaf.util.locks.FileLockUtils;
 import org.fusesource.jansi.Ansi;
 import org.slf4j.Logger;
@@ -41,13 +43,23 @@ import java.io.PrintStream;
 import java.net.Socket;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class InstanceServiceImpl implements InstanceService {
 
@@ -71,6 +83,28 @@ public class InstanceServiceImpl implements InstanceService {
 
     private static final String DEFAULT_SHUTDOWN_COMMAND = "SHUTDOWN";
 
+    // created by the instance in its data directory once it has reached its default start level
+    private static final String BOOT_FINISHED_FILE = "boot.finished";
+
+    private static final long READY_POLL_INTERVAL = 500;
+
+    // the files of a cloned instance referencing the name, location or ports of the instance
+    private static final String[] CLONE_FILTERED_RESOURCES = {
+            "etc/custom.properties",
+            "etc/org.apache.karaf.management.cfg",
+            "etc/org.apache.karaf.shell.cfg",
+            "etc/system.properties",
+            "bin/karaf",
+            "bin/start",
+            "bin/stop",
+            "bin/karaf.bat",
+            "bin/start.bat",
+            "bin/stop.bat"
+    };
+
+    // how long the result of checking whether an instance process is running is reused
+    private static final long PROCESS_CHECK_CACHE_TIMEOUT = 1000;
+
     public static final String DEFAULT_JAVA_OPTS = "-server -Xmx512M -Dcom.sun.management.jmxremote -XX:+UnlockDiagnosticVMOptions -XX:+UnsyncloadClass";
 
     private LinkedHashMap<String, InstanceImpl> proxies = new LinkedHashMap<String, InstanceImpl>();
@@ -79,14 +113,33 @@ public class InstanceServiceImpl implements InstanceService {
 
     private long stopTimeout = 30000;
 
+    private long startTimeout = 300000;
+
+    private final ProcessLiveness processLiveness = new ProcessLiveness(PROCESS_CHECK_CACHE_TIMEOUT);
+
+    // the instances whose process is being launched, guarded by this
+    private final Set<String> starting = new HashSet<String>();
+
+    // the state last loaded from the storage file and the file timestamp and length at that time
+    private State cachedState;
+    private long cachedLastModified = -1;
+    private long cachedLength = -1;
+
     static class InstanceState {
         String name;
         String loc;
         String opts;
         int pid;
+        // the start time of the process, used to detect a reused pid
+        String pidStartTime;
         boolean root;
     }
 
+    static class Launch {
+        String location;
+        String command;
+    }
+
     static class State {
         int defaultSshPortStart = 8101;
         int defaultRmiRegistryPortStart = 1099;
@@ -102,6 +155,17 @@ public class InstanceServiceImpl implements InstanceService {
         this.storageLocation = storage;
     }
 
+    public long getStartTimeout() {
+        return startTimeout;
+    }
+
+    /**
+     * Set the time to wait for an instance started by {@link #startInstances(List, String, int)} to be ready.
+     */
+    public void setStartTimeout(long startTimeout) {
+        this.startTimeout = startTimeout;
+    }
+
     public long getStopTimeout() {
         return stopTimeout;
     }
@@ -124,6 +188,7 @@ public class InstanceServiceImpl implements InstanceService {
             instance.loc = getString(storage, "item." + i + ".loc", null);
             instance.opts = getString(storage, "item." + i + ".opts", null);
             instance.pid = getInt(storage, "item." + i + ".pid", 0);
+            instance.pidStartTime = getString(storage, "item." + i + ".pid.start", null);
             instance.root = getBool(storage, "item." + i + ".root", false);
             state.instances.put(instance.name, instance);
         }
@@ -153,6 +218,11 @@ public class InstanceServiceImpl implements InstanceService {
             storage.put("item." + i + ".root", Boolean.toString(instance.root));
             storage.put("item." + i + ".loc", instance.loc);
             storage.put("item." + i + ".pid", Integer.toString(instance.pid));
+            if (instance.pidStartTime != null) {
+                storage.put("item." + i + ".pid.start", instance.pidStartTime);
+            } else {
+                storage.remove("item." + i + ".pid.start");
+            }
             storage.put("item." + i + ".opts", instance.opts != null ? instance.opts : "");
             i++;
         }
@@ -161,6 +231,7 @@ public class InstanceServiceImpl implements InstanceService {
             storage.remove("item." + i + ".root");
             storage.remove("item." + i + ".loc");
             storage.remove("item." + i + ".pid");
+            storage.remove("item." + i + ".pid.start");
             storage.remove("item." + i + ".opts");
             i++;
         }
@@ -193,8 +264,61 @@ public class InstanceServiceImpl implements InstanceService {
         T call(State state) throws IOException;
     }
 
+    /**
+     * Execute a task modifying the instances registry.
+     * The storage file is locked exclusively, reloaded, and written back once the task has been executed.
+     */
     synchronized <T> T execute(final Task<T> callback) {
-        final File storageFile = new File(storageLocation, STORAGE_FILE);
+        final File storageFile = getStorageFile();
+        try {
+            return FileLockUtils.execute(storageFile, new FileLockUtils.CallableWithProperties<T>() {
+                public T call(org.apache.karaf.util.properties.Properties properties) throws IOException {
+                    State state = loadData(properties);
+                    T t = callback.call(state);
+                    saveData(state, properties);
+                    return t;
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            // the state is reloaded from the file written back on the next read
+            cachedState = null;
+        }
+    }
+
+    /**
+     * Execute a task only reading the instances registry.
+     * The in-memory state is used, it is only reloaded, under a shared lock, when the storage
+     * file has been modified since it was last loaded, for instance by another process.
+     * Changes made to the state by the task (such as clearing the pid of a dead instance) are
+     * not written back.
+     */
+    synchronized <T> T query(final Task<T> callback) {
+        final File storageFile = getStorageFile();
+        try {
+            State state = cachedState;
+            long lastModified = storageFile.lastModified();
+            long length = storageFile.length();
+            if (state == null || lastModified != cachedLastModified || length != cachedLength
+                    || !FileTimestamps.isSettled(lastModified)) {
+                state = FileLockUtils.executeReadOnly(storageFile, new FileLockUtils.CallableWithProperties<State>() {
+                    public State call(org.apache.karaf.util.properties.Properties properties) throws IOException {
+                        cachedLastModified = storageFile.lastModified();
+                        cachedLength = storageFile.length();
+                        return loadData(properties);
+                    }
+                });
+                cachedState = state;
+            }
+            return callback.call(state);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private File getStorageFile() {
+        File storageFile = new File(storageLocation, STORAGE_FILE);
         if (!storageFile.exists()) {
             storageFile.getParentFile().mkdirs();
             try {
@@ -203,25 +327,13 @@ public class InstanceServiceImpl implements InstanceService {
                 // Ignore
             }
         }
-        if (storageFile.exists()) {
-            if (!storageFile.isFile()) {
-                throw new IllegalStateException("Instance storage location should be a file: " + storageFile);
-            }
-            try {
-                return FileLockUtils.execute(storageFile, new FileLockUtils.CallableWithProperties<T>() {
-                    public T call(org.apache.karaf.util.properties.Properties properties) throws IOException {
-                        State state = loadData(properties);
-                        T t = callback.call(state);
-                        saveData(state, properties);
-                        return t;
-                    }
-                });
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } else {
+        if (!storageFile.exists()) {
             throw new IllegalStateException("Instance storage location does not exist: " + storageFile);
         }
+        if (!storageFile.isFile()) {
+            throw new IllegalStateException("Instance storage location should be a file: " + storageFile);
+        }
+        return storageFile;
     }
 
     public synchronized void refreshInstance() throws Exception {
@@ -377,7 +489,7 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     public Instance[] getInstances() {
-        return execute(new Task<Instance[]>() {
+        return query(new Task<Instance[]>() {
             public Instance[] call(State state) throws IOException {
                 return proxies.values().toArray(new Instance[proxies.size()]);
             }
@@ -385,7 +497,7 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     public Instance getInstance(final String name) {
-        return execute(new Task<Instance>() {
+        return query(new Task<Instance>() {
             public Instance call(State state) throws IOException {
                 return proxies.get(name);
             }
@@ -393,14 +505,16 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     public void startInstance(final String name, final String javaOpts) {
-        execute(new Task<Object>() {
-            public Object call(State state) throws IOException {
+        // the process is launched without holding the lock on the registry,
+        // so that several instances can be started at the same time
+        final Launch launch = execute(new Task<Launch>() {
+            public Launch call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
                     throw new IllegalArgumentException("Instance " + name + " not found");
                 }
                 checkPid(instance);
-                if (instance.pid != 0) {
+                if (instance.pid != 0 || starting.contains(name)) {
                     throw new IllegalStateException("Instance already started");
                 }
                 String opts = javaOpts;
@@ -442,20 +556,48 @@ public class InstanceServiceImpl implements InstanceService {
                         + " -Dkaraf.startRemoteShell=true"
                         + " -classpath \"" + classpath.toString() + "\""
                         + " org.apache.karaf.main.Main";
-                LOGGER.debug("Starting instance " + name + " with command: " + command);
-                org.apache.karaf.jpm.Process process = new ProcessBuilderFactoryImpl().newBuilder()
-                        .directory(new File(location))
-                        .command(command)
-                        .start();
-                instance.pid = process.getPid();
-                return null;
+                starting.add(name);
+                Launch launch = new Launch();
+                launch.location = location;
+                launch.command = command;
+                return launch;
             }
         });
+        try {
+            LOGGER.debug("Starting instance " + name + " with command: " + launch.command);
+            final org.apache.karaf.jpm.Process process;
+            try {
+                process = new ProcessBuilderFactoryImpl().newBuilder()
+                        .directory(new File(launch.location))
+                        .command(launch.command)
+                        .start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            final String startTime = ProcessLiveness.getStartTime(process.getPid());
+            processLiveness.invalidate(process.getPid());
+            execute(new Task<Object>() {
+                public Object call(State state) throws IOException {
+                    InstanceState instance = state.instances.get(name);
+                    if (instance != null) {
+                        instance.pid = process.getPid();
+                        instance.pidStartTime = startTime;
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            synchronized (this) {
+                starting.remove(name);
+            }
+        }
     }
 
     public void stopInstance(final String name) {
-        execute(new Task<Object>() {
-            public Object call(State state) throws IOException {
+        // the instance is stopped without holding the lock on the registry,
+        // so that several instances can be stopped at the same time
+        final InstanceState instance = execute(new Task<InstanceState>() {
+            public InstanceState call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
                     throw new IllegalArgumentException("Instance " + name + " not found");
@@ -464,16 +606,113 @@ public class InstanceServiceImpl implements InstanceService {
                 if (instance.pid == 0) {
                     throw new IllegalStateException("Instance already stopped");
                 }
-                cleanShutdown(instance);
-                if (instance.pid > 0) {
-                    Process process = new ProcessBuilderFactoryImpl().newBuilder().attach(instance.pid);
-                    process.destroy();
+                InstanceState copy = new InstanceState();
+                copy.name = instance.name;
+                copy.loc = instance.loc;
+                copy.pid = instance.pid;
+                copy.pidStartTime = instance.pidStartTime;
+                return copy;
+            }
+        });
+        cleanShutdown(instance);
+        if (instance.pid > 0) {
+            try {
+                Process process = new ProcessBuilderFactoryImpl().newBuilder().attach(instance.pid);
+                process.destroy();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                processLiveness.invalidate(instance.pid);
+            }
+        }
+        execute(new Task<Object>() {
+            public Object call(State state) throws IOException {
+                InstanceState instance = state.instances.get(name);
+                if (instance != null) {
+                    checkPid(instance);
                 }
                 return null;
             }
         });
     }
 
+    public Map<String, Future<String>> startInstances(List<String> names, final String javaOpts, int parallelism) {
+        ExecutorService executor = createLifecycleExecutor(names.size(), parallelism);
+        try {
+            Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+            for (final String name : names) {
+                futures.put(name, executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        startInstance(name, javaOpts);
+                        return waitForReady(name);
+                    }
+                }));
+            }
+            return futures;
+        } finally {
+            // the submitted tasks are still executed
+            executor.shutdown();
+        }
+    }
+
+    public Map<String, Future<String>> stopInstances(List<String> names, int parallelism) {
+        ExecutorService executor = createLifecycleExecutor(names.size(), parallelism);
+        try {
+            Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+            for (final String name : names) {
+                futures.put(name, executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        stopInstance(name);
+                        return Instance.STOPPED;
+                    }
+                }));
+            }
+            return futures;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ExecutorService createLifecycleExecutor(int size, int parallelism) {
+        return Executors.newFixedThreadPool(Math.max(1, Math.min(size, parallelism)), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                // the callers wait on the returned futures, the threads must not prevent the JVM from exiting
+                Thread thread = new Thread(r, "Karaf Instance Lifecycle-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Wait for an instance which has just been started to be ready: its SSH port accepts connections
+     * and it has reached its default start level.
+     *
+     * @return the state of the instance.
+     */
+    private String waitForReady(String name) throws Exception {
+        long timeout = System.currentTimeMillis() + getStartTimeout();
+        while (true) {
+            String state = getInstanceState(name);
+            if (Instance.STARTED.equals(state) && isBootFinished(name)) {
+                return state;
+            }
+            if (!Instance.STARTED.equals(state) && !Instance.STARTING.equals(state)) {
+                throw new IllegalStateException("Instance " + name + " failed to start, its state is " + state);
+            }
+            if (System.currentTimeMillis() > timeout) {
+                throw new IllegalStateException("Instance " + name + " is not ready after " + getStartTimeout() + " ms, its state is " + state);
+            }
+            Thread.sleep(READY_POLL_INTERVAL);
+        }
+    }
+
+    private boolean isBootFinished(String name) {
+        return new File(new File(getInstanceLocation(name), "data"), BOOT_FINISHED_FILE).isFile();
+    }
+
     public void destroyInstance(final String name) {
         execute(new Task<Object>() {
             public Object call(State state) throws IOException {
@@ -553,7 +792,11 @@ public class InstanceServiceImpl implements InstanceService {
         });
     }
 
-    public synchronized Instance cloneInstance(final String name, final String cloneName, final InstanceSettings settings, final boolean printOutput) throws Exception {
+    public Instance cloneInstance(String name, String cloneName, InstanceSettings settings, boolean printOutput) throws Exception {
+        return cloneInstance(name, cloneName, settings, printOutput, EnumSet.noneOf(CloneOption.class));
+    }
+
+    public synchronized Instance cloneInstance(final String name, final String cloneName, final InstanceSettings settings, final boolean printOutput, final EnumSet<CloneOption> options) throws Exception {
         final int instanceSshPort = getInstanceSshPort(name);
         final int instanceRmiRegistryPort = getInstanceRmiRegistryPort(name);
         final int instanceRmiServerPort = getInstanceRmiServerPort(name);
@@ -574,10 +817,13 @@ public class InstanceServiceImpl implements InstanceService {
                 if (!cloneLocation.isAbsolute()) {
                     cloneLocation = new File(storageLocation, cloneLocationPath);
                 }
-                // copy instance directory
+                // copy instance directory, except the files filtered below
                 String locationPath = instance.loc;
                 File location = new File(locationPath);
-                copy(location, cloneLocation);
+                InstanceCopier copier = new InstanceCopier(options.contains(CloneOption.LinkImmutableFiles),
+                        !options.contains(CloneOption.NoCache),
+                        new HashSet<String>(Arrays.asList(CLONE_FILTERED_RESOURCES)));
+                copier.copy(location, cloneLocation);
                 // create the properties map including the instance name, location, ssh and rmi port numbers
                 // TODO: replacing stuff anywhere is not really good, we might end up replacing unwanted stuff
                 // TODO: if no ports are overriden, shouldn't we choose new ports ?
@@ -592,16 +838,14 @@ public class InstanceServiceImpl implements InstanceService {
                     props.put(Integer.toString(instanceRmiServerPort), Integer.toString(settings.getRmiServerPort()));
 
                 // filtering clone files
-                filterResource(cloneLocation, "etc/custom.properties", props);
-                filterResource(cloneLocation, "etc/org.apache.karaf.management.cfg", props);
-                filterResource(cloneLocation, "etc/org.apache.karaf.shell.cfg", props);
-                filterResource(cloneLocation, "etc/system.properties", props);
-                filterResource(cloneLocation, "bin/karaf", props);
-                filterResource(cloneLocation, "bin/start", props);
-                filterResource(cloneLocation, "bin/stop", props);
-                filterResource(cloneLocation, "bin/karaf.bat", props);
-                filterResource(cloneLocation, "bin/start.bat", props);
-                filterResource(cloneLocation, "bin/stop.bat", props);
+                for (String resource : CLONE_FILTERED_RESOURCES) {
+                    File source = new File(location, resource);
+                    if (source.exists()) {
+                        copyAndFilterResource(new FileInputStream(source), new FileOutputStream(new File(cloneLocation, resource)), props);
+                    }
+                }
+                logInfo("Cloned instance %s to %s: %d bytes copied, %d bytes shared with hard links",
+                        printOutput, name, cloneName, copier.getCopiedBytes(), copier.getLinkedBytes());
                 // create and add the clone instance in the registry
                 String javaOpts = settings.getJavaOpts();
                 if (javaOpts == null || javaOpts.length() == 0) {
@@ -621,10 +865,20 @@ public class InstanceServiceImpl implements InstanceService {
 
     private void checkPid(InstanceState instance) throws IOException {
         if (instance.pid != 0) {
-            Process process = new ProcessBuilderFactoryImpl().newBuilder().attach(instance.pid);
-            if (!process.isRunning()) {
-                instance.pid = 0;
-            }
+            processLiveness.invalidate(instance.pid);
+            checkPidCached(instance);
+        }
+    }
+
+    /**
+     * Same as {@link #checkPid(InstanceState)}, but the process may not be checked again
+     * if it has been checked very recently. Only used for read-only queries.
+     */
+    private void checkPidCached(InstanceState instance) throws IOException {
+        if (instance.pid != 0 && !processLiveness.isRunning(instance.pid, instance.pidStartTime)) {
+            processLiveness.invalidate(instance.pid);
+            instance.pid = 0;
+            instance.pidStartTime = null;
         }
     }
 
@@ -693,7 +947,7 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     private int getKarafPort(final String name, final String path, final String key) {
-        return execute(new Task<Integer>() {
+        return query(new Task<Integer>() {
             public Integer call(State state) throws IOException {
                 return InstanceServiceImpl.this.getKarafPort(state, name, path, key);
             }
@@ -707,7 +961,7 @@ public class InstanceServiceImpl implements InstanceService {
         }
         File f = new File(instance.loc, path);
         try {
-            return FileLockUtils.execute(f, new FileLockUtils.CallableWithProperties<Integer>() {
+            return FileLockUtils.executeReadOnly(f, new FileLockUtils.CallableWithProperties<Integer>() {
                 public Integer call(org.apache.karaf.util.properties.Properties properties) throws IOException {
                     return Integer.parseInt(properties.get(key).toString());
                 }
@@ -740,7 +994,7 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     boolean isInstanceRoot(final String name) {
-        return execute(new Task<Boolean>() {
+        return query(new Task<Boolean>() {
             public Boolean call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
@@ -752,7 +1006,7 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     String getInstanceLocation(final String name) {
-        return execute(new Task<String>() {
+        return query(new Task<String>() {
             public String call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
@@ -764,20 +1018,20 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     int getInstancePid(final String name) {
-        return execute(new Task<Integer>() {
+        return query(new Task<Integer>() {
             public Integer call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
                     throw new IllegalArgumentException("Instance " + name + " not found");
                 }
-                checkPid(instance);
+                checkPidCached(instance);
                 return instance.pid;
             }
         });
     }
 
     String getInstanceJavaOpts(final String name) {
-        return execute(new Task<String>() {
+        return query(new Task<String>() {
             public String call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
@@ -802,33 +1056,57 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     String getInstanceState(final String name) {
-        return execute(new Task<String>() {
+        return query(new Task<String>() {
             public String call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
                     throw new IllegalArgumentException("Instance " + name + " not found");
                 }
-                int port = getKarafPort(state, name, "etc/org.apache.karaf.shell.cfg", "sshPort");
-                if (!new File(instance.loc).isDirectory() || port <= 0) {
-                    return Instance.ERROR;
-                }
-                checkPid(instance);
-                if (instance.pid == 0) {
-                    return Instance.STOPPED;
-                } else {
-                    try {
-                        Socket s = new Socket("localhost", port);
-                        s.close();
-                        return Instance.STARTED;
-                    } catch (Exception e) {
-                        // ignore
+                return getInstanceState(state, instance);
+            }
+        });
+    }
+
+    public Map<String, String> getInstanceStates() {
+        return query(new Task<Map<String, String>>() {
+            public Map<String, String> call(State state) throws IOException {
+                // check all the processes in one pass
+                Map<Integer, String> pids = new HashMap<Integer, String>();
+                for (InstanceState instance : state.instances.values()) {
+                    if (instance.pid != 0) {
+                        pids.put(instance.pid, instance.pidStartTime);
                     }
-                    return Instance.STARTING;
                 }
+                processLiveness.isRunning(pids);
+                Map<String, String> states = new LinkedHashMap<String, String>();
+                for (InstanceState instance : state.instances.values()) {
+                    states.put(instance.name, getInstanceState(state, instance));
+                }
+                return states;
             }
         });
     }
 
+    private String getInstanceState(State state, InstanceState instance) throws IOException {
+        int port = getKarafPort(state, instance.name, "etc/org.apache.karaf.shell.cfg", "sshPort");
+        if (!new File(instance.loc).isDirectory() || port <= 0) {
+            return Instance.ERROR;
+        }
+        checkPidCached(instance);
+        if (instance.pid == 0) {
+            return Instance.STOPPED;
+        } else {
+            try {
+                Socket s = new Socket("localhost", port);
+                s.close();
+                return Instance.STARTED;
+            } catch (Exception e) {
+                // ignore
+            }
+            return Instance.STARTING;
+        }
+    }
+
     private boolean deleteFile(File fileToDelete) {
         if (fileToDelete == null || !fileToDelete.exists()) {
             return true;
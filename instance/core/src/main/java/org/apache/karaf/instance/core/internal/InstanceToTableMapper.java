@@ -16,7 +16,9 @@
  */
 package org.apache.karaf.instance.core.internal;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.CompositeType;
@@ -35,14 +37,17 @@ public class InstanceToTableMapper {
     private InstanceToTableMapper() {
     }
 
-    private static CompositeDataSupport mapInstance(Instance instance, CompositeType comp) throws OpenDataException {
-        String state;
-        try {
-            state = instance.getState();
-        } catch (Exception e) {
-            state = "Error";
+    private static CompositeDataSupport mapInstance(Instance instance, Map<String, String> states, CompositeType comp) throws OpenDataException {
+        String name = instance.getName();
+        String state = states.get(name);
+        if (state == null) {
+            try {
+                state = instance.getState();
+            } catch (Exception e) {
+                state = "Error";
+            }
         }
-        Object[] itemValues = new Object[] {instance.getPid(), instance.getName(), instance.isRoot(),
+        Object[] itemValues = new Object[] {instance.getPid(), name, instance.isRoot(),
                                             instance.getSshPort(), instance.getRmiRegistryPort(),
                                             instance.getRmiServerPort(), state, instance.getLocation(),
                                             instance.getJavaOpts()};
@@ -66,13 +71,20 @@ public class InstanceToTableMapper {
     }
 
     public static TabularData tableFrom(List<Instance> instances) {
+        return tableFrom(instances, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @param states the already known state of the instances, by name.
+     */
+    public static TabularData tableFrom(List<Instance> instances, Map<String, String> states) {
         try {
             CompositeType rowType = createRowType();
             TabularType tableType = new TabularType("Instances", "Table of all Karaf instances", rowType,
                                                     new String[] {InstancesMBean.INSTANCE_NAME});
             TabularDataSupport table = new TabularDataSupport(tableType);
             for (Instance instance : instances) {
-                CompositeDataSupport row = mapInstance(instance, rowType);
+                CompositeDataSupport row = mapInstance(instance, states, rowType);
                 table.put(row);
             }
             return table;
@@ -19,6 +19,9 @@ package org.apache.karaf.instance.core.internal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.management.MBeanException;
 import javax.management.NotCompliantMBeanException;
@@ -161,6 +164,62 @@ public class InstancesMBeanImpl extends StandardMBean implements InstancesMBean
         }
     }
 
+    public void startInstances(String names, String opts, boolean wait, int parallelism) throws MBeanException {
+        try {
+            List<String> instances = getExistingInstances(names);
+            if ("".equals(opts)) {
+                opts = null;
+            }
+            Map<String, Future<String>> futures = instanceService.startInstances(instances, opts, parallelism);
+            if (wait) {
+                waitFor(futures);
+            }
+        } catch (MBeanException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public void stopInstances(String names, boolean wait, int parallelism) throws MBeanException {
+        try {
+            List<String> instances = getExistingInstances(names);
+            Map<String, Future<String>> futures = instanceService.stopInstances(instances, parallelism);
+            if (wait) {
+                waitFor(futures);
+            }
+        } catch (MBeanException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    private List<String> getExistingInstances(String names) {
+        List<String> instances = parseStringList(names);
+        for (String name : instances) {
+            getExistingInstance(name);
+        }
+        return instances;
+    }
+
+    private void waitFor(Map<String, Future<String>> futures) throws Exception {
+        StringBuilder failures = new StringBuilder();
+        for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                if (failures.length() > 0) {
+                    failures.append(", ");
+                }
+                failures.append(entry.getKey()).append(": ").append(e.getCause().getMessage());
+            }
+        }
+        if (failures.length() > 0) {
+            throw new MBeanException(null, failures.toString());
+        }
+    }
+
     public void renameInstance(String originalName, String newName) throws MBeanException {
         try {
             instanceService.renameInstance(originalName, newName, false);
@@ -196,7 +255,7 @@ public class InstancesMBeanImpl extends StandardMBean implements InstancesMBean
 
     public TabularData getInstances() throws MBeanException {
         List<Instance> instances = Arrays.asList(instanceService.getInstances());
-        TabularData table = InstanceToTableMapper.tableFrom(instances);
+        TabularData table = InstanceToTableMapper.tableFrom(instances, instanceService.getInstanceStates());
         return table;
     }
 
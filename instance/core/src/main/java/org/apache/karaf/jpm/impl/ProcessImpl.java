@@ -57,6 +57,9 @@ public class ProcessImpl implements Process {
             props.put("${pid}", Integer.toString(pid));
             int ret = ScriptUtils.execute("running", props);
             return ret == 0;
+        } else if (ProcessLiveness.isProcAvailable()) {
+            // a zombie process still has a /proc entry, so check its state
+            return ProcessLiveness.getStartTime(pid) != null;
         } else {
             try {
                 java.lang.Process process = new java.lang.ProcessBuilder("ps", "-p", Integer.toString(pid)).start();
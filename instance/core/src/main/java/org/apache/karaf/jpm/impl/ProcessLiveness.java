@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jpm.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks whether processes are running, for many processes at once.
+ * <p/>
+ * When the <code>/proc</code> file system is available (Linux), the processes are checked by reading
+ * <code>/proc/&lt;pid&gt;/stat</code>, without spawning any process. Callers can record the start time of
+ * a process when launching it (see {@link #getStartTime(int)}) and pass it along with the pid, so that a pid
+ * reused by another process is not reported as running. Zombie processes are not reported as running either.
+ * On other unix systems, all the processes are checked with a single <code>ps</code> invocation.
+ * <p/>
+ * The results are cached for a short time, so that several checks of the same process in a row,
+ * for instance when listing instances, only check it once. The processes which have not been checked
+ * for longer than that are forgotten.
+ */
+public class ProcessLiveness {
+
+    private static final File PROC = new File("/proc");
+
+    private final long cacheTimeout;
+    private final Map<Integer, Long> checked = new HashMap<Integer, Long>();
+    private final Map<Integer, Boolean> running = new HashMap<Integer, Boolean>();
+    private final Map<Integer, String> startTimes = new HashMap<Integer, String>();
+
+    /**
+     * @param cacheTimeout the time in milliseconds the result of a check is reused.
+     */
+    public ProcessLiveness(long cacheTimeout) {
+        this.cacheTimeout = cacheTimeout;
+    }
+
+    /**
+     * @return <code>true</code> if the process is running.
+     */
+    public boolean isRunning(int pid) throws IOException {
+        return isRunning(pid, null);
+    }
+
+    /**
+     * @param startTime the start time recorded when the process was launched, or <code>null</code> if unknown.
+     * @return <code>true</code> if the process is running and, when known, has the given start time.
+     */
+    public boolean isRunning(int pid, String startTime) throws IOException {
+        return isRunning(Collections.singletonMap(pid, startTime)).get(pid);
+    }
+
+    /**
+     * Check the given processes, the ones which have not been checked recently being checked in one pass.
+     *
+     * @return whether each process is running.
+     */
+    public Map<Integer, Boolean> isRunning(Collection<Integer> pids) throws IOException {
+        Map<Integer, String> startTimes = new LinkedHashMap<Integer, String>();
+        for (Integer pid : pids) {
+            startTimes.put(pid, null);
+        }
+        return isRunning(startTimes);
+    }
+
+    /**
+     * Check the given processes, the ones which have not been checked recently being checked in one pass.
+     *
+     * @param pids the pids to check, associated with the start time recorded when each process was
+     *             launched, or <code>null</code> if unknown.
+     * @return whether each process is running.
+     */
+    public synchronized Map<Integer, Boolean> isRunning(Map<Integer, String> pids) throws IOException {
+        long now = System.currentTimeMillis();
+        // forget the expired results, so that the pids of dead or destroyed processes are not kept
+        for (Iterator<Map.Entry<Integer, Long>> it = checked.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, Long> entry = it.next();
+            if (now - entry.getValue() >= cacheTimeout) {
+                it.remove();
+                running.remove(entry.getKey());
+                startTimes.remove(entry.getKey());
+            }
+        }
+        List<Integer> toCheck = new ArrayList<Integer>();
+        for (Integer pid : pids.keySet()) {
+            if (!checked.containsKey(pid)) {
+                toCheck.add(pid);
+            }
+        }
+        if (!toCheck.isEmpty()) {
+            Set<Integer> alive;
+            if (isProcAvailable()) {
+                alive = checkProc(toCheck);
+            } else if (ScriptUtils.isWindows()) {
+                alive = new HashSet<Integer>();
+                for (Integer pid : toCheck) {
+                    if (new ProcessImpl(pid).isRunning()) {
+                        alive.add(pid);
+                    }
+                }
+            } else {
+                alive = checkPs(toCheck);
+            }
+            for (Integer pid : toCheck) {
+                checked.put(pid, now);
+                running.put(pid, alive.contains(pid));
+            }
+        }
+        Map<Integer, Boolean> result = new LinkedHashMap<Integer, Boolean>();
+        for (Map.Entry<Integer, String> entry : pids.entrySet()) {
+            Integer pid = entry.getKey();
+            String expected = entry.getValue();
+            String actual = startTimes.get(pid);
+            // the start time is only known when /proc is available
+            boolean alive = running.get(pid) && (expected == null || actual == null || expected.equals(actual));
+            result.put(pid, alive);
+        }
+        return result;
+    }
+
+    /**
+     * Forget what is known about the given process, for instance because it has just been started,
+     * or because its state is expected to change.
+     */
+    public synchronized void invalidate(int pid) {
+        checked.remove(pid);
+        running.remove(pid);
+        startTimes.remove(pid);
+    }
+
+    static boolean isProcAvailable() {
+        return new File(PROC, "self/stat").isFile();
+    }
+
+    private Set<Integer> checkProc(List<Integer> pids) {
+        Set<Integer> alive = new HashSet<Integer>();
+        for (Integer pid : pids) {
+            String startTime = getStartTime(pid);
+            if (startTime == null) {
+                startTimes.remove(pid);
+            } else {
+                startTimes.put(pid, startTime);
+                alive.add(pid);
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Read the start time of a process from <code>/proc/&lt;pid&gt;/stat</code>.
+     *
+     * @return the start time, or <code>null</code> if the process does not exist, is a zombie,
+     *         or if <code>/proc</code> is not available.
+     */
+    public static String getStartTime(int pid) {
+        File stat = new File(PROC, pid + "/stat");
+        String line;
+        try {
+            InputStream is = new FileInputStream(stat);
+            try {
+                line = new BufferedReader(new InputStreamReader(is)).readLine();
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        // the command name is between parenthesis and may contain spaces
+        int idx = line != null ? line.lastIndexOf(')') : -1;
+        if (idx < 0) {
+            return null;
+        }
+        // the fields following the command name, starting with the state (3rd field)
+        String[] fields = line.substring(idx + 1).trim().split(" ");
+        if (fields.length < 20 || "Z".equals(fields[0]) || "X".equals(fields[0])) {
+            return null;
+        }
+        // the start time is the 22nd field
+        return fields[19];
+    }
+
+    private static Set<Integer> checkPs(List<Integer> pids) throws IOException {
+        StringBuilder list = new StringBuilder();
+        for (Integer pid : pids) {
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(pid);
+        }
+        Set<Integer> alive = new HashSet<Integer>();
+        try {
+            java.lang.Process process = new java.lang.ProcessBuilder("ps", "-o", "pid=", "-p", list.toString()).start();
+            BufferedReader r = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            try {
+                String s;
+                while ((s = r.readLine()) != null) {
+                    s = s.trim();
+                    if (s.length() > 0) {
+                        try {
+                            alive.add(Integer.valueOf(s));
+                        } catch (NumberFormatException e) {
+                            // ignore
+                        }
+                    }
+                }
+            } finally {
+                r.close();
+            }
+            process.waitFor();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        return alive;
+    }
+
+}
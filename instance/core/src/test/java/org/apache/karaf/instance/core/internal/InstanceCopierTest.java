@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class InstanceCopierTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testCopy() throws Exception {
+        File source = tempFolder.newFolder("source");
+        write(new File(source, "system/org/foo/foo.jar"), 100);
+        write(new File(source, "deploy/bar.kar"), 50);
+        write(new File(source, "etc/system.properties"), 10);
+        write(new File(source, "etc/config.properties"), 20);
+        write(new File(source, "data/cache/bundle1/bundle.jar"), 1000);
+        write(new File(source, "data/log/karaf.log"), 5);
+        write(new File(source, "lock"), 1);
+
+        File target = new File(tempFolder.getRoot(), "target");
+        InstanceCopier copier = new InstanceCopier(true, false, Collections.singleton("etc/system.properties"));
+        copier.copy(source, target);
+
+        assertEquals(100, new File(target, "system/org/foo/foo.jar").length());
+        assertEquals(50, new File(target, "deploy/bar.kar").length());
+        assertEquals(20, new File(target, "etc/config.properties").length());
+        assertEquals(5, new File(target, "data/log/karaf.log").length());
+        assertFalse(new File(target, "etc/system.properties").exists());
+        assertFalse(new File(target, "data/cache").exists());
+        assertFalse(new File(target, "lock").exists());
+        // the mutable files are always copied, the other ones are linked when the file system allows it
+        assertTrue(copier.getCopiedBytes() == 25 || copier.getCopiedBytes() == 175);
+        assertEquals(175, copier.getCopiedBytes() + copier.getLinkedBytes());
+    }
+
+    @Test
+    public void testCopyWithCache() throws Exception {
+        File source = tempFolder.newFolder("source");
+        write(new File(source, "system/org/foo/foo.jar"), 100);
+        write(new File(source, "data/cache/bundle1/bundle.jar"), 1000);
+
+        File target = new File(tempFolder.getRoot(), "target");
+        InstanceCopier copier = new InstanceCopier(false, true, Collections.<String>emptySet());
+        copier.copy(source, target);
+
+        assertEquals(1000, new File(target, "data/cache/bundle1/bundle.jar").length());
+        assertEquals(1100, copier.getCopiedBytes());
+        assertEquals(0, copier.getLinkedBytes());
+    }
+
+    @Test
+    public void testLinkFailureOnlyCopiesFile() throws Exception {
+        assumeTrue(isLinkSupported());
+        File source = tempFolder.newFolder("source");
+        write(new File(source, "system/org/foo/foo.jar"), 100);
+        write(new File(source, "system/org/foo/bar.jar"), 50);
+        write(new File(source, "system/org/foo/baz.jar"), 20);
+
+        File target = new File(tempFolder.getRoot(), "target");
+        InstanceCopier copier = new InstanceCopier(true, false, Collections.<String>emptySet()) {
+            @Override
+            void link(File source, File destination) throws IOException {
+                if (source.getName().equals("bar.jar")) {
+                    throw new IOException("link failed");
+                }
+                super.link(source, destination);
+            }
+        };
+        copier.copy(source, target);
+
+        assertTrue(isLinked(source, target, "system/org/foo/foo.jar"));
+        assertTrue(isLinked(source, target, "system/org/foo/baz.jar"));
+        assertFalse(isLinked(source, target, "system/org/foo/bar.jar"));
+        assertEquals(50, new File(target, "system/org/foo/bar.jar").length());
+        assertEquals(50, copier.getCopiedBytes());
+        assertEquals(120, copier.getLinkedBytes());
+    }
+
+    @Test
+    public void testSnapshotsAreCopied() throws Exception {
+        assumeTrue(isLinkSupported());
+        File source = tempFolder.newFolder("source");
+        write(new File(source, "system/org/foo/1.0/foo-1.0.jar"), 100);
+        write(new File(source, "system/org/foo/1.1-SNAPSHOT/foo-1.1-SNAPSHOT.jar"), 50);
+        write(new File(source, "system/org/foo/1.1-SNAPSHOT/foo-1.1-SNAPSHOT-features.xml"), 10);
+
+        File target = new File(tempFolder.getRoot(), "target");
+        InstanceCopier copier = new InstanceCopier(true, false, Collections.<String>emptySet());
+        copier.copy(source, target);
+
+        assertTrue(isLinked(source, target, "system/org/foo/1.0/foo-1.0.jar"));
+        assertFalse(isLinked(source, target, "system/org/foo/1.1-SNAPSHOT/foo-1.1-SNAPSHOT.jar"));
+        assertFalse(isLinked(source, target, "system/org/foo/1.1-SNAPSHOT/foo-1.1-SNAPSHOT-features.xml"));
+        assertEquals(60, copier.getCopiedBytes());
+        assertEquals(100, copier.getLinkedBytes());
+    }
+
+    private boolean isLinkSupported() throws IOException {
+        File file = tempFolder.newFile("link-source");
+        File link = new File(tempFolder.getRoot(), "link-target");
+        try {
+            Files.createLink(link.toPath(), file.toPath());
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            link.delete();
+            file.delete();
+        }
+    }
+
+    private boolean isLinked(File source, File target, String path) throws IOException {
+        return Files.isSameFile(new File(source, path).toPath(), new File(target, path).toPath());
+    }
+
+    private void write(File file, int size) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(new byte[size]);
+        } finally {
+            os.close();
+        }
+    }
+}
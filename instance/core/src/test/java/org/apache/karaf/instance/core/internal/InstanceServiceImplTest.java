@@ -34,6 +34,7 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.rules.TestName;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -149,6 +150,39 @@ public class InstanceServiceImplTest {
         assertNotNull(service.getInstance(getName() + "b"));
     }
 
+    /**
+     * <p>
+     * Test that reading the instances does not rewrite the storage file, and that the
+     * in-memory registry is reloaded when the storage file is changed by another process.
+     * </p>
+     */
+    @Test
+    public void testReadsDoNotRewriteStorage() throws Exception {
+        InstanceServiceImpl service = new InstanceServiceImpl();
+        File storageLocation = tempFolder.newFolder("instances");
+        service.setStorageLocation(storageLocation);
+
+        InstanceSettings settings = new InstanceSettings(8122, 1122, 44444, getName(), null, null, null);
+        service.createInstance(getName(), settings, true);
+
+        File storageFile = new File(storageLocation, InstanceServiceImpl.STORAGE_FILE);
+        long lastModified = (System.currentTimeMillis() / 1000 - 60) * 1000;
+        assertTrue(storageFile.setLastModified(lastModified));
+
+        assertEquals(1, service.getInstances().length);
+        Instance instance = service.getInstance(getName());
+        assertNotNull(instance);
+        assertEquals(0, instance.getPid());
+        assertFalse(instance.isRoot());
+        assertEquals(lastModified, storageFile.lastModified());
+
+        Properties storage = loadStorage(storageFile);
+        storage.setProperty("item.0.root", "true");
+        saveStorage(storage, storageFile, "testReadsDoNotRewriteStorage");
+
+        assertTrue(service.getInstance(getName()).isRoot());
+    }
+
     private String getName() {
         return name.getMethodName();
     }
@@ -18,7 +18,14 @@ package org.apache.karaf.instance.core.management.internal;
 
 import java.util.Arrays;
 import java.util.Collections;
-
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.management.MBeanException;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 
@@ -72,7 +79,6 @@ public class InstanceServiceMBeanImplTest extends TestCase {
         EasyMock.expect(i1.isRoot()).andReturn(true);
         EasyMock.expect(i1.getLocation()).andReturn("somewhere");
         EasyMock.expect(i1.getJavaOpts()).andReturn("someopts");
-        EasyMock.expect(i1.getState()).andReturn("Stopped");
         EasyMock.replay(i1);
         Instance i2 = EasyMock.createNiceMock(Instance.class);
         EasyMock.expect(i2.getName()).andReturn("i2");
@@ -80,6 +86,10 @@ public class InstanceServiceMBeanImplTest extends TestCase {
         
         InstanceService instanceService = EasyMock.createMock(InstanceService.class);
         EasyMock.expect(instanceService.getInstances()).andReturn(new Instance[]{i1, i2});
+        Map<String, String> states = new HashMap<String, String>();
+        states.put("i1", "Stopped");
+        states.put("i2", "Started");
+        EasyMock.expect(instanceService.getInstanceStates()).andReturn(states);
         EasyMock.replay(instanceService);
 
         InstancesMBeanImpl instanceServiceMBean = new InstancesMBeanImpl(instanceService);
@@ -236,4 +246,42 @@ public class InstanceServiceMBeanImplTest extends TestCase {
         EasyMock.verify(inst);
     }
 
+    public void testStartInstances() throws Exception {
+        Instance i1 = EasyMock.createMock(Instance.class);
+        Instance i2 = EasyMock.createMock(Instance.class);
+        EasyMock.replay(i1, i2);
+
+        Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+        futures.put("i1", completed(Instance.STARTED, null));
+        futures.put("i2", completed(null, new IllegalStateException("boom")));
+
+        InstanceService instanceService = EasyMock.createMock(InstanceService.class);
+        EasyMock.expect(instanceService.getInstance("i1")).andReturn(i1);
+        EasyMock.expect(instanceService.getInstance("i2")).andReturn(i2);
+        EasyMock.expect(instanceService.startInstances(Arrays.asList("i1", "i2"), null, 2)).andReturn(futures);
+        EasyMock.replay(instanceService);
+
+        InstancesMBean instanceServiceMBean = new InstancesMBeanImpl(instanceService);
+        try {
+            instanceServiceMBean.startInstances("i1, i2", "", true, 2);
+            fail("Expected an exception");
+        } catch (MBeanException e) {
+            assertEquals("i2: boom", e.getMessage());
+        }
+        EasyMock.verify(instanceService);
+    }
+
+    private static Future<String> completed(final String value, final Exception failure) {
+        FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+            public String call() throws Exception {
+                if (failure != null) {
+                    throw failure;
+                }
+                return value;
+            }
+        });
+        future.run();
+        return future;
+    }
+
 }
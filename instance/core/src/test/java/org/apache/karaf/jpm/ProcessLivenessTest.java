@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jpm;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.karaf.jpm.impl.ProcessLiveness;
+
+public class ProcessLivenessTest extends TestCase {
+
+    public void testIsRunning() throws Exception {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int self = Integer.parseInt(name.substring(0, name.indexOf('@')));
+        // pids are lower than 2^22 on all the systems we run on
+        int unknown = Integer.MAX_VALUE;
+
+        ProcessLiveness liveness = new ProcessLiveness(1000);
+        Map<Integer, Boolean> running = liveness.isRunning(Arrays.asList(self, unknown));
+        assertEquals(2, running.size());
+        assertTrue(running.get(self));
+        assertFalse(running.get(unknown));
+
+        assertTrue(liveness.isRunning(self));
+        liveness.invalidate(self);
+        assertTrue(liveness.isRunning(self));
+    }
+
+    public void testReusedPid() throws Exception {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int self = Integer.parseInt(name.substring(0, name.indexOf('@')));
+        String startTime = ProcessLiveness.getStartTime(self);
+        if (startTime == null) {
+            // no /proc file system
+            return;
+        }
+
+        ProcessLiveness liveness = new ProcessLiveness(1000);
+        assertTrue(liveness.isRunning(self, startTime));
+        // a process with the same pid, but started at another time, is not the one we launched
+        assertFalse(liveness.isRunning(self, startTime + "0"));
+        liveness.invalidate(self);
+        assertFalse(liveness.isRunning(self, startTime + "0"));
+        assertTrue(liveness.isRunning(self, startTime));
+    }
+
+}
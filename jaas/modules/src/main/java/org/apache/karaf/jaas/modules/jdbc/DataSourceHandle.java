@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.karaf.jaas.modules.jdbc;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * A datasource resolved once from its url and kept until it goes away. For a datasource registered as an OSGi
+ * service, the service is tracked and the handle is invalidated as soon as the service is modified or
+ * unregistered. A datasource looked up in JNDI is invalidated when a connection can't be obtained from it.
+ */
+class DataSourceHandle implements ServiceListener {
+
+    private final BundleContext bundleContext;
+    private final Object dataSource;
+    private ServiceReference reference;
+    private volatile boolean valid = true;
+
+    DataSourceHandle(BundleContext bundleContext, String url) throws Exception {
+        this.bundleContext = bundleContext;
+        if (url != null && url.startsWith(JDBCUtils.OSGI)) {
+            ServiceReference ref = JDBCUtils.getServiceReference(bundleContext, url);
+            // register the listener first so that an unregistration can't be missed
+            bundleContext.addServiceListener(this, "(" + Constants.SERVICE_ID + "=" + ref.getProperty(Constants.SERVICE_ID) + ")");
+            Object ds = bundleContext.getService(ref);
+            if (ds == null) {
+                bundleContext.removeServiceListener(this);
+                throw new Exception("Datasource service is no longer available: " + url);
+            }
+            this.reference = ref;
+            this.dataSource = ds;
+        } else {
+            this.dataSource = JDBCUtils.createDatasource(bundleContext, url);
+        }
+    }
+
+    Object getDataSource() {
+        return dataSource;
+    }
+
+    boolean isValid(BundleContext bundleContext) {
+        return valid && this.bundleContext == bundleContext;
+    }
+
+    public void serviceChanged(ServiceEvent event) {
+        if (event.getType() != ServiceEvent.REGISTERED) {
+            invalidate();
+        }
+    }
+
+    synchronized void invalidate() {
+        if (!valid) {
+            return;
+        }
+        valid = false;
+        if (reference != null) {
+            try {
+                bundleContext.removeServiceListener(this);
+                bundleContext.ungetService(reference);
+            } catch (IllegalStateException e) {
+                // the bundle context is no longer valid, the framework already released everything
+            }
+            reference = null;
+        }
+    }
+
+}
@@ -99,6 +99,7 @@ public class JDBCBackingEngine implements BackingEngine {
                 if (!connection.getAutoCommit()) {
                     connection.commit();
                 }
+                JDBCCache.invalidate(username);
                 if (logger.isDebugEnabled()) {
                     logger.debug(String.format("Executiong [%s], USERNAME=%s, PASSWORD=%s. %i rows affected.", addUserStatement, username, newPassword, rows));
                 }
@@ -147,6 +148,7 @@ public class JDBCBackingEngine implements BackingEngine {
                 if (!connection.getAutoCommit()) {
                     connection.commit();
                 }
+                JDBCCache.invalidate(username);
 
                 if (logger.isDebugEnabled()) {
                     logger.debug(String.format("Executiong [%s], USERNAME=%s. %i userRows affected.", deleteUserStatement, username, userRows));
@@ -290,6 +292,7 @@ public class JDBCBackingEngine implements BackingEngine {
                 if (!connection.getAutoCommit()) {
                     connection.commit();
                 }
+                JDBCCache.invalidate(username);
                 if (logger.isDebugEnabled()) {
                     logger.debug(String.format("Executiong [%s], USERNAME=%s, ROLE=%s. %i rows affected.", addRoleStatement, username, role, rows));
                 }
@@ -332,6 +335,7 @@ public class JDBCBackingEngine implements BackingEngine {
                 if (!connection.getAutoCommit()) {
                     connection.commit();
                 }
+                JDBCCache.invalidate(username);
                 if (logger.isDebugEnabled()) {
                     logger.debug(String.format("Executiong [%s], USERNAME=%s, ROLE=%s. %i rows affected.", deleteRoleStatement, username, role, rows));
                 }
@@ -50,7 +50,7 @@ public class JDBCBackingEngineFactory implements BackingEngineFactory {
         String selectRolesQuery = (String) options.get(JDBCLoginModule.ROLE_QUERY);
 
         try {
-            DataSource dataSource = (DataSource) JDBCUtils.createDatasource(bundleContext, datasourceURL);
+            DataSource dataSource = (DataSource) JDBCUtils.getDatasource(bundleContext, datasourceURL);
             EncryptionSupport encryptionSupport = new EncryptionSupport(options);
             instance = new JDBCBackingEngine(dataSource, encryptionSupport);
             if(addUserStatement != null) {
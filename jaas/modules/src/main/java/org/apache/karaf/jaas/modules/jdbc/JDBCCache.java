@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.karaf.jaas.modules.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.karaf.util.collections.ExpiringLruCache;
+
+/**
+ * A bounded cache of the stored password and roles of the users, keyed by user name, shared by the
+ * {@link JDBCLoginModule}s and {@link JDBCBackingEngine}s using the same datasource and queries. The password
+ * given at login is still checked, against the cached stored password.
+ */
+public class JDBCCache {
+
+    private static final ConcurrentMap<String, JDBCCache> CACHES = new ConcurrentHashMap<String, JDBCCache>();
+
+    private final ExpiringLruCache<String, Entry> entries;
+
+    /**
+     * @param ttl the time in milliseconds the entries are kept
+     * @param size the maximum number of entries, the least recently used ones are evicted first
+     */
+    public JDBCCache(long ttl, int size) {
+        this.entries = new ExpiringLruCache<String, Entry>(ttl, size);
+    }
+
+    /**
+     * Returns the cache associated with the given key, creating it if needed. The ttl and size of an existing
+     * cache are left unchanged.
+     */
+    public static JDBCCache getCache(String key, long ttl, int size) {
+        JDBCCache cache = CACHES.get(key);
+        if (cache == null) {
+            JDBCCache newCache = new JDBCCache(ttl, size);
+            cache = CACHES.putIfAbsent(key, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Removes the given user from all the caches, after it has been modified.
+     */
+    public static void invalidate(String user) {
+        for (JDBCCache cache : CACHES.values()) {
+            cache.remove(user);
+        }
+    }
+
+    /**
+     * Forgets all the caches, when the bundle is stopped.
+     */
+    public static void clearAll() {
+        CACHES.clear();
+    }
+
+    /**
+     * @return the cached entry for the given user, or {@code null} if the user is not cached or its entry expired.
+     */
+    public Entry get(String user) {
+        return entries.get(user);
+    }
+
+    public void put(String user, String password, List<String> roles) {
+        entries.put(user, new Entry(password, roles));
+    }
+
+    public void remove(String user) {
+        entries.remove(user);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static class Entry {
+
+        private final String password;
+        private final List<String> roles;
+
+        Entry(String password, List<String> roles) {
+            this.password = password;
+            this.roles = Collections.unmodifiableList(new ArrayList<String>(roles));
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+    }
+
+}
@@ -33,7 +33,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 public class JDBCLoginModule extends AbstractKarafLoginModule {
@@ -42,6 +44,9 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
 
     public static final String PASSWORD_QUERY = "query.password";
     public static final String ROLE_QUERY = "query.role";
+    public static final String PASSWORD_ROLE_QUERY = "query.password.role";
+    public static final String CACHE_TTL = "cache.ttl";
+    public static final String CACHE_SIZE = "cache.size";
     public static final String INSERT_USER_STATEMENT = "insert.user";
     public static final String INSERT_ROLE_STATEMENT = "insert.role";
     public static final String DELETE_ROLE_STATEMENT = "delete.role";
@@ -51,12 +56,22 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
     private String datasourceURL;
     protected String passwordQuery = "SELECT PASSWORD FROM USERS WHERE USERNAME=?";
     protected String roleQuery = "SELECT ROLE FROM ROLES WHERE USERNAME=?";
+    protected String passwordRoleQuery;
+    private long cacheTtl;
+    private int cacheSize = 1000;
 
     public void initialize(Subject subject, CallbackHandler callbackHandler, Map<String, ?> sharedState, Map<String, ?> options) {
         super.initialize(subject, callbackHandler, options);
         datasourceURL = (String) options.get(JDBCUtils.DATASOURCE);
         passwordQuery = (String) options.get(PASSWORD_QUERY);
         roleQuery = (String) options.get(ROLE_QUERY);
+        passwordRoleQuery = (String) options.get(PASSWORD_ROLE_QUERY);
+        if (options.get(CACHE_TTL) != null) {
+            cacheTtl = Long.parseLong((String) options.get(CACHE_TTL));
+        }
+        if (options.get(CACHE_SIZE) != null) {
+            cacheSize = Integer.parseInt((String) options.get(CACHE_SIZE));
+        }
         if (datasourceURL == null || datasourceURL.trim().length() == 0) {
             LOGGER.error("No datasource was specified ");
         } else if (!datasourceURL.startsWith(JDBCUtils.JNDI) && !datasourceURL.startsWith(JDBCUtils.OSGI)) {
@@ -65,14 +80,6 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
     }
 
     public boolean login() throws LoginException {
-        Connection connection = null;
-
-        PreparedStatement passwordStatement = null;
-        PreparedStatement roleStatement = null;
-
-        ResultSet passwordResultSet = null;
-        ResultSet roleResultSet = null;
-
         Callback[] callbacks = new Callback[2];
         callbacks[0] = new NameCallback("Username: ");
         callbacks[1] = new PasswordCallback("Password: ", false);
@@ -95,51 +102,108 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
         String password = new String(tmpPassword);
         principals = new HashSet<Principal>();
 
-        try {
-            Object credentialsDatasource = JDBCUtils.createDatasource(bundleContext, datasourceURL);
-
-            if (credentialsDatasource == null) {
-                throw new LoginException("Cannot obtain data source:" + datasourceURL);
-            } else if (credentialsDatasource instanceof DataSource) {
-                connection = ((DataSource) credentialsDatasource).getConnection();
-            } else if (credentialsDatasource instanceof XADataSource) {
-                connection = ((XADataSource) credentialsDatasource).getXAConnection().getConnection();
+        JDBCCache cache = null;
+        JDBCCache.Entry credentials = null;
+        if (cacheTtl > 0) {
+            cache = JDBCCache.getCache(datasourceURL + "|" + passwordQuery + "|" + roleQuery + "|" + passwordRoleQuery,
+                    cacheTtl, cacheSize);
+            credentials = cache.get(user);
+        }
+        if (credentials == null) {
+            credentials = loadCredentials();
+            if (credentials != null && cache != null) {
+                cache.put(user, credentials.getPassword(), credentials.getRoles());
+            }
+        }
+
+        if (credentials == null) {
+            if (!this.detailedLoginExcepion) {
+                throw new LoginException("login failed");
             } else {
-                throw new LoginException("Unknow dataSource type " + credentialsDatasource.getClass());
+                throw new LoginException("User " + user + " does not exist");
+            }
+        }
+        if (!checkPassword(password, credentials.getPassword())) {
+            if (!this.detailedLoginExcepion) {
+                throw new LoginException("login failed");
+            } else {
+                throw new LoginException("Password for " + user + " does not match");
+            }
+        }
+        principals.add(new UserPrincipal(user));
+        for (String role : credentials.getRoles()) {
+            principals.add(new RolePrincipal(role));
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the stored password and the roles of the user from the database.
+     *
+     * @return the credentials of the user, or {@code null} if the user does not exist.
+     */
+    private JDBCCache.Entry loadCredentials() throws LoginException {
+        Connection connection = null;
+
+        PreparedStatement passwordStatement = null;
+        PreparedStatement roleStatement = null;
+
+        ResultSet passwordResultSet = null;
+        ResultSet roleResultSet = null;
+
+        try {
+            Object credentialsDatasource = JDBCUtils.getDatasource(bundleContext, datasourceURL);
+
+            try {
+                if (credentialsDatasource == null) {
+                    throw new LoginException("Cannot obtain data source:" + datasourceURL);
+                } else if (credentialsDatasource instanceof DataSource) {
+                    connection = ((DataSource) credentialsDatasource).getConnection();
+                } else if (credentialsDatasource instanceof XADataSource) {
+                    connection = ((XADataSource) credentialsDatasource).getXAConnection().getConnection();
+                } else {
+                    throw new LoginException("Unknow dataSource type " + credentialsDatasource.getClass());
+                }
+            } catch (SQLException e) {
+                // the datasource may have gone away, look it up again on the next login
+                JDBCUtils.invalidateDatasource(datasourceURL);
+                throw e;
+            }
+
+            String storedPassword = null;
+            List<String> roles = new ArrayList<String>();
+            if (passwordRoleQuery != null) {
+                //Retrieve user credentials and roles from database in a single query.
+                passwordStatement = prepareStatement(connection, passwordRoleQuery);
+                passwordResultSet = passwordStatement.executeQuery();
+                while (passwordResultSet.next()) {
+                    if (storedPassword == null) {
+                        storedPassword = passwordResultSet.getString(1);
+                    }
+                    String role = passwordResultSet.getString(2);
+                    if (role != null) {
+                        roles.add(role);
+                    }
+                }
+                return storedPassword != null ? new JDBCCache.Entry(storedPassword, roles) : null;
             }
 
             //Retrieve user credentials from database.
-            passwordStatement = connection.prepareStatement(passwordQuery);
-            passwordStatement.setString(1, user);
+            passwordStatement = prepareStatement(connection, passwordQuery);
             passwordResultSet = passwordStatement.executeQuery();
 
             if (!passwordResultSet.next()) {
-            	if (!this.detailedLoginExcepion) {
-            		throw new LoginException("login failed");
-            	} else {
-            		throw new LoginException("User " + user + " does not exist");
-            	}
-            } else {
-                String storedPassword = passwordResultSet.getString(1);
-
-                if (!checkPassword(password, storedPassword)) {
-                	if (!this.detailedLoginExcepion) {
-                		throw new LoginException("login failed");
-                	} else {
-                		throw new LoginException("Password for " + user + " does not match");
-                	}
-                }
-                principals.add(new UserPrincipal(user));
+                return null;
             }
+            storedPassword = passwordResultSet.getString(1);
 
             //Retrieve user roles from database
-            roleStatement = connection.prepareStatement(roleQuery);
-            roleStatement.setString(1, user);
+            roleStatement = prepareStatement(connection, roleQuery);
             roleResultSet = roleStatement.executeQuery();
             while (roleResultSet.next()) {
-                String role = roleResultSet.getString(1);
-                principals.add(new RolePrincipal(role));
+                roles.add(roleResultSet.getString(1));
             }
+            return new JDBCCache.Entry(storedPassword, roles);
         } catch (Exception ex) {
             throw new LoginException("Error has occured while retrieving credentials from database:" + ex.getMessage());
         } finally {
@@ -163,7 +227,14 @@ public class JDBCLoginModule extends AbstractKarafLoginModule {
                 LOGGER.warn("Failed to clearly close connection to the database:", ex);
             }
         }
-        return true;
+    }
+
+    private PreparedStatement prepareStatement(Connection connection, String query) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query);
+        // the same queries are run for every login, let a statement caching pool keep them
+        statement.setPoolable(true);
+        statement.setString(1, user);
+        return statement;
     }
 
     public boolean abort() throws LoginException {
@@ -20,6 +20,8 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 
 import javax.naming.InitialContext;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class JDBCUtils {
 
@@ -27,6 +29,8 @@ public final class JDBCUtils {
     public static final String JNDI = "jndi:";
     public static final String OSGI = "bundles:";
 
+    private static final ConcurrentMap<String, DataSourceHandle> HANDLES = new ConcurrentHashMap<String, DataSourceHandle>();
+
     private JDBCUtils() {
 
     }
@@ -48,29 +52,87 @@ public final class JDBCUtils {
             InitialContext ic = new InitialContext();
             return ic.lookup(jndiName);
         } else if (url.startsWith(OSGI)) {
-            String osgiFilter = url.substring(OSGI.length());
-            String clazz = null;
-            String filter = null;
-            String[] tokens = osgiFilter.split("/", 2);
-            if (tokens != null) {
-                if (tokens.length > 0) {
-                    clazz = tokens[0];
-                }
-                if (tokens.length > 1) {
-                    filter = tokens[1];
+            ServiceReference ref = getServiceReference(bc, url);
+            Object ds = bc.getService(ref);
+            bc.ungetService(ref);
+            return ds;
+        } else {
+            throw new Exception("Illegal datasource url format");
+        }
+    }
+
+    /**
+     * Returns the datasource for the given url, resolving it only if it has not been resolved yet or if the
+     * previously resolved datasource went away.
+     *
+     * @param bc
+     * @param url
+     * @return
+     * @throws Exception
+     */
+    public static Object getDatasource(BundleContext bc, String url) throws Exception {
+        if (url == null) {
+            // reports the error
+            return createDatasource(bc, url);
+        }
+        DataSourceHandle handle = HANDLES.get(url);
+        if (handle == null || !handle.isValid(bc)) {
+            synchronized (HANDLES) {
+                handle = HANDLES.get(url);
+                if (handle == null || !handle.isValid(bc)) {
+                    if (handle != null) {
+                        handle.invalidate();
+                    }
+                    handle = new DataSourceHandle(bc, url);
+                    HANDLES.put(url, handle);
                 }
             }
-            ServiceReference[] references = bc.getServiceReferences(clazz, filter);
-            if (references != null) {
-                ServiceReference ref = references[0];
-                Object ds = bc.getService(ref);
-                bc.ungetService(ref);
-                return ds;
-            } else {
-                throw new Exception("Unable to find service reference for datasource: " + clazz + "/" + filter);
+        }
+        return handle.getDataSource();
+    }
+
+    /**
+     * Forgets the datasource resolved for the given url, typically because a connection could not be obtained
+     * from it. The next call to {@link #getDatasource(BundleContext, String)} resolves it again.
+     *
+     * @param url
+     */
+    public static void invalidateDatasource(String url) {
+        DataSourceHandle handle = HANDLES.remove(url);
+        if (handle != null) {
+            handle.invalidate();
+        }
+    }
+
+    /**
+     * Forgets all the resolved datasources and releases their services, typically when the bundle is stopped.
+     */
+    public static void invalidateAll() {
+        synchronized (HANDLES) {
+            for (String url : HANDLES.keySet()) {
+                invalidateDatasource(url);
+            }
+        }
+    }
+
+    static ServiceReference getServiceReference(BundleContext bc, String url) throws Exception {
+        String osgiFilter = url.substring(OSGI.length());
+        String clazz = null;
+        String filter = null;
+        String[] tokens = osgiFilter.split("/", 2);
+        if (tokens != null) {
+            if (tokens.length > 0) {
+                clazz = tokens[0];
+            }
+            if (tokens.length > 1) {
+                filter = tokens[1];
             }
+        }
+        ServiceReference[] references = bc.getServiceReferences(clazz, filter);
+        if (references != null) {
+            return references[0];
         } else {
-            throw new Exception("Illegal datasource url format");
+            throw new Exception("Unable to find service reference for datasource: " + clazz + "/" + filter);
         }
     }
 
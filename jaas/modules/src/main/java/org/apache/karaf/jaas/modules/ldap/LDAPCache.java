@@ -0,0 +1,174 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.karaf.jaas.modules.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.karaf.util.collections.ExpiringLruCache;
+
+/**
+ * A bounded cache of the user DN and roles looked up in LDAP, keyed by user name, shared by all the
+ * {@link LDAPLoginModule}s using the same directory settings. Only the searches done with the connection
+ * account are cached, the user password is always checked against the directory.<p/>
+ *
+ * The cache also keeps the statistics of the logins using it: the cache hits and misses and the time spent
+ * binding the users.
+ */
+public class LDAPCache {
+
+    private static final ConcurrentMap<String, LDAPCache> CACHES = new ConcurrentHashMap<String, LDAPCache>();
+
+    private final ExpiringLruCache<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong binds = new AtomicLong();
+    private final AtomicLong bindTime = new AtomicLong();
+
+    /**
+     * @param ttl the time in milliseconds the entries are kept
+     * @param size the maximum number of entries, the least recently used ones are evicted first
+     */
+    public LDAPCache(long ttl, int size) {
+        this.entries = new ExpiringLruCache<String, Entry>(ttl, size);
+    }
+
+    /**
+     * Returns the cache associated with the given directory settings, creating it if needed. The ttl and size of
+     * an existing cache are left unchanged.
+     */
+    public static LDAPCache getCache(String key, long ttl, int size) {
+        LDAPCache cache = CACHES.get(key);
+        if (cache == null) {
+            LDAPCache newCache = new LDAPCache(ttl, size);
+            cache = CACHES.putIfAbsent(key, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Forgets all the caches, when the bundle is stopped.
+     */
+    public static void clearAll() {
+        CACHES.clear();
+    }
+
+    /**
+     * @return the cached entry for the given user, or {@code null} if the user is not cached or its entry expired.
+     */
+    public Entry get(String user) {
+        Entry entry = entries.get(user);
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void put(String user, String userDN, List<String> roles) {
+        entries.put(user, new Entry(userDN, roles));
+    }
+
+    /**
+     * Removes all the entries, the statistics are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries.
+     */
+    public void purge() {
+        entries.purge();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Records a user bind that took the given time in milliseconds.
+     */
+    public void bindDone(long time) {
+        binds.incrementAndGet();
+        bindTime.addAndGet(time);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the ratio of lookups served from the cache, between 0 and 1.
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    public long getBindCount() {
+        return binds.get();
+    }
+
+    /**
+     * @return the average time in milliseconds spent binding a user.
+     */
+    public double getAverageBindTime() {
+        long count = binds.get();
+        return count > 0 ? (double) bindTime.get() / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LDAPCache[size=%d, hits=%d, misses=%d, hitRatio=%.2f, binds=%d, averageBindTime=%.1fms]",
+                size(), getHitCount(), getMissCount(), getHitRatio(), getBindCount(), getAverageBindTime());
+    }
+
+    public static class Entry {
+
+        private final String userDN;
+        private final List<String> roles;
+
+        Entry(String userDN, List<String> roles) {
+            this.userDN = userDN;
+            this.roles = Collections.unmodifiableList(new ArrayList<String>(roles));
+        }
+
+        public String getUserDN() {
+            return userDN;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+    }
+
+}
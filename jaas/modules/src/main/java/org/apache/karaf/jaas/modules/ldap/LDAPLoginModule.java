@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
 import javax.naming.directory.*;
 import javax.net.ssl.SSLSocketFactory;
 import javax.security.auth.Subject;
@@ -32,8 +33,10 @@ import javax.security.auth.callback.*;
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -67,9 +70,16 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
     public final static String SSL_KEYALIAS = "ssl.keyalias";
     public final static String SSL_TRUSTSTORE = "ssl.truststore";
     public final static String SSL_TIMEOUT = "ssl.timeout";
+    public final static String CONNECTION_POOLING = "connection.pooling";
+    public final static String CACHE_TTL = "cache.ttl";
+    public final static String CACHE_SIZE = "cache.size";
 
     public final static String DEFAULT_INITIAL_CONTEXT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
 
+    public final static int DEFAULT_CACHE_SIZE = 1000;
+
+    private final static String CONNECTION_POOL_PROPERTY = "com.sun.jndi.ldap.connect.pool";
+
     private String connectionURL;
     private String connectionUsername;
     private String connectionPassword;
@@ -90,6 +100,9 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
     private String sslKeyAlias;
     private String sslTrustStore;
     private int sslTimeout = 10;
+    private boolean connectionPooling;
+    private long cacheTtl;
+    private int cacheSize = DEFAULT_CACHE_SIZE;
 
     public void initialize(Subject subject, CallbackHandler callbackHandler, Map<String, ?> sharedState, Map<String, ?> options) {
         super.initialize(subject, callbackHandler, options);
@@ -130,6 +143,13 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
         if (options.get(SSL_TIMEOUT) != null) {
             sslTimeout = (Integer) options.get(SSL_TIMEOUT);
         }
+        connectionPooling = Boolean.parseBoolean((String) options.get(CONNECTION_POOLING));
+        if (options.get(CACHE_TTL) != null) {
+            cacheTtl = Long.parseLong((String) options.get(CACHE_TTL));
+        }
+        if (options.get(CACHE_SIZE) != null) {
+            cacheSize = Integer.parseInt((String) options.get(CACHE_SIZE));
+        }
     }
 
     public boolean login() throws LoginException {
@@ -175,49 +195,76 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
         String password = new String(tmpPassword);
         principals = new HashSet<Principal>();
 
-        // step 1: get the user DN
         Hashtable env = new Hashtable();
         logger.debug("Create the LDAP initial context.");
         env.put(Context.INITIAL_CONTEXT_FACTORY, initialContextFactory);
         env.put(Context.PROVIDER_URL, connectionURL);
+        if (ssl) {
+            setupSsl(env);
+        }
+        // the user bind uses its own, never pooled, connection
+        Hashtable userEnv = new Hashtable(env);
         if (connectionUsername != null && connectionUsername.trim().length() > 0) {
             logger.debug("Bound access requested.");
             env.put(Context.SECURITY_AUTHENTICATION, authentication);
             env.put(Context.SECURITY_PRINCIPAL, connectionUsername);
             env.put(Context.SECURITY_CREDENTIALS, connectionPassword);
         }
-        if (ssl) {
-            setupSsl(env);
+        if (connectionPooling) {
+            env.put(CONNECTION_POOL_PROPERTY, "true");
         }
-        logger.debug("Get the user DN.");
-        String userDN;
+
+        LDAPCache cache = getCache();
+        LDAPCache.Entry entry = cacheTtl > 0 ? cache.get(user) : null;
+
+        // the connection context is used for both the user and the role searches
         DirContext context = null;
         try {
-            logger.debug("Initialize the JNDI LDAP Dir Context.");
-            context = new InitialDirContext(env);
-            logger.debug("Define the subtree scope search control.");
-            SearchControls controls = new SearchControls();
-            if (userSearchSubtree) {
-                controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+            // step 1: get the user DN
+            String userDN;
+            if (entry != null) {
+                logger.debug("Get the user DN from the cache.");
+                userDN = entry.getUserDN();
             } else {
-                controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+                logger.debug("Get the user DN.");
+                try {
+                    logger.debug("Initialize the JNDI LDAP Dir Context.");
+                    context = new InitialDirContext(env);
+                    userDN = searchUserDN(context);
+                } catch (Exception e) {
+                    throw new LoginException("Can't connect to the LDAP server: " + e.getMessage());
+                }
+                if (userDN == null) {
+                    logger.warn("User " + user + " not found in LDAP.");
+                    return false;
+                }
             }
-            logger.debug("Looking for the user in LDAP with ");
-            logger.debug("  base DN: " + userBaseDN);
-            userFilter = userFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
-            userFilter = userFilter.replace("\\", "\\\\");
-            logger.debug("  filter: " + userFilter);
-            NamingEnumeration namingEnumeration = context.search(userBaseDN, userFilter, controls);
-            if (!namingEnumeration.hasMore()) {
-                logger.warn("User " + user + " not found in LDAP.");
+
+            // step 2: bind the user using the DN
+            if (!bindUser(userEnv, userDN, password, cache)) {
                 return false;
             }
-            logger.debug("Get the user DN.");
-            SearchResult result = (SearchResult) namingEnumeration.next();
-            userDN = (String) result.getName();
-            namingEnumeration.close();
-        } catch (Exception e) {
-            throw new LoginException("Can't connect to the LDAP server: " + e.getMessage());
+            principals.add(new UserPrincipal(user));
+
+            // step 3: retrieving user roles
+            List<String> roles;
+            if (entry != null) {
+                logger.debug("Get user roles from the cache.");
+                roles = entry.getRoles();
+            } else {
+                try {
+                    logger.debug("Get user roles.");
+                    roles = searchRoles(context, userDN);
+                } catch (Exception e) {
+                    throw new LoginException("Can't get user " + user + " roles: " + e.getMessage());
+                }
+                if (cacheTtl > 0) {
+                    cache.put(user, userDN, roles);
+                }
+            }
+            for (String role : roles) {
+                principals.add(new RolePrincipal(role));
+            }
         } finally {
             if (context != null) {
                 try {
@@ -226,24 +273,58 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
                     // ignore
                 }
             }
+            if (logger.isDebugEnabled()) {
+                logger.debug(cache.toString());
+            }
+        }
+        return true;
+    }
+
+    private String searchUserDN(DirContext context) throws NamingException {
+        logger.debug("Define the subtree scope search control.");
+        SearchControls controls = new SearchControls();
+        if (userSearchSubtree) {
+            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        } else {
+            controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
         }
-        // step 2: bind the user using the DN
-        context = null;
+        logger.debug("Looking for the user in LDAP with ");
+        logger.debug("  base DN: " + userBaseDN);
+        String filter = userFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
+        filter = filter.replace("\\", "\\\\");
+        logger.debug("  filter: " + filter);
+        NamingEnumeration namingEnumeration = context.search(userBaseDN, filter, controls);
+        try {
+            if (!namingEnumeration.hasMore()) {
+                return null;
+            }
+            logger.debug("Get the user DN.");
+            SearchResult result = (SearchResult) namingEnumeration.next();
+            return result.getName();
+        } finally {
+            namingEnumeration.close();
+        }
+    }
+
+    private boolean bindUser(Hashtable userEnv, String userDN, String password, LDAPCache cache) {
+        DirContext context = null;
+        long start = System.currentTimeMillis();
         try {
             // switch the credentials to the Karaf login user so that we can verify his password is correct
             logger.debug("Bind user (authentication).");
-            env.put(Context.SECURITY_AUTHENTICATION, authentication);
+            userEnv.put(Context.SECURITY_AUTHENTICATION, authentication);
             logger.debug("Set the security principal for " + userDN + "," + userBaseDN);
-            env.put(Context.SECURITY_PRINCIPAL, userDN + "," + userBaseDN);
-            env.put(Context.SECURITY_CREDENTIALS, password);
+            userEnv.put(Context.SECURITY_PRINCIPAL, userDN + "," + userBaseDN);
+            userEnv.put(Context.SECURITY_CREDENTIALS, password);
             logger.debug("Binding the user.");
-            context = new InitialDirContext(env);
+            context = new InitialDirContext(userEnv);
             logger.debug("User " + user + " successfully bound.");
-            context.close();
+            return true;
         } catch (Exception e) {
             logger.warn("User " + user + " authentication failed.", e);
             return false;
         } finally {
+            cache.bindDone(System.currentTimeMillis() - start);
             if (context != null) {
                 try {
                     context.close();
@@ -252,60 +333,51 @@ public class LDAPLoginModule extends AbstractKarafLoginModule {
                 }
             }
         }
-        principals.add(new UserPrincipal(user));
-        // step 3: retrieving user roles
-        context = null;
+    }
+
+    private List<String> searchRoles(DirContext context, String userDN) throws NamingException {
+        SearchControls controls = new SearchControls();
+        if (roleSearchSubtree) {
+            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        } else {
+            controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        }
+        if (roleNameAttribute != null) {
+            controls.setReturningAttributes(new String[]{ roleNameAttribute });
+        }
+        logger.debug("Looking for the user roles in LDAP with ");
+        logger.debug("  base DN: " + roleBaseDN);
+        String filter = roleFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
+        filter = filter.replaceAll(Pattern.quote("%dn"), Matcher.quoteReplacement(userDN));
+        filter = filter.replace("\\", "\\\\");
+        logger.debug("  filter: " + filter);
+        List<String> roles = new ArrayList<String>();
+        NamingEnumeration namingEnumeration = context.search(roleBaseDN, filter, controls);
         try {
-            logger.debug("Get user roles.");
-            // switch back to the connection credentials for the role search like we did for the user search in step 1 
-            if (connectionUsername != null && connectionUsername.trim().length() > 0) {
-                env.put(Context.SECURITY_AUTHENTICATION, authentication);
-                env.put(Context.SECURITY_PRINCIPAL, connectionUsername);
-                env.put(Context.SECURITY_CREDENTIALS, connectionPassword);
-            }
-            context = new InitialDirContext(env);
-            SearchControls controls = new SearchControls();
-            if (roleSearchSubtree) {
-                controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-            } else {
-                controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
-            }
-            if (roleNameAttribute != null) {
-                controls.setReturningAttributes(new String[]{ roleNameAttribute });
-            }
-            logger.debug("Looking for the user roles in LDAP with ");
-            logger.debug("  base DN: " + roleBaseDN);
-            roleFilter = roleFilter.replaceAll(Pattern.quote("%u"), Matcher.quoteReplacement(user));
-            roleFilter = roleFilter.replaceAll(Pattern.quote("%dn"), Matcher.quoteReplacement(userDN));
-            roleFilter = roleFilter.replace("\\", "\\\\");
-            logger.debug("  filter: " + roleFilter);
-            NamingEnumeration namingEnumeration = context.search(roleBaseDN, roleFilter, controls);
             while (namingEnumeration.hasMore()) {
-                SearchResult result = (SearchResult)namingEnumeration.next();
+                SearchResult result = (SearchResult) namingEnumeration.next();
                 Attributes attributes = result.getAttributes();
-                Attribute roles = attributes.get(roleNameAttribute);
-                if (roles != null) {
-                    for (int i = 0; i < roles.size(); i++) {
-                        String role = (String)roles.get(i);
+                Attribute attribute = attributes.get(roleNameAttribute);
+                if (attribute != null) {
+                    for (int i = 0; i < attribute.size(); i++) {
+                        String role = (String) attribute.get(i);
                         if (role != null) {
-                            principals.add(new RolePrincipal(role));
+                            roles.add(role);
                         }
                     }
                 }
-
             }
-        } catch (Exception e) {
-            throw new LoginException("Can't get user " + user + " roles: " + e.getMessage());
         } finally {
-            if (context != null) {
-                try {
-                    context.close();
-                } catch (Exception e) {
-                    // ignore
-                }
-            }
+            namingEnumeration.close();
         }
-        return true;
+        return roles;
+    }
+
+    private LDAPCache getCache() {
+        String key = connectionURL + "|" + connectionUsername + "|" + userBaseDN + "|" + userFilter + "|"
+                + userSearchSubtree + "|" + roleBaseDN + "|" + roleFilter + "|" + roleNameAttribute + "|"
+                + roleSearchSubtree + "|" + cacheTtl + "|" + cacheSize;
+        return LDAPCache.getCache(key, cacheTtl, cacheSize);
     }
 
     protected void setupSsl(Hashtable env) throws LoginException {
@@ -24,6 +24,7 @@ import org.apache.karaf.jaas.modules.encryption.EncryptionSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +37,7 @@ public class PropertiesBackingEngine implements BackingEngine {
 
     private Properties users;
     private EncryptionSupport encryptionSupport;
+    private File usersFile;
 
     /**
      * Constructor
@@ -51,6 +53,20 @@ public class PropertiesBackingEngine implements BackingEngine {
         this.encryptionSupport = encryptionSupport;
     }
 
+    /**
+     * Constructor for an engine backed by the given users file, the changes made through the engine are
+     * immediately visible to the {@link PropertiesLoginModule}s using the same file.
+     *
+     * @param usersFile
+     * @param users
+     * @param encryptionSupport
+     */
+    public PropertiesBackingEngine(File usersFile, Properties users, EncryptionSupport encryptionSupport) {
+        this.usersFile = usersFile;
+        this.users = users;
+        this.encryptionSupport = encryptionSupport;
+    }
+
     @Override
     public void addUser(String username, String password) {
         if (username.startsWith(GROUP_PREFIX))
@@ -95,6 +111,7 @@ public class PropertiesBackingEngine implements BackingEngine {
 
         try {
             users.save();
+            updateSnapshot();
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
@@ -111,6 +128,7 @@ public class PropertiesBackingEngine implements BackingEngine {
 
         try {
             users.save();
+            updateSnapshot();
         } catch (Exception ex) {
             LOGGER.error("Cannot remove users file,", ex);
         }
@@ -177,6 +195,7 @@ public class PropertiesBackingEngine implements BackingEngine {
         }
         try {
             users.save();
+            updateSnapshot();
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
@@ -207,6 +226,7 @@ public class PropertiesBackingEngine implements BackingEngine {
 
         try {
             users.save();
+            updateSnapshot();
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
@@ -270,4 +290,10 @@ public class PropertiesBackingEngine implements BackingEngine {
         deleteRole(GROUP_PREFIX + group, role);
     }
 
+    private void updateSnapshot() {
+        if (usersFile != null) {
+            UsersSnapshot.update(usersFile, users);
+        }
+    }
+
 }
@@ -48,7 +48,7 @@ public class PropertiesBackingEngineFactory implements BackingEngineFactory {
         try {
             users = new Properties(f);
             EncryptionSupport encryptionSupport = new EncryptionSupport(options);
-            engine = new PropertiesBackingEngine(users, encryptionSupport);
+            engine = new PropertiesBackingEngine(f, users, encryptionSupport);
         } catch (IOException ioe) {
             LOGGER.warn("Cannot open users file: {}", usersFile);
         } finally {
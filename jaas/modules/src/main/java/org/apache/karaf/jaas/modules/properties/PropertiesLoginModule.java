@@ -19,6 +19,7 @@ package org.apache.karaf.jaas.modules.properties;
 import java.io.File;
 import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map;
 import javax.security.auth.Subject;
@@ -31,9 +32,6 @@ import javax.security.auth.login.FailedLoginException;
 import javax.security.auth.login.LoginException;
 
 import org.apache.felix.utils.properties.Properties;
-import org.apache.karaf.jaas.boot.principal.GroupPrincipal;
-import org.apache.karaf.jaas.boot.principal.RolePrincipal;
-import org.apache.karaf.jaas.boot.principal.UserPrincipal;
 import org.apache.karaf.jaas.modules.AbstractKarafLoginModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,16 +71,22 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
             throw new LoginException("Users file not found at " + f);
         }
 
-        Properties users;
-        try {
-            users = new Properties(f);
-        } catch (IOException ioe) {
-            throw new LoginException("Unable to load user properties file " + f);
+        // the users file is only parsed again when it has changed since the last login
+        String encryption = UsersSnapshot.encryption(options);
+        UsersSnapshot users = UsersSnapshot.get(f, encryption);
+        if (users == null) {
+            try {
+                users = UsersSnapshot.load(f, encryption, new UsersSnapshot.Loader() {
+                    public void loaded(Properties users) {
+                        //encrypt all password if necessary
+                        encryptedPassword(users);
+                    }
+                });
+            } catch (IOException ioe) {
+                throw new LoginException("Unable to load user properties file " + f);
+            }
         }
 
-        //encrypt all password if necessary
-        encryptedPassword(users);
-
         Callback[] callbacks = new Callback[2];
 
         callbacks[0] = new NameCallback("Username: ");
@@ -110,26 +114,16 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
         }
         String password = new String(((PasswordCallback) callbacks[1]).getPassword());
 
-        // user infos container read from the users properties file
-        String userInfos = null;
-
-        try {
-            userInfos = (String) users.get(user);
-        } catch (NullPointerException e) {
-            //error handled in the next statement
-        }
-        if (userInfos == null) {
+        // the stored password read from the users properties file
+        String storedPassword = users.getPassword(user);
+        if (storedPassword == null) {
         	if (!this.detailedLoginExcepion) {
         		throw new FailedLoginException("login failed");
         	} else {
         		throw new FailedLoginException("User " + user + " does not exist");
         	}
         }
-        
-        // the password is in the first position
-        String[] infos = userInfos.split(",");
-        String storedPassword = infos[0];
-        
+
         // check the provided password
         if (!checkPassword(password, storedPassword)) {
         	if (!this.detailedLoginExcepion) {
@@ -139,26 +133,7 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
         	}
         }
 
-        principals = new HashSet<Principal>();
-        principals.add(new UserPrincipal(user));
-        for (int i = 1; i < infos.length; i++) {
-            if (infos[i].startsWith(PropertiesBackingEngine.GROUP_PREFIX)) {
-                // it's a group reference
-                principals.add(new GroupPrincipal(infos[i].substring(PropertiesBackingEngine.GROUP_PREFIX.length())));
-                String groupInfo = (String) users.get(infos[i]);
-                if (groupInfo != null) {
-                    String[] roles = groupInfo.split(",");
-                    for (int j = 1; j < roles.length; j++) {
-                        principals.add(new RolePrincipal(roles[j]));
-                    }
-                }
-            } else {
-                // it's an user reference
-                principals.add(new RolePrincipal(infos[i]));
-            }
-        }
-
-        users.clear();
+        principals = new HashSet<Principal>(users.getPrincipals(user));
 
         if (debug) {
             LOGGER.debug("Successfully logged in {}", user);
@@ -185,7 +160,8 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
 
     
     void encryptedPassword(Properties users) {
-        for (Object userName : users.keySet()) {
+        boolean modified = false;
+        for (Object userName : new ArrayList<Object>(users.keySet())) {
             String user = (String)userName;
             String userInfos = null;
 
@@ -220,14 +196,17 @@ public class PropertiesLoginModule extends AbstractKarafLoginModule {
                     user = user.replace("\\", "\\\\");
                 }
                 users.put(user, userInfos);
-                try {
-                    if (debug) {
-                        LOGGER.debug("Store the users properties file.");
-                    }
-                    users.save();
-                } catch (IOException ioe) {
-                    LOGGER.warn("Unable to write user properties file ", ioe);
+                modified = true;
+            }
+        }
+        if (modified) {
+            try {
+                if (debug) {
+                    LOGGER.debug("Store the users properties file.");
                 }
+                users.save();
+            } catch (IOException ioe) {
+                LOGGER.warn("Unable to write user properties file ", ioe);
             }
         }
     }
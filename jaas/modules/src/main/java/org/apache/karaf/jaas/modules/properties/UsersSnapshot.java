@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jaas.modules.properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.felix.utils.properties.Properties;
+import org.apache.karaf.jaas.boot.principal.GroupPrincipal;
+import org.apache.karaf.jaas.boot.principal.RolePrincipal;
+import org.apache.karaf.jaas.boot.principal.UserPrincipal;
+import org.apache.karaf.util.FileTimestamps;
+
+/**
+ * An immutable, parsed view of a users properties file: the stored password of each user and the principals
+ * granted to it, with the group roles already expanded.<p/>
+ *
+ * Snapshots are shared by all the login modules and backing engines using the same file and the same
+ * encryption settings, as the stored passwords depend on the encryption pass run when the file is loaded.
+ * A snapshot stays valid as long as the timestamp and length of the file do not change, so a login only costs
+ * a file stat instead of a full parse of the file.
+ */
+final class UsersSnapshot {
+
+    private static final ConcurrentMap<String, UsersSnapshot> SNAPSHOTS = new ConcurrentHashMap<String, UsersSnapshot>();
+
+    private final long lastModified;
+    private final long length;
+    private final boolean settled;
+    private final Map<String, String> passwords;
+    private final Map<String, Set<Principal>> principals;
+
+    private UsersSnapshot(Properties users, long lastModified, long length, boolean settled) {
+        this.lastModified = lastModified;
+        this.length = length;
+        this.settled = settled;
+
+        Map<String, String> passwords = new HashMap<String, String>();
+        Map<String, Set<Principal>> principals = new HashMap<String, Set<Principal>>();
+        for (Object key : users.keySet()) {
+            String name = (String) key;
+            if (name.startsWith(PropertiesBackingEngine.GROUP_PREFIX)) {
+                continue;
+            }
+            String userInfos = (String) users.get(name);
+            if (userInfos == null) {
+                continue;
+            }
+            // the password is in the first position
+            String[] infos = userInfos.split(",");
+            passwords.put(name, infos[0]);
+
+            Set<Principal> userPrincipals = new HashSet<Principal>();
+            userPrincipals.add(new UserPrincipal(name));
+            for (int i = 1; i < infos.length; i++) {
+                if (infos[i].startsWith(PropertiesBackingEngine.GROUP_PREFIX)) {
+                    // it's a group reference
+                    userPrincipals.add(new GroupPrincipal(infos[i].substring(PropertiesBackingEngine.GROUP_PREFIX.length())));
+                    String groupInfo = (String) users.get(infos[i]);
+                    if (groupInfo != null) {
+                        String[] roles = groupInfo.split(",");
+                        for (int j = 1; j < roles.length; j++) {
+                            userPrincipals.add(new RolePrincipal(roles[j]));
+                        }
+                    }
+                } else {
+                    // it's an user reference
+                    userPrincipals.add(new RolePrincipal(infos[i]));
+                }
+            }
+            principals.put(name, Collections.unmodifiableSet(userPrincipals));
+        }
+        this.passwords = passwords;
+        this.principals = principals;
+    }
+
+    /**
+     * @return the stored (possibly encrypted) password of the given user, or {@code null} if the user does not exist.
+     */
+    String getPassword(String user) {
+        return passwords.get(user);
+    }
+
+    /**
+     * @return the user, group and role principals of the given user, or {@code null} if the user does not exist.
+     */
+    Set<Principal> getPrincipals(String user) {
+        return principals.get(user);
+    }
+
+    private boolean isCurrent(File file) {
+        // a snapshot read while the file was still being modified is never reused, as a later write in the same
+        // timestamp granularity would go unnoticed
+        return settled && file.lastModified() == lastModified && file.length() == length;
+    }
+
+    /**
+     * Returns the current snapshot of the given file for the given encryption settings, or {@code null} if the
+     * file changed since the last snapshot was taken and needs to be {@link #load(File, String, Loader) loaded}
+     * again.
+     */
+    static UsersSnapshot get(File file, String encryption) {
+        UsersSnapshot snapshot = SNAPSHOTS.get(key(file, encryption));
+        return snapshot != null && snapshot.isCurrent(file) ? snapshot : null;
+    }
+
+    /**
+     * Loads the given file and publishes a new snapshot of it. The loader can modify and save the properties
+     * before the snapshot is taken, the file timestamp is recorded before loading so that any concurrent
+     * modification causes the file to be loaded again on the next access.
+     */
+    static UsersSnapshot load(File file, String encryption, Loader loader) throws IOException {
+        long modified = file.lastModified();
+        long length = file.length();
+        boolean settled = FileTimestamps.isSettled(modified);
+        Properties users = new Properties(file);
+        loader.loaded(users);
+        UsersSnapshot snapshot = new UsersSnapshot(users, modified, length, settled);
+        SNAPSHOTS.put(key(file, encryption), snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Publishes a snapshot of properties that have just been saved to the given file, so that the next logins
+     * see the change. Like a snapshot loaded from a recently modified file, it is not reused once the file
+     * could have been modified again within the same timestamp: another writer may have saved the file
+     * right after this one.<p/>
+     *
+     * The saved properties are only published for the login modules without encryption: the snapshots of the
+     * other settings are dropped, so that their encryption pass runs on the next login.
+     */
+    static void update(File file, Properties users) {
+        long modified = file.lastModified();
+        boolean settled = FileTimestamps.isSettled(modified);
+        String prefix = key(file, "");
+        for (String key : SNAPSHOTS.keySet()) {
+            if (key.startsWith(prefix)) {
+                SNAPSHOTS.remove(key);
+            }
+        }
+        SNAPSHOTS.put(prefix, new UsersSnapshot(users, modified, file.length(), settled));
+    }
+
+    /**
+     * @return the encryption settings found in the given login module options, or an empty string if the
+     * passwords are not encrypted.
+     */
+    static String encryption(Map<String, ?> options) {
+        if (!Boolean.parseBoolean(String.valueOf(options.get("encryption.enabled")))) {
+            return "";
+        }
+        Map<String, Object> settings = new TreeMap<String, Object>();
+        for (Map.Entry<String, ?> entry : options.entrySet()) {
+            if (entry.getKey().startsWith("encryption.")) {
+                settings.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return settings.toString();
+    }
+
+    private static String key(File file, String encryption) {
+        return file.getAbsolutePath() + "\0" + encryption;
+    }
+
+    /**
+     * Callback invoked with the freshly loaded properties, before the snapshot is built.
+     */
+    interface Loader {
+        void loaded(Properties users);
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jaas.modules.jdbc;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class JDBCCacheTest {
+
+    @Test
+    public void testInvalidate() {
+        JDBCCache cache = JDBCCache.getCache("bundles:javax.sql.DataSource/(name=test)", 60000, 10);
+        cache.put("karaf", "secret", Arrays.asList("admin", "manager"));
+
+        JDBCCache.Entry entry = cache.get("karaf");
+        Assert.assertNotNull(entry);
+        Assert.assertEquals("secret", entry.getPassword());
+        Assert.assertEquals(Arrays.asList("admin", "manager"), entry.getRoles());
+
+        JDBCCache.invalidate("karaf");
+        Assert.assertNull(cache.get("karaf"));
+    }
+
+    @Test
+    public void testClearAll() {
+        JDBCCache cache = JDBCCache.getCache("bundles:javax.sql.DataSource/(name=test)", 60000, 10);
+        JDBCCache.clearAll();
+        Assert.assertNotSame(cache, JDBCCache.getCache("bundles:javax.sql.DataSource/(name=test)", 60000, 10));
+    }
+
+}
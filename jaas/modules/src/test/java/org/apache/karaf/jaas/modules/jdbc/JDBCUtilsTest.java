@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jaas.modules.jdbc;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+public class JDBCUtilsTest {
+
+    private static final String URL = "bundles:javax.sql.DataSource/(name=test)";
+
+    @Test
+    public void testInvalidateAll() throws Exception {
+        Object ds1 = new Object();
+        Object ds2 = new Object();
+        ServiceReference reference = createMock(ServiceReference.class);
+        expect(reference.getProperty(Constants.SERVICE_ID)).andReturn(1L).anyTimes();
+        BundleContext bc = createMock(BundleContext.class);
+        expect(bc.getServiceReferences("javax.sql.DataSource", "(name=test)"))
+                .andReturn(new ServiceReference[] { reference }).times(2);
+        bc.addServiceListener((ServiceListener) anyObject(), (String) anyObject());
+        expectLastCall().times(2);
+        expect(bc.getService(reference)).andReturn(ds1);
+        expect(bc.getService(reference)).andReturn(ds2);
+        // the service is released each time all the datasources are invalidated
+        bc.removeServiceListener((ServiceListener) anyObject());
+        expectLastCall().times(2);
+        expect(bc.ungetService(reference)).andReturn(true).times(2);
+        replay(reference, bc);
+
+        Assert.assertSame(ds1, JDBCUtils.getDatasource(bc, URL));
+        Assert.assertSame(ds1, JDBCUtils.getDatasource(bc, URL));
+        JDBCUtils.invalidateAll();
+        Assert.assertSame(ds2, JDBCUtils.getDatasource(bc, URL));
+        JDBCUtils.invalidateAll();
+        verify(bc);
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jaas.modules.ldap;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class LDAPCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        LDAPCache cache = new LDAPCache(60000, 10);
+        Assert.assertNull(cache.get("karaf"));
+        cache.put("karaf", "uid=karaf", Arrays.asList("admin", "manager"));
+
+        LDAPCache.Entry entry = cache.get("karaf");
+        Assert.assertNotNull(entry);
+        Assert.assertEquals("uid=karaf", entry.getUserDN());
+        Assert.assertEquals(Arrays.asList("admin", "manager"), entry.getRoles());
+
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testBindTime() {
+        LDAPCache cache = new LDAPCache(60000, 10);
+        cache.bindDone(10);
+        cache.bindDone(20);
+        Assert.assertEquals(2, cache.getBindCount());
+        Assert.assertEquals(15.0, cache.getAverageBindTime(), 0.001);
+    }
+
+    @Test
+    public void testSharedCache() {
+        Assert.assertSame(LDAPCache.getCache("ldap://a", 1000, 10), LDAPCache.getCache("ldap://a", 1000, 10));
+        Assert.assertNotSame(LDAPCache.getCache("ldap://a", 1000, 10), LDAPCache.getCache("ldap://b", 1000, 10));
+
+        LDAPCache cache = LDAPCache.getCache("ldap://a", 1000, 10);
+        LDAPCache.clearAll();
+        Assert.assertNotSame(cache, LDAPCache.getCache("ldap://a", 1000, 10));
+    }
+
+}
@@ -192,6 +192,49 @@ public class PropertiesLoginModuleTest {
         }
     }
 
+    @Test
+    public void testLoginSeesUsersFileChanges() throws Exception {
+        File f = File.createTempFile(getClass().getName(), ".tmp");
+        try {
+            Properties p = new Properties(f);
+            PropertiesBackingEngine pbe = new PropertiesBackingEngine(f, p, null);
+            pbe.addUser("abc", "xyz");
+            pbe.addRole("abc", "myrole");
+            // make sure the users file is old enough to be cached
+            Assert.assertTrue(f.setLastModified(System.currentTimeMillis() - 10000));
+
+            Map<String, String> options = new HashMap<String, String>();
+            options.put(PropertiesLoginModule.USER_FILE, f.getAbsolutePath());
+            Assert.assertTrue(login(options, "abc", "xyz"));
+
+            // changes made through the backing engine are visible immediately
+            pbe.addUser("abc", "pqr");
+            Assert.assertTrue(login(options, "abc", "pqr"));
+            Assert.assertFalse(login(options, "abc", "xyz"));
+
+            // so are changes made to the file directly
+            Properties p2 = new Properties(f);
+            p2.put("abc", "changed,myrole");
+            p2.save();
+            Assert.assertTrue(login(options, "abc", "changed"));
+            Assert.assertFalse(login(options, "abc", "pqr"));
+        } finally {
+            if (!f.delete()) {
+                Assert.fail("Could not delete temporary file: " + f);
+            }
+        }
+    }
+
+    private boolean login(Map<String, String> options, String name, String password) throws LoginException {
+        PropertiesLoginModule module = new PropertiesLoginModule();
+        module.initialize(new Subject(), new NamePasswordHandler(name, password), null, options);
+        try {
+            return module.login();
+        } catch (FailedLoginException e) {
+            return false;
+        }
+    }
+
     // This is a fairly important test that ensures that you cannot log in under the name of a
     // group directly.
     @Test
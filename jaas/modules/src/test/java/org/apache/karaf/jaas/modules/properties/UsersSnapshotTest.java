@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jaas.modules.properties;
+
+import junit.framework.TestCase;
+import org.apache.felix.utils.properties.Properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class UsersSnapshotTest extends TestCase {
+
+    public void testFreshlyWrittenSnapshotIsNotReused() throws IOException {
+        File f = File.createTempFile(getClass().getName(), ".tmp");
+        try {
+            Properties p = new Properties(f);
+            p.put("a", "aa,role1");
+            p.save();
+
+            // another writer could still modify the file without changing its timestamp
+            UsersSnapshot.update(f, p);
+            assertNull(UsersSnapshot.get(f, ""));
+
+            // once the file has settled, the snapshot is reused
+            assertTrue(f.setLastModified(System.currentTimeMillis() - 60000));
+            UsersSnapshot snapshot = UsersSnapshot.load(f, "", new UsersSnapshot.Loader() {
+                public void loaded(Properties users) {
+                }
+            });
+            assertSame(snapshot, UsersSnapshot.get(f, ""));
+            assertEquals("aa", snapshot.getPassword("a"));
+        } finally {
+            if (!f.delete()) {
+                fail("Could not delete temporary file: " + f);
+            }
+        }
+    }
+
+    public void testSnapshotsAreKeyedByEncryption() throws IOException {
+        File f = File.createTempFile(getClass().getName(), ".tmp");
+        try {
+            Properties p = new Properties(f);
+            p.put("a", "aa,role1");
+            p.save();
+            assertTrue(f.setLastModified(System.currentTimeMillis() - 60000));
+
+            Map<String, String> options = new HashMap<String, String>();
+            assertEquals("", UsersSnapshot.encryption(options));
+            options.put("encryption.enabled", "false");
+            options.put("encryption.algorithm", "MD5");
+            assertEquals("", UsersSnapshot.encryption(options));
+            options.put("encryption.enabled", "true");
+            String encryption = UsersSnapshot.encryption(options);
+            assertFalse("".equals(encryption));
+            options.put("encryption.algorithm", "SHA-256");
+            assertFalse(encryption.equals(UsersSnapshot.encryption(options)));
+
+            // a snapshot loaded without encryption is not used by a module encrypting the passwords
+            UsersSnapshot plain = UsersSnapshot.load(f, "", new UsersSnapshot.Loader() {
+                public void loaded(Properties users) {
+                }
+            });
+            assertNull(UsersSnapshot.get(f, encryption));
+            UsersSnapshot encrypted = UsersSnapshot.load(f, encryption, new UsersSnapshot.Loader() {
+                public void loaded(Properties users) {
+                    users.put("a", "{CRYPT}aa{CRYPT},role1");
+                }
+            });
+            assertSame(plain, UsersSnapshot.get(f, ""));
+            assertSame(encrypted, UsersSnapshot.get(f, encryption));
+            assertEquals("aa", plain.getPassword("a"));
+            assertEquals("{CRYPT}aa{CRYPT}", encrypted.getPassword("a"));
+
+            // saved properties are only published for the modules without encryption
+            p.put("b", "bb,role1");
+            p.save();
+            assertTrue(f.setLastModified(System.currentTimeMillis() - 60000));
+            UsersSnapshot.update(f, p);
+            assertNull(UsersSnapshot.get(f, encryption));
+            assertEquals("bb", UsersSnapshot.get(f, "").getPassword("b"));
+        } finally {
+            if (!f.delete()) {
+                fail("Could not delete temporary file: " + f);
+            }
+        }
+    }
+
+}
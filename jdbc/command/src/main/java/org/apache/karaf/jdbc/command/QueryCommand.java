@@ -20,12 +20,8 @@ import org.apache.karaf.jdbc.command.completers.DataSourcesNameCompleter;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
 import org.apache.karaf.shell.commands.Completer;
+import org.apache.karaf.shell.commands.Option;
 import org.apache.karaf.shell.inject.Service;
-import org.apache.karaf.shell.table.Row;
-import org.apache.karaf.shell.table.ShellTable;
-
-import java.util.List;
-import java.util.Map;
 
 @Command(scope = "jdbc", name = "query", description = "Execute a SQL query on a JDBC datasource")
 @Service
@@ -38,25 +34,22 @@ public class QueryCommand extends JdbcCommandSupport {
     @Argument(index = 1, name = "query", description = "The SQL query to execute", required = true, multiValued = false)
     String query;
 
-    public Object doExecute() throws Exception {
-        ShellTable table = new ShellTable();
+    @Option(name = "-o", aliases = { "--offset" }, description = "The number of rows to skip", required = false, multiValued = false)
+    int offset = 0;
 
-        Map<String, List<String>> map = this.getJdbcService().query(datasource, query);
-        int rowCount = 0;
-        for (String column : map.keySet()) {
-            table.column(column);
-            rowCount = map.get(column).size();
-        }
+    @Option(name = "-l", aliases = { "--limit" }, description = "The maximum number of rows to display (0 for no limit)", required = false, multiValued = false)
+    int limit = 0;
 
-        for (int i = 0; i < rowCount; i++) {
-            Row row = table.addRow();
-            for (String column : map.keySet()) {
-                row.addContent(map.get(column).get(i));
-            }
-        }
-
-        table.print(System.out);
+    @Option(name = "-f", aliases = { "--fetch-size" }, description = "The number of rows fetched from the database at once, and printed in a table page", required = false, multiValued = false)
+    int fetchSize = 100;
 
+    public Object doExecute() throws Exception {
+        ShellTableRowHandler handler = new ShellTableRowHandler(System.out, fetchSize > 0 ? fetchSize : 100);
+        try {
+            this.getJdbcService().query(datasource, query, offset, limit, fetchSize, false, handler);
+        } finally {
+            handler.close();
+        }
         return null;
     }
 
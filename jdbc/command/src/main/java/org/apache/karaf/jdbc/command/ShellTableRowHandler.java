@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.command;
+
+import java.io.PrintStream;
+
+import org.apache.karaf.jdbc.RowHandler;
+import org.apache.karaf.shell.table.Col;
+import org.apache.karaf.shell.table.Row;
+import org.apache.karaf.shell.table.ShellTable;
+
+/**
+ * Prints the rows of a JDBC result as they are read, one {@link ShellTable} page at a time, so that large
+ * results are not kept in memory. The columns are shared by the pages, the headers are only printed once.
+ * The column widths are fixed by the first page so that the next ones stay aligned with the headers, longer
+ * values are truncated.
+ */
+public class ShellTableRowHandler implements RowHandler {
+
+    private final PrintStream out;
+    private final int pageSize;
+    private Col[] cols;
+    private ShellTable table;
+    private int rows;
+
+    public ShellTableRowHandler(PrintStream out, int pageSize) {
+        this.out = out;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void columns(String[] labels, Class<?>[] types) {
+        cols = new Col[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            cols[i] = new Col(labels[i]);
+            if (Number.class.isAssignableFrom(types[i])) {
+                cols[i].alignRight();
+            }
+        }
+        table = newTable(true);
+    }
+
+    @Override
+    public boolean row(Object[] values) {
+        Row row = table.addRow();
+        row.addContent(values);
+        if (++rows % pageSize == 0) {
+            table.print(out);
+            out.flush();
+            if (rows == pageSize) {
+                for (Col col : cols) {
+                    col.maxSize(col.getSize());
+                }
+            }
+            table = newTable(false);
+        }
+        return true;
+    }
+
+    /**
+     * Print the rows of the last page, or the headers if there was no row at all.
+     */
+    public void close() {
+        if (table != null && (rows == 0 || rows % pageSize != 0)) {
+            table.print(out);
+        }
+        out.flush();
+    }
+
+    private ShellTable newTable(boolean headers) {
+        ShellTable table = new ShellTable();
+        if (!headers) {
+            table.noHeaders();
+        }
+        for (Col col : cols) {
+            table.column(col);
+        }
+        return table;
+    }
+
+}
@@ -21,11 +21,6 @@ import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
 import org.apache.karaf.shell.commands.Completer;
 import org.apache.karaf.shell.inject.Service;
-import org.apache.karaf.shell.table.Row;
-import org.apache.karaf.shell.table.ShellTable;
-
-import java.util.List;
-import java.util.Map;
 
 @Command(scope = "jdbc", name = "tables", description = "List the tables on a given JDBC datasource")
 @Service
@@ -36,24 +31,12 @@ public class TablesCommand extends JdbcCommandSupport {
     String datasource;
 
     public Object doExecute() throws Exception {
-        ShellTable table = new ShellTable();
-
-        Map<String, List<String>> map = this.getJdbcService().tables(datasource);
-        int rowCount = 0;
-        for (String column : map.keySet()) {
-            table.column(column);
-            rowCount = map.get(column).size();
-        }
-
-        for (int i = 0; i < rowCount; i++) {
-            Row row = table.addRow();
-            for (String column : map.keySet()) {
-                row.addContent(map.get(column).get(i));
-            }
+        ShellTableRowHandler handler = new ShellTableRowHandler(System.out, 100);
+        try {
+            this.getJdbcService().tables(datasource, false, handler);
+        } finally {
+            handler.close();
         }
-
-        table.print(System.out);
-
         return null;
     }
 
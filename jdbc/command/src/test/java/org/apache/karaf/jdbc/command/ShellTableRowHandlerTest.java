@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.command;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ShellTableRowHandlerTest {
+
+    @Test
+    public void testPagesKeepTheHeaderWidths() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(baos);
+        ShellTableRowHandler handler = new ShellTableRowHandler(out, 2);
+        handler.columns(new String[] { "ID", "NAME" }, new Class<?>[] { Integer.class, String.class });
+        handler.row(new Object[] { 1, "a" });
+        handler.row(new Object[] { 2, "bb" });
+        handler.row(new Object[] { 300, "a much longer name" });
+        handler.row(new Object[] { 4, null });
+        handler.row(new Object[] { 5, "e" });
+        handler.close();
+
+        String[] lines = baos.toString().split("\r?\n");
+        Assert.assertEquals(7, lines.length);
+        Assert.assertEquals("ID | NAME", lines[0]);
+        Assert.assertEquals(" 1 | a   ", lines[2]);
+        Assert.assertEquals(" 2 | bb  ", lines[3]);
+        // the following pages are not wider than the first one
+        Assert.assertEquals("30 | a mu", lines[4]);
+        Assert.assertEquals(" 4 |     ", lines[5]);
+        Assert.assertEquals(" 5 | e   ", lines[6]);
+    }
+
+    @Test
+    public void testEmptyResult() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ShellTableRowHandler handler = new ShellTableRowHandler(new PrintStream(baos), 2);
+        handler.columns(new String[] { "ID" }, new Class<?>[] { Integer.class });
+        handler.close();
+
+        Assert.assertEquals("ID", baos.toString().split("\r?\n")[0]);
+    }
+
+}
@@ -93,4 +93,19 @@ public interface JdbcMBean {
      */
     TabularData query(String datasource, String query) throws MBeanException;
 
+    /**
+     * Execute a SQL query on a JDBC datasource, returning one page of the result.
+     *
+     * The offset of the next page is the given offset plus the number of rows returned, and the last page
+     * contains less than limit rows.
+     *
+     * @param datasource the JDBC datasource name.
+     * @param query the SQL query to execute.
+     * @param offset the number of rows to skip.
+     * @param limit the maximum number of rows to return.
+     * @return a tabular data with the rows of the page, using typed columns when possible.
+     * @throws MBeanException
+     */
+    TabularData query(String datasource, String query, int offset, int limit) throws MBeanException;
+
 }
@@ -68,6 +68,25 @@ public interface JdbcService {
      */
     Map<String, List<String>> query(String datasource, String query) throws Exception;
 
+    /**
+     * Execute a SQL query on a given JDBC datasource, passing the rows to a handler as they are read
+     * instead of loading the whole result in memory.
+     *
+     * The result can be read page by page: the offset of the next page is the given offset plus the
+     * number of rows returned, and the last page contains less than limit rows.
+     *
+     * @param datasource the JDBC datasource name.
+     * @param query the SQL query to execute.
+     * @param offset the number of rows to skip.
+     * @param limit the maximum number of rows to pass to the handler (0 for no limit).
+     * @param fetchSize the number of rows the JDBC driver should fetch at once (0 for the driver default).
+     * @param typed true to pass the values typed from the SQL column types, false to pass them as strings,
+     *              as returned by {@link #query(String, String)}.
+     * @param handler the handler receiving the columns and the rows.
+     * @return the number of rows passed to the handler.
+     */
+    int query(String datasource, String query, int offset, int limit, int fetchSize, boolean typed, RowHandler handler) throws Exception;
+
     /**
      * Execute a SQL command on a given JDBC datasource.
      *
@@ -84,6 +103,16 @@ public interface JdbcService {
      */
     Map<String, List<String>> tables(String datasource) throws Exception;
 
+    /**
+     * List the tables available on a given JDBC datasource, passing them to a handler as they are read.
+     *
+     * @param datasource the JDBC datasource name.
+     * @param typed true to pass the values typed from the SQL column types, false to pass them as strings,
+     *              as returned by {@link #tables(String)}.
+     * @param handler the handler receiving the columns and the table rows.
+     */
+    void tables(String datasource, boolean typed, RowHandler handler) throws Exception;
+
     /**
      * Get detailed info about a JDBC datasource.
      *
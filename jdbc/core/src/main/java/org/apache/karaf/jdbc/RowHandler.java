@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc;
+
+/**
+ * Callback receiving the result of a SQL query row by row, as the rows are read from the database.
+ */
+public interface RowHandler {
+
+    /**
+     * Called once, before the first row.
+     *
+     * @param labels the column labels.
+     * @param types the type of the values of each column: {@link String}, {@link Boolean}, {@link Integer},
+     *              {@link Long}, {@link Float}, {@link Double}, {@link java.math.BigDecimal} or {@link java.util.Date},
+     *              or {@link String} for all the columns when the values are not typed.
+     */
+    void columns(String[] labels, Class<?>[] types) throws Exception;
+
+    /**
+     * Called for each row.
+     *
+     * @param values the row values, in the column order (null for SQL NULL).
+     * @return true to continue with the next row, false to stop reading the result.
+     */
+    boolean row(Object[] values) throws Exception;
+
+}
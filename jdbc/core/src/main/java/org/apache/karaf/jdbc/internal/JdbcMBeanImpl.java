@@ -18,9 +18,12 @@ package org.apache.karaf.jdbc.internal;
 
 import org.apache.karaf.jdbc.JdbcMBean;
 import org.apache.karaf.jdbc.JdbcService;
+import org.apache.karaf.jdbc.RowHandler;
 
 import javax.management.MBeanException;
 import javax.management.openmbean.*;
+import java.math.BigDecimal;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +32,8 @@ import java.util.Map;
  */
 public class JdbcMBeanImpl implements JdbcMBean {
 
+    private static final int MAX_FETCH_SIZE = 1000;
+
     private JdbcService jdbcService;
 
     @Override
@@ -157,6 +162,20 @@ public class JdbcMBeanImpl implements JdbcMBean {
         }
     }
 
+    @Override
+    public TabularData query(String datasource, String query, int offset, int limit) throws MBeanException {
+        if (limit <= 0) {
+            throw new MBeanException(null, "The limit must be positive");
+        }
+        try {
+            TabularRowHandler handler = new TabularRowHandler();
+            jdbcService.query(datasource, query, Math.max(offset, 0), limit, Math.min(limit, MAX_FETCH_SIZE), true, handler);
+            return handler.table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
     public JdbcService getJdbcService() {
         return jdbcService;
     }
@@ -165,4 +184,61 @@ public class JdbcMBeanImpl implements JdbcMBean {
         this.jdbcService = jdbcService;
     }
 
+    /**
+     * Builds a tabular data from the rows, mapping the column types to open types.
+     */
+    private static class TabularRowHandler implements RowHandler {
+
+        TabularData table;
+        private CompositeType type;
+        private String[] columns;
+        private boolean[] dates;
+
+        @Override
+        public void columns(String[] labels, Class<?>[] types) throws Exception {
+            columns = labels;
+            dates = new boolean[labels.length];
+            OpenType[] openTypes = new OpenType[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                openTypes[i] = getOpenType(types[i]);
+                dates[i] = openTypes[i] == SimpleType.DATE;
+            }
+            type = new CompositeType("Columns", "Columns", columns, columns, openTypes);
+            TabularType rows = new TabularType("Result", "Result Rows", type, columns);
+            table = new TabularDataSupport(rows);
+        }
+
+        @Override
+        public boolean row(Object[] values) throws Exception {
+            for (int i = 0; i < values.length; i++) {
+                if (dates[i] && values[i] != null) {
+                    // open types only accept java.util.Date itself, not the java.sql subclasses
+                    values[i] = new Date(((Date) values[i]).getTime());
+                }
+            }
+            table.put(new CompositeDataSupport(type, columns, values));
+            return true;
+        }
+
+        private static OpenType getOpenType(Class<?> type) {
+            if (type == Boolean.class) {
+                return SimpleType.BOOLEAN;
+            } else if (type == Integer.class) {
+                return SimpleType.INTEGER;
+            } else if (type == Long.class) {
+                return SimpleType.LONG;
+            } else if (type == Float.class) {
+                return SimpleType.FLOAT;
+            } else if (type == Double.class) {
+                return SimpleType.DOUBLE;
+            } else if (type == BigDecimal.class) {
+                return SimpleType.BIGDECIMAL;
+            } else if (type == Date.class) {
+                return SimpleType.DATE;
+            } else {
+                return SimpleType.STRING;
+            }
+        }
+    }
+
 }
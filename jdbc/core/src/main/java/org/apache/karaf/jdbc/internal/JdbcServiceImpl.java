@@ -17,6 +17,7 @@
 package org.apache.karaf.jdbc.internal;
 
 import org.apache.karaf.jdbc.JdbcService;
+import org.apache.karaf.jdbc.RowHandler;
 import org.apache.karaf.util.TemplateUtils;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -27,6 +28,7 @@ import javax.sql.DataSource;
 import javax.sql.XADataSource;
 
 import java.io.*;
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
 
@@ -152,21 +154,25 @@ public class JdbcServiceImpl implements JdbcService {
 
     @Override
     public Map<String, List<String>> query(String datasource, String query) throws Exception {
+        MapRowHandler handler = new MapRowHandler();
+        query(datasource, query, 0, 0, 0, false, handler);
+        return handler.map;
+    }
+
+    @Override
+    public int query(String datasource, String query, int offset, int limit, int fetchSize, boolean typed, RowHandler handler) throws Exception {
         JdbcConnector jdbcConnector = new JdbcConnector(bundleContext, datasource);
         try {
-            Map<String, List<String>> map = new HashMap<String, List<String>>();
             Statement statement = jdbcConnector.createStatement();
-            ResultSet resultSet = jdbcConnector.register(statement.executeQuery(query));
-            ResultSetMetaData metaData = resultSet.getMetaData();
-            for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                map.put(metaData.getColumnLabel(c), new ArrayList<String>());
+            if (fetchSize > 0) {
+                statement.setFetchSize(fetchSize);
             }
-            while (resultSet.next()) {
-                for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                    map.get(metaData.getColumnLabel(c)).add(resultSet.getString(c));
-                }
+            if (limit > 0 && (long) offset + limit <= Integer.MAX_VALUE) {
+                // let the database stop after the requested page
+                statement.setMaxRows(offset + limit);
             }
-            return map;
+            ResultSet resultSet = jdbcConnector.register(statement.executeQuery(query));
+            return read(resultSet, offset, limit, typed, handler);
         } finally {
             jdbcConnector.close();
         }
@@ -184,22 +190,18 @@ public class JdbcServiceImpl implements JdbcService {
 
     @Override
     public Map<String, List<String>> tables(String datasource) throws Exception {
+        MapRowHandler handler = new MapRowHandler();
+        tables(datasource, false, handler);
+        return handler.map;
+    }
+
+    @Override
+    public void tables(String datasource, boolean typed, RowHandler handler) throws Exception {
         JdbcConnector jdbcConnector = new JdbcConnector(bundleContext, datasource);
         try {
-
             DatabaseMetaData dbMetaData = jdbcConnector.connect().getMetaData();
             ResultSet resultSet = jdbcConnector.register(dbMetaData.getTables(null, null, null, null));
-            ResultSetMetaData metaData = resultSet.getMetaData();
-            Map<String, List<String>> map = new HashMap<String, List<String>>();
-            for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                map.put(metaData.getColumnLabel(c), new ArrayList<String>());
-            }
-            while (resultSet.next()) {
-                for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                    map.get(metaData.getColumnLabel(c)).add(resultSet.getString(c));
-                }
-            }
-            return map;
+            read(resultSet, 0, 0, typed, handler);
         } finally {
             jdbcConnector.close();
         }
@@ -227,4 +229,132 @@ public class JdbcServiceImpl implements JdbcService {
         this.bundleContext = bundleContext;
     }
 
+    private static int read(ResultSet resultSet, int offset, int limit, boolean typed, RowHandler handler) throws Exception {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        int[] sqlTypes = new int[columnCount];
+        Class<?>[] types = new Class<?>[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            labels[c] = metaData.getColumnLabel(c + 1);
+            // untyped values are read as strings, whatever the column type
+            sqlTypes[c] = typed ? metaData.getColumnType(c + 1) : Types.VARCHAR;
+            types[c] = getType(sqlTypes[c]);
+        }
+        handler.columns(labels, types);
+
+        for (int i = 0; i < offset; i++) {
+            if (!resultSet.next()) {
+                return 0;
+            }
+        }
+        int count = 0;
+        while ((limit <= 0 || count < limit) && resultSet.next()) {
+            Object[] values = new Object[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                values[c] = getValue(resultSet, c + 1, sqlTypes[c]);
+            }
+            count++;
+            if (!handler.row(values)) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private static Class<?> getType(int sqlType) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return Boolean.class;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return Integer.class;
+            case Types.BIGINT:
+                return Long.class;
+            case Types.REAL:
+                return Float.class;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return Double.class;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return BigDecimal.class;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return java.util.Date.class;
+            default:
+                return String.class;
+        }
+    }
+
+    private static Object getValue(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        Object value;
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                value = resultSet.getBoolean(column);
+                break;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                value = resultSet.getInt(column);
+                break;
+            case Types.BIGINT:
+                value = resultSet.getLong(column);
+                break;
+            case Types.REAL:
+                value = resultSet.getFloat(column);
+                break;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                value = resultSet.getDouble(column);
+                break;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                value = resultSet.getBigDecimal(column);
+                break;
+            case Types.DATE:
+                value = resultSet.getDate(column);
+                break;
+            case Types.TIME:
+                value = resultSet.getTime(column);
+                break;
+            case Types.TIMESTAMP:
+                value = resultSet.getTimestamp(column);
+                break;
+            default:
+                value = resultSet.getString(column);
+                break;
+        }
+        return resultSet.wasNull() ? null : value;
+    }
+
+    /**
+     * Collects the rows, read as strings, for the methods returning the whole result.
+     */
+    private static class MapRowHandler implements RowHandler {
+
+        final Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+        private String[] labels;
+
+        @Override
+        public void columns(String[] labels, Class<?>[] types) {
+            this.labels = labels;
+            for (String label : labels) {
+                map.put(label, new ArrayList<String>());
+            }
+        }
+
+        @Override
+        public boolean row(Object[] values) {
+            for (int c = 0; c < labels.length; c++) {
+                map.get(labels[c]).add((String) values[c]);
+            }
+            return true;
+        }
+    }
+
 }
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import junit.framework.Assert;
+
+import org.apache.karaf.jdbc.RowHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+public class JdbcServiceImplTest {
+
+    private static final int ROWS = 10;
+
+    private Statement statement;
+    private ResultSetStub resultSet;
+    private JdbcServiceImpl jdbcService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        resultSet = new ResultSetStub();
+        ResultSetMetaData metaData = createMock(ResultSetMetaData.class);
+        expect(metaData.getColumnCount()).andReturn(2).anyTimes();
+        expect(metaData.getColumnLabel(1)).andReturn("ID").anyTimes();
+        expect(metaData.getColumnLabel(2)).andReturn("NAME").anyTimes();
+        expect(metaData.getColumnType(1)).andReturn(Types.INTEGER).anyTimes();
+        expect(metaData.getColumnType(2)).andReturn(Types.VARCHAR).anyTimes();
+        resultSet.metaData = metaData;
+
+        statement = createMock(Statement.class);
+        expect(statement.executeQuery("SELECT * FROM TEST")).andReturn(resultSet.proxy());
+        statement.close();
+        Connection connection = createMock(Connection.class);
+        expect(connection.createStatement()).andReturn(statement);
+        connection.close();
+        expectLastCall().anyTimes();
+        DataSource dataSource = createMock(DataSource.class);
+        expect(dataSource.getConnection()).andReturn(connection);
+        ServiceReference<DataSource> reference = createMock(ServiceReference.class);
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getServiceReferences((String) anyObject(), (String) anyObject()))
+                .andReturn(new ServiceReference<?>[] { reference });
+        expect(bundleContext.getService(reference)).andReturn(dataSource);
+        expect(bundleContext.ungetService(reference)).andReturn(true);
+        replay(metaData, connection, dataSource, reference, bundleContext);
+
+        jdbcService = new JdbcServiceImpl();
+        jdbcService.setBundleContext(bundleContext);
+    }
+
+    @Test
+    public void testOffsetAndLimit() throws Exception {
+        statement.setFetchSize(2);
+        statement.setMaxRows(7);
+        replay(statement);
+
+        CollectingRowHandler handler = new CollectingRowHandler();
+        int count = jdbcService.query("test", "SELECT * FROM TEST", 4, 3, 2, true, handler);
+
+        verify(statement);
+        Assert.assertEquals(3, count);
+        Assert.assertEquals(Arrays.asList("ID", "NAME"), Arrays.asList(handler.labels));
+        Assert.assertEquals(Arrays.<Class<?>>asList(Integer.class, String.class), Arrays.asList(handler.types));
+        Assert.assertEquals(Arrays.<Object>asList(4, "name4"), Arrays.asList(handler.rows.get(0)));
+        Assert.assertEquals(Arrays.<Object>asList(6, "name6"), Arrays.asList(handler.rows.get(2)));
+        Assert.assertTrue(resultSet.closed);
+    }
+
+    @Test
+    public void testOffsetPastEnd() throws Exception {
+        replay(statement);
+
+        CollectingRowHandler handler = new CollectingRowHandler();
+        Assert.assertEquals(0, jdbcService.query("test", "SELECT * FROM TEST", ROWS + 5, 0, 0, true, handler));
+        Assert.assertTrue(handler.rows.isEmpty());
+    }
+
+    @Test
+    public void testRowsAreStreamed() throws Exception {
+        replay(statement);
+
+        CollectingRowHandler handler = new CollectingRowHandler() {
+            @Override
+            public boolean row(Object[] values) {
+                // the row is handed over as soon as it is read, the next ones are not read in advance
+                Assert.assertEquals(rows.size() + 3, resultSet.position);
+                super.row(values);
+                return rows.size() < 3;
+            }
+        };
+        Assert.assertEquals(3, jdbcService.query("test", "SELECT * FROM TEST", 2, 0, 0, true, handler));
+        // the result is not read once the handler stops
+        Assert.assertEquals(5, resultSet.position);
+    }
+
+    @Test
+    public void testUntypedQuery() throws Exception {
+        replay(statement);
+
+        Map<String, List<String>> result = jdbcService.query("test", "SELECT * FROM TEST");
+        Assert.assertEquals(ROWS, result.get("ID").size());
+        Assert.assertEquals("3", result.get("ID").get(3));
+        Assert.assertEquals("name3", result.get("NAME").get(3));
+    }
+
+    private static class CollectingRowHandler implements RowHandler {
+
+        String[] labels;
+        Class<?>[] types;
+        final List<Object[]> rows = new ArrayList<Object[]>();
+
+        public void columns(String[] labels, Class<?>[] types) {
+            this.labels = labels;
+            this.types = types;
+        }
+
+        public boolean row(Object[] values) {
+            rows.add(values);
+            return true;
+        }
+    }
+
+    /**
+     * A forward only result set of {@link #ROWS} rows, which records the position of its cursor.
+     */
+    private static class ResultSetStub implements InvocationHandler {
+
+        ResultSetMetaData metaData;
+        int position;
+        boolean closed;
+
+        ResultSet proxy() {
+            return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class }, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getMetaData")) {
+                return metaData;
+            } else if (name.equals("next")) {
+                return ++position <= ROWS;
+            } else if (name.equals("getInt")) {
+                return position - 1;
+            } else if (name.equals("getString")) {
+                int column = (Integer) args[0];
+                return column == 1 ? Integer.toString(position - 1) : "name" + (position - 1);
+            } else if (name.equals("wasNull")) {
+                return false;
+            } else if (name.equals("close")) {
+                closed = true;
+                return null;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+}
@@ -23,7 +23,7 @@ import org.apache.karaf.shell.inject.Service;
 
 @Command(scope = "jms", name = "consume", description = "Consume messages from a JMS queue.")
 @Service
-public class ConsumeCommand extends JmsConnectionCommandSupport {
+public class ConsumeCommand extends JmsBulkCommandSupport {
 
     @Argument(index = 1, name = "queue", description = "The JMS queue where to consume messages", required = true, multiValued = false)
     String queue;
@@ -32,7 +32,8 @@ public class ConsumeCommand extends JmsConnectionCommandSupport {
     String selector;
 
     public Object doExecute() throws Exception {
-        System.out.println(getJmsService().consume(connectionFactory, queue, selector, username, password) + " message(s) consumed");
+        int count = getJmsService().consume(connectionFactory, queue, selector, batchSize, commitInterval, consumers, progress("consumed"), username, password);
+        System.out.println("\r" + count + " message(s) consumed");
         return null;
     }
 
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jms.command;
+
+import org.apache.karaf.jms.JmsProgressListener;
+import org.apache.karaf.shell.commands.Option;
+
+/**
+ * For commands consuming messages in transacted batches
+ */
+public abstract class JmsBulkCommandSupport extends JmsConnectionCommandSupport {
+
+    @Option(name = "-b", aliases = { "--batch-size" }, description = "The maximum number of messages per transaction", required = false, multiValued = false)
+    int batchSize = 100;
+
+    @Option(name = "-i", aliases = { "--commit-interval" }, description = "The maximum time in milliseconds before a transaction is committed (0 to only use the batch size)", required = false, multiValued = false)
+    long commitInterval = 0;
+
+    @Option(name = "-c", aliases = { "--consumers" }, description = "The number of concurrent consumers", required = false, multiValued = false)
+    int consumers = 1;
+
+    @Option(name = "-q", aliases = { "--quiet" }, description = "Do not display the progress", required = false, multiValued = false)
+    boolean quiet;
+
+    /**
+     * @return a listener displaying the number of messages processed so far on the same line, or null in quiet mode.
+     */
+    protected JmsProgressListener progress(final String action) {
+        if (quiet) {
+            return null;
+        }
+        return new JmsProgressListener() {
+            public synchronized void progress(int count) {
+                System.out.print("\r" + count + " message(s) " + action);
+                System.out.flush();
+            }
+        };
+    }
+
+}
@@ -23,7 +23,7 @@ import org.apache.karaf.shell.inject.Service;
 
 @Command(scope = "jms", name = "move", description = "Move messages from one JMS queue to another one.")
 @Service
-public class MoveCommand extends JmsConnectionCommandSupport {
+public class MoveCommand extends JmsBulkCommandSupport {
 
     @Argument(index = 1, name = "source", description = "The source JMS queue", required = true, multiValued = false)
     String source;
@@ -35,7 +35,8 @@ public class MoveCommand extends JmsConnectionCommandSupport {
     String selector;
 
     public Object doExecute() throws Exception {
-        System.out.println(getJmsService().move(connectionFactory, source, destination, selector, username, password) + " message(s) moved");
+        int count = getJmsService().move(connectionFactory, source, destination, selector, batchSize, commitInterval, consumers, progress("moved"), username, password);
+        System.out.println("\r" + count + " message(s) moved");
         return null;
     }
 
@@ -136,6 +136,22 @@ public interface JmsMBean {
      */
     int consume(String connectionFactory, String queue, String selector, String username, String password) throws MBeanException;
 
+    /**
+     * Consume JMS messages from a given queue, in transacted batches.
+     *
+     * @param connectionFactory the JMS connection factory name.
+     * @param queue the JMS queue name.
+     * @param selector a selector to use to consume only certain messages.
+     * @param batchSize the maximum number of messages per transaction.
+     * @param commitInterval the maximum time in ms before a batch is committed (0 to only use the batch size).
+     * @param consumers the number of concurrent consumers.
+     * @param username optional username to connect to the JMS broker.
+     * @param password optional password to connect to the JMS broker.
+     * @return the number of messages consumed.
+     * @throws MBeanException
+     */
+    int consume(String connectionFactory, String queue, String selector, int batchSize, long commitInterval, int consumers, String username, String password) throws MBeanException;
+
     /**
      * Move JMS messages from one queue to another.
      *
@@ -150,4 +166,21 @@ public interface JmsMBean {
      */
     int move(String connectionFactory, String source, String destination, String selector, String username, String password) throws MBeanException;
 
+    /**
+     * Move JMS messages from one queue to another, in transacted batches.
+     *
+     * @param connectionFactory the JMS connection factory name.
+     * @param source the source JMS queue name.
+     * @param destination the destination JMS queue name.
+     * @param selector a selector to move only certain messages.
+     * @param batchSize the maximum number of messages per transaction.
+     * @param commitInterval the maximum time in ms before a batch is committed (0 to only use the batch size).
+     * @param consumers the number of concurrent consumers.
+     * @param username optional username to connect to the JMS broker.
+     * @param password optional password to connect to the JMS broker.
+     * @return the number of messages moved.
+     * @throws MBeanException
+     */
+    int move(String connectionFactory, String source, String destination, String selector, int batchSize, long commitInterval, int consumers, String username, String password) throws MBeanException;
+
 }
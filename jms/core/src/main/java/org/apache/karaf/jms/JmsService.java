@@ -142,6 +142,28 @@ public interface JmsService {
      */
     int consume(String connectionFactory, String queue, String selector, String username, String password) throws Exception;
 
+    /**
+     * Consume messages from a given destination, in transacted batches.
+     *
+     * Each batch is committed when it contains batchSize messages, or when commitInterval ms have elapsed since
+     * its first message, so that a failure only rolls back the current batch.
+     * The queue is considered drained, and the operation ends, once no message was received for one second.
+     *
+     * @param connectionFactory the JMS connection factory name.
+     * @param queue the queue name.
+     * @param selector the messages selector.
+     * @param batchSize the maximum number of messages per transaction.
+     * @param commitInterval the maximum time in ms before a batch is committed (0 to only use the batch size).
+     * @param consumers the number of concurrent consumers.
+     * @param listener optional listener notified after each commit.
+     * @param username optional username to connect to the JMS broker.
+     * @param password optional password to connect to the JMS broker.
+     * @return the number of messages consumed.
+     * @throws Exception if a consumer fails, its message gives the number of messages already committed.
+     */
+    int consume(String connectionFactory, String queue, String selector, int batchSize, long commitInterval, int consumers,
+                JmsProgressListener listener, String username, String password) throws Exception;
+
     /**
      * Move messages from a destination to another.
      *
@@ -156,4 +178,27 @@ public interface JmsService {
      */
     int move(String connectionFactory, String sourceQueue, String targetQueue, String selector, String username, String password) throws Exception;
 
+    /**
+     * Move messages from a destination to another, in transacted batches.
+     *
+     * The messages of a batch are received and sent in the same transaction, so each message is either still
+     * on the source queue or on the target queue, even if the move fails. The source queue is considered drained,
+     * and the move ends, once no message was received for one second.
+     *
+     * @param connectionFactory the JMS connection factory name.
+     * @param sourceQueue the source queue.
+     * @param targetQueue the target queue.
+     * @param selector the messages selector on the source queue.
+     * @param batchSize the maximum number of messages per transaction.
+     * @param commitInterval the maximum time in ms before a batch is committed (0 to only use the batch size).
+     * @param consumers the number of concurrent consumers.
+     * @param listener optional listener notified after each commit.
+     * @param username optional username to connect to the JMS broker.
+     * @param password optional password to connect to the JMS broker.
+     * @return the number of messages moved.
+     * @throws Exception if a consumer fails, its message gives the number of messages already committed.
+     */
+    int move(String connectionFactory, String sourceQueue, String targetQueue, String selector, int batchSize, long commitInterval,
+             int consumers, JmsProgressListener listener, String username, String password) throws Exception;
+
 }
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jms.internal;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Cache of started JMS connections, per connection factory and user, shared by the JMS commands and MBean
+ * so that each operation does not need to look up the connection factory service and open a new connection.
+ *
+ * Connections are closed when they have not been used for {@link #IDLE_TIMEOUT} ms, when they report an
+ * error, or when their connection factory service is unregistered. Those connections are looked for every
+ * {@link #SWEEP_INTERVAL} ms, and before handing out a connection.
+ *
+ * The cache is keyed by connection factory, user and a digest of the password, so that the passwords are not
+ * kept in memory.
+ */
+public class JmsConnectionCache implements Closeable {
+
+    static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+    static final long SWEEP_INTERVAL = 60 * 1000;
+
+    private final BundleContext bc;
+    private final ScheduledExecutorService sweeper;
+    // the entries that can be handed out
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    // all the open entries, including the ones that are still used after having been removed
+    private final Map<Connection, Entry> connections = new IdentityHashMap<Connection, Entry>();
+
+    public JmsConnectionCache(BundleContext bc) {
+        this.bc = bc;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf JMS Connection Cache Sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.sweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sweep();
+            }
+        }, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get a started connection, which must be given back with {@link #release(Connection, boolean)}.
+     */
+    public synchronized Connection acquire(String connectionFactoryName, String username, String password) throws JMSException {
+        sweep();
+        String key = connectionFactoryName + "\u0000" + username + "\u0000" + digest(password);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, lookupConnectionFactory(connectionFactoryName));
+            try {
+                ConnectionFactory cf = bc.getService(entry.reference);
+                if (cf == null) {
+                    throw new IllegalArgumentException("JMS connection factory " + connectionFactoryName + " is not available anymore");
+                }
+                entry.connection = cf.createConnection(username, password);
+                entry.listen();
+                entry.connection.start();
+            } catch (JMSException e) {
+                entry.close();
+                throw e;
+            } catch (RuntimeException e) {
+                entry.close();
+                throw e;
+            }
+            entries.put(key, entry);
+            connections.put(entry.connection, entry);
+        }
+        entry.users++;
+        return entry.connection;
+    }
+
+    /**
+     * Give back a connection obtained with {@link #acquire(String, String, String)}.
+     *
+     * @param failed true if the connection should not be used anymore
+     */
+    public synchronized void release(Connection connection, boolean failed) {
+        Entry entry = connections.get(connection);
+        if (entry != null) {
+            entry.users--;
+            entry.lastUsed = getCurrentTimeMillis();
+            if (failed) {
+                entry.failed = true;
+            }
+            if (entry.failed) {
+                remove(entry);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        synchronized (this) {
+            for (Entry entry : new ArrayList<Entry>(connections.values())) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Remove the entries which failed, whose connection factory service is unregistered, or which are idle.
+     */
+    synchronized void sweep() {
+        long now = getCurrentTimeMillis();
+        for (Entry entry : new ArrayList<Entry>(entries.values())) {
+            if (entry.failed || entry.reference.getBundle() == null
+                    || (entry.users == 0 && now - entry.lastUsed > IDLE_TIMEOUT)) {
+                remove(entry);
+            }
+        }
+    }
+
+    protected long getCurrentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    static String digest(String password) {
+        if (password == null) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(1 + digest.length * 2);
+            // distinguish an empty password from no password
+            sb.append('#');
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stop handing out the entry, and close it once it is not used anymore.
+     */
+    private void remove(Entry entry) {
+        if (entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+        }
+        if (entry.users <= 0) {
+            connections.remove(entry.connection);
+            entry.close();
+        } else {
+            entry.failed = true;
+        }
+    }
+
+    private ServiceReference<ConnectionFactory> lookupConnectionFactory(String name) {
+        Collection<ServiceReference<ConnectionFactory>> references;
+        try {
+            references = bc.getServiceReferences(ConnectionFactory.class, "(|(osgi.jndi.service.name=" + name + ")(name=" + name + ")(service.id=" + name + "))");
+        } catch (InvalidSyntaxException e) {
+            throw new RuntimeException("Error finding connection factory service " + name, e);
+        }
+        if (references == null || references.size() == 0) {
+            throw new IllegalArgumentException("No JMS connection factory found for " + name);
+        }
+        if (references.size() > 1) {
+            throw new IllegalArgumentException("Multiple JMS connection factories found for " + name);
+        }
+        return references.iterator().next();
+    }
+
+    private class Entry implements ExceptionListener {
+        final String key;
+        final ServiceReference<ConnectionFactory> reference;
+        Connection connection;
+        int users;
+        long lastUsed = getCurrentTimeMillis();
+        volatile boolean failed;
+
+        Entry(String key, ServiceReference<ConnectionFactory> reference) {
+            this.key = key;
+            this.reference = reference;
+        }
+
+        void listen() {
+            try {
+                connection.setExceptionListener(this);
+            } catch (JMSException e) {
+                // some pooled connections do not support exception listeners, errors are then
+                // only detected when the connection is used
+            }
+        }
+
+        @Override
+        public void onException(JMSException exception) {
+            failed = true;
+        }
+
+        void close() {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    // Ignore
+                }
+            }
+            bc.ungetService(reference);
+        }
+    }
+
+}
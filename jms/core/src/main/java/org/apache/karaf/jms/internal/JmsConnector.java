@@ -18,82 +18,75 @@ package org.apache.karaf.jms.internal;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.jms.Connection;
-import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
 import javax.jms.Session;
 
-import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
-import org.osgi.framework.ServiceReference;
-
+/**
+ * The connection and sessions used by one JMS operation. The connection comes from the
+ * {@link JmsConnectionCache} and is given back to it when the connector is closed, the sessions are closed.
+ */
 public class JmsConnector implements Closeable {
-    private BundleContext bc;
-    private ServiceReference<ConnectionFactory> reference;
+    private JmsConnectionCache cache;
     private Connection connection;
-    private Session session;
+    private List<Session> sessions = new ArrayList<Session>();
+    private boolean failed;
     private String connectionFactoryName;
     private String username;
     private String password;
 
-    public JmsConnector(BundleContext bc, String connectionFactoryName, String username, String password) throws JMSException {
-        this.bc = bc;
+    public JmsConnector(JmsConnectionCache cache, String connectionFactoryName, String username, String password) throws JMSException {
+        this.cache = cache;
         this.connectionFactoryName = connectionFactoryName;
         this.username = username;
         this.password = password;
     }
-    
-    private ServiceReference<ConnectionFactory> lookupConnectionFactory(String name) {
-        Collection<ServiceReference<ConnectionFactory>> references;
-        try {
-            references = bc.getServiceReferences(ConnectionFactory.class, "(|(osgi.jndi.service.name=" + name + ")(name=" + name + ")(service.id=" + name + "))");
-        } catch (InvalidSyntaxException e) {
-            throw new RuntimeException("Error finding connection factory service " + name, e);
-        }
-        if (references == null || references.size() == 0) {
-            throw new IllegalArgumentException("No JMS connection factory found for " + name);
-        }
-        if (references.size() > 1) {
-            throw new IllegalArgumentException("Multiple JMS connection factories found for " + name);
-        }
-        return references.iterator().next();
-    }
 
     @Override
-    public void close() throws IOException {
-        if (session != null) {
+    public synchronized void close() throws IOException {
+        for (Session session : sessions) {
             try {
                 session.close();
             } catch (JMSException e) {
                 // Ignore
             }
         }
+        sessions.clear();
         if (connection != null) {
-            try {
-                connection.close();
-            } catch (JMSException e) {
-                // Ignore
-            }
-        }
-        if (reference != null) {
-            bc.ungetService(reference);
+            cache.release(connection, failed);
+            connection = null;
         }
     }
 
-    public Connection connect() throws JMSException {
-        reference = this.lookupConnectionFactory(connectionFactoryName);
-        ConnectionFactory cf = (ConnectionFactory) bc.getService(reference);
-        connection = cf.createConnection(username, password);
-        connection.start();
+    public synchronized Connection connect() throws JMSException {
+        if (connection == null) {
+            connection = cache.acquire(connectionFactoryName, username, password);
+        }
         return connection;
     }
 
     public Session createSession() throws JMSException {
-        if (connection == null) {
-            connect();
+        return createSession(false);
+    }
+
+    /**
+     * Create a session, which is closed with the connector.
+     *
+     * @param transacted true for a transacted session, false for an auto acknowledged one.
+     */
+    public synchronized Session createSession(boolean transacted) throws JMSException {
+        connect();
+        try {
+            Session session = connection.createSession(transacted, transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+            sessions.add(session);
+            return session;
+        } catch (JMSException e) {
+            // most likely a broken cached connection, do not reuse it
+            failed = true;
+            throw e;
         }
-        return session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
     }
 }
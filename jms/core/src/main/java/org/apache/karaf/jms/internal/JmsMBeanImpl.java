@@ -113,6 +113,15 @@ public class JmsMBeanImpl implements JmsMBean {
         }
     }
 
+    @Override
+    public int consume(String connectionFactory, String queue, String selector, int batchSize, long commitInterval, int consumers, String username, String password) throws MBeanException {
+        try {
+            return jmsService.consume(connectionFactory, queue, selector, batchSize, commitInterval, consumers, null, username, password);
+        } catch (Throwable t) {
+            throw new MBeanException(null, t.getMessage());
+        }
+    }
+
     @Override
     public int move(String connectionFactory, String source, String destination, String selector, String username, String password) throws MBeanException {
         try {
@@ -122,6 +131,15 @@ public class JmsMBeanImpl implements JmsMBean {
         }
     }
 
+    @Override
+    public int move(String connectionFactory, String source, String destination, String selector, int batchSize, long commitInterval, int consumers, String username, String password) throws MBeanException {
+        try {
+            return jmsService.move(connectionFactory, source, destination, selector, batchSize, commitInterval, consumers, null, username, password);
+        } catch (Throwable t) {
+            throw new MBeanException(null, t.getMessage());
+        }
+    }
+
     @Override
     public TabularData browse(String connectionFactory, String queue, String selector, String username, String password) throws MBeanException {
         try {
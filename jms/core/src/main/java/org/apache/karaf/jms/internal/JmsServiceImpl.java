@@ -22,6 +22,7 @@ import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.activemq.pool.PooledConnection;
 import org.apache.karaf.jms.JmsMessage;
+import org.apache.karaf.jms.JmsProgressListener;
 import org.apache.karaf.jms.JmsService;
 import org.apache.karaf.util.TemplateUtils;
 import org.osgi.framework.BundleContext;
@@ -33,13 +34,23 @@ import javax.jms.*;
 import java.io.*;
 import java.lang.IllegalStateException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Default implementation of the JMS Service.
  */
 public class JmsServiceImpl implements JmsService {
 
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
     private BundleContext bundleContext;
+    private JmsConnectionCache connectionCache;
     private File deployFolder;
     
     public JmsServiceImpl() {
@@ -129,7 +140,7 @@ public class JmsServiceImpl implements JmsService {
 
     @Override
     public Map<String, String> info(String connectionFactory, String username, String password) throws IOException, JMSException {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
+        JmsConnector connector = new JmsConnector(connectionCache, connectionFactory, username, password);
         try {
             ConnectionMetaData metaData = connector.connect().getMetaData();
             Map<String, String> map = new HashMap<String, String>();
@@ -144,7 +155,7 @@ public class JmsServiceImpl implements JmsService {
     @SuppressWarnings("unchecked")
     @Override
     public int count(String connectionFactory, final String destination, String username, String password) throws IOException, JMSException {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
+        JmsConnector connector = new JmsConnector(connectionCache, connectionFactory, username, password);
         try  {
             Session session = connector.createSession();
             QueueBrowser browser = session.createBrowser(session.createQueue(destination));
@@ -174,7 +185,7 @@ public class JmsServiceImpl implements JmsService {
     
     @Override
     public List<String> queues(String connectionFactory, String username, String password) throws JMSException, IOException {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
+        JmsConnector connector = new JmsConnector(connectionCache, connectionFactory, username, password);
         try {
             List<String> queues = new ArrayList<String>();
             DestinationSource destinationSource = getDestinationSource(connector.connect());
@@ -192,7 +203,7 @@ public class JmsServiceImpl implements JmsService {
 
     @Override
     public List<String> topics(String connectionFactory, String username, String password) throws IOException, JMSException {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
+        JmsConnector connector = new JmsConnector(connectionCache, connectionFactory, username, password);
         try {
             DestinationSource destinationSource = getDestinationSource(connector.connect());
             List<String> topics = new ArrayList<String>();
@@ -212,7 +223,7 @@ public class JmsServiceImpl implements JmsService {
     @Override
     public List<JmsMessage> browse(String connectionFactory, final String queue, final String filter,
                                    String username, String password) throws JMSException, IOException {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
+        JmsConnector connector = new JmsConnector(connectionCache, connectionFactory, username, password);
         try {
             List<JmsMessage> messages = new ArrayList<JmsMessage>();
             Session session = connector.createSession();
@@ -233,7 +244,7 @@ public class JmsServiceImpl implements JmsService {
     @Override
     public void send(String connectionFactory, final String queue, final String body, final String replyTo,
                      String username, String password) throws IOException, JMSException {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
+        JmsConnector connector = new JmsConnector(connectionCache, connectionFactory, username, password);
         try {
             Session session = connector.createSession();
             Message message = session.createTextMessage(body);
@@ -251,50 +262,180 @@ public class JmsServiceImpl implements JmsService {
     @Override
     public int consume(String connectionFactory, final String queue, final String selector, String username,
                        String password) throws Exception {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
-        try {
-            int count = 0;
-            Session session = connector.createSession();
-            MessageConsumer consumer = session.createConsumer(session.createQueue(queue), selector);
-            Message message;
-            do {
-                message = consumer.receiveNoWait();
-                if (message != null) {
-                    count++;
-                }
-            } while (message != null);
-            return count;
-        } finally {
-            connector.close();
-        }
+        return consume(connectionFactory, queue, selector, DEFAULT_BATCH_SIZE, 0, 1, null, username, password);
+    }
+
+    @Override
+    public int consume(String connectionFactory, String queue, String selector, int batchSize, long commitInterval,
+                       int consumers, JmsProgressListener listener, String username, String password) throws Exception {
+        return transfer(connectionFactory, queue, null, selector, batchSize, commitInterval, consumers, listener, username, password);
     }
 
     @Override
     public int move(String connectionFactory, final String sourceQueue, final String targetQueue,
-                    final String selector, String username, String password) throws IOException, JMSException {
-        JmsConnector connector = new JmsConnector(bundleContext, connectionFactory, username, password);
+                    final String selector, String username, String password) throws Exception {
+        return move(connectionFactory, sourceQueue, targetQueue, selector, DEFAULT_BATCH_SIZE, 0, 1, null, username, password);
+    }
+
+    @Override
+    public int move(String connectionFactory, String sourceQueue, String targetQueue, String selector, int batchSize,
+                    long commitInterval, int consumers, JmsProgressListener listener, String username, String password) throws Exception {
+        if (targetQueue == null) {
+            throw new IllegalArgumentException("The target queue is required");
+        }
+        return transfer(connectionFactory, sourceQueue, targetQueue, selector, batchSize, commitInterval, consumers, listener, username, password);
+    }
+
+    /**
+     * Consume the messages of the source queue, and send them to the target queue if there is one, with a
+     * transacted session per consumer.
+     */
+    private int transfer(String connectionFactory, String sourceQueue, String targetQueue, String selector, int batchSize,
+                         long commitInterval, int consumers, JmsProgressListener listener, String username, String password) throws Exception {
+        JmsConnector connector = new JmsConnector(connectionCache, connectionFactory, username, password);
         try {
-            int count = 0;
-            Session session = connector.createSession();
-            MessageConsumer consumer = session.createConsumer(session.createQueue(sourceQueue), selector);
-            Message message;
-            do {
-                message = consumer.receiveNoWait();
-                if (message != null) {
-                    MessageProducer producer = session.createProducer(session.createQueue(targetQueue));
-                    producer.send(message);
-                    count++;
+            AtomicInteger count = new AtomicInteger();
+            AtomicBoolean stopped = new AtomicBoolean();
+            List<Transfer> transfers = new ArrayList<Transfer>();
+            for (int i = 0; i < Math.max(consumers, 1); i++) {
+                transfers.add(new Transfer(connector.createSession(true), sourceQueue, targetQueue, selector,
+                        Math.max(batchSize, 1), commitInterval, Transfer.IDLE_TIMEOUT, count, stopped, listener));
+            }
+            try {
+                if (transfers.size() == 1) {
+                    transfers.get(0).call();
+                } else {
+                    ExecutorService executor = Executors.newFixedThreadPool(transfers.size());
+                    try {
+                        for (Future<Void> future : executor.invokeAll(transfers)) {
+                            try {
+                                future.get();
+                            } catch (ExecutionException e) {
+                                if (e.getCause() instanceof Exception) {
+                                    throw (Exception) e.getCause();
+                                }
+                                throw e;
+                            }
+                        }
+                    } finally {
+                        executor.shutdownNow();
+                    }
                 }
-            } while (message != null);
-            consumer.close();
-            return count;
+            } catch (Exception e) {
+                // the batches committed before the failure are not rolled back
+                JMSException failure = new JMSException("Failed after " + count.get() + " messages were committed: " + e.getMessage());
+                failure.setLinkedException(e);
+                failure.initCause(e);
+                throw failure;
+            }
+            return count.get();
         } finally {
             connector.close();
         }
     }
 
+    /**
+     * One consumer of a bulk operation: receives the messages in batches, each batch being committed as a whole.
+     *
+     * The queue is considered drained when no message was received for {@link #IDLE_TIMEOUT} ms: a new consumer
+     * may not have received its prefetched messages yet, and the broker may still be dispatching to the other
+     * consumers, so a single empty receive does not mean that the queue is empty.
+     */
+    static class Transfer implements Callable<Void> {
+
+        static final long IDLE_TIMEOUT = 1000;
+        // how long a receive waits, so that a failed consumer or an elapsed commit interval are noticed early
+        static final long RECEIVE_TIMEOUT = 100;
+
+        private final Session session;
+        private final String sourceQueue;
+        private final String targetQueue;
+        private final String selector;
+        private final int batchSize;
+        private final long commitInterval;
+        private final long idleTimeout;
+        private final AtomicInteger count;
+        private final AtomicBoolean stopped;
+        private final JmsProgressListener listener;
+
+        Transfer(Session session, String sourceQueue, String targetQueue, String selector, int batchSize, long commitInterval,
+                 long idleTimeout, AtomicInteger count, AtomicBoolean stopped, JmsProgressListener listener) {
+            this.session = session;
+            this.sourceQueue = sourceQueue;
+            this.targetQueue = targetQueue;
+            this.selector = selector;
+            this.batchSize = batchSize;
+            this.commitInterval = commitInterval;
+            this.idleTimeout = idleTimeout;
+            this.count = count;
+            this.stopped = stopped;
+            this.listener = listener;
+        }
+
+        @Override
+        public Void call() throws JMSException {
+            int batch = 0;
+            try {
+                MessageConsumer consumer = session.createConsumer(session.createQueue(sourceQueue), selector);
+                MessageProducer producer = targetQueue != null ? session.createProducer(session.createQueue(targetQueue)) : null;
+                long batchStart = 0;
+                long lastReceived = System.currentTimeMillis();
+                // stop when the queue is drained, or when another consumer failed
+                while (!stopped.get()) {
+                    Message message = consumer.receive(Math.min(RECEIVE_TIMEOUT, Math.max(idleTimeout, 1)));
+                    long now = System.currentTimeMillis();
+                    if (message != null) {
+                        lastReceived = now;
+                        // the received message is part of the transaction even if it can't be sent
+                        if (batch++ == 0) {
+                            batchStart = now;
+                        }
+                        if (producer != null) {
+                            producer.send(message);
+                        }
+                    } else if (now - lastReceived >= idleTimeout) {
+                        break;
+                    }
+                    if (batch > 0 && (batch >= batchSize || (commitInterval > 0 && now - batchStart >= commitInterval))) {
+                        commit(batch);
+                        batch = 0;
+                    }
+                }
+                if (batch > 0) {
+                    commit(batch);
+                }
+                return null;
+            } catch (JMSException e) {
+                stopped.set(true);
+                if (batch > 0) {
+                    try {
+                        session.rollback();
+                    } catch (JMSException e2) {
+                        // Ignore, the session is closed with the connector
+                    }
+                }
+                throw e;
+            }
+        }
+
+        private void commit(int batch) throws JMSException {
+            session.commit();
+            int total = count.addAndGet(batch);
+            if (listener != null) {
+                listener.progress(total);
+            }
+        }
+    }
+
     public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
+        this.connectionCache = new JmsConnectionCache(bundleContext);
+    }
+
+    public void close() {
+        if (connectionCache != null) {
+            connectionCache.close();
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jms.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+
+import junit.framework.Assert;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+public class JmsConnectionCacheTest {
+
+    private final Set<Connection> closed = new HashSet<Connection>();
+    private Bundle bundle;
+    private TestCache cache;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        ConnectionFactory connectionFactory = createMock(ConnectionFactory.class);
+        expect(connectionFactory.createConnection((String) anyObject(), (String) anyObject())).andAnswer(new IAnswer<Connection>() {
+            public Connection answer() throws Throwable {
+                return createConnection();
+            }
+        }).anyTimes();
+        ServiceReference<ConnectionFactory> reference = createMock(ServiceReference.class);
+        // the bundle is reset to null when the connection factory is unregistered
+        bundle = createMock(Bundle.class);
+        expect(reference.getBundle()).andAnswer(new IAnswer<Bundle>() {
+            public Bundle answer() throws Throwable {
+                return bundle;
+            }
+        }).anyTimes();
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getServiceReferences(eq(ConnectionFactory.class), (String) anyObject()))
+                .andReturn(Collections.singletonList(reference)).anyTimes();
+        expect(bundleContext.getService(reference)).andReturn(connectionFactory).anyTimes();
+        expect(bundleContext.ungetService(reference)).andReturn(true).anyTimes();
+        replay(connectionFactory, reference, bundle, bundleContext);
+        cache = new TestCache(bundleContext);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testReuseByPassword() throws Exception {
+        Connection connection = cache.acquire("cf", "user", "secret");
+        cache.release(connection, false);
+        Assert.assertSame(connection, cache.acquire("cf", "user", "secret"));
+        Assert.assertNotSame(connection, cache.acquire("cf", "user", "other"));
+        Assert.assertNotSame(connection, cache.acquire("cf", "other", "secret"));
+        Assert.assertNotSame(cache.acquire("cf", "user", null), cache.acquire("cf", "user", ""));
+        Assert.assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void testPasswordDigest() {
+        String digest = JmsConnectionCache.digest("secret");
+        Assert.assertFalse(digest.contains("secret"));
+        Assert.assertEquals(digest, JmsConnectionCache.digest("secret"));
+        Assert.assertFalse(digest.equals(JmsConnectionCache.digest("Secret")));
+        Assert.assertEquals("", JmsConnectionCache.digest(null));
+        Assert.assertFalse("".equals(JmsConnectionCache.digest("")));
+    }
+
+    @Test
+    public void testEvictFailed() throws Exception {
+        Connection connection = cache.acquire("cf", "user", "secret");
+        cache.release(connection, true);
+        Assert.assertTrue(closed.contains(connection));
+        Assert.assertNotSame(connection, cache.acquire("cf", "user", "secret"));
+    }
+
+    @Test
+    public void testEvictUnregistered() throws Exception {
+        Connection connection = cache.acquire("cf", "user", "secret");
+        bundle = null;
+        cache.sweep();
+
+        // the connection is not handed out anymore, but only closed once released
+        Assert.assertFalse(closed.contains(connection));
+        Connection other = cache.acquire("cf", "user", "secret");
+        Assert.assertNotSame(connection, other);
+        cache.release(connection, false);
+        Assert.assertTrue(closed.contains(connection));
+        Assert.assertFalse(closed.contains(other));
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        Connection connection = cache.acquire("cf", "user", "secret");
+        cache.release(connection, false);
+        cache.now = JmsConnectionCache.IDLE_TIMEOUT;
+        cache.sweep();
+        Assert.assertFalse(closed.contains(connection));
+        cache.now = JmsConnectionCache.IDLE_TIMEOUT + 1;
+        cache.sweep();
+        Assert.assertTrue(closed.contains(connection));
+    }
+
+    @Test
+    public void testCloseAll() throws Exception {
+        Connection c1 = cache.acquire("cf", "user", "secret");
+        Connection c2 = cache.acquire("cf", "other", "secret");
+        cache.release(c1, false);
+        cache.close();
+        Assert.assertTrue(closed.contains(c1));
+        // the connection still in use is closed when released
+        Assert.assertFalse(closed.contains(c2));
+        cache.release(c2, false);
+        Assert.assertTrue(closed.contains(c2));
+    }
+
+    private Connection createConnection() throws Exception {
+        final Connection connection = createNiceMock(Connection.class);
+        connection.close();
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                closed.add(connection);
+                return null;
+            }
+        }).anyTimes();
+        replay(connection);
+        return connection;
+    }
+
+    private static class TestCache extends JmsConnectionCache {
+        long now;
+
+        TestCache(BundleContext bc) {
+            super(bc);
+        }
+
+        @Override
+        protected long getCurrentTimeMillis() {
+            return now;
+        }
+    }
+
+}
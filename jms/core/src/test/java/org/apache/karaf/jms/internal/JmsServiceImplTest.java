@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jms.internal;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import junit.framework.Assert;
+
+import org.apache.karaf.jms.JmsProgressListener;
+import org.junit.Test;
+
+public class JmsServiceImplTest {
+
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final List<Integer> progress = new ArrayList<Integer>();
+    private final JmsProgressListener listener = new JmsProgressListener() {
+        public synchronized void progress(int count) {
+            progress.add(count);
+        }
+    };
+
+    @Test
+    public void testBatchCommit() throws Exception {
+        Message m1 = createMock(Message.class);
+        Message m2 = createMock(Message.class);
+        Message m3 = createMock(Message.class);
+        Session session = createMock(Session.class);
+        MessageConsumer consumer = createMock(MessageConsumer.class);
+        MessageProducer producer = createMock(MessageProducer.class);
+        expectConsumer(session, consumer, m1, m2, m3);
+        expectProducer(session, producer);
+        producer.send(m1);
+        producer.send(m2);
+        producer.send(m3);
+        session.commit();
+        expectLastCall().times(2);
+        replay(m1, m2, m3, session, consumer, producer);
+
+        createTransfer(session, "target", 2, 0).call();
+
+        verify(session, producer);
+        Assert.assertEquals(3, count.get());
+        Assert.assertEquals(Arrays.asList(2, 3), progress);
+    }
+
+    @Test
+    public void testRollbackOnFailure() throws Exception {
+        Message m1 = createMock(Message.class);
+        Message m2 = createMock(Message.class);
+        Message m3 = createMock(Message.class);
+        Session session = createMock(Session.class);
+        MessageConsumer consumer = createMock(MessageConsumer.class);
+        MessageProducer producer = createMock(MessageProducer.class);
+        expectConsumer(session, consumer, m1, m2, m3);
+        expectProducer(session, producer);
+        producer.send(m1);
+        producer.send(m2);
+        producer.send(m3);
+        expectLastCall().andThrow(new JMSException("send failed"));
+        session.commit();
+        session.rollback();
+        replay(m1, m2, m3, session, consumer, producer);
+
+        try {
+            createTransfer(session, "target", 2, 0).call();
+            Assert.fail("The transfer should fail when a message can't be sent");
+        } catch (JMSException e) {
+            Assert.assertEquals("send failed", e.getMessage());
+        }
+
+        // only the first batch is committed, and the other consumers are stopped
+        verify(session, producer);
+        Assert.assertEquals(2, count.get());
+        Assert.assertTrue(stopped.get());
+    }
+
+    @Test
+    public void testWaitForLateMessages() throws Exception {
+        Message m1 = createMock(Message.class);
+        Session session = createMock(Session.class);
+        MessageConsumer consumer = createMock(MessageConsumer.class);
+        // the prefetched messages are not there yet on the first receive
+        expectConsumer(session, consumer, null, m1);
+        session.commit();
+        replay(m1, session, consumer);
+
+        createTransfer(session, null, 10, 200).call();
+
+        verify(session);
+        Assert.assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testStopWhenIdle() throws Exception {
+        Session session = createMock(Session.class);
+        MessageConsumer consumer = createMock(MessageConsumer.class);
+        expectConsumer(session, consumer);
+        replay(session, consumer);
+
+        long start = System.currentTimeMillis();
+        createTransfer(session, null, 10, 200).call();
+
+        Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+        Assert.assertEquals(0, count.get());
+    }
+
+    private JmsServiceImpl.Transfer createTransfer(Session session, String targetQueue, int batchSize, long idleTimeout) {
+        return new JmsServiceImpl.Transfer(session, "source", targetQueue, null, batchSize, 0, idleTimeout,
+                count, stopped, listener);
+    }
+
+    private void expectConsumer(Session session, MessageConsumer consumer, Message... messages) throws JMSException {
+        Queue queue = createMock(Queue.class);
+        replay(queue);
+        expect(session.createQueue("source")).andReturn(queue);
+        expect(session.createConsumer(queue, null)).andReturn(consumer);
+        for (Message message : messages) {
+            expect(consumer.receive(anyLong())).andReturn(message);
+        }
+        expect(consumer.receive(anyLong())).andReturn(null).anyTimes();
+    }
+
+    private void expectProducer(Session session, MessageProducer producer) throws JMSException {
+        Queue queue = createMock(Queue.class);
+        replay(queue);
+        expect(session.createQueue("target")).andReturn(queue);
+        expect(session.createProducer(queue)).andReturn(producer);
+    }
+
+}
@@ -18,15 +18,11 @@ package org.apache.karaf.kar.internal;
 
 import java.io.File;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.namespace.QName;
 
+import org.apache.karaf.util.RootElementSniffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 /**
  * Simple helper to determine if a file is a feature repo
@@ -34,15 +30,10 @@ import org.xml.sax.SAXParseException;
 class FeatureDetector {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FeatureDetector.class);
-    
-    private DocumentBuilderFactory dbf;
 
-    FeatureDetector() {
-        dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-    }
     /**
-     * Check if a file is a features XML.
+     * Check if a file is a features XML. Only the content up to the root element is read,
+     * the rest of the document is neither parsed nor validated.
      *
      * @param artifact the file to check.
      * @return true if the artifact is a features XML, false else.
@@ -50,11 +41,10 @@ class FeatureDetector {
     boolean isFeaturesRepository(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                Document doc = parse(artifact);
-                String name = doc.getDocumentElement().getLocalName();
-                String uri  = doc.getDocumentElement().getNamespaceURI();
-                if ("features".equals(name) && (uri == null || "".equals(uri) || uri.startsWith("http://karaf.apache.org/xmlns/features/v"))) {
-                    return true;
+                QName root = RootElementSniffer.getRootElement(artifact);
+                if (root != null && "features".equals(root.getLocalPart())) {
+                    String uri = root.getNamespaceURI();
+                    return uri == null || "".equals(uri) || uri.startsWith("http://karaf.apache.org/xmlns/features/v");
                 }
             }
         } catch (Exception e) {
@@ -62,26 +52,5 @@ class FeatureDetector {
         }
         return false;
     }
-    
-    /**
-     * Parse a features XML.
-     *
-     * @param artifact the features XML to parse.
-     * @return the parsed document.
-     * @throws Exception in case of parsing failure.
-     */
-    private Document parse(File artifact) throws Exception {
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        db.setErrorHandler(new ErrorHandler() {
-            public void warning(SAXParseException exception) throws SAXException {
-            }
-            public void error(SAXParseException exception) throws SAXException {
-            }
-            public void fatalError(SAXParseException exception) throws SAXException {
-                throw exception;
-            }
-        });
-        return db.parse(artifact);
-    }
 
 }
@@ -17,17 +17,30 @@
 package org.apache.karaf.kar.internal;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 import org.slf4j.Logger;
@@ -59,6 +72,7 @@ public class Kar {
     public static final Logger LOGGER = LoggerFactory.getLogger(KarServiceImpl.class);
     public static final String MANIFEST_ATTR_KARAF_FEATURE_START = "Karaf-Feature-Start";
     public static final String MANIFEST_ATTR_KARAF_FEATURE_REPOS = "Karaf-Feature-Repos";
+    private static final int BUFFER_SIZE = 256 * 1024;
     private final URI karUri;
     private boolean shouldInstallFeatures;
     private List<URI> featureRepos;
@@ -75,6 +89,27 @@ public class Kar {
      * @param resourceDir directory to write the resource contents of the kar to
      */
     public void extract(File repoDir, File resourceDir) {
+        extract(repoDir, resourceDir, null, 1);
+    }
+
+    /**
+     * Extract a kar from a given URI into a repository dir and resource dir
+     * and populate shouldInstallFeatures and featureRepos.
+     * 
+     * A local kar file is opened for random access and its entries are extracted
+     * by the given number of threads. The repository entries that are already present
+     * with the same size and checksum in the system repository are not extracted.
+     *
+     * @param repoDir directory to write the repository contents of the kar to
+     * @param resourceDir directory to write the resource contents of the kar to
+     * @param systemRepoDir the system repository, or null to extract all the repository entries
+     * @param threads number of threads used to extract a local kar file
+     */
+    public void extract(File repoDir, File resourceDir, File systemRepoDir, int threads) {
+        if ("file".equals(karUri.getScheme())) {
+            extractFile(new File(karUri), repoDir, resourceDir, systemRepoDir, threads);
+            return;
+        }
         InputStream is = null;
         JarInputStream zipIs = null;
         FeatureDetector featureDetector = new FeatureDetector();
@@ -135,6 +170,163 @@ public class Kar {
         }
     }
 
+    private void extractFile(File karFile, File repoDir, File resourceDir, File systemRepoDir, int threads) {
+        JarFile jar = null;
+        ExecutorService executor = null;
+        FeatureDetector featureDetector = new FeatureDetector();
+        this.featureRepos = new ArrayList<URI>();
+        this.shouldInstallFeatures = true;
+
+        try {
+            jar = new JarFile(karFile);
+            repoDir.mkdirs();
+
+            if (!repoDir.isDirectory()) {
+                throw new RuntimeException("The KAR file " + karUri + " is already installed");
+            }
+
+            LOGGER.debug("Uncompress the KAR file {} into directory {} using {} threads", new Object[] { karUri, repoDir, threads });
+            boolean scanForRepos = true;
+
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                Attributes attr = manifest.getMainAttributes();
+                String featureStartSt = (String)attr
+                    .get(new Attributes.Name(MANIFEST_ATTR_KARAF_FEATURE_START));
+                if ("false".equals(featureStartSt)) {
+                    shouldInstallFeatures = false;
+                }
+                String featureReposAttr = (String)attr
+                    .get(new Attributes.Name(MANIFEST_ATTR_KARAF_FEATURE_REPOS));
+                if (featureReposAttr != null) {
+                    featureRepos.add(new URI(featureReposAttr));
+                    scanForRepos = false;
+                }
+            }
+
+            // Directories are created upfront, files are then extracted concurrently
+            List<ZipEntry> entries = new ArrayList<ZipEntry>();
+            List<File> destFiles = new ArrayList<File>();
+            List<File> candidateRepos = new ArrayList<File>();
+            int skipped = 0;
+            for (Enumeration<? extends ZipEntry> e = jar.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                File destFile;
+                if (entry.getName().startsWith("repository")) {
+                    String path = entry.getName().substring("repository/".length());
+                    destFile = new File(repoDir, path);
+                    if (!entry.isDirectory() && scanForRepos && path.endsWith(".xml")) {
+                        candidateRepos.add(destFile);
+                    } else if (!entry.isDirectory() && systemRepoDir != null
+                            && isSameContent(entry, new File(systemRepoDir, path))) {
+                        LOGGER.debug("Artifact {} is already present in the system repository", path);
+                        skipped++;
+                        continue;
+                    }
+                } else if (entry.getName().startsWith("resource")) {
+                    String path = entry.getName().substring("resource/".length());
+                    destFile = new File(resourceDir, path);
+                } else {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    LOGGER.debug("Creating directory {}", destFile.getName());
+                    destFile.mkdirs();
+                } else {
+                    destFile.getParentFile().mkdirs();
+                    entries.add(entry);
+                    destFiles.add(destFile);
+                }
+            }
+
+            final JarFile karJar = jar;
+            final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+                @Override
+                protected ByteBuffer initialValue() {
+                    return ByteBuffer.allocateDirect(BUFFER_SIZE);
+                }
+            };
+            executor = Executors.newFixedThreadPool(Math.max(1, threads));
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < entries.size(); i++) {
+                final ZipEntry entry = entries.get(i);
+                final File destFile = destFiles.get(i);
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        copyToFile(karJar.getInputStream(entry), destFile, buffers.get());
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            LOGGER.debug("Extracted {} entries of the KAR file {}, {} artifacts were already present in the system repository",
+                    new Object[] { entries.size(), karUri, skipped });
+
+            for (File candidate : candidateRepos) {
+                if (featureDetector.isFeaturesRepository(candidate)) {
+                    featureRepos.add(candidate.toURI());
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error extracting kar file " + karUri + " into dir " + repoDir + ": " + e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (jar != null) {
+                try {
+                    jar.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Error closing kar file", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a file has the same size and CRC-32 checksum as a KAR entry. The checksum of
+     * the entry is read from the central directory of the KAR, so the entry is not decompressed.
+     */
+    private static boolean isSameContent(ZipEntry entry, File file) throws IOException {
+        if (!file.isFile() || entry.getSize() < 0 || entry.getCrc() < 0 || file.length() != entry.getSize()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+        }
+        return crc.getValue() == entry.getCrc();
+    }
+
+    private static void copyToFile(InputStream is, File dest, ByteBuffer buffer) throws IOException {
+        ReadableByteChannel in = Channels.newChannel(is);
+        FileChannel out = new FileOutputStream(dest).getChannel();
+        try {
+            buffer.clear();
+            while (in.read(buffer) != -1 || buffer.position() > 0) {
+                buffer.flip();
+                out.write(buffer);
+                buffer.compact();
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
     /**
      * Extract an entry from a KAR file
      * 
@@ -65,6 +65,8 @@ public class KarServiceImpl implements KarService {
     private FeaturesService featuresService;
     
     private boolean noAutoRefreshBundles;
+    private File systemRepository;
+    private int extractThreads = 1;
 
     public KarServiceImpl(String karafBase, FeaturesService featuresService) {
         this.base = new File(karafBase);
@@ -87,7 +89,7 @@ public class KarServiceImpl implements KarService {
     @Override
     public void install(URI karUri, File repoDir, File resourceDir) throws Exception {
         Kar kar = new Kar(karUri);
-        kar.extract(repoDir, resourceDir);
+        kar.extract(repoDir, resourceDir, systemRepository, extractThreads);
         writeToFile(kar.getFeatureRepos(), new File(repoDir, FEATURE_CONFIG_FILE));
         for (URI uri : kar.getFeatureRepos()) {
             addToFeaturesRepositories(uri);
@@ -379,4 +381,20 @@ public class KarServiceImpl implements KarService {
         this.noAutoRefreshBundles = noAutoRefreshBundles;
     }
 
+    public File getSystemRepository() {
+        return systemRepository;
+    }
+
+    public void setSystemRepository(File systemRepository) {
+        this.systemRepository = systemRepository;
+    }
+
+    public int getExtractThreads() {
+        return extractThreads;
+    }
+
+    public void setExtractThreads(int extractThreads) {
+        this.extractThreads = extractThreads;
+    }
+
 }
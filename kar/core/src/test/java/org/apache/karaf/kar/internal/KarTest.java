@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.kar.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KarTest {
+
+    private static final String FEATURES = "<features xmlns=\"http://karaf.apache.org/xmlns/features/v1.2.0\" name=\"%s\"/>";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File karFile;
+
+    @Before
+    public void setUp() throws Exception {
+        karFile = new File(tempFolder.getRoot(), "test.kar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        JarOutputStream jar = new JarOutputStream(new FileOutputStream(karFile), manifest);
+        try {
+            // the feature repositories are not sorted by name, their order in the archive is kept
+            add(jar, "repository/org/foo/foo-features/1.0/foo-features-1.0-features.xml", String.format(FEATURES, "foo"));
+            add(jar, "repository/org/foo/foo/1.0/foo-1.0.jar", "foo");
+            add(jar, "repository/org/foo/bar/1.0/bar-1.0.jar", "bar");
+            add(jar, "repository/org/foo/bar/1.0/bar-1.0.pom", "<project/>");
+            add(jar, "repository/org/foo/bar-features/1.0/bar-features-1.0-features.xml", String.format(FEATURES, "bar"));
+            add(jar, "resource/etc/org.foo.cfg", "foo = bar");
+        } finally {
+            jar.close();
+        }
+    }
+
+    @Test
+    public void testExtractIntoEmptySystemRepository() throws Exception {
+        File system = tempFolder.newFolder("system");
+        File repo = new File(tempFolder.getRoot(), "repo");
+        File resources = new File(tempFolder.getRoot(), "resources");
+
+        Kar kar = new Kar(karFile.toURI());
+        kar.extract(repo, resources, system, 4);
+
+        assertEquals("foo", read(new File(repo, "org/foo/foo/1.0/foo-1.0.jar")));
+        assertEquals("bar", read(new File(repo, "org/foo/bar/1.0/bar-1.0.jar")));
+        assertEquals("<project/>", read(new File(repo, "org/foo/bar/1.0/bar-1.0.pom")));
+        assertEquals("foo = bar", read(new File(resources, "etc/org.foo.cfg")));
+        assertTrue(kar.isShouldInstallFeatures());
+        assertEquals(Arrays.asList(
+                new File(repo, "org/foo/foo-features/1.0/foo-features-1.0-features.xml").toURI(),
+                new File(repo, "org/foo/bar-features/1.0/bar-features-1.0-features.xml").toURI()),
+                kar.getFeatureRepos());
+    }
+
+    @Test
+    public void testExtractIntoPopulatedSystemRepository() throws Exception {
+        File system = tempFolder.newFolder("system");
+        write(new File(system, "org/foo/foo/1.0/foo-1.0.jar"), "foo");
+        // same size, but a different content
+        write(new File(system, "org/foo/bar/1.0/bar-1.0.jar"), "baz");
+        write(new File(system, "org/foo/foo-features/1.0/foo-features-1.0-features.xml"), String.format(FEATURES, "foo"));
+        File repo = new File(tempFolder.getRoot(), "repo");
+        File resources = new File(tempFolder.getRoot(), "resources");
+        // a stale file left in the repository is overwritten
+        write(new File(repo, "org/foo/bar/1.0/bar-1.0.pom"), "<stale/>");
+
+        Kar kar = new Kar(karFile.toURI());
+        kar.extract(repo, resources, system, 4);
+
+        assertFalse(new File(repo, "org/foo/foo/1.0/foo-1.0.jar").exists());
+        assertEquals("bar", read(new File(repo, "org/foo/bar/1.0/bar-1.0.jar")));
+        assertEquals("<project/>", read(new File(repo, "org/foo/bar/1.0/bar-1.0.pom")));
+        assertEquals("foo = bar", read(new File(resources, "etc/org.foo.cfg")));
+        // the feature repositories are always extracted, they are registered from the repository
+        assertTrue(new File(repo, "org/foo/foo-features/1.0/foo-features-1.0-features.xml").isFile());
+
+        Kar serial = new Kar(karFile.toURI());
+        serial.extract(new File(tempFolder.getRoot(), "serial"), new File(tempFolder.getRoot(), "serial-resources"));
+        assertEquals(2, kar.getFeatureRepos().size());
+        for (int i = 0; i < 2; i++) {
+            URI expected = serial.getFeatureRepos().get(i);
+            URI actual = kar.getFeatureRepos().get(i);
+            assertEquals(new File(expected).getName(), new File(actual).getName());
+        }
+    }
+
+    private static void add(JarOutputStream jar, String name, String content) throws IOException {
+        jar.putNextEntry(new ZipEntry(name));
+        jar.write(content.getBytes("UTF-8"));
+        jar.closeEntry();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[(int) file.length()];
+            int n = 0;
+            while (n < buffer.length) {
+                n += is.read(buffer, n, buffer.length - n);
+            }
+            return new String(buffer, "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+}
@@ -18,7 +18,9 @@ package org.apache.karaf.log.command;
 
 import java.io.PrintStream;
 
+import org.apache.karaf.log.core.Level;
 import org.apache.karaf.log.core.LogEventFormatter;
+import org.apache.karaf.log.core.Query;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
 import org.apache.karaf.shell.commands.Option;
@@ -39,6 +41,9 @@ public class DisplayLog extends LogCommandSupport {
     @Option(name = "-p", aliases = {}, description="Pattern for formatting the output", required = false, multiValued = false)
     protected String overridenPattern;
 
+    @Option(name = "-l", aliases = {"--level"}, description = "The minimal log level to display", required = false, multiValued = false)
+    protected String level;
+
     @Option(name = "--no-color", description="Disable syntax coloring of log events", required = false, multiValued = false)
     protected boolean noColor;
 
@@ -56,26 +61,29 @@ public class DisplayLog extends LogCommandSupport {
         
         final PrintStream out = System.out;
 
-        Iterable<PaxLoggingEvent> le = logService.getEvents(entries == 0 ? Integer.MAX_VALUE : entries);
-        for (PaxLoggingEvent event : le) {
-            printEvent(out, event);
+        Query query = getQuery();
+        for (PaxLoggingEvent event : logService.getEvents(query, -1, entries == 0 ? Integer.MAX_VALUE : entries).getEvents()) {
+            out.append(formatter.format(event, overridenPattern, noColor));
         }
         out.println();
         return null;
     }
-        
-    protected boolean checkIfFromRequestedLog(PaxLoggingEvent event) {
-    	return (event.getLoggerName().lastIndexOf(logger)>=0) ? true : false;
-    }
 
-    protected void printEvent(final PrintStream out, PaxLoggingEvent event) {
-        if ((logger != null) && 
-            (event != null)&&
-            (checkIfFromRequestedLog(event))) {
-                out.append(formatter.format(event, overridenPattern, noColor));
+    protected Query getQuery() {
+        Level minLevel = null;
+        if (level != null) {
+            try {
+                minLevel = Level.valueOf(level.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid level " + level + ", it must be TRACE, DEBUG, INFO, WARN or ERROR");
             }
-            else if ((event != null)&&(logger == null)){
-                out.append(formatter.format(event, overridenPattern, noColor));
+        }
+        return new Query(logger, minLevel);
+    }
+
+    protected void printEvent(final PrintStream out, PaxLoggingEvent event, Query query) {
+        if (query.matches(event)) {
+            out.append(formatter.format(event, overridenPattern, noColor));
         }
     }
 }
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.concurrent.*;
 
+import org.apache.karaf.log.core.Query;
 import org.apache.karaf.shell.commands.Command;
 import org.apache.karaf.shell.inject.Service;
 import org.ops4j.pax.logging.spi.PaxAppender;
@@ -76,11 +77,9 @@ public class LogTail extends DisplayLog {
         boolean doDisplay = true;
 
         public void run() {
-            Iterable<PaxLoggingEvent> le = logService.getEvents(entries == 0 ? Integer.MAX_VALUE : entries);
-            for (PaxLoggingEvent event : le) {
-                if (event != null) {
-                    printEvent(out, event);
-                }
+            Query query = getQuery();
+            for (PaxLoggingEvent event : logService.getEvents(query, -1, entries == 0 ? Integer.MAX_VALUE : entries).getEvents()) {
+                printEvent(out, event, query);
             }
             // Tail
             final BlockingQueue<PaxLoggingEvent> queue = new LinkedBlockingQueue<PaxLoggingEvent>();
@@ -94,9 +93,7 @@ public class LogTail extends DisplayLog {
                 
                 while (doDisplay) {
                     PaxLoggingEvent event = queue.take();
-                    if (event != null) {
-                        printEvent(out, event);
-                    }
+                    printEvent(out, event, query);
                 }
             } catch (InterruptedException e) {
                 // Ignore
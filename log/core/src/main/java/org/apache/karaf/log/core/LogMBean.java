@@ -18,6 +18,9 @@ package org.apache.karaf.log.core;
 
 import java.util.Map;
 
+import javax.management.MBeanException;
+import javax.management.openmbean.TabularData;
+
 /**
  * Log MBean.
  */
@@ -29,4 +32,15 @@ public interface LogMBean {
     void setLevel(String level);
     void setLevel(String logger, String level);
 
+    /**
+     * Get the stored log events matching the given criteria.
+     *
+     * @param logger a part of the logger name, or null/ROOT/ALL for all loggers.
+     * @param level the minimal level, or null for all levels.
+     * @param fromSequence the sequence to start from, or -1 for the last {@code limit} events.
+     * @param limit the maximum number of events to return.
+     * @return a table of events, with their sequence number that can be used to page through the events.
+     */
+    TabularData getEvents(String logger, String level, long fromSequence, int limit) throws MBeanException;
+
 }
@@ -32,6 +32,17 @@ public interface LogService {
     void clearEvents();
     Iterable<PaxLoggingEvent> getEvents();
     Iterable<PaxLoggingEvent> getEvents(int maxNum);
+
+    /**
+     * Selects the stored events matching the given query.
+     *
+     * @param query the criteria the events must match.
+     * @param fromSequence the sequence of the first event to consider, usually the
+     *                     {@link QueryResult#getNextSequence()} of a previous call. A negative value selects the
+     *                     last {@code limit} matching events.
+     * @param limit the maximum number of events to return.
+     */
+    QueryResult getEvents(Query query, long fromSequence, int limit);
     PaxLoggingEvent getLastException(String logger);
     void addAppender(PaxAppender appender);
     void removeAppender(PaxAppender appender);
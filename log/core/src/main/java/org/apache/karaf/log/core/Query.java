@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.log.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * Criteria to select log events with {@link LogService#getEvents(Query, long, int)}.
+ * All criteria are optional, a new query matches all the events.
+ */
+public class Query {
+
+    // the levels by name, so that finding the level of an event does not allocate anything
+    private static final Map<String, Level> LEVELS = new HashMap<String, Level>();
+
+    static {
+        for (Level l : Level.values()) {
+            if (l != Level.DEFAULT) {
+                LEVELS.put(l.name(), l);
+            }
+        }
+        LEVELS.put("FATAL", Level.ERROR);
+    }
+
+    private Level level;
+    private String logger;
+    private long fromTime = 0;
+    private long toTime = Long.MAX_VALUE;
+    private boolean exceptionsOnly;
+
+    public Query() {
+    }
+
+    public Query(String logger, Level level) {
+        setLogger(logger);
+        setLevel(level);
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Only select the events with at least the given level. {@code null} or {@link Level#DEFAULT} select all levels.
+     */
+    public void setLevel(Level level) {
+        this.level = level == Level.DEFAULT ? null : level;
+    }
+
+    public String getLogger() {
+        return logger;
+    }
+
+    /**
+     * Only select the events of the loggers whose name contains the given string.
+     * {@code null}, {@code ROOT} or {@code ALL} select all loggers.
+     */
+    public void setLogger(String logger) {
+        if (logger != null && (logger.equalsIgnoreCase("ROOT") || logger.equalsIgnoreCase("ALL") || logger.length() == 0)) {
+            logger = null;
+        }
+        this.logger = logger;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    /**
+     * Only select the events logged at or after the given time, in milliseconds.
+     */
+    public void setFromTime(long fromTime) {
+        this.fromTime = fromTime;
+    }
+
+    public long getToTime() {
+        return toTime;
+    }
+
+    /**
+     * Only select the events logged before the given time, in milliseconds.
+     */
+    public void setToTime(long toTime) {
+        this.toTime = toTime;
+    }
+
+    public boolean isExceptionsOnly() {
+        return exceptionsOnly;
+    }
+
+    /**
+     * Only select the events carrying an exception.
+     */
+    public void setExceptionsOnly(boolean exceptionsOnly) {
+        this.exceptionsOnly = exceptionsOnly;
+    }
+
+    /**
+     * Checks a single event against this query, e.g. for events received through an appender.
+     */
+    public boolean matches(PaxLoggingEvent event) {
+        if (event == null) {
+            return false;
+        }
+        if (level != null && getLevel(event).ordinal() < level.ordinal()) {
+            return false;
+        }
+        if (logger != null && (event.getLoggerName() == null || event.getLoggerName().indexOf(logger) < 0)) {
+            return false;
+        }
+        if (event.getTimeStamp() < fromTime || event.getTimeStamp() >= toTime) {
+            return false;
+        }
+        return !exceptionsOnly || event.getThrowableStrRep() != null;
+    }
+
+    /**
+     * @return the {@link Level} of the event, FATAL events are reported as {@link Level#ERROR} and unknown levels
+     * as {@link Level#TRACE}.
+     */
+    public static Level getLevel(PaxLoggingEvent event) {
+        String name = event.getLevel() != null ? event.getLevel().toString() : null;
+        if (name == null) {
+            return Level.TRACE;
+        }
+        Level level = LEVELS.get(name);
+        if (level == null) {
+            // only upper case the names which are not already
+            level = LEVELS.get(name.toUpperCase());
+        }
+        return level != null ? level : Level.TRACE;
+    }
+
+}
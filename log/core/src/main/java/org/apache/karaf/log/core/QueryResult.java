@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.log.core;
+
+import java.util.List;
+
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * The events selected by {@link LogService#getEvents(Query, long, int)}, oldest first, with the cursor to use
+ * to get the events logged afterwards.
+ */
+public class QueryResult {
+
+    private final List<PaxLoggingEvent> events;
+    private final long[] sequences;
+    private final long nextSequence;
+
+    public QueryResult(List<PaxLoggingEvent> events, long[] sequences, long nextSequence) {
+        this.events = events;
+        this.sequences = sequences;
+        this.nextSequence = nextSequence;
+    }
+
+    public List<PaxLoggingEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the sequence number of the event at the given index of {@link #getEvents()}.
+     */
+    public long getSequence(int index) {
+        return sequences[index];
+    }
+
+    /**
+     * @return the sequence to pass to the next query to continue where this one stopped.
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+}
@@ -16,11 +16,24 @@
  */
 package org.apache.karaf.log.core.internal;
 
+import javax.management.MBeanException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
 
+import org.apache.karaf.log.core.Level;
 import org.apache.karaf.log.core.LogMBean;
 import org.apache.karaf.log.core.LogService;
+import org.apache.karaf.log.core.Query;
+import org.apache.karaf.log.core.QueryResult;
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 
 import java.util.Map;
 
@@ -56,4 +69,29 @@ public class LogMBeanImpl extends StandardMBean implements LogMBean {
         this.logService.setLevel(logger, level);
     }
 
+    @Override
+    public TabularData getEvents(String logger, String level, long fromSequence, int limit) throws MBeanException {
+        try {
+            CompositeType eventType = new CompositeType("Event", "Log event",
+                    new String[]{"Sequence", "Timestamp", "Level", "Logger", "Thread", "Message"},
+                    new String[]{"Sequence number of the event", "Time of the event", "Level of the event", "Name of the logger", "Name of the thread", "Rendered message"},
+                    new OpenType[]{SimpleType.LONG, SimpleType.LONG, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING});
+            TabularType tableType = new TabularType("Events", "Table of log events", eventType, new String[]{"Sequence"});
+            TabularData table = new TabularDataSupport(tableType);
+            Query query = new Query(logger, level != null ? Level.valueOf(level.toUpperCase()) : null);
+            QueryResult result = logService.getEvents(query, fromSequence, limit);
+            for (int i = 0; i < result.getEvents().size(); i++) {
+                PaxLoggingEvent event = result.getEvents().get(i);
+                CompositeData data = new CompositeDataSupport(eventType,
+                        new String[]{"Sequence", "Timestamp", "Level", "Logger", "Thread", "Message"},
+                        new Object[]{result.getSequence(i), event.getTimeStamp(), Query.getLevel(event).name(),
+                                event.getLoggerName(), event.getThreadName(), event.getRenderedMessage()});
+                table.put(data);
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(e, e.getMessage());
+        }
+    }
+
 }
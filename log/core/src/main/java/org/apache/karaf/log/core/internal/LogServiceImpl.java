@@ -19,11 +19,14 @@ package org.apache.karaf.log.core.internal;
 import java.io.IOException;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 import org.apache.karaf.log.core.Level;
 import org.apache.karaf.log.core.LogService;
+import org.apache.karaf.log.core.Query;
+import org.apache.karaf.log.core.QueryResult;
 import org.ops4j.pax.logging.spi.PaxAppender;
 import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 import org.osgi.service.cm.Configuration;
@@ -212,6 +215,11 @@ public class LogServiceImpl implements LogService {
         return events.getElements(maxNum);
     }
 
+    @Override
+    public QueryResult getEvents(Query query, long fromSequence, int limit) {
+        return events.query(query != null ? query : new Query(), fromSequence, limit);
+    }
+
     @Override
     public void clearEvents() {
         events.clear();
@@ -219,24 +227,18 @@ public class LogServiceImpl implements LogService {
     
     @Override
     public PaxLoggingEvent getLastException(String logger) {
-        PaxLoggingEvent throwableEvent = null;
-        Iterable<PaxLoggingEvent> le = getEvents();
-        for (PaxLoggingEvent event : le) {
-            // if this is an exception, and the log is the same as the requested log,
-            // then save this exception and continue iterating from oldest to newest
-            if ((event.getThrowableStrRep() != null)
-                    &&(logger != null)
-                    &&(checkIfFromRequestedLog(event, logger))) {
-                throwableEvent = event;
-              // Do not break, as we iterate from the oldest to the newest event
-            } else if ((event.getThrowableStrRep() != null)&&(logger == null)) {
-                // now check if there has been no log passed in, and if this is an exception
-                // then save this exception and continue iterating from oldest to newest
-                throwableEvent = event;             
+        Query query = new Query();
+        query.setExceptionsOnly(true);
+        // only the events with an exception are looked at, thanks to the index
+        List<PaxLoggingEvent> exceptions = events.query(query, -1, logger == null ? 1 : Integer.MAX_VALUE).getEvents();
+        // iterate from the newest to the oldest exception
+        for (int i = exceptions.size() - 1; i >= 0; i--) {
+            PaxLoggingEvent event = exceptions.get(i);
+            if (logger == null || checkIfFromRequestedLog(event, logger)) {
+                return event;
             }
         }
-
-        return throwableEvent;
+        return null;
     }
 
     @Override
@@ -20,105 +20,481 @@ package org.apache.karaf.log.core.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
+import org.apache.karaf.log.core.Level;
+import org.apache.karaf.log.core.Query;
+import org.apache.karaf.log.core.QueryResult;
 import org.ops4j.pax.logging.spi.PaxAppender;
 import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 
 /**
- * A list that only keep the last N elements added
+ * A list that only keep the last N elements added.
+ * <p/>
+ * The elements are stored in a lock-free ring buffer: each added event gets a sequence number and is stored in the
+ * slot {@code sequence % size}. The slot holds an immutable entry with the sequence of the event, which allows
+ * readers to detect (and skip) slots that have been overwritten, so that logging threads never wait on readers.
+ * The entry is published with a single compare-and-set which never replaces the entry of a later round, so writers
+ * never wait on each other either: a writer stalled before publishing its event does not hold up the writers of the
+ * following rounds, its event is just dropped if one of them has already published in the slot.
+ * <p/>
+ * Next to each event, the entry holds its timestamp and a packed int with its level, whether it carries an exception
+ * and the id of its logger, so that {@link #query(Query, long, int)} checks the events without calling them and never
+ * copies the whole buffer. The events are also grouped in blocks of {@link #BLOCK_SIZE} consecutive sequences, with a
+ * summary of the levels, exception flags and loggers found in each block: the query skips the blocks which can't
+ * contain a matching event instead of checking each of their events.
+ * <p/>
+ * Events are delivered to the additional appenders (e.g. the one used by {@code log:tail}) by a dispatcher thread.
+ * Each appender has its own bounded queue; when it is full, events for that appender are dropped and counted
+ * instead of blocking the logging thread.
  */
 public class LruList implements PaxAppender {
 
-    private PaxLoggingEvent[] elements;
-    private transient int start = 0;
-    private transient int end = 0;
-    private transient boolean full = false;
+    public static final int DEFAULT_APPENDER_QUEUE_SIZE = 1024;
+
+    static final String DISPATCHER_THREAD_NAME = "Karaf Log Appender Dispatcher";
+
+    static final int BLOCK_SIZE = 64;
+
+    // the number of loggers which get their own id, the other ones share OTHER_LOGGERS
+    static final int MAX_LOGGER_IDS = 4096;
+    private static final int OTHER_LOGGERS = 0;
+
+    // the bits of a block summary: the levels, the exception flag, and a bloom filter of the logger ids
+    private static final int EXCEPTION_BIT = 1 << 5;
+    private static final int LOGGER_BITS_SHIFT = 6;
+    private static final int LOGGER_BITS = 32 - LOGGER_BITS_SHIFT;
+
     private final int maxElements;
-    private final List<PaxAppender> appenders;
+    private final int appenderQueueSize;
+    // empty slots are null
+    private final AtomicReferenceArray<Entry> entries;
+    // the number of the block in the high int, its summary in the low int
+    private final AtomicLongArray summaries;
+    private final ConcurrentMap<String, Integer> loggerIds = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger nextLoggerId = new AtomicInteger(OTHER_LOGGERS + 1);
+    private final AtomicLong next = new AtomicLong();
+    private volatile long cleared = 0;
+
+    private final List<AppenderQueue> appenders = new CopyOnWriteArrayList<AppenderQueue>();
+    private volatile Thread dispatcher;
+    private volatile boolean closed;
 
     public LruList(int size) {
+        this(size, DEFAULT_APPENDER_QUEUE_SIZE);
+    }
+
+    public LruList(int size, int appenderQueueSize) {
         if (size <= 0) {
             throw new IllegalArgumentException("The size must be greater than 0");
         }
-        elements = new PaxLoggingEvent[size];
-        maxElements = elements.length;
-        appenders = new ArrayList<PaxAppender>();
+        if (appenderQueueSize <= 0) {
+            throw new IllegalArgumentException("The appender queue size must be greater than 0");
+        }
+        maxElements = size;
+        this.appenderQueueSize = appenderQueueSize;
+        entries = new AtomicReferenceArray<Entry>(size);
+        // enough summaries for all the blocks overlapping the buffer
+        summaries = new AtomicLongArray(size / BLOCK_SIZE + 2);
     }
 
-    public synchronized int size() {
-        int size = 0;
-        if (end < start) {
-            size = maxElements - start + end;
-        } else if (end == start) {
-            size = (full ? maxElements : 0);
-        } else {
-            size = end - start;
-        }
-        return size;
+    public int size() {
+        long end = next.get();
+        return (int) Math.min(end - cleared, maxElements);
     }
 
-    public synchronized void clear() {
-        start = 0;
-        end = 0;
-        elements = new PaxLoggingEvent[maxElements];
+    public void clear() {
+        long end = next.get();
+        cleared = end;
+        for (int i = 0; i < maxElements; i++) {
+            // Only release slots that haven't been rewritten since
+            Entry entry = entries.get(i);
+            if (entry != null && entry.sequence < end) {
+                entries.compareAndSet(i, entry, null);
+            }
+        }
     }
 
-    public synchronized void add(PaxLoggingEvent element) {
+    public void add(PaxLoggingEvent element) {
         if (null == element) {
              throw new NullPointerException("Attempted to add null object to buffer");
         }
-        if (size() == maxElements) {
-            Object e = elements[start];
-            if (null != e) {
-                elements[start++] = null;
-                if (start >= maxElements) {
-                    start = 0;
+        // registers the logger before the event gets its sequence, see Matcher
+        int attrs = attributes(element);
+        long seq = next.getAndIncrement();
+        Entry entry = new Entry(seq, element, element.getTimeStamp(), attrs);
+        int index = (int) (seq % maxElements);
+        // summarized before being published, so that a query never skips a published event
+        summarize(seq / BLOCK_SIZE, summary(attrs));
+        while (true) {
+            Entry current = entries.get(index);
+            if (current != null && current.sequence > seq) {
+                // a writer of a later round was faster, this event has already been overwritten
+                break;
+            }
+            if (entries.compareAndSet(index, current, entry)) {
+                break;
+            }
+        }
+
+        if (!appenders.isEmpty()) {
+            boolean queued = false;
+            for (AppenderQueue appender : appenders) {
+                if (appender.queue.offer(element)) {
+                    queued = true;
+                } else {
+                    appender.dropped.incrementAndGet();
                 }
-                full = false;
+            }
+            Thread t = dispatcher;
+            if (queued && t != null) {
+                LockSupport.unpark(t);
             }
         }
-        elements[end++] = element;
-        if (end >= maxElements) {
-            end = 0;
+    }
+
+    public Iterable<PaxLoggingEvent> getElements() {
+        return getElements(maxElements);
+    }
+
+    public Iterable<PaxLoggingEvent> getElements(int nb) {
+        long end = next.get();
+        long start = Math.max(Math.max(cleared, end - maxElements), end - Math.max(0, nb));
+        List<PaxLoggingEvent> result = new ArrayList<PaxLoggingEvent>((int) Math.max(0, end - start));
+        for (long seq = start; seq < end; seq++) {
+            PaxLoggingEvent event = get(seq);
+            if (event != null) {
+                result.add(event);
+            }
         }
-        if (end == start) {
-            full = true;
+        return result;
+    }
+
+    /**
+     * Returns the event with the given sequence number, or {@code null} if it has been overwritten in the
+     * meantime or is still being written.
+     */
+    PaxLoggingEvent get(long seq) {
+        Entry entry = entries.get((int) (seq % maxElements));
+        return entry != null && entry.sequence == seq ? entry.event : null;
+    }
+
+    /**
+     * @return the sequence number that the next added event will get.
+     */
+    public long getNextSequence() {
+        return next.get();
+    }
+
+    /**
+     * Selects events matching the query.
+     *
+     * @param query the criteria the events must match.
+     * @param fromSequence the sequence of the first event to consider, typically the
+     *                     {@link QueryResult#getNextSequence()} of a previous query. A negative value selects the
+     *                     last {@code limit} matching events instead.
+     * @param limit the maximum number of events to return.
+     */
+    public QueryResult query(Query query, long fromSequence, int limit) {
+        long end = next.get();
+        // built after reading the end, so that it knows all the loggers of the events before it
+        Matcher matcher = new Matcher(query);
+        long oldest = Math.max(cleared, end - maxElements);
+        limit = Math.max(0, limit);
+
+        List<PaxLoggingEvent> events = new ArrayList<PaxLoggingEvent>();
+        // grown as events are found, the limit is often much larger than the number of matching events
+        long[] seqs = new long[(int) Math.min(Math.min(limit, end - oldest), BLOCK_SIZE)];
+        long nextSequence;
+        // the timestamps are not in sequence order when several threads log at the same time, so the time
+        // criteria are checked on each event like the other ones
+        if (fromSequence >= 0) {
+            long seq = Math.max(fromSequence, oldest);
+            while (seq < end && events.size() < limit) {
+                long block = seq / BLOCK_SIZE;
+                long blockEnd = Math.min(end, (block + 1) * BLOCK_SIZE);
+                if (!matcher.mayMatch(block)) {
+                    seq = blockEnd;
+                    continue;
+                }
+                for (; seq < blockEnd && events.size() < limit; seq++) {
+                    PaxLoggingEvent event = matcher.match(seq);
+                    if (event != null) {
+                        seqs = append(seqs, events.size(), seq);
+                        events.add(event);
+                    }
+                }
+            }
+            nextSequence = seq;
+        } else {
+            long seq = end;
+            while (seq > oldest && events.size() < limit) {
+                long block = (seq - 1) / BLOCK_SIZE;
+                long blockStart = Math.max(oldest, block * BLOCK_SIZE);
+                if (!matcher.mayMatch(block)) {
+                    seq = blockStart;
+                    continue;
+                }
+                while (seq > blockStart && events.size() < limit) {
+                    seq--;
+                    PaxLoggingEvent event = matcher.match(seq);
+                    if (event != null) {
+                        seqs = append(seqs, events.size(), seq);
+                        events.add(event);
+                    }
+                }
+            }
+            Collections.reverse(events);
+            for (int i = 0, j = events.size() - 1; i < j; i++, j--) {
+                long tmp = seqs[i];
+                seqs[i] = seqs[j];
+                seqs[j] = tmp;
+            }
+            nextSequence = end;
         }
-        for (PaxAppender appender : appenders) {
-            try {
-                appender.doAppend(element);
-            } catch (Throwable t) {
-                // Ignore
+        return new QueryResult(events, seqs, nextSequence);
+    }
+
+    private static long[] append(long[] seqs, int size, long seq) {
+        if (size == seqs.length) {
+            seqs = Arrays.copyOf(seqs, Math.max(1, size * 2));
+        }
+        seqs[size] = seq;
+        return seqs;
+    }
+
+    private int attributes(PaxLoggingEvent event) {
+        String logger = event.getLoggerName() != null ? event.getLoggerName() : "";
+        Integer id = loggerIds.get(logger);
+        if (id == null) {
+            id = OTHER_LOGGERS;
+            // the loggers are never forgotten, so only the first ones get an id
+            if (nextLoggerId.get() < MAX_LOGGER_IDS) {
+                Integer newId = nextLoggerId.getAndIncrement();
+                if (newId < MAX_LOGGER_IDS) {
+                    id = loggerIds.putIfAbsent(logger, newId);
+                    if (id == null) {
+                        id = newId;
+                    }
+                }
             }
         }
+        int level = Query.getLevel(event).ordinal();
+        return (id << 4) | (level << 1) | (event.getThrowableStrRep() != null ? 1 : 0);
     }
 
-    public synchronized Iterable<PaxLoggingEvent> getElements() {
-        return getElements(size());
+    private static int summary(int attrs) {
+        return (1 << ((attrs >> 1) & 0x7)) | ((attrs & 1) != 0 ? EXCEPTION_BIT : 0) | loggerBit(attrs >>> 4);
     }
 
-    public synchronized Iterable<PaxLoggingEvent> getElements(int nb) {
-        int s = size();
-        nb = Math.min(Math.max(0, nb), s);
-        PaxLoggingEvent[] e = new PaxLoggingEvent[nb];
-        for (int i = 0; i < nb; i++) {
-            e[i] = elements[(i + s - nb + start) % maxElements];
+    private static int loggerBit(int loggerId) {
+        return 1 << (LOGGER_BITS_SHIFT + loggerId % LOGGER_BITS);
+    }
+
+    private void summarize(long block, int bits) {
+        int index = (int) (block % summaries.length());
+        while (true) {
+            long current = summaries.get(index);
+            int currentBlock = (int) (current >>> 32);
+            long updated;
+            if (currentBlock == (int) block) {
+                updated = current | (bits & 0xFFFFFFFFL);
+            } else if (currentBlock - (int) block < 0) {
+                // the first event of the block replaces the summary of an older block
+                updated = (block << 32) | (bits & 0xFFFFFFFFL);
+            } else {
+                // the summary already belongs to a newer block, the queries check this one event by event
+                return;
+            }
+            if (current == updated || summaries.compareAndSet(index, current, updated)) {
+                return;
+            }
         }
-        return Arrays.asList(e);
     }
 
-    public synchronized void addAppender(PaxAppender appender) {
-        this.appenders.add(appender);
+    public void addAppender(PaxAppender appender) {
+        appenders.add(new AppenderQueue(appender, appenderQueueSize));
+        startDispatcher();
     }
 
-    public synchronized void removeAppender(PaxAppender appender) {
-        this.appenders.remove(appender);
+    public void removeAppender(PaxAppender appender) {
+        for (AppenderQueue queue : appenders) {
+            if (queue.appender == appender) {
+                appenders.remove(queue);
+            }
+        }
+    }
+
+    /**
+     * @return the number of events that could not be delivered to the additional appenders because their queue
+     * was full.
+     */
+    public long getDroppedEvents() {
+        long dropped = 0;
+        for (AppenderQueue appender : appenders) {
+            dropped += appender.dropped.get();
+        }
+        return dropped;
+    }
+
+    public void close() {
+        closed = true;
+        Thread t = dispatcher;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
     }
-    
+
     public void doAppend(PaxLoggingEvent event) {
         event.getProperties(); // ensure MDC properties are copied
         add(event);
     }
 
+    private synchronized void startDispatcher() {
+        if (dispatcher != null || closed) {
+            return;
+        }
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, DISPATCHER_THREAD_NAME);
+        t.setDaemon(true);
+        dispatcher = t;
+        t.start();
+    }
+
+    private void dispatch() {
+        while (!closed) {
+            boolean delivered = false;
+            for (AppenderQueue appender : appenders) {
+                PaxLoggingEvent event;
+                while ((event = appender.queue.poll()) != null) {
+                    delivered = true;
+                    try {
+                        appender.appender.doAppend(event);
+                    } catch (Throwable t) {
+                        // Ignore
+                    }
+                }
+            }
+            if (!delivered) {
+                // woken up by add() as soon as there is something to deliver
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+        dispatcher = null;
+    }
+
+    private class Matcher {
+        private final int minLevel;
+        private final BitSet loggers;
+        private final String loggerName;
+        private final int levelBits;
+        private final int loggerBits;
+        private final long fromTime;
+        private final long toTime;
+        private final boolean exceptionsOnly;
+
+        Matcher(Query query) {
+            minLevel = query.getLevel() != null ? query.getLevel().ordinal() : Level.TRACE.ordinal();
+            levelBits = ~((1 << minLevel) - 1) & (EXCEPTION_BIT - 1);
+            loggerName = query.getLogger();
+            if (loggerName != null) {
+                loggers = new BitSet();
+                // the events of the loggers without an id have to be checked one by one
+                int bits = loggerBit(OTHER_LOGGERS);
+                for (Map.Entry<String, Integer> entry : loggerIds.entrySet()) {
+                    if (entry.getKey().indexOf(loggerName) >= 0) {
+                        loggers.set(entry.getValue());
+                        bits |= loggerBit(entry.getValue());
+                    }
+                }
+                loggerBits = bits;
+            } else {
+                loggers = null;
+                loggerBits = -1;
+            }
+            fromTime = query.getFromTime();
+            toTime = query.getToTime();
+            exceptionsOnly = query.isExceptionsOnly();
+        }
+
+        /**
+         * @return false if the summary of the block shows that none of its events match.
+         */
+        boolean mayMatch(long block) {
+            long summary = summaries.get((int) (block % summaries.length()));
+            if ((int) (summary >>> 32) != (int) block) {
+                // the summary belongs to another block
+                return true;
+            }
+            int bits = (int) summary;
+            return (bits & levelBits) != 0
+                    && (!exceptionsOnly || (bits & EXCEPTION_BIT) != 0)
+                    && (bits & loggerBits) != 0;
+        }
+
+        PaxLoggingEvent match(long seq) {
+            Entry entry = entries.get((int) (seq % maxElements));
+            if (entry == null || entry.sequence != seq) {
+                return null;
+            }
+            int attrs = entry.attributes;
+            long time = entry.timestamp;
+            int loggerId = attrs >>> 4;
+            if (((attrs >> 1) & 0x7) < minLevel
+                    || (exceptionsOnly && (attrs & 1) == 0)
+                    || (loggers != null && loggerId != OTHER_LOGGERS && !loggers.get(loggerId))
+                    || time < fromTime || time >= toTime) {
+                return null;
+            }
+            PaxLoggingEvent event = entry.event;
+            if (loggers != null && loggerId == OTHER_LOGGERS
+                    && (event.getLoggerName() == null || event.getLoggerName().indexOf(loggerName) < 0)) {
+                return null;
+            }
+            return event;
+        }
+    }
+
+    private static class Entry {
+        final long sequence;
+        final PaxLoggingEvent event;
+        final long timestamp;
+        final int attributes;
+
+        Entry(long sequence, PaxLoggingEvent event, long timestamp, int attributes) {
+            this.sequence = sequence;
+            this.event = event;
+            this.timestamp = timestamp;
+            this.attributes = attributes;
+        }
+    }
+
+    private static class AppenderQueue {
+        final PaxAppender appender;
+        final BlockingQueue<PaxLoggingEvent> queue;
+        final AtomicLong dropped = new AtomicLong();
+
+        AppenderQueue(PaxAppender appender, int size) {
+            this.appender = appender;
+            this.queue = new ArrayBlockingQueue<PaxLoggingEvent>(size);
+        }
+    }
+
 }
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.log.core.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.karaf.log.core.Level;
+import org.apache.karaf.log.core.Query;
+import org.apache.karaf.log.core.QueryResult;
+import org.easymock.EasyMock;
+import org.ops4j.pax.logging.spi.PaxAppender;
+import org.ops4j.pax.logging.spi.PaxLevel;
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+public class LruListTest extends TestCase {
+
+    public void testKeepsLastElements() {
+        LruList list = new LruList(3);
+        assertEquals(0, list.size());
+
+        List<PaxLoggingEvent> events = createEvents(5);
+        for (PaxLoggingEvent event : events) {
+            list.add(event);
+        }
+
+        assertEquals(3, list.size());
+        assertEquals(events.subList(2, 5), toList(list.getElements()));
+        assertEquals(events.subList(3, 5), toList(list.getElements(2)));
+        assertEquals(events.subList(2, 5), toList(list.getElements(Integer.MAX_VALUE)));
+        assertTrue(toList(list.getElements(0)).isEmpty());
+    }
+
+    public void testClear() {
+        LruList list = new LruList(3);
+        List<PaxLoggingEvent> events = createEvents(4);
+        list.add(events.get(0));
+        list.add(events.get(1));
+        list.clear();
+        assertEquals(0, list.size());
+        assertTrue(toList(list.getElements()).isEmpty());
+
+        list.add(events.get(2));
+        list.add(events.get(3));
+        assertEquals(2, list.size());
+        assertEquals(events.subList(2, 4), toList(list.getElements()));
+    }
+
+    public void testConcurrentWritersOfTheSameSlot() throws Exception {
+        final LruList list = new LruList(2);
+        int threads = 4;
+        final int perThread = 500;
+        final List<List<PaxLoggingEvent>> events = new ArrayList<List<PaxLoggingEvent>>();
+        for (int t = 0; t < threads; t++) {
+            List<PaxLoggingEvent> created = new ArrayList<PaxLoggingEvent>();
+            for (int i = 0; i < perThread; i++) {
+                created.add(createEvent("logger" + t, "INFO", t * perThread + i, false));
+            }
+            events.add(created);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final List<PaxLoggingEvent> toAdd = events.get(t);
+            Thread writer = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (PaxLoggingEvent event : toAdd) {
+                        list.add(event);
+                    }
+                }
+            };
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join(10000);
+        }
+
+        long end = list.getNextSequence();
+        assertEquals(threads * perThread, end);
+        for (long seq = end - 2; seq < end; seq++) {
+            PaxLoggingEvent event = list.get(seq);
+            assertNotNull(event);
+            // the slot holds the timestamp of its own event, not the one of another writer
+            Query query = new Query();
+            query.setFromTime(event.getTimeStamp());
+            query.setToTime(event.getTimeStamp() + 1);
+            QueryResult result = list.query(query, seq, 1);
+            assertEquals(Arrays.asList(event), result.getEvents());
+            assertEquals(seq, result.getSequence(0));
+        }
+    }
+
+    public void testAppendersDoNotBlockLogging() throws Exception {
+        LruList list = new LruList(10, 2);
+        try {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<PaxLoggingEvent> received = new ArrayList<PaxLoggingEvent>();
+            final CountDownLatch allReceived = new CountDownLatch(3);
+            list.addAppender(new PaxAppender() {
+                public void doAppend(PaxLoggingEvent event) {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    synchronized (received) {
+                        received.add(event);
+                    }
+                    allReceived.countDown();
+                }
+            });
+
+            List<PaxLoggingEvent> events = createEvents(6);
+            list.add(events.get(0));
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+            // the appender is stuck on the first event, its queue can hold two more
+            for (PaxLoggingEvent event : events.subList(1, 6)) {
+                list.add(event);
+            }
+            assertEquals(6, list.size());
+            assertEquals(3, list.getDroppedEvents());
+
+            release.countDown();
+            assertTrue(allReceived.await(5, TimeUnit.SECONDS));
+            synchronized (received) {
+                assertEquals(events.subList(0, 3), received);
+            }
+        } finally {
+            list.close();
+        }
+    }
+
+    public void testQuery() {
+        LruList list = new LruList(10);
+        PaxLoggingEvent e0 = createEvent("org.apache.karaf.shell", "INFO", 100, false);
+        PaxLoggingEvent e1 = createEvent("org.apache.karaf.features", "ERROR", 200, true);
+        PaxLoggingEvent e2 = createEvent("org.apache.felix", "DEBUG", 300, false);
+        PaxLoggingEvent e3 = createEvent("org.apache.karaf.shell.console", "WARN", 400, true);
+        list.add(e0);
+        list.add(e1);
+        list.add(e2);
+        list.add(e3);
+
+        QueryResult result = list.query(new Query(), -1, 10);
+        assertEquals(Arrays.asList(e0, e1, e2, e3), result.getEvents());
+        assertEquals(4, result.getNextSequence());
+
+        result = list.query(new Query("org.apache.karaf", null), -1, 10);
+        assertEquals(Arrays.asList(e0, e1, e3), result.getEvents());
+        assertEquals(3, result.getSequence(2));
+
+        // any part of the logger name
+        result = list.query(new Query("shell", null), -1, 10);
+        assertEquals(Arrays.asList(e0, e3), result.getEvents());
+
+        result = list.query(new Query("ROOT", Level.WARN), -1, 10);
+        assertEquals(Arrays.asList(e1, e3), result.getEvents());
+
+        // the last matching events
+        result = list.query(new Query("org.apache.karaf.shell", null), -1, 1);
+        assertEquals(Arrays.asList(e3), result.getEvents());
+
+        // paging from a sequence
+        result = list.query(new Query(), 0, 2);
+        assertEquals(Arrays.asList(e0, e1), result.getEvents());
+        result = list.query(new Query(), result.getNextSequence(), 2);
+        assertEquals(Arrays.asList(e2, e3), result.getEvents());
+        assertEquals(4, result.getNextSequence());
+
+        Query query = new Query();
+        query.setExceptionsOnly(true);
+        assertEquals(Arrays.asList(e1, e3), list.query(query, -1, 10).getEvents());
+
+        query = new Query();
+        query.setFromTime(200);
+        query.setToTime(400);
+        assertEquals(Arrays.asList(e1, e2), list.query(query, 0, 10).getEvents());
+        assertEquals(Arrays.asList(e1, e2), list.query(query, -1, 10).getEvents());
+    }
+
+    public void testQueryAfterOverwrite() {
+        LruList list = new LruList(2);
+        PaxLoggingEvent e0 = createEvent("a", "INFO", 1, false);
+        PaxLoggingEvent e1 = createEvent("b", "INFO", 2, false);
+        PaxLoggingEvent e2 = createEvent("a", "INFO", 3, false);
+        list.add(e0);
+        list.add(e1);
+        list.add(e2);
+
+        QueryResult result = list.query(new Query("a", null), 0, 10);
+        assertEquals(Arrays.asList(e2), result.getEvents());
+        assertEquals(2, result.getSequence(0));
+
+        list.clear();
+        assertTrue(list.query(new Query(), -1, 10).getEvents().isEmpty());
+        assertTrue(list.query(new Query(), 0, 10).getEvents().isEmpty());
+    }
+
+    public void testQueryOutOfOrderTimestamps() {
+        LruList list = new LruList(10);
+        PaxLoggingEvent e0 = createEvent("a", "INFO", 100, false);
+        PaxLoggingEvent e1 = createEvent("a", "INFO", 300, false);
+        PaxLoggingEvent e2 = createEvent("a", "INFO", 200, false);
+        PaxLoggingEvent e3 = createEvent("a", "INFO", 400, false);
+        list.add(e0);
+        list.add(e1);
+        list.add(e2);
+        list.add(e3);
+
+        Query query = new Query();
+        query.setFromTime(200);
+        query.setToTime(350);
+        assertEquals(Arrays.asList(e1, e2), list.query(query, 0, 10).getEvents());
+        assertEquals(Arrays.asList(e1, e2), list.query(query, -1, 10).getEvents());
+    }
+
+    public void testQuerySkipsBlocks() {
+        int size = LruList.BLOCK_SIZE * 3;
+        LruList list = new LruList(size);
+        PaxLoggingEvent info = createEvent("org.apache.felix", "INFO", 1, false);
+        PaxLoggingEvent error = createEvent("org.apache.karaf", "ERROR", 2, true);
+        for (int i = 0; i < size + LruList.BLOCK_SIZE / 2; i++) {
+            list.add(i == LruList.BLOCK_SIZE * 2 + 1 ? error : info);
+        }
+
+        assertEquals(Arrays.asList(error), list.query(new Query(null, Level.ERROR), -1, 10).getEvents());
+        assertEquals(Arrays.asList(error), list.query(new Query(null, Level.ERROR), 0, 10).getEvents());
+        assertEquals(Arrays.asList(error), list.query(new Query("org.apache.karaf", null), 0, 10).getEvents());
+        Query query = new Query();
+        query.setExceptionsOnly(true);
+        QueryResult result = list.query(query, 0, 10);
+        assertEquals(Arrays.asList(error), result.getEvents());
+        assertEquals(LruList.BLOCK_SIZE * 2 + 1, result.getSequence(0));
+        assertEquals(list.getNextSequence(), result.getNextSequence());
+        assertEquals(10, list.query(new Query("org.apache.felix", Level.INFO), -1, 10).getEvents().size());
+
+        // no limit
+        result = list.query(new Query(), -1, Integer.MAX_VALUE);
+        assertEquals(size, result.getEvents().size());
+        assertEquals(list.getNextSequence() - size, result.getSequence(0));
+        assertEquals(list.getNextSequence() - 1, result.getSequence(size - 1));
+        result = list.query(new Query(), 0, Integer.MAX_VALUE);
+        assertEquals(size, result.getEvents().size());
+        assertEquals(list.getNextSequence() - 1, result.getSequence(size - 1));
+    }
+
+    public void testLoggerIdsAreBounded() {
+        LruList list = new LruList(10);
+        for (int i = 0; i < LruList.MAX_LOGGER_IDS; i++) {
+            list.add(createEvent("logger" + i, "INFO", 1, false));
+        }
+        PaxLoggingEvent e0 = createEvent("org.apache.karaf.shell", "INFO", 2, false);
+        PaxLoggingEvent e1 = createEvent("org.apache.felix", "INFO", 3, false);
+        list.add(e0);
+        list.add(e1);
+
+        // the loggers without an id are still selected by name
+        assertEquals(Arrays.asList(e0), list.query(new Query("org.apache.karaf", null), -1, 10).getEvents());
+        assertEquals(Arrays.asList(e1), list.query(new Query("org.apache.felix", null), -1, 10).getEvents());
+        assertEquals(Arrays.asList(e0, e1), list.query(new Query("org.apache", null), -1, 2).getEvents());
+        assertEquals(Arrays.asList(e0), list.query(new Query("karaf", null), -1, 10).getEvents());
+    }
+
+    private static PaxLoggingEvent createEvent(String logger, final String level, long time, boolean exception) {
+        PaxLoggingEvent event = EasyMock.createNiceMock(PaxLoggingEvent.class);
+        EasyMock.expect(event.getLoggerName()).andReturn(logger).anyTimes();
+        EasyMock.expect(event.getLevel()).andReturn(new TestLevel(level)).anyTimes();
+        EasyMock.expect(event.getTimeStamp()).andReturn(time).anyTimes();
+        EasyMock.expect(event.getThrowableStrRep()).andReturn(exception ? new String[]{"java.lang.Exception"} : null).anyTimes();
+        EasyMock.replay(event);
+        return event;
+    }
+
+    private static List<PaxLoggingEvent> createEvents(int nb) {
+        List<PaxLoggingEvent> events = new ArrayList<PaxLoggingEvent>();
+        for (int i = 0; i < nb; i++) {
+            PaxLoggingEvent event = EasyMock.createNiceMock(PaxLoggingEvent.class);
+            EasyMock.replay(event);
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static List<PaxLoggingEvent> toList(Iterable<PaxLoggingEvent> events) {
+        List<PaxLoggingEvent> list = new ArrayList<PaxLoggingEvent>();
+        for (PaxLoggingEvent event : events) {
+            list.add(event);
+        }
+        return list;
+    }
+
+    private static class TestLevel implements PaxLevel {
+        private final String name;
+
+        TestLevel(String name) {
+            this.name = name;
+        }
+
+        public boolean isGreaterOrEqual(PaxLevel r) {
+            return false;
+        }
+
+        public int toInt() {
+            return 0;
+        }
+
+        public int getSyslogEquivalent() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+
+/**
+ * Maintains a marker file in the data directory which exists only while the framework
+ * is at its default start level, i.e. once the boot of this instance is finished.
+ * It is used by the parent instance to know when a child instance is ready.
+ */
+class BootFinishedMarker implements FrameworkListener {
+
+    static final String BOOT_FINISHED_FILE = "boot.finished";
+
+    private final Logger log;
+    private final BundleContext context;
+    private final File file;
+    private final int startLevel;
+
+    BootFinishedMarker(Logger log, BundleContext context, File dataDir, int startLevel) {
+        this.log = log;
+        this.context = context;
+        this.file = new File(dataDir, BOOT_FINISHED_FILE);
+        this.startLevel = startLevel;
+        // remove the marker left by a previous run
+        remove();
+    }
+
+    public void frameworkEvent(FrameworkEvent event) {
+        if (event.getType() == FrameworkEvent.STARTLEVEL_CHANGED) {
+            int current = context.getBundle(0).adapt(FrameworkStartLevel.class).getStartLevel();
+            if (current >= startLevel) {
+                try {
+                    file.createNewFile();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Unable to create " + file, e);
+                }
+            } else {
+                remove();
+            }
+        }
+    }
+
+    void remove() {
+        if (file.exists() && !file.delete()) {
+            log.warning("Unable to delete " + file);
+        }
+    }
+
+}
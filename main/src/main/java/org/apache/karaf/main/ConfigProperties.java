@@ -128,6 +128,11 @@ public class ConfigProperties {
     
     private static final String KARAF_DELAY_CONSOLE = "karaf.delay.console";
 
+    /**
+     * Number of threads used to resolve and read the startup bundles on a clean start, 1 to install them sequentially
+     */
+    private static final String KARAF_STARTUP_THREADS = "karaf.startup.threads";
+
     private static final String DEFAULT_SHUTDOWN_COMMAND = "SHUTDOWN";
 
     private static final String PROPERTY_LOCK_CLASS_DEFAULT = SimpleFileLock.class.getName();
@@ -168,6 +173,7 @@ public class ConfigProperties {
     String shutdownCommand;
     String startupMessage;
     boolean delayConsoleStart;
+    int startupThreads;
     
     public ConfigProperties() throws Exception {
         this.karafHome = Utils.getKarafHome(ConfigProperties.class, PROP_KARAF_HOME, ENV_KARAF_HOME);
@@ -235,6 +241,7 @@ public class ConfigProperties {
         this.startupMessage = props.getProperty(KARAF_STARTUP_MESSAGE, "Apache Karaf starting up. Press Enter to open the shell now...");
         this.delayConsoleStart = Boolean.parseBoolean(props.getProperty(KARAF_DELAY_CONSOLE, "false"));
         System.setProperty(KARAF_DELAY_CONSOLE, new Boolean(this.delayConsoleStart).toString());
+        this.startupThreads = Integer.parseInt(props.getProperty(KARAF_STARTUP_THREADS, "1"));
     }
     
     private String getPropertyOrFail(String propertyName) {
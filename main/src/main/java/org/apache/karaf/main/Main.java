@@ -19,6 +19,8 @@
 package org.apache.karaf.main;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -29,14 +31,22 @@ import java.net.URLClassLoader;
 import java.security.Provider;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
 import org.apache.karaf.util.properties.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.karaf.info.ServerInfo;
+import org.apache.karaf.main.lock.LeaseLock;
 import org.apache.karaf.main.lock.Lock;
 import org.apache.karaf.main.lock.LockCallBack;
 import org.apache.karaf.main.lock.NoLock;
@@ -73,6 +83,11 @@ public class Main {
      */
     public static final String STARTUP_PROPERTIES_FILE_NAME = "startup.properties";
 
+    /**
+     * The maximum number of times the lock delay is doubled when the lock can not be checked.
+     */
+    private static final int MAX_LOCK_BACKOFF = 3;
+
 
     Logger LOG = Logger.getLogger(this.getClass().getName());
 
@@ -84,6 +99,7 @@ public class Main {
     private KarafActivatorManager activatorManager;
     private Lock lock;
     private KarafLockCallback lockCallback;
+    private BootFinishedMarker bootFinishedMarker;
     private boolean exiting;
     
     /**
@@ -237,6 +253,8 @@ public class Main {
         framework = factory.newFramework(new StringMap(config.props, false));
         framework.init();
         framework.getBundleContext().addFrameworkListener(lockCallback);
+        bootFinishedMarker = new BootFinishedMarker(LOG, framework.getBundleContext(), config.karafData, config.defaultStartLevel);
+        framework.getBundleContext().addFrameworkListener(bootFinishedMarker);
         framework.start();
 
         FrameworkStartLevel sl = framework.adapt(FrameworkStartLevel.class);
@@ -248,8 +266,9 @@ public class Main {
             LOG.info("Installing and starting initial bundles");
             File startupPropsFile = new File(config.karafEtc, STARTUP_PROPERTIES_FILE_NAME);
             List<BundleInfo> bundles = readBundlesFromStartupProperties(startupPropsFile);        
+            long start = System.currentTimeMillis();
             installAndStartBundles(resolver, framework.getBundleContext(), bundles);
-            LOG.info("All initial bundles installed and set to start");
+            LOG.info("All initial bundles installed and set to start in " + (System.currentTimeMillis() - start) + " ms");
         }
 
         ServerInfo serverInfo = new ServerInfoImpl(args, config);
@@ -276,9 +295,16 @@ public class Main {
 
     private void doMonitor() {
         File dataDir = new File(System.getProperty(ConfigProperties.PROP_KARAF_DATA));
+        LeaseLock leaseLock = getLeaseLock();
+        long waitingSince = 0;
+        int failures = 0;
         while (!exiting) {
+            long delay = config.lockDelay;
             try {
                 if (lock.lock()) {
+                    failures = 0;
+                    logFailover(leaseLock, waitingSince);
+                    waitingSince = 0;
                     lockCallback.lockAquired();
                     for (;;) {
                         if (!dataDir.isDirectory()) {
@@ -287,23 +313,98 @@ public class Main {
                             System.exit(-1);
                             return;
                         }
-                        if (!lock.isAlive() || exiting) {
+                        if (!isLockAlive(leaseLock) || exiting) {
                             break;
                         }
-                        Thread.sleep(config.lockDelay);
+                        Thread.sleep(getRenewDelay(leaseLock));
                     }
                     if (!exiting) {
                         lockCallback.lockLost();
                     }
                 } else {
+                    failures = 0;
+                    if (waitingSince == 0) {
+                        waitingSince = System.currentTimeMillis();
+                    }
                     lockCallback.waitingForLock();
+                    delay = getRetryDelay(leaseLock);
                 }
-                Thread.sleep(config.lockDelay);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             } catch (Exception e) {
                 e.printStackTrace();
+                // back off while the lock can not even be checked, e.g. when the database is down
+                failures = Math.min(failures + 1, MAX_LOCK_BACKOFF);
+                delay = (long) config.lockDelay << failures;
             }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the lock as a {@link LeaseLock} if it uses leases, or null if it has to be polled.
+     */
+    private LeaseLock getLeaseLock() {
+        if (lock instanceof LeaseLock && ((LeaseLock) lock).getLeaseDuration() > 0) {
+            return (LeaseLock) lock;
+        }
+        return null;
+    }
+
+    private boolean isLockAlive(LeaseLock leaseLock) {
+        try {
+            if (!lock.isAlive()) {
+                return false;
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Unable to check the lock", e);
+            return false;
+        }
+        if (leaseLock != null && leaseLock.getLeaseExpiry() <= System.currentTimeMillis()) {
+            LOG.warning("Lock lease expired");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The master renews its lease at least twice per lease period, so that a failed renewal
+     * can be retried before the lease expires.
+     */
+    private long getRenewDelay(LeaseLock leaseLock) {
+        if (leaseLock == null) {
+            return config.lockDelay;
+        }
+        long remaining = leaseLock.getLeaseExpiry() - System.currentTimeMillis();
+        return Math.max(1, Math.min(config.lockDelay, remaining / 2));
+    }
+
+    /**
+     * A slave wakes up right when the lease of the master expires instead of waiting
+     * for the end of the current polling interval.
+     */
+    private long getRetryDelay(LeaseLock leaseLock) {
+        if (leaseLock == null || leaseLock.getMasterLeaseExpiry() == 0) {
+            return config.lockDelay;
+        }
+        long remaining = leaseLock.getMasterLeaseExpiry() - System.currentTimeMillis();
+        return Math.max(1, Math.min(config.lockDelay, remaining));
+    }
+
+    private void logFailover(LeaseLock leaseLock, long waitingSince) {
+        if (waitingSince == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (leaseLock != null && leaseLock.getLastMasterHeartbeat() > 0) {
+            LOG.info("Failover completed " + (now - leaseLock.getLastMasterHeartbeat())
+                    + " ms after the last heartbeat of the previous master");
+        } else {
+            LOG.info("Lock acquired after waiting " + (now - waitingSince) + " ms");
         }
     }
 
@@ -379,6 +480,10 @@ public class Main {
     }
 
     private void installAndStartBundles(ArtifactResolver resolver, BundleContext context, List<BundleInfo> bundles) {
+        if (config.startupThreads > 1 && bundles.size() > 1) {
+            installAndStartBundlesConcurrently(resolver, context, bundles);
+            return;
+        }
         for (BundleInfo bundleInfo : bundles) {
             try {
                 URI resolvedURI = resolver.resolve(bundleInfo.uri);
@@ -394,6 +499,97 @@ public class Main {
         }
     }
 
+    /**
+     * Resolves and reads the startup bundles with a pool of threads while they are installed in
+     * start level order. The bundles are only started once all of them are installed, so that the
+     * framework resolves them together when their start level is reached.
+     * <p/>
+     * The threads only read ahead of the installation by as many bundles as there are threads,
+     * so that only a few bundles are held in memory at any time.
+     */
+    private void installAndStartBundlesConcurrently(final ArtifactResolver resolver, BundleContext context, List<BundleInfo> bundles) {
+        List<BundleInfo> ordered = new ArrayList<BundleInfo>(bundles);
+        Collections.sort(ordered, new Comparator<BundleInfo>() {
+            public int compare(BundleInfo b1, BundleInfo b2) {
+                return b1.startLevel.compareTo(b2.startLevel);
+            }
+        });
+
+        int threads = Math.min(config.startupThreads, ordered.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.currentTimeMillis();
+            List<Future<byte[]>> contents = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < threads; i++) {
+                contents.add(read(executor, resolver, ordered.get(i)));
+            }
+
+            long waiting = 0;
+            List<Bundle> installed = new ArrayList<Bundle>();
+            for (int i = 0; i < ordered.size(); i++) {
+                BundleInfo bundleInfo = ordered.get(i);
+                try {
+                    long t = System.currentTimeMillis();
+                    byte[] content = contents.get(i).get();
+                    waiting += System.currentTimeMillis() - t;
+                    // release the content of the bundle and read the next one
+                    contents.set(i, null);
+                    if (i + threads < ordered.size()) {
+                        contents.add(read(executor, resolver, ordered.get(i + threads)));
+                    }
+                    Bundle b = context.installBundle(bundleInfo.uri.toString(), new ByteArrayInputStream(content));
+                    b.adapt(BundleStartLevel.class).setStartLevel(bundleInfo.startLevel);
+                    installed.add(b);
+                } catch (Exception e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    throw new RuntimeException("Error installing bundle listed in " + STARTUP_PROPERTIES_FILE_NAME
+                            + " with url: " + bundleInfo.uri + " and startlevel: " + bundleInfo.startLevel, cause);
+                }
+            }
+            long installTime = System.currentTimeMillis();
+            LOG.info("Resolved, read and installed " + installed.size() + " bundles in " + (installTime - start)
+                    + " ms using " + threads + " threads (" + waiting + " ms waiting for reads)");
+
+            for (int i = 0; i < installed.size(); i++) {
+                Bundle b = installed.get(i);
+                try {
+                    if (isNotFragment(b)) {
+                        b.start();
+                    }
+                } catch (Exception e) {
+                    BundleInfo bundleInfo = ordered.get(i);
+                    throw new RuntimeException("Error starting bundle listed in " + STARTUP_PROPERTIES_FILE_NAME
+                            + " with url: " + bundleInfo.uri + " and startlevel: " + bundleInfo.startLevel, e);
+                }
+            }
+            LOG.info("Set " + installed.size() + " bundles to start in " + (System.currentTimeMillis() - installTime) + " ms");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Future<byte[]> read(ExecutorService executor, final ArtifactResolver resolver, final BundleInfo bundleInfo) {
+        return executor.submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                return readFully(resolver.resolve(bundleInfo.uri).toURL().openStream());
+            }
+        });
+    }
+
+    private static byte[] readFully(InputStream is) throws Exception {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                os.write(buffer, 0, n);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
     private boolean isNotFragment(Bundle b) {
         String fragmentHostHeader = (String) b.getHeaders().get(Constants.FRAGMENT_HOST);
         return fragmentHostHeader == null || fragmentHostHeader.trim().length() == 0;
@@ -519,6 +715,9 @@ public class Main {
             }
             return false;
         } finally {
+            if (bootFinishedMarker != null) {
+                bootFinishedMarker.remove();
+            }
             if (lock != null) {
                 exiting = true;
                 lock.release();
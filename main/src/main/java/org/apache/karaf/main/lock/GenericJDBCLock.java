@@ -23,6 +23,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import org.apache.karaf.util.properties.Properties;
 import java.util.logging.Level;
@@ -113,6 +114,19 @@ import org.apache.karaf.main.util.BootstrapLogManager;
  * This just checks if the connection is active and then just updates the row's STATE by using the lock
  * update call mentioned above. </p>
  *
+ * LEASE: </p>
+ *
+ * When karaf.lock.jdbc.lease is set to true, each successful lock or isAlive call grants the master a lease
+ * of twice its lock_delay.  A slave then only reads the KARAF_LOCK row on each attempt and issues an update
+ * when the lock is free or when the lease of the master has expired, instead of an update and a select.  The
+ * master keeps the lock when a renewal fails because of a transient database error, as long as its lease
+ * has not expired yet, and gives it up as soon as the lease expires.  A renewal that times out, which it
+ * does after half a lease, gives up the lock right away. </p>
+ *
+ * The heartbeats of the master are batched: the isAlive calls made during the first half of a lease
+ * are answered from that lease, so that the master updates the row at most twice per lease however
+ * often it is checked. </p>
+ *
  * RELEASE: </p>
  *
  * The release process just updates the KARAF_LOCK ID to zero so that other instances will have a chance
@@ -127,7 +141,7 @@ import org.apache.karaf.main.util.BootstrapLogManager;
  * @author Claudio Corsi
  *
  */
-public class GenericJDBCLock implements Lock {
+public class GenericJDBCLock implements LeaseLock {
 
     final Logger LOG = Logger.getLogger(this.getClass().getName());
 
@@ -138,12 +152,14 @@ public class GenericJDBCLock implements Lock {
     public static final String PROPERTY_LOCK_JDBC_TABLE        = "karaf.lock.jdbc.table";
     public static final String PROPERTY_LOCK_JDBC_TABLE_ID     = "karaf.lock.jdbc.table_id";
     public static final String PROPERTY_LOCK_JDBC_CLUSTERNAME  = "karaf.lock.jdbc.clustername";
+    public static final String PROPERTY_LOCK_JDBC_LEASE        = "karaf.lock.jdbc.lease";
 
     public static final String DEFAULT_PASSWORD = "";
     public static final String DEFAULT_USER = "";
     public static final String DEFAULT_TABLE = "KARAF_LOCK";
     public static final String DEFAULT_TABLE_ID = "KARAF_NODE_ID";
     public static final String DEFAULT_CLUSTERNAME = "karaf";
+    public static final String DEFAULT_LEASE = "false";
 
     final GenericStatements statements;
     Connection lockConnection;
@@ -155,6 +171,7 @@ public class GenericJDBCLock implements Lock {
     String clusterName;
     String table_id;
     int lock_delay;
+    boolean lease;
 
     // My lock settings
     private int uniqueId = 0;
@@ -170,6 +187,9 @@ public class GenericJDBCLock implements Lock {
     // table state
     private int currentLockDelay;
 
+    // The clock time at which the lease of this instance expires, 0 when this instance is not the master.
+    private long leaseExpiry;
+
     public GenericJDBCLock(Properties props) {
         try {
             LOG.addHandler(BootstrapLogManager.getDefaultHandler());
@@ -185,6 +205,7 @@ public class GenericJDBCLock implements Lock {
         this.clusterName = props.getProperty(PROPERTY_LOCK_JDBC_CLUSTERNAME, DEFAULT_CLUSTERNAME);
         this.table_id = props.getProperty(PROPERTY_LOCK_JDBC_TABLE_ID, DEFAULT_TABLE_ID);
         this.lock_delay = Integer.parseInt(props.getProperty(ConfigProperties.PROPERTY_LOCK_DELAY, ConfigProperties.DEFAULT_LOCK_DELAY));
+        this.lease = Boolean.parseBoolean(props.getProperty(PROPERTY_LOCK_JDBC_LEASE, DEFAULT_LEASE));
 
         this.statements = createStatements();
 
@@ -453,7 +474,10 @@ public class GenericJDBCLock implements Lock {
      * @see org.apache.karaf.main.lock.Lock#lock()
      */
     public boolean lock() throws Exception {
-       
+        if (lease) {
+            return acquireLease();
+        }
+
         // Try to acquire/update the lock state
         boolean lockAquired = acquireLock(statements.getLockUpdateIdStatement(uniqueId, ++state, lock_delay, uniqueId));
         
@@ -510,6 +534,96 @@ public class GenericJDBCLock implements Lock {
         return lockAquired;
     }
 
+    /**
+     * This method is called instead of the update and select round trips of {@link #lock()} when leases
+     * are enabled.  It only reads the lock row, and tries to update it if and only if the lock is free,
+     * already held by this instance or the lease of the current master has expired.
+     *
+     * @return true, if we are the master instance else false
+     *
+     * @throws Exception if the lock row could not be read
+     */
+    private boolean acquireLease() throws Exception {
+        long now = getCurrentTimeMillis();
+        int masterId;
+        int masterState;
+        int masterLockDelay;
+
+        PreparedStatement statement = null;
+        ResultSet rs = null;
+        try {
+            statement = getConnection().prepareStatement(statements.getLockSelectStatement());
+            rs = statement.executeQuery();
+            if (!rs.next()) {
+                LOG.severe("No rows were found....");
+                return false;
+            }
+            masterId = statements.getIdFromLockSelectStatement(rs);
+            masterState = statements.getStateFromLockSelectStatement(rs);
+            masterLockDelay = statements.getLockDelayFromLockSelectStatement(rs);
+        } finally {
+            closeSafely(statement);
+            closeSafely(rs);
+        }
+
+        boolean lockAquired = false;
+        if (masterId == 0 || masterId == uniqueId) {
+            lockAquired = acquireLock(statements.getLockUpdateIdStatement(uniqueId, ++state, lock_delay, uniqueId));
+        } else if (masterId != this.currentId || masterState != this.currentState) {
+            // This is a heartbeat of the master, its lease starts again from now
+            this.currentId = masterId;
+            this.currentState = masterState;
+            this.currentStateTime = now;
+            this.currentLockDelay = masterLockDelay;
+        } else if (getMasterLeaseExpiry() <= now) {
+            lockAquired = acquireLock(statements.getLockUpdateIdStatementToStealLock(uniqueId, state, lock_delay, masterId, masterState));
+        }
+
+        if (lockAquired) {
+            leaseExpiry = now + getLeaseDuration();
+        }
+        return lockAquired;
+    }
+
+    /**
+     * This method is called by {@link #isAlive()} to renew the lease of the master when leases are
+     * enabled.  The lease is only renewed once half of it has elapsed, the calls made before are
+     * answered from the current lease.  A renewal that fails with an exception does not give up the
+     * lock until the lease expires, unless it timed out.
+     *
+     * @return true, if this instance still holds the lock else false
+     */
+    private boolean renewLease() {
+        long start = getCurrentTimeMillis();
+        if (leaseExpiry - start > getLeaseDuration() / 2) {
+            return true;
+        }
+        PreparedStatement preparedStatement = null;
+        try {
+            preparedStatement = getConnection().prepareStatement(statements.getLockUpdateIdStatement(uniqueId, ++state, lock_delay, uniqueId));
+            // the renewal must not outlive the lease
+            preparedStatement.setQueryTimeout(getRenewTimeout());
+            if (preparedStatement.executeUpdate() > 0) {
+                leaseExpiry = start + getLeaseDuration();
+                return true;
+            }
+            LOG.severe("Lost lock!");
+        } catch (SQLTimeoutException e) {
+            LOG.log(Level.SEVERE, "Timed out renewing the database lock", e);
+        } catch (Exception e) {
+            long remaining = leaseExpiry - getCurrentTimeMillis();
+            if (remaining > 0) {
+                LOG.log(Level.WARNING, "Failed to renew the database lock, the lease expires in " + remaining + " ms", e);
+                return true;
+            }
+            LOG.log(Level.SEVERE, "Failed to renew the database lock before the lease expired", e);
+        } finally {
+            closeSafely(preparedStatement);
+        }
+        leaseExpiry = 0;
+        return false;
+    }
+
     /**
      * This method is called to try and acquire the lock and/or update the state for when this instance
      * is already the master instance.  It will try to update the row given the passed data and will
@@ -566,6 +680,7 @@ public class GenericJDBCLock implements Lock {
         }
         
         lockConnection = null;
+        leaseExpiry = 0;
     }
 
     /**
@@ -578,6 +693,10 @@ public class GenericJDBCLock implements Lock {
      *
      */
     public boolean isAlive() throws Exception {
+        if (lease) {
+            return renewLease();
+        }
+
         if (!isConnected()) { 
             LOG.severe("Lost lock!");
             return false; 
@@ -586,4 +705,35 @@ public class GenericJDBCLock implements Lock {
         return lock();
     }
 
+    /**
+     * The query timeout of a renewal in seconds: half a lease, but at least one second as it is the
+     * smallest timeout JDBC supports.
+     */
+    int getRenewTimeout() {
+        return Math.max(1, lock_delay / 1000);
+    }
+
+    long getCurrentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public long getLeaseDuration() {
+        return lease ? 2L * lock_delay : 0;
+    }
+
+    public long getLeaseExpiry() {
+        return leaseExpiry;
+    }
+
+    public long getMasterLeaseExpiry() {
+        if (currentId == 0 || currentId == uniqueId) {
+            return 0;
+        }
+        return currentStateTime + 2L * currentLockDelay;
+    }
+
+    public long getLastMasterHeartbeat() {
+        return currentId == 0 ? 0 : currentStateTime;
+    }
+
 }
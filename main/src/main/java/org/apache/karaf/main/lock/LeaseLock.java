@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+/**
+ * A {@link Lock} that is held for a bounded amount of time (a lease) after each successful
+ * {@link #lock()} or {@link #isAlive()} call.
+ * <p>
+ * Knowing when the leases expire allows the monitor to detect a lost lock as soon as the lease of
+ * the master runs out, and allows the slaves to wake up right when the lease of the master expires
+ * instead of polling at a fixed interval.
+ * </p>
+ */
+public interface LeaseLock extends Lock {
+
+    /**
+     * The duration of a lease in milliseconds.
+     *
+     * @return the lease duration, or a value less or equal to zero if leases are not used, in which
+     * case the lock is monitored by polling like a plain {@link Lock}.
+     */
+    long getLeaseDuration();
+
+    /**
+     * The time at which the lease held by this instance expires.
+     *
+     * @return the expiry time in milliseconds, or 0 if this instance does not hold the lock.
+     */
+    long getLeaseExpiry();
+
+    /**
+     * The time at which the lease of the current master is expected to expire, as observed by
+     * this instance.
+     *
+     * @return the expiry time in milliseconds, or 0 if the lock is free or the master is unknown.
+     */
+    long getMasterLeaseExpiry();
+
+    /**
+     * The time at which this instance last observed a heartbeat of the current master.
+     *
+     * @return the heartbeat time in milliseconds, or 0 if no master has been observed.
+     */
+    long getLastMasterHeartbeat();
+}
@@ -65,4 +65,34 @@ public class MainStartTest {
 		Assert.assertEquals(Bundle.ACTIVE, bundle2.getState());
 	}
 
+	@Test
+	public void testAutoStartConcurrently() throws Exception {
+		File basedir = new File(getClass().getClassLoader().getResource("foo").getPath()).getParentFile();
+		File home = new File(basedir, "test-karaf-home");
+		File data = new File(home, "data" + System.currentTimeMillis());
+
+		String[] args = new String[0];
+		System.setProperty("karaf.home", home.toString());
+		System.setProperty("karaf.data", data.toString());
+		System.setProperty("karaf.startup.threads", "4");
+		try {
+			main = new Main(args);
+			main.launch();
+		} finally {
+			System.clearProperty("karaf.startup.threads");
+		}
+		Framework framework = main.getFramework();
+		Bundle[] bundles = framework.getBundleContext().getBundles();
+		Assert.assertEquals(3, bundles.length);
+
+		// Give the framework some time to start the bundles
+		Thread.sleep(1000);
+
+		Bundle bundle1 = framework.getBundleContext().getBundle("mvn:org.apache.aries.blueprint/org.apache.aries.blueprint.api/1.0.0");
+		Assert.assertEquals(Bundle.ACTIVE, bundle1.getState());
+
+		Bundle bundle2 = framework.getBundleContext().getBundle("pax-url-mvn.jar");
+		Assert.assertEquals(Bundle.ACTIVE, bundle2.getState());
+	}
+
 }
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.main.lock;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import org.apache.karaf.util.properties.Properties;
+
+import org.apache.karaf.main.util.BootstrapLogManager;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the lease mode of {@link GenericJDBCLock}.  The JDBC dialects extend {@link DefaultJDBCLock},
+ * which has no lease mode, so these cases are not part of {@link BaseJDBCLockTest}.
+ */
+public class GenericJDBCLockTest {
+
+    static final String LOCK_SELECT = "SELECT ID, STATE, LOCK_DELAY FROM KARAF_LOCK";
+
+    GenericJDBCLock lock;
+    Properties props;
+    long now = 100000;
+
+    Connection connection;
+    ResultSet resultSet;
+    PreparedStatement preparedStatement;
+
+    @BeforeClass
+    public static void setUpTestSuite() {
+        Properties properties = new Properties();
+        properties.put("karaf.bootstrap.log", "target/karaf.log");
+        BootstrapLogManager.setProperties(properties);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        connection = EasyMock.createMock(Connection.class);
+        resultSet = EasyMock.createMock(ResultSet.class);
+        preparedStatement = EasyMock.createMock(PreparedStatement.class);
+
+        props = new Properties();
+        props.put("karaf.lock.jdbc.url", "jdbc:test");
+        props.put("karaf.lock.jdbc.driver", "org.test.Driver");
+        props.put("karaf.lock.delay", "2000");
+        props.put("karaf.lock.jdbc.lease", "true");
+
+        // the unique id of this instance is 1
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expect(connection.prepareStatement("SELECT ID FROM KARAF_NODE_ID")).andReturn(preparedStatement);
+        expect(preparedStatement.executeQuery()).andReturn(resultSet);
+        expect(resultSet.next()).andReturn(true);
+        expect(resultSet.getInt(1)).andReturn(0);
+        resultSet.close();
+        expect(connection.prepareStatement("UPDATE KARAF_NODE_ID SET ID = 1 WHERE ID = 0")).andReturn(preparedStatement);
+        expect(preparedStatement.executeUpdate()).andReturn(1);
+        preparedStatement.close();
+
+        replay(connection, preparedStatement, resultSet);
+
+        lock = new GenericJDBCLock(props) {
+            @Override
+            void init() {
+                generateUniqueId();
+            }
+
+            @Override
+            protected Connection doCreateConnection(String driver, String url, String username, String password) {
+                return connection;
+            }
+
+            @Override
+            long getCurrentTimeMillis() {
+                return now;
+            }
+        };
+
+        verify(connection, preparedStatement, resultSet);
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+    }
+
+    @Test
+    public void acquireLeaseShouldTakeAFreeLock() throws Exception {
+        expectLockSelect(0, 0, 0);
+        expectUpdate("UPDATE KARAF_LOCK SET ID = 1, STATE = 1, LOCK_DELAY = 2000 WHERE ID = 0 OR ID = 1", false, 1);
+
+        replay(connection, preparedStatement, resultSet);
+
+        assertTrue(lock.lock());
+
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(now + 4000, lock.getLeaseExpiry());
+    }
+
+    @Test
+    public void acquireLeaseShouldOnlyStealAnExpiredLease() throws Exception {
+        // the master heartbeat is seen, its lease runs from now
+        expectLockSelect(2, 5, 2000);
+        replay(connection, preparedStatement, resultSet);
+        assertFalse(lock.lock());
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(now + 4000, lock.getMasterLeaseExpiry());
+        assertEquals(now, lock.getLastMasterHeartbeat());
+
+        // no heartbeat, but the lease has not expired yet
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expectLockSelect(2, 5, 2000);
+        replay(connection, preparedStatement, resultSet);
+        now += 3999;
+        assertFalse(lock.lock());
+        verify(connection, preparedStatement, resultSet);
+
+        // the lease has expired
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expectLockSelect(2, 5, 2000);
+        expectUpdate("UPDATE KARAF_LOCK SET ID = 1, STATE = 0, LOCK_DELAY = 2000 WHERE ( ID = 0 OR ID = 2 ) AND STATE = 5", false, 1);
+        replay(connection, preparedStatement, resultSet);
+        now += 1;
+        assertTrue(lock.lock());
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(now + 4000, lock.getLeaseExpiry());
+    }
+
+    @Test
+    public void renewLeaseShouldBatchHeartbeats() throws Exception {
+        acquireLeaseShouldTakeAFreeLock();
+        reset(connection, preparedStatement, resultSet);
+
+        // the first half of the lease is answered without updating the row
+        replay(connection, preparedStatement, resultSet);
+        now += 1999;
+        assertTrue(lock.isAlive());
+        verify(connection, preparedStatement, resultSet);
+
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expectUpdate("UPDATE KARAF_LOCK SET ID = 1, STATE = 2, LOCK_DELAY = 2000 WHERE ID = 0 OR ID = 1", true, 1);
+        replay(connection, preparedStatement, resultSet);
+        now += 1;
+        assertTrue(lock.isAlive());
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(now + 4000, lock.getLeaseExpiry());
+    }
+
+    @Test
+    public void renewLeaseShouldKeepTheLockOnErrorUntilTheLeaseExpires() throws Exception {
+        acquireLeaseShouldTakeAFreeLock();
+        long expiry = lock.getLeaseExpiry();
+
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expect(connection.prepareStatement((String) anyObject())).andReturn(preparedStatement);
+        preparedStatement.setQueryTimeout(2);
+        expect(preparedStatement.executeUpdate()).andThrow(new SQLException());
+        preparedStatement.close();
+        replay(connection, preparedStatement, resultSet);
+        now += 3000;
+        assertTrue(lock.isAlive());
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(expiry, lock.getLeaseExpiry());
+
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expect(connection.prepareStatement((String) anyObject())).andReturn(preparedStatement);
+        preparedStatement.setQueryTimeout(2);
+        expect(preparedStatement.executeUpdate()).andThrow(new SQLException());
+        preparedStatement.close();
+        replay(connection, preparedStatement, resultSet);
+        now += 1000;
+        assertFalse(lock.isAlive());
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(0, lock.getLeaseExpiry());
+    }
+
+    @Test
+    public void renewLeaseShouldLoseTheLockOnTimeout() throws Exception {
+        acquireLeaseShouldTakeAFreeLock();
+
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expect(connection.prepareStatement((String) anyObject())).andReturn(preparedStatement);
+        preparedStatement.setQueryTimeout(2);
+        expect(preparedStatement.executeUpdate()).andThrow(new SQLTimeoutException());
+        preparedStatement.close();
+        replay(connection, preparedStatement, resultSet);
+        now += 3000;
+        assertFalse(lock.isAlive());
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(0, lock.getLeaseExpiry());
+    }
+
+    @Test
+    public void renewLeaseShouldLoseTheLockIfTheRowWasTaken() throws Exception {
+        acquireLeaseShouldTakeAFreeLock();
+
+        reset(connection, preparedStatement, resultSet);
+        expect(connection.isClosed()).andReturn(false).anyTimes();
+        expectUpdate("UPDATE KARAF_LOCK SET ID = 1, STATE = 2, LOCK_DELAY = 2000 WHERE ID = 0 OR ID = 1", true, 0);
+        replay(connection, preparedStatement, resultSet);
+        now += 3000;
+        assertFalse(lock.isAlive());
+        verify(connection, preparedStatement, resultSet);
+        assertEquals(0, lock.getLeaseExpiry());
+    }
+
+    private void expectLockSelect(int id, int state, int lockDelay) throws SQLException {
+        expect(connection.prepareStatement(LOCK_SELECT)).andReturn(preparedStatement);
+        expect(preparedStatement.executeQuery()).andReturn(resultSet);
+        expect(resultSet.next()).andReturn(true);
+        expect(resultSet.getInt(1)).andReturn(id);
+        expect(resultSet.getInt(2)).andReturn(state);
+        expect(resultSet.getInt(3)).andReturn(lockDelay);
+        preparedStatement.close();
+        resultSet.close();
+    }
+
+    private void expectUpdate(String update, boolean renewal, int count) throws SQLException {
+        expect(connection.prepareStatement(update)).andReturn(preparedStatement);
+        if (renewal) {
+            preparedStatement.setQueryTimeout(2);
+        }
+        expect(preparedStatement.executeUpdate()).andReturn(count);
+        preparedStatement.close();
+    }
+
+}
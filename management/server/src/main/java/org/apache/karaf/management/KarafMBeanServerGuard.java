@@ -19,9 +19,12 @@ package org.apache.karaf.management;
 import org.apache.karaf.jaas.boot.principal.RolePrincipal;
 import org.apache.karaf.management.boot.KarafMBeanServerBuilder;
 import org.apache.karaf.service.guard.tools.ACLConfigurationParser;
+import org.apache.karaf.service.guard.tools.CompiledACL;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
 
 import javax.management.*;
 import javax.security.auth.Subject;
@@ -33,24 +36,41 @@ import java.security.AccessController;
 import java.security.Principal;
 import java.util.*;
 
-public class KarafMBeanServerGuard implements InvocationHandler {
+public class KarafMBeanServerGuard implements InvocationHandler, ConfigurationListener {
 
     private static final String JMX_ACL_PID_PREFIX = "jmx.acl";
 
+    private static final int MAX_CACHE_SIZE = 10000;
+
     private ConfigurationAdmin configAdmin;
 
+    // The compiled jmx.acl* configurations, built on first use after a change of any of these configurations
+    private volatile JmxACLs acls;
+    private long aclsGeneration;
+
     public ConfigurationAdmin getConfigAdmin() {
         return configAdmin;
     }
 
     public void setConfigAdmin(ConfigurationAdmin configAdmin) {
         this.configAdmin = configAdmin;
+        invalidateACLs();
     }
 
     public void init() {
         KarafMBeanServerBuilder.setGuard(this);
     }
 
+    public void configurationEvent(ConfigurationEvent event) {
+        if (isJmxAclPid(event.getPid()) || isJmxAclPid(event.getFactoryPid())) {
+            invalidateACLs();
+        }
+    }
+
+    private static boolean isJmxAclPid(String pid) {
+        return pid != null && pid.startsWith(JMX_ACL_PID_PREFIX);
+    }
+
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         if (method.getParameterTypes().length == 0)
             return null;
@@ -84,25 +104,23 @@ public class KarafMBeanServerGuard implements InvocationHandler {
      * @throws IOException
      */
     public boolean canInvoke(MBeanServer mbeanServer, ObjectName objectName) throws JMException, IOException {
-        MBeanInfo info = mbeanServer.getMBeanInfo(objectName);
+        return canInvokeAny(getACLs(), currentUserPrincipals(), objectName, mbeanServer.getMBeanInfo(objectName));
+    }
 
+    private boolean canInvokeAny(JmxACLs acls, Set<Principal> principals, ObjectName objectName, MBeanInfo info) {
         for (MBeanOperationInfo operation : info.getOperations()) {
-            List<String> sig = new ArrayList<String>();
-            for (MBeanParameterInfo param : operation.getSignature()) {
-                sig.add(param.getType());
-            }
-            if (canInvoke(objectName, operation.getName(), sig.toArray(new String[] {}))) {
+            if (canInvoke(acls, principals, objectName, operation.getName(), getSignature(operation))) {
                 return true;
             }
         }
 
         for (MBeanAttributeInfo attr : info.getAttributes()) {
             if (attr.isReadable()) {
-                if (canInvoke(objectName, attr.isIs() ? "is" : "get" + attr.getName(), new String[] {}))
+                if (canInvoke(acls, principals, objectName, attr.isIs() ? "is" : "get" + attr.getName(), new String[] {}))
                     return true;
             }
             if (attr.isWritable()) {
-                if (canInvoke(objectName, "set" + attr.getName(), new String[]{attr.getType()}))
+                if (canInvoke(acls, principals, objectName, "set" + attr.getName(), new String[]{attr.getType()}))
                     return true;
             }
         }
@@ -121,19 +139,18 @@ public class KarafMBeanServerGuard implements InvocationHandler {
      * @throws IOException
      */
     public boolean canInvoke(MBeanServer mbeanServer, ObjectName objectName, String methodName) throws JMException, IOException {
+        return canInvokeAnyOverload(getACLs(), currentUserPrincipals(), objectName, mbeanServer.getMBeanInfo(objectName), methodName);
+    }
+
+    private boolean canInvokeAnyOverload(JmxACLs acls, Set<Principal> principals, ObjectName objectName, MBeanInfo info, String methodName) {
         methodName = methodName.trim();
-        MBeanInfo info = mbeanServer.getMBeanInfo(objectName);
 
         for (MBeanOperationInfo op : info.getOperations()) {
             if (!methodName.equals(op.getName())) {
                 continue;
             }
 
-            List<String> sig = new ArrayList<String>();
-            for (MBeanParameterInfo param : op.getSignature()) {
-                sig.add(param.getType());
-            }
-            if (canInvoke(objectName, op.getName(), sig.toArray(new String[] {}))) {
+            if (canInvoke(acls, principals, objectName, op.getName(), getSignature(op))) {
                 return true;
             }
         }
@@ -141,10 +158,10 @@ public class KarafMBeanServerGuard implements InvocationHandler {
         for (MBeanAttributeInfo attr : info.getAttributes()) {
             String attrName = attr.getName();
             if (methodName.equals("is" + attrName) || methodName.equals("get" + attrName)) {
-                return canInvoke(objectName, methodName, new String[] {});
+                return canInvoke(acls, principals, objectName, methodName, new String[] {});
             }
             if (methodName.equals("set" + attrName)) {
-                return canInvoke(objectName, methodName, new String[] { attr.getType() });
+                return canInvoke(acls, principals, objectName, methodName, new String[] { attr.getType() });
             }
         }
 
@@ -170,14 +187,89 @@ public class KarafMBeanServerGuard implements InvocationHandler {
     }
 
     private boolean canInvoke(ObjectName objectName, String methodName, String[] signature) throws IOException {
-        for (String role : getRequiredRoles(objectName, methodName, signature)) {
-            if (currentUserHasRole(role))
+        return canInvoke(getACLs(), currentUserPrincipals(), objectName, methodName, signature);
+    }
+
+    private boolean canInvoke(JmxACLs acls, Set<Principal> principals, ObjectName objectName, String methodName, String[] signature) {
+        for (String role : acls.getRequiredRoles(objectName, methodName, null, signature)) {
+            if (hasRole(principals, role))
                 return true;
         }
 
         return false;
     }
 
+    /**
+     * Bulk version of the {@code canInvoke} operations. All the checks are done against the same snapshot of the ACL
+     * configuration and the current user is only looked up once, which makes this much cheaper than checking the
+     * MBeans one by one when a whole JMX tree needs to be evaluated.
+     *
+     * @param mbeanServer the MBeanServer where the objects are registered.
+     * @param bulkQuery a map of ObjectName to the methods to check. A method can be specified as a bare name, which
+     *                  checks any overload, or with its argument types, e.g. {@code foo(int,java.lang.String)}. An
+     *                  empty list checks whether <em>any</em> method on the MBean can be invoked.
+     * @return for each ObjectName, the result for each requested method. For an empty list of methods the result is
+     *      stored under the empty String.
+     * @throws JMException
+     * @throws IOException
+     */
+    public Map<ObjectName, Map<String, Boolean>> canInvoke(MBeanServer mbeanServer, Map<ObjectName, List<String>> bulkQuery) throws JMException, IOException {
+        JmxACLs acls = getACLs();
+        Set<Principal> principals = currentUserPrincipals();
+
+        Map<ObjectName, Map<String, Boolean>> result = new LinkedHashMap<ObjectName, Map<String, Boolean>>();
+        for (Map.Entry<ObjectName, List<String>> entry : bulkQuery.entrySet()) {
+            ObjectName objectName = entry.getKey();
+            Map<String, Boolean> methodResults = new LinkedHashMap<String, Boolean>();
+            MBeanInfo info = null;
+
+            if (entry.getValue().isEmpty()) {
+                info = mbeanServer.getMBeanInfo(objectName);
+                methodResults.put("", canInvokeAny(acls, principals, objectName, info));
+            }
+            for (String method : entry.getValue()) {
+                List<String> argTypes = new ArrayList<String>();
+                String name = parseMethodName(method, argTypes);
+
+                boolean res;
+                if (name.equals(method)) {
+                    if (info == null) {
+                        info = mbeanServer.getMBeanInfo(objectName);
+                    }
+                    res = canInvokeAnyOverload(acls, principals, objectName, info, name);
+                } else {
+                    res = canInvoke(acls, principals, objectName, name, argTypes.toArray(new String[argTypes.size()]));
+                }
+                methodResults.put(method, res);
+            }
+            result.put(objectName, methodResults);
+        }
+        return result;
+    }
+
+    private static String parseMethodName(String method, List<String> argTypes) {
+        method = method.trim();
+        int index = method.indexOf('(');
+        if (index < 0)
+            return method;
+
+        String args = method.substring(index + 1, method.length() - 1);
+        for (String arg : args.split(",")) {
+            argTypes.add(arg);
+        }
+
+        return method.substring(0, index);
+    }
+
+    private static String[] getSignature(MBeanOperationInfo operation) {
+        MBeanParameterInfo[] params = operation.getSignature();
+        String[] sig = new String[params.length];
+        for (int i = 0; i < params.length; i++) {
+            sig[i] = params[i].getType();
+        }
+        return sig;
+    }
+
     private void handleGetAttribute(MBeanServer proxy, ObjectName objectName, String attributeName) throws JMException, IOException {
         MBeanInfo info = proxy.getMBeanInfo(objectName);
         String prefix = null;
@@ -221,9 +313,13 @@ public class KarafMBeanServerGuard implements InvocationHandler {
     }
 
     void handleInvoke(ObjectName objectName, String operationName, Object[] params, String[] signature) throws IOException {
-        for (String role : getRequiredRoles(objectName, operationName, params, signature)) {
-            if (currentUserHasRole(role))
-                return;
+        List<String> roles = getRequiredRoles(objectName, operationName, params, signature);
+        if (!roles.isEmpty()) {
+            Set<Principal> principals = currentUserPrincipals();
+            for (String role : roles) {
+                if (hasRole(principals, role))
+                    return;
+            }
         }
         throw new SecurityException("Insufficient roles/credentials for operation");
     }
@@ -233,30 +329,51 @@ public class KarafMBeanServerGuard implements InvocationHandler {
     }
 
     List<String> getRequiredRoles(ObjectName objectName, String methodName, Object[] params, String[] signature) throws IOException {
+        return getACLs().getRequiredRoles(objectName, methodName, params, signature);
+    }
+
+    JmxACLs getACLs() throws IOException {
+        JmxACLs current = acls;
+        if (current != null) {
+            return current;
+        }
 
-        List<String> allPids = new ArrayList<String>();
+        long generation;
+        synchronized (this) {
+            generation = aclsGeneration;
+        }
+
+        Map<String, CompiledACL> compiled = new HashMap<String, CompiledACL>();
         try {
-            for (Configuration config : configAdmin.listConfigurations("(service.pid=jmx.acl*)")) {
-                allPids.add(config.getPid());
+            Configuration[] configs = configAdmin.listConfigurations("(service.pid=jmx.acl*)");
+            if (configs != null) {
+                for (Configuration config : configs) {
+                    Dictionary<String, Object> properties = config.getProperties();
+                    if (properties != null) {
+                        compiled.put(config.getPid(), new CompiledACL(properties));
+                    }
+                }
             }
         } catch (InvalidSyntaxException ise) {
             throw new RuntimeException(ise);
         }
+        current = new JmxACLs(compiled);
 
-        for (String pid : iterateDownPids(getNameSegments(objectName))) {
-            if (allPids.contains(pid)) {
-                Configuration config = configAdmin.getConfiguration(pid);
-                List<String> roles = new ArrayList<String>();
-                ACLConfigurationParser.Specificity s = ACLConfigurationParser.getRolesForInvocation(methodName, params, signature, config.getProperties(), roles);
-                if (s != ACLConfigurationParser.Specificity.NO_MATCH) {
-                    return roles;
-                }
+        synchronized (this) {
+            // a configuration changed while we were compiling: use the result, but don't keep it
+            if (generation == aclsGeneration) {
+                acls = current;
             }
         }
-        return Collections.emptyList();
+        return current;
+    }
+
+    synchronized void invalidateACLs() {
+        aclsGeneration++;
+        acls = null;
     }
 
-    private List<String> getNameSegments(ObjectName objectName) {
+    private static List<String> getNameSegments(ObjectName objectName) {
         List<String> segments = new ArrayList<String>();
         segments.add(objectName.getDomain());
 
@@ -286,7 +403,7 @@ public class KarafMBeanServerGuard implements InvocationHandler {
      * @param segments the ObjectName segments.
      * @return the PIDs corresponding with the ObjectName in the above order.
      */
-    private List<String> iterateDownPids(List<String> segments) {
+    private static List<String> iterateDownPids(List<String> segments) {
         List<String> res = new ArrayList<String>();
         for (int i = segments.size(); i > 0; i--) {
             StringBuilder sb = new StringBuilder();
@@ -302,6 +419,23 @@ public class KarafMBeanServerGuard implements InvocationHandler {
     }
 
     static boolean currentUserHasRole(String requestedRole) {
+        return hasRole(currentUserPrincipals(), requestedRole);
+    }
+
+    private static Set<Principal> currentUserPrincipals() {
+        AccessControlContext acc = AccessController.getContext();
+        if (acc == null) {
+            return Collections.emptySet();
+        }
+        Subject subject = Subject.getSubject(acc);
+
+        if (subject == null) {
+            return Collections.emptySet();
+        }
+        return subject.getPrincipals();
+    }
+
+    private static boolean hasRole(Set<Principal> principals, String requestedRole) {
         String clazz;
         String role;
         int index = requestedRole.indexOf(':');
@@ -313,23 +447,122 @@ public class KarafMBeanServerGuard implements InvocationHandler {
             role = requestedRole;
         }
 
-        AccessControlContext acc = AccessController.getContext();
-        if (acc == null) {
-            return false;
+        for (Principal p : principals) {
+            if (clazz.equals(p.getClass().getName()) && role.equals(p.getName())) {
+                return true;
+            }
         }
-        Subject subject = Subject.getSubject(acc);
 
-        if (subject == null) {
-            return false;
+        return false;
+    }
+
+    /**
+     * A snapshot of the compiled jmx.acl* configurations. The ACLs that apply to an ObjectName, in the order of
+     * {@link #iterateDownPids(List)}, and the roles required for an operation are cached in bounded LRU maps, as
+     * ObjectNames can be created dynamically. Required roles are only cached if they don't depend on the actual
+     * argument values of the invocation.
+     */
+    static class JmxACLs {
+        private final Map<String, CompiledACL> aclsByPid;
+        private final Map<ObjectName, List<CompiledACL>> objectNameACLs = lruMap(MAX_CACHE_SIZE);
+        private final Map<RequiredRolesKey, List<String>> requiredRoles = lruMap(MAX_CACHE_SIZE);
+
+        JmxACLs(Map<String, CompiledACL> aclsByPid) {
+            this.aclsByPid = aclsByPid;
         }
 
-        for (Principal p : subject.getPrincipals()) {
-            if (clazz.equals(p.getClass().getName()) && role.equals(p.getName())) {
-                return true;
+        List<String> getRequiredRoles(ObjectName objectName, String methodName, Object[] params, String[] signature) {
+            List<CompiledACL> acls = getACLs(objectName);
+
+            boolean argumentDependent = false;
+            if (params != null) {
+                for (CompiledACL acl : acls) {
+                    if (acl.hasArgumentRules(methodName, signature)) {
+                        argumentDependent = true;
+                        break;
+                    }
+                }
             }
+            if (argumentDependent) {
+                return computeRequiredRoles(acls, methodName, params, signature);
+            }
+
+            RequiredRolesKey key = new RequiredRolesKey(objectName, methodName, signature, params == null);
+            List<String> roles = requiredRoles.get(key);
+            if (roles == null) {
+                roles = Collections.unmodifiableList(computeRequiredRoles(acls, methodName, params, signature));
+                requiredRoles.put(key, roles);
+            }
+            return roles;
         }
 
-        return false;
+        private List<CompiledACL> getACLs(ObjectName objectName) {
+            List<CompiledACL> acls = objectNameACLs.get(objectName);
+            if (acls == null) {
+                acls = new ArrayList<CompiledACL>();
+                for (String pid : iterateDownPids(getNameSegments(objectName))) {
+                    CompiledACL acl = aclsByPid.get(pid);
+                    if (acl != null) {
+                        acls.add(acl);
+                    }
+                }
+                objectNameACLs.put(objectName, acls);
+            }
+            return acls;
+        }
+
+        private static List<String> computeRequiredRoles(List<CompiledACL> acls, String methodName, Object[] params, String[] signature) {
+            for (CompiledACL acl : acls) {
+                List<String> roles = new ArrayList<String>();
+                ACLConfigurationParser.Specificity s = acl.getRolesForInvocation(methodName, params, signature, roles);
+                if (s != ACLConfigurationParser.Specificity.NO_MATCH) {
+                    return roles;
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        private static <K, V> Map<K, V> lruMap(final int maxSize) {
+            return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > maxSize;
+                }
+            });
+        }
+    }
+
+    static class RequiredRolesKey {
+        private final ObjectName objectName;
+        private final String methodName;
+        private final String[] signature;
+        private final boolean potential;
+        private final int hashCode;
+
+        RequiredRolesKey(ObjectName objectName, String methodName, String[] signature, boolean potential) {
+            this.objectName = objectName;
+            this.methodName = methodName;
+            this.signature = signature;
+            this.potential = potential;
+            this.hashCode = 31 * (31 * (31 * objectName.hashCode() + methodName.hashCode()) + Arrays.hashCode(signature))
+                    + (potential ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RequiredRolesKey)) return false;
+            RequiredRolesKey that = (RequiredRolesKey) o;
+            return potential == that.potential
+                    && objectName.equals(that.objectName)
+                    && methodName.equals(that.methodName)
+                    && Arrays.equals(signature, that.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
     }
 
 }
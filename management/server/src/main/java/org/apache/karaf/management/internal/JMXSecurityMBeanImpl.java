@@ -29,6 +29,7 @@ import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.TabularData;
 import javax.management.openmbean.TabularDataSupport;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -69,23 +70,32 @@ public class JMXSecurityMBeanImpl extends StandardMBean implements JMXSecurityMB
     public TabularData canInvoke(Map<String, List<String>> bulkQuery) throws Exception {
         TabularData table = new TabularDataSupport(CAN_INVOKE_TABULAR_TYPE);
 
+        KarafMBeanServerGuard guard = (KarafMBeanServerGuard) KarafMBeanServerBuilder.getGuard();
+        Map<ObjectName, List<String>> query = new LinkedHashMap<ObjectName, List<String>>();
+        for (Map.Entry<String, List<String>> entry : bulkQuery.entrySet()) {
+            query.put(new ObjectName(entry.getKey()), entry.getValue());
+        }
+        // evaluate the whole query in one pass through the guard
+        Map<ObjectName, Map<String, Boolean>> results = guard != null ? guard.canInvoke(mbeanServer, query) : null;
+
         for (Map.Entry<String, List<String>> entry : bulkQuery.entrySet()) {
             String objectName = entry.getKey();
             List<String> methods = entry.getValue();
+            Map<String, Boolean> methodResults = results != null ? results.get(new ObjectName(objectName)) : null;
+            // an equivalent object name with its keys in another order may have been
+            // evaluated with other methods, in which case the missing results are checked one by one
             if (methods.size() == 0) {
-                boolean res = canInvoke(objectName);
+                Boolean res = methodResults != null ? methodResults.get("") : null;
+                if (res == null) {
+                    res = canInvoke(objectName);
+                }
                 CompositeData data = new CompositeDataSupport(CAN_INVOKE_RESULT_ROW_TYPE, CAN_INVOKE_RESULT_COLUMNS, new Object[]{ objectName, "", res });
                 table.put(data);
             } else {
                 for (String method : methods) {
-                    List<String> argTypes = new ArrayList<String>();
-                    String name = parseMethodName(method, argTypes);
-
-                    boolean res;
-                    if (name.equals(method)) {
-                        res = canInvoke(objectName, name);
-                    } else {
-                        res = canInvoke(objectName, name, argTypes.toArray(new String[]{}));
+                    Boolean res = methodResults != null ? methodResults.get(method) : null;
+                    if (res == null) {
+                        res = canInvokeMethod(objectName, method);
                     }
                     CompositeData data = new CompositeDataSupport(CAN_INVOKE_RESULT_ROW_TYPE, CAN_INVOKE_RESULT_COLUMNS, new Object[]{ objectName, method, res });
                     table.put(data);
@@ -96,6 +106,16 @@ public class JMXSecurityMBeanImpl extends StandardMBean implements JMXSecurityMB
         return table;
     }
 
+    private boolean canInvokeMethod(String objectName, String method) throws Exception {
+        List<String> argTypes = new ArrayList<String>();
+        String name = parseMethodName(method, argTypes);
+        if (name.equals(method)) {
+            return canInvoke(objectName, name);
+        } else {
+            return canInvoke(objectName, name, argTypes.toArray(new String[]{}));
+        }
+    }
+
     private String parseMethodName(String method, List<String> argTypes) {
         method = method.trim();
         int index = method.indexOf('(');
@@ -21,8 +21,10 @@ import org.apache.karaf.jaas.boot.principal.RolePrincipal;
 import org.easymock.EasyMock;
 import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
 
 import javax.management.*;
 import javax.security.auth.Subject;
@@ -760,6 +762,86 @@ public class KarafMBeanServerGuardTest extends TestCase {
         });
     }
 
+    public void testCanInvokeBulk() throws Exception {
+        final ObjectName on = ObjectName.getInstance("foo.bar:type=Test");
+        final ObjectName on2 = ObjectName.getInstance("foo.bar:type=Toast");
+
+        MBeanParameterInfo[] sig = new MBeanParameterInfo[]{new MBeanParameterInfo("arg1", "java.lang.String", "")};
+        MBeanOperationInfo op = new MBeanOperationInfo("doit", "", sig, "int", MBeanOperationInfo.INFO);
+        MBeanOperationInfo op2 = new MBeanOperationInfo("fryit", "", sig, "int", MBeanOperationInfo.INFO);
+
+        MBeanInfo info = EasyMock.createMock(MBeanInfo.class);
+        EasyMock.expect(info.getOperations()).andReturn(new MBeanOperationInfo[]{op, op2}).anyTimes();
+        EasyMock.expect(info.getAttributes()).andReturn(new MBeanAttributeInfo[]{}).anyTimes();
+        EasyMock.replay(info);
+        MBeanInfo info2 = EasyMock.createMock(MBeanInfo.class);
+        EasyMock.expect(info2.getOperations()).andReturn(new MBeanOperationInfo[]{}).anyTimes();
+        EasyMock.expect(info2.getAttributes()).andReturn(new MBeanAttributeInfo[]{}).anyTimes();
+        EasyMock.replay(info2);
+
+        final MBeanServer mbs = EasyMock.createMock(MBeanServer.class);
+        EasyMock.expect(mbs.getMBeanInfo(on)).andReturn(info).once();
+        EasyMock.expect(mbs.getMBeanInfo(on2)).andReturn(info2).once();
+        EasyMock.replay(mbs);
+
+        Dictionary<String, Object> configuration = new Hashtable<String, Object>();
+        configuration.put("doit(java.lang.String)", "viewer");
+        configuration.put("fryit", "admin");
+        ConfigurationAdmin ca = getMockConfigAdmin(configuration);
+
+        final KarafMBeanServerGuard guard = new KarafMBeanServerGuard();
+        guard.setConfigAdmin(ca);
+
+        final Map<ObjectName, List<String>> query = new LinkedHashMap<ObjectName, List<String>>();
+        query.put(on, Arrays.asList("doit", "fryit", "doit(java.lang.String)"));
+        query.put(on2, Collections.<String>emptyList());
+
+        Subject subject = loginWithTestRoles("viewer");
+
+        Subject.doAs(subject, new PrivilegedAction<Void>() {
+            public Void run() {
+                try {
+                    Map<ObjectName, Map<String, Boolean>> result = guard.canInvoke(mbs, query);
+                    assertEquals(2, result.size());
+                    assertTrue(result.get(on).get("doit"));
+                    assertFalse(result.get(on).get("fryit"));
+                    assertTrue(result.get(on).get("doit(java.lang.String)"));
+                    assertEquals(Collections.singletonMap("", false), result.get(on2));
+
+                    return null;
+                } catch (Throwable th) {
+                    throw new RuntimeException(th);
+                }
+            }
+        });
+        EasyMock.verify(mbs);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testACLsRecompiledOnConfigurationEvent() throws Exception {
+        Dictionary<String, Object> configuration = new Hashtable<String, Object>();
+        configuration.put("doit", "master");
+        ConfigurationAdmin ca = getMockConfigAdmin(configuration);
+
+        KarafMBeanServerGuard guard = new KarafMBeanServerGuard();
+        guard.setConfigAdmin(ca);
+
+        ObjectName on = ObjectName.getInstance("foo.bar:type=Test");
+        assertEquals(Collections.singletonList("master"), guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+
+        configuration.put("doit", "editor");
+        assertEquals("Compiled ACLs are used until the configuration change is notified",
+                Collections.singletonList("master"), guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+
+        ServiceReference<ConfigurationAdmin> caRef = EasyMock.createMock(ServiceReference.class);
+        EasyMock.replay(caRef);
+        guard.configurationEvent(new ConfigurationEvent(caRef, ConfigurationEvent.CM_UPDATED, null, "org.foo.bar"));
+        assertEquals(Collections.singletonList("master"), guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+
+        guard.configurationEvent(new ConfigurationEvent(caRef, ConfigurationEvent.CM_UPDATED, null, "jmx.acl.foo.bar.Test"));
+        assertEquals(Collections.singletonList("editor"), guard.getRequiredRoles(on, "doit", new Object[]{}, new String[]{}));
+    }
+
     public void testCanInvokeMBean2() throws Exception {
         final ObjectName on = ObjectName.getInstance("foo.bar:type=Test");
 
@@ -182,15 +182,21 @@ public class JMXSecurityMBeanImplTestCase extends TestCase {
 
             KarafMBeanServerGuard testGuard = EasyMock.createMock(KarafMBeanServerGuard.class);
             String objectName = "foo.bar.testing:type=SomeMBean";
-            final String[] la = new String[]{"long"};
-            final String[] sa = new String[]{"java.lang.String"};
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName)), EasyMock.eq("testMethod"), EasyMock.aryEq(la))).andReturn(true).anyTimes();
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName)), EasyMock.eq("testMethod"), EasyMock.aryEq(sa))).andReturn(false).anyTimes();
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName)), EasyMock.eq("otherMethod"))).andReturn(true).anyTimes();
             String objectName2 = "foo.bar.testing:type=SomeOtherMBean";
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName2)))).andReturn(true).anyTimes();
             String objectName3 = "foo.bar.foo.testing:type=SomeOtherMBean";
-            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName3)))).andReturn(false).anyTimes();
+            Map<String, Boolean> results = new HashMap<String, Boolean>();
+            results.put("otherMethod", true);
+            results.put("testMethod(long)", true);
+            results.put("testMethod(java.lang.String)", false);
+            Map<ObjectName, Map<String, Boolean>> bulkResult = new HashMap<ObjectName, Map<String, Boolean>>();
+            bulkResult.put(new ObjectName(objectName), results);
+            bulkResult.put(new ObjectName(objectName2), Collections.singletonMap("", true));
+            bulkResult.put(new ObjectName(objectName3), Collections.singletonMap("", false));
+            Map<ObjectName, List<String>> expectedQuery = new HashMap<ObjectName, List<String>>();
+            expectedQuery.put(new ObjectName(objectName), Arrays.asList("otherMethod", "testMethod(long)", "testMethod(java.lang.String)"));
+            expectedQuery.put(new ObjectName(objectName2), Collections.<String>emptyList());
+            expectedQuery.put(new ObjectName(objectName3), Collections.<String>emptyList());
+            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(expectedQuery))).andReturn(bulkResult).once();
             EasyMock.replay(testGuard);
             KarafMBeanServerBuilder.setGuard(testGuard);
 
@@ -228,4 +234,36 @@ public class JMXSecurityMBeanImplTestCase extends TestCase {
         }
     }
 
+    public void testCanInvokeBulkEquivalentObjectNames() throws Exception {
+        InvocationHandler prevGuard = KarafMBeanServerBuilder.getGuard();
+        try {
+            MBeanServer mbs = EasyMock.createMock(MBeanServer.class);
+            EasyMock.replay(mbs);
+
+            // both names have the same canonical form, the guard only evaluates one of them
+            String objectName = "foo.bar.testing:type=SomeMBean,name=test";
+            String objectName2 = "foo.bar.testing:name=test,type=SomeMBean";
+            KarafMBeanServerGuard testGuard = EasyMock.createMock(KarafMBeanServerGuard.class);
+            Map<ObjectName, Map<String, Boolean>> bulkResult = new HashMap<ObjectName, Map<String, Boolean>>();
+            bulkResult.put(new ObjectName(objectName), Collections.singletonMap("otherMethod", true));
+            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.<Map<ObjectName, List<String>>>anyObject())).andReturn(bulkResult).once();
+            EasyMock.expect(testGuard.canInvoke(EasyMock.eq(mbs), EasyMock.eq(new ObjectName(objectName)), EasyMock.eq("testMethod"), EasyMock.aryEq(new String[]{"long"}))).andReturn(false).once();
+            EasyMock.replay(testGuard);
+            KarafMBeanServerBuilder.setGuard(testGuard);
+
+            JMXSecurityMBeanImpl mb = new JMXSecurityMBeanImpl();
+            mb.setMBeanServer(mbs);
+            Map<String, List<String>> query = new LinkedHashMap<String, List<String>>();
+            query.put(objectName, Arrays.asList("testMethod(long)"));
+            query.put(objectName2, Arrays.asList("otherMethod"));
+            TabularData result = mb.canInvoke(query);
+            assertEquals(2, result.size());
+            assertEquals(false, result.get(new Object[]{objectName, "testMethod(long)"}).get("CanInvoke"));
+            assertEquals(true, result.get(new Object[]{objectName2, "otherMethod"}).get("CanInvoke"));
+            EasyMock.verify(testGuard);
+        } finally {
+            KarafMBeanServerBuilder.setGuard(prevGuard);
+        }
+    }
+
 }
@@ -24,6 +24,8 @@ import java.security.AccessController;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -46,6 +48,7 @@ import org.apache.aries.proxy.UnableToProxyException;
 import org.apache.karaf.jaas.boot.principal.RolePrincipal;
 import org.apache.karaf.service.guard.tools.ACLConfigurationParser;
 import org.apache.karaf.service.guard.tools.ACLConfigurationParser.Specificity;
+import org.apache.karaf.service.guard.tools.CompiledACL;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -58,12 +61,14 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class GuardProxyCatalog implements ServiceListener {
+public class GuardProxyCatalog implements ServiceListener, ConfigurationListener {
     public static final String KARAF_SECURED_SERVICES_SYSPROP = "karaf.secured.services";
     public static final String SERVICE_GUARD_ROLES_PROPERTY = "org.apache.karaf.service.guard.roles";
 
@@ -88,6 +93,12 @@ public class GuardProxyCatalog implements ServiceListener {
     volatile boolean runProxyCreator = true;
     volatile Thread proxyCreatorThread = null;
 
+    // The compiled service.acl.* configurations. Built lazily and dropped whenever one of these
+    // configurations changes, so that service invocations don't need to go to Config Admin.
+    volatile ServiceGuardConfigs serviceGuardConfigs = null;
+    private long serviceGuardConfigsGeneration = 0;
+    private final ServiceRegistration<ConfigurationListener> configListenerRegistration;
+
     GuardProxyCatalog(BundleContext bc) throws Exception {
         LOG.trace("Starting GuardProxyCatalog");
         myBundleContext = bc;
@@ -104,6 +115,9 @@ public class GuardProxyCatalog implements ServiceListener {
         LOG.trace("Creating Proxy Manager Tracker using filter {}", pmFilter);
         proxyManagerTracker = new ServiceTracker<ProxyManager, ProxyManager>(bc, pmFilter, new ServiceProxyCreatorCustomizer());
         proxyManagerTracker.open();
+
+        // Used to drop the compiled ACLs as soon as any of the service ACL configurations changes
+        configListenerRegistration = bc.registerService(ConfigurationListener.class, this, null);
     }
 
     static Filter getNonProxyFilter(BundleContext bc, Class<?> clazz) throws InvalidSyntaxException {
@@ -116,6 +130,9 @@ public class GuardProxyCatalog implements ServiceListener {
     void close() {
         LOG.trace("Stopping GuardProxyCatalog");
         stopProxyCreator();
+        if (configListenerRegistration != null) {
+            configListenerRegistration.unregister();
+        }
         proxyManagerTracker.close();
         configAdminTracker.close();
 
@@ -131,6 +148,19 @@ public class GuardProxyCatalog implements ServiceListener {
             }
         }
         proxyMap.clear();
+        invalidateServiceGuardConfigs();
+    }
+
+    @Override
+    public void configurationEvent(ConfigurationEvent event) {
+        if (isServiceACLPid(event.getPid()) || isServiceACLPid(event.getFactoryPid())) {
+            LOG.trace("Service ACL configuration {} changed, discarding compiled ACLs", event.getPid());
+            invalidateServiceGuardConfigs();
+        }
+    }
+
+    private static boolean isServiceACLPid(String pid) {
+        return pid != null && pid.startsWith(SERVICE_ACL_PREFIX);
     }
 
     @Override
@@ -151,6 +181,14 @@ public class GuardProxyCatalog implements ServiceListener {
         }
 
         Long orgServiceID = (Long) sr.getProperty(Constants.SERVICE_ID);
+        if (event.getType() != ServiceEvent.REGISTERED) {
+            // The matching ACLs depend on the service properties, so recompute them next time
+            ServiceGuardConfigs configs = serviceGuardConfigs;
+            if (configs != null) {
+                configs.services.remove(orgServiceID);
+            }
+        }
+
         if (event.getType() == ServiceEvent.UNREGISTERING) {
             handleOriginalServiceUnregistering(orgServiceID);
         }
@@ -298,48 +336,55 @@ public class GuardProxyCatalog implements ServiceListener {
     // Returns what roles can possibly ever invoke this service. Note that not every invocation may be successful
     // as there can be different roles for different methods and also roles based on arguments passed in.
     Set<String> getServiceInvocationRoles(ServiceReference<?> serviceReference) throws Exception {
-        boolean definitionFound = false;
+        ServiceACL acl = getServiceGuardConfigs().getServiceACL(serviceReference);
+        if (acl.configs.isEmpty()) {
+            return null;
+        }
+
         Set<String> allRoles = new HashSet<String>();
+        for (ServiceGuardConfig config : acl.configs) {
+            allRoles.addAll(config.invocationRoles);
+        }
+        return allRoles;
+    }
 
-        // This can probably be optimized. Maybe we can cache the config object relevant instead of
-        // walking through all of the ones that have 'service.guard'.
-        for (Configuration config : getServiceGuardConfigs()) {
-            Object guardFilter = config.getProperties().get(SERVICE_GUARD_KEY);
-            if (guardFilter instanceof String) {
-                Filter filter = myBundleContext.createFilter((String) guardFilter);
-                if (filter.match(serviceReference)) {
-                    definitionFound = true;
-                    for (Enumeration<String> e = config.getProperties().keys(); e.hasMoreElements(); ) {
-                        String key = e.nextElement();
-                        String bareKey = key;
-                        int idx = bareKey.indexOf('(');
-                        if (idx >= 0) {
-                            bareKey = bareKey.substring(0, idx);
-                        }
-                        int idx1 = bareKey.indexOf('[');
-                        if (idx1 >= 0) {
-                            bareKey = bareKey.substring(0, idx1);
-                        }
-                        int idx2 = bareKey.indexOf('*');
-                        if (idx2 >= 0) {
-                            bareKey = bareKey.substring(0, idx2);
-                        }
-                        if (!isValidMethodName(bareKey)) {
-                            continue;
-                        }
-                        Object value = config.getProperties().get(key);
-                        if (value instanceof String) {
-                            allRoles.addAll(ACLConfigurationParser.parseRoles((String) value));
-                        }
-                    }
-                }
+    // Returns the compiled service ACL configurations, (re)building them if needed. Never returns null.
+    ServiceGuardConfigs getServiceGuardConfigs() throws IOException, InvalidSyntaxException {
+        ServiceGuardConfigs configs = serviceGuardConfigs;
+        if (configs != null && configs.trackingCount == configAdminTracker.getTrackingCount()) {
+            return configs;
+        }
+
+        long generation;
+        synchronized (this) {
+            generation = serviceGuardConfigsGeneration;
+        }
+        int trackingCount = configAdminTracker.getTrackingCount();
+        List<ServiceGuardConfig> compiled = new ArrayList<ServiceGuardConfig>();
+        for (Configuration config : listServiceGuardConfigs()) {
+            Dictionary<String, Object> properties = config.getProperties();
+            if (properties != null && properties.get(SERVICE_GUARD_KEY) instanceof String) {
+                compiled.add(new ServiceGuardConfig(myBundleContext, properties));
             }
         }
-        return definitionFound ? allRoles : null;
+        configs = new ServiceGuardConfigs(trackingCount, compiled);
+
+        synchronized (this) {
+            // Don't cache if a configuration changed while we were busy, the next call will pick it up
+            if (generation == serviceGuardConfigsGeneration) {
+                serviceGuardConfigs = configs;
+            }
+        }
+        return configs;
+    }
+
+    synchronized void invalidateServiceGuardConfigs() {
+        serviceGuardConfigsGeneration++;
+        serviceGuardConfigs = null;
     }
 
     // Ensures that it never returns null
-    private Configuration[] getServiceGuardConfigs() throws IOException, InvalidSyntaxException {
+    private Configuration[] listServiceGuardConfigs() throws IOException, InvalidSyntaxException {
         ConfigurationAdmin ca = null;
         try {
             ca = configAdminTracker.waitForService(5000);
@@ -357,7 +402,7 @@ public class GuardProxyCatalog implements ServiceListener {
         return configs;
     }
 
-    private boolean isValidMethodName(String name) {
+    private static boolean isValidMethodName(String name) {
         return JAVA_METHOD_NAME_PATTERN.matcher(name).matches();
     }
 
@@ -369,10 +414,39 @@ public class GuardProxyCatalog implements ServiceListener {
     }
 
     static boolean currentUserHasRole(String reqRole) {
-        if (ROLE_WILDCARD.equals(reqRole)) {
-            return true;
+        return findCurrentUserRole(Collections.singletonList(reqRole)) != null;
+    }
+
+    // Returns the first of the required roles that the current user has, or null if the user has none of them.
+    // The subject is looked up once for all the roles.
+    static String findCurrentUserRole(Collection<String> reqRoles) {
+        Set<Principal> principals = null;
+        for (String reqRole : reqRoles) {
+            if (ROLE_WILDCARD.equals(reqRole)) {
+                return reqRole;
+            }
+
+            if (principals == null) {
+                AccessControlContext acc = AccessController.getContext();
+                if (acc == null) {
+                    return null;
+                }
+
+                Subject subject = Subject.getSubject(acc);
+                if (subject == null) {
+                    return null;
+                }
+                principals = subject.getPrincipals();
+            }
+
+            if (hasRole(principals, reqRole)) {
+                return reqRole;
+            }
         }
+        return null;
+    }
 
+    private static boolean hasRole(Set<Principal> principals, String reqRole) {
         String clazz;
         String role;
         int idx = reqRole.indexOf(':');
@@ -384,17 +458,7 @@ public class GuardProxyCatalog implements ServiceListener {
             role = reqRole;
         }
 
-        AccessControlContext acc = AccessController.getContext();
-        if (acc == null) {
-            return false;
-        }
-
-        Subject subject = Subject.getSubject(acc);
-        if (subject == null) {
-            return false;
-        }
-
-        for (Principal p : subject.getPrincipals()) {
+        for (Principal p : principals) {
             if (clazz.equals(p.getClass().getName()) && role.equals(p.getName())) {
                 return true;
             }
@@ -470,55 +534,22 @@ public class GuardProxyCatalog implements ServiceListener {
 
         @Override
         public Object preInvoke(Object proxy, Method m, Object[] args) throws Throwable {
-            String[] sig = new String[m.getParameterTypes().length];
-            for (int i = 0; i < m.getParameterTypes().length; i++) {
-                sig[i] = m.getParameterTypes()[i].getName();
-            }
-
-            // The ordering of the keys is important because the first value when iterating has the highest specificity
-            TreeMap<Specificity, List<String>> roleMappings = new TreeMap<ACLConfigurationParser.Specificity, List<String>>();
-            boolean foundMatchingConfig = false;
-
-            // This can probably be optimized. Maybe we can cache the config object relevant instead of
-            // walking through all of the ones that have 'service.guard'.
-            for (Configuration config : getServiceGuardConfigs()) {
-                Object guardFilter = config.getProperties().get(SERVICE_GUARD_KEY);
-                if (guardFilter instanceof String) {
-                    Filter filter = myBundleContext.createFilter((String) guardFilter);
-                    if (filter.match(serviceReference)) {
-                        foundMatchingConfig = true;
-                        List<String> roles = new ArrayList<String>();
-                        Specificity s = ACLConfigurationParser.
-                                getRolesForInvocation(m.getName(), args, sig, config.getProperties(), roles);
-                        if (s != Specificity.NO_MATCH) {
-                            roleMappings.put(s, roles);
-                            if (s == Specificity.ARGUMENT_MATCH) {
-                                // No more specific mapping can be found
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-
-            if (!foundMatchingConfig) {
+            ServiceACL acl = getServiceGuardConfigs().getServiceACL(serviceReference);
+            if (acl.configs.isEmpty()) {
                 // No mappings for this service, anyone can invoke
                 return null;
             }
 
-            if (roleMappings.size() == 0) {
+            List<String> allowedRoles = acl.getAllowedRoles(m, args);
+            if (allowedRoles == null) {
                 LOG.info("Service {} has role mapping, but assigned no roles to method {}", serviceReference, m);
                 throw new SecurityException("Insufficient credentials.");
             }
 
-            // The first entry on the map has the highest significance because the keys are sorted in the order of
-            // the Specificity enum.
-            List<String> allowedRoles = roleMappings.values().iterator().next();
-            for (String role : allowedRoles) {
-                if (currentUserHasRole(role)) {
-                    LOG.trace("Allow user with role {} to invoke service {} method {}", role, serviceReference, m);
-                    return null;
-                }
+            String role = findCurrentUserRole(allowedRoles);
+            if (role != null) {
+                LOG.trace("Allow user with role {} to invoke service {} method {}", role, serviceReference, m);
+                return null;
             }
 
             // The current user does not have the required roles to invoke the service.
@@ -591,6 +622,169 @@ public class GuardProxyCatalog implements ServiceListener {
         }
     }
 
+    // A snapshot of all the service.acl.* configurations with their filters and ACLs compiled. The ACLs that apply
+    // to a service and the roles that apply to its methods are computed on first use and cached in here.
+    static class ServiceGuardConfigs {
+        final int trackingCount;
+        final List<ServiceGuardConfig> configs;
+        final ConcurrentMap<Long, ServiceACL> services = new ConcurrentHashMap<Long, ServiceACL>();
+
+        ServiceGuardConfigs(int trackingCount, List<ServiceGuardConfig> configs) {
+            this.trackingCount = trackingCount;
+            this.configs = configs;
+        }
+
+        ServiceACL getServiceACL(ServiceReference<?> sr) throws InvalidSyntaxException {
+            Long serviceID = (Long) sr.getProperty(Constants.SERVICE_ID);
+            ServiceACL acl = serviceID != null ? services.get(serviceID) : null;
+            if (acl == null) {
+                List<ServiceGuardConfig> matching = new ArrayList<ServiceGuardConfig>();
+                for (ServiceGuardConfig config : configs) {
+                    if (config.matches(sr)) {
+                        matching.add(config);
+                    }
+                }
+                acl = new ServiceACL(matching);
+                if (serviceID != null) {
+                    ServiceACL existing = services.putIfAbsent(serviceID, acl);
+                    if (existing != null) {
+                        acl = existing;
+                    }
+                }
+            }
+            return acl;
+        }
+    }
+
+    static class ServiceGuardConfig {
+        final Filter filter;
+        final InvalidSyntaxException filterException;
+        final CompiledACL acl;
+        final Set<String> invocationRoles;
+
+        ServiceGuardConfig(BundleContext bc, Dictionary<String, Object> properties) {
+            Filter f = null;
+            InvalidSyntaxException fe = null;
+            try {
+                f = bc.createFilter((String) properties.get(SERVICE_GUARD_KEY));
+            } catch (InvalidSyntaxException e) {
+                // Reported on every use rather than ignored, so that the service doesn't become unguarded
+                fe = e;
+            }
+            filter = f;
+            filterException = fe;
+            acl = new CompiledACL(properties);
+            invocationRoles = Collections.unmodifiableSet(computeInvocationRoles(properties));
+        }
+
+        boolean matches(ServiceReference<?> sr) throws InvalidSyntaxException {
+            if (filterException != null) {
+                throw filterException;
+            }
+            return filter.match(sr);
+        }
+
+        private static Set<String> computeInvocationRoles(Dictionary<String, Object> properties) {
+            Set<String> roles = new HashSet<String>();
+            for (Enumeration<String> e = properties.keys(); e.hasMoreElements(); ) {
+                String key = e.nextElement();
+                String bareKey = key;
+                int idx = bareKey.indexOf('(');
+                if (idx >= 0) {
+                    bareKey = bareKey.substring(0, idx);
+                }
+                int idx1 = bareKey.indexOf('[');
+                if (idx1 >= 0) {
+                    bareKey = bareKey.substring(0, idx1);
+                }
+                int idx2 = bareKey.indexOf('*');
+                if (idx2 >= 0) {
+                    bareKey = bareKey.substring(0, idx2);
+                }
+                if (!isValidMethodName(bareKey)) {
+                    continue;
+                }
+                Object value = properties.get(key);
+                if (value instanceof String) {
+                    roles.addAll(ACLConfigurationParser.parseRoles((String) value));
+                }
+            }
+            return roles;
+        }
+    }
+
+    // The ACLs that apply to a particular service, with the per-method decisions cached.
+    static class ServiceACL {
+        final List<ServiceGuardConfig> configs;
+        final ConcurrentMap<Method, MethodACL> methods = new ConcurrentHashMap<Method, MethodACL>();
+
+        ServiceACL(List<ServiceGuardConfig> configs) {
+            this.configs = configs;
+        }
+
+        // Returns the roles allowed to make the invocation, or null if the configurations don't assign any
+        List<String> getAllowedRoles(Method m, Object[] args) {
+            MethodACL methodACL = methods.get(m);
+            if (methodACL == null) {
+                methodACL = new MethodACL(m, this);
+                methods.putIfAbsent(m, methodACL);
+            }
+
+            if (methodACL.argumentDependent) {
+                return computeAllowedRoles(m.getName(), methodACL.signature, args);
+            }
+            return methodACL.allowedRoles;
+        }
+
+        List<String> computeAllowedRoles(String methodName, String[] sig, Object[] args) {
+            // The ordering of the keys is important because the first value when iterating has the highest specificity
+            TreeMap<Specificity, List<String>> roleMappings = new TreeMap<Specificity, List<String>>();
+            for (ServiceGuardConfig config : configs) {
+                List<String> roles = new ArrayList<String>();
+                Specificity s = config.acl.getRolesForInvocation(methodName, args, sig, roles);
+                if (s != Specificity.NO_MATCH) {
+                    roleMappings.put(s, roles);
+                    if (s == Specificity.ARGUMENT_MATCH) {
+                        // No more specific mapping can be found
+                        break;
+                    }
+                }
+            }
+
+            if (roleMappings.size() == 0) {
+                return null;
+            }
+            // The first entry on the map has the highest significance because the keys are sorted in the order of
+            // the Specificity enum.
+            return roleMappings.values().iterator().next();
+        }
+    }
+
+    static class MethodACL {
+        final String[] signature;
+        final boolean argumentDependent;
+        // Only valid if the decision doesn't depend on the argument values
+        final List<String> allowedRoles;
+
+        MethodACL(Method m, ServiceACL serviceACL) {
+            Class<?>[] parameterTypes = m.getParameterTypes();
+            signature = new String[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                signature[i] = parameterTypes[i].getName();
+            }
+
+            boolean dependent = false;
+            for (ServiceGuardConfig config : serviceACL.configs) {
+                if (config.acl.hasArgumentRules(m.getName(), signature)) {
+                    dependent = true;
+                    break;
+                }
+            }
+            argumentDependent = dependent;
+            allowedRoles = dependent ? null : serviceACL.computeAllowedRoles(m.getName(), signature, new Object[0]);
+        }
+    }
+
     interface CreateProxyRunnable {
         long getOriginalServiceID();
         void run(ProxyManager pm) throws Exception;
@@ -146,7 +146,7 @@ public class ACLConfigurationParser {
         return d;
     }
 
-    private static String removeSpaces(String key) {
+    static String removeSpaces(String key) {
         StringBuilder sb = new StringBuilder();
         char quoteChar = 0;
         for (int i = 0; i < key.length(); i++) {
@@ -192,7 +192,7 @@ public class ACLConfigurationParser {
         return roles;
     }
 
-    private static Object getExactArgSignature(String methodName, String[] signature, Object[] params) {
+    static String getExactArgSignature(String methodName, String[] signature, Object[] params) {
         StringBuilder sb = new StringBuilder(getSignature(methodName, signature));
         sb.append('[');
         boolean first = true;
@@ -210,7 +210,7 @@ public class ACLConfigurationParser {
         return sb.toString();
     }
 
-    private static String getSignature(String methodName, String[] signature) {
+    static String getSignature(String methodName, String[] signature) {
         StringBuilder sb = new StringBuilder(methodName);
         if (signature == null)
             return sb.toString();
@@ -306,7 +306,7 @@ public class ACLConfigurationParser {
         return true;
     }
 
-    private static List<String> getRegexDecl(String key) {
+    static List<String> getRegexDecl(String key) {
         List<String> l = new ArrayList<String>();
 
         boolean inRegex = false;
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.service.guard.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.karaf.service.guard.tools.ACLConfigurationParser.Specificity;
+
+/**
+ * A pre-processed form of an ACL configuration dictionary. It gives the same answers as
+ * {@link ACLConfigurationParser#getRolesForInvocation(String, Object[], String[], Dictionary, List)}, but the
+ * keys are trimmed, the role values are split and the argument regular expressions are compiled only once, when
+ * the configuration is loaded, instead of on every invocation.<p/>
+ *
+ * Instances are immutable and can be shared between threads. A new instance needs to be created when the
+ * underlying configuration changes.
+ */
+public class CompiledACL {
+
+    private final Map<String, List<String>> roles = new HashMap<String, List<String>>();
+    private final Map<String, List<ArgumentRule>> argumentRules = new HashMap<String, List<ArgumentRule>>();
+    private final List<WildcardRule> wildcardRules = new ArrayList<WildcardRule>();
+
+    public CompiledACL(Dictionary<String, Object> config) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (Enumeration<String> e = config.keys(); e.hasMoreElements(); ) {
+            String rawKey = e.nextElement();
+            Object value = config.get(rawKey);
+            String key = ACLConfigurationParser.removeSpaces(rawKey);
+            properties.put(key, value);
+            if (value instanceof String) {
+                roles.put(key, Collections.unmodifiableList(ACLConfigurationParser.parseRoles((String) value)));
+            }
+        }
+
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            String key = entry.getKey();
+            if (key.endsWith("*")) {
+                wildcardRules.add(new WildcardRule(key.substring(0, key.length() - 1), entry.getValue().toString()));
+            }
+
+            int idx = argumentsIndex(key);
+            if (idx > 0 && key.endsWith("]")) {
+                String methodSig = key.substring(0, idx);
+                List<ArgumentRule> rules = argumentRules.get(methodSig);
+                if (rules == null) {
+                    rules = new ArrayList<ArgumentRule>();
+                    argumentRules.put(methodSig, rules);
+                }
+                rules.add(new ArgumentRule(key, methodSig, roles.get(key)));
+            }
+        }
+
+        // longer prefixes take precedence over shorter ones
+        Collections.sort(wildcardRules, new Comparator<WildcardRule>() {
+            public int compare(WildcardRule r1, WildcardRule r2) {
+                return r2.prefix.length() - r1.prefix.length();
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} if the outcome of {@link #getRolesForInvocation} for the given method may depend on the
+     * actual argument values, i.e. if there are exact value or regex rules for the method name or signature.
+     */
+    public boolean hasArgumentRules(String methodName, String[] signature) {
+        return argumentRules.containsKey(ACLConfigurationParser.getSignature(methodName, signature))
+                || argumentRules.containsKey(methodName);
+    }
+
+    /**
+     * Compiled equivalent of
+     * {@link ACLConfigurationParser#getRolesForInvocation(String, Object[], String[], Dictionary, List)}.
+     */
+    public Specificity getRolesForInvocation(String methodName, Object[] params, String[] signature,
+                                             List<String> addToRoles) {
+        Specificity s = getRolesBasedOnSignature(methodName, params, signature, addToRoles);
+        if (s != Specificity.NO_MATCH) {
+            return s;
+        }
+
+        s = getRolesBasedOnSignature(methodName, params, null, addToRoles);
+        if (s != Specificity.NO_MATCH) {
+            return s;
+        }
+
+        for (WildcardRule rule : wildcardRules) {
+            if (methodName.startsWith(rule.prefix)) {
+                addToRoles.addAll(rule.roles);
+                return Specificity.WILDCARD_MATCH;
+            }
+        }
+        return Specificity.NO_MATCH;
+    }
+
+    private Specificity getRolesBasedOnSignature(String methodName, Object[] params, String[] signature,
+                                                 List<String> addToRoles) {
+        String methodSig = ACLConfigurationParser.getSignature(methodName, signature);
+        List<ArgumentRule> rules = argumentRules.get(methodSig);
+
+        if (params != null) {
+            boolean foundExactOrRegex = false;
+            if (rules != null) {
+                List<String> exactArgMatchRoles = roles.get(ACLConfigurationParser.getExactArgSignature(methodName, signature, params));
+                if (exactArgMatchRoles != null) {
+                    addToRoles.addAll(exactArgMatchRoles);
+                    foundExactOrRegex = true;
+                }
+
+                for (ArgumentRule rule : rules) {
+                    if (rule.isRegex() && rule.matches(params)) {
+                        foundExactOrRegex = true;
+                        if (rule.roles != null) {
+                            addToRoles.addAll(rule.roles);
+                        }
+                    }
+                }
+            }
+
+            if (foundExactOrRegex) {
+                // since we have the actual parameters we can match them and if they do we won't look for any
+                // more generic rules...
+                return Specificity.ARGUMENT_MATCH;
+            }
+        } else if (rules != null) {
+            // this is used in the case where parameters aren't known yet and the system wants to find out
+            // what roles in principle can invoke this method
+            for (ArgumentRule rule : rules) {
+                if (rule.roles != null) {
+                    addToRoles.addAll(rule.roles);
+                }
+            }
+        }
+
+        List<String> signatureRoles = roles.get(methodSig);
+        if (signatureRoles != null) {
+            addToRoles.addAll(signatureRoles);
+            return signature == null ? Specificity.NAME_MATCH : Specificity.SIGNATURE_MATCH;
+        }
+
+        return Specificity.NO_MATCH;
+    }
+
+    // Returns the index of the '[' that starts the argument part of a key, or -1 if there is none.
+    // Note that type names in the signature can contain '[' themselves (e.g. "[Ljava.lang.String;").
+    private static int argumentsIndex(String key) {
+        int bracket = key.indexOf('[');
+        int paren = key.indexOf('(');
+        if (paren < 0 || (bracket >= 0 && bracket < paren)) {
+            return bracket;
+        }
+        int close = key.indexOf(')', paren);
+        if (close < 0 || close + 1 >= key.length() || key.charAt(close + 1) != '[') {
+            return -1;
+        }
+        return close + 1;
+    }
+
+    private static class WildcardRule {
+        final String prefix;
+        final List<String> roles;
+
+        WildcardRule(String prefix, String value) {
+            this.prefix = prefix;
+            this.roles = ACLConfigurationParser.parseRoles(value);
+        }
+    }
+
+    private static class ArgumentRule {
+        final List<String> roles;
+        final String[] regexes;
+        final Pattern[] patterns;
+
+        ArgumentRule(String key, String methodSig, List<String> roles) {
+            this.roles = roles;
+            if (key.startsWith(methodSig + "[/") && key.endsWith("/]")) {
+                List<String> decl = ACLConfigurationParser.getRegexDecl(key.substring(methodSig.length()));
+                regexes = decl.toArray(new String[decl.size()]);
+                patterns = new Pattern[regexes.length];
+                for (int i = 0; i < regexes.length; i++) {
+                    try {
+                        patterns[i] = Pattern.compile(regexes[i]);
+                    } catch (PatternSyntaxException e) {
+                        // reported when the rule is actually used, like the non-compiled parser does
+                        patterns[i] = null;
+                    }
+                }
+            } else {
+                regexes = null;
+                patterns = null;
+            }
+        }
+
+        boolean isRegex() {
+            return patterns != null;
+        }
+
+        boolean matches(Object[] params) {
+            if (patterns.length != params.length)
+                return false;
+
+            for (int i = 0; i < patterns.length; i++) {
+                if (params[i] == null)
+                    return false;
+                String value = params[i].toString().trim();
+                boolean match = patterns[i] != null ? patterns[i].matcher(value).matches() : value.matches(regexes[i]);
+                if (!match) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
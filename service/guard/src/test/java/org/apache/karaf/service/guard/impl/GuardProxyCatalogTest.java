@@ -22,6 +22,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -63,6 +64,7 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
 
 public class GuardProxyCatalogTest {
     // Some assertions fail when run under a code coverage tool, they are skipped when this is set to true
@@ -144,6 +146,41 @@ public class GuardProxyCatalogTest {
         assertEquals("Should trigger proxy creation", 1, gpc.proxyMap.size());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testServiceGuardConfigsCache() throws Exception {
+        Dictionary<String, Object> config = new Hashtable<String, Object>();
+        config.put(Constants.SERVICE_PID, GuardProxyCatalog.SERVICE_ACL_PREFIX + "foo");
+        config.put(GuardProxyCatalog.SERVICE_GUARD_KEY, "(a>=5)");
+        config.put("doit", "r1");
+        BundleContext bc = mockConfigAdminBundleContext(config);
+        GuardProxyCatalog gpc = new GuardProxyCatalog(bc);
+
+        GuardProxyCatalog.ServiceGuardConfigs configs = gpc.getServiceGuardConfigs();
+        assertEquals(1, configs.configs.size());
+        assertSame("Compiled configurations should be reused", configs, gpc.getServiceGuardConfigs());
+
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_ID, 17L);
+        props.put("a", "6");
+        ServiceReference<?> sref = mockServiceReference(props);
+        assertEquals(Collections.singleton("r1"), gpc.getServiceInvocationRoles(sref));
+        assertTrue(configs.services.containsKey(17L));
+
+        gpc.serviceChanged(new ServiceEvent(ServiceEvent.MODIFIED, sref));
+        assertFalse("Service modification should drop the cached ACLs of the service", configs.services.containsKey(17L));
+
+        ServiceReference<ConfigurationAdmin> caRef = EasyMock.createMock(ServiceReference.class);
+        EasyMock.replay(caRef);
+        gpc.configurationEvent(new ConfigurationEvent(caRef, ConfigurationEvent.CM_UPDATED, null, "org.foo.bar"));
+        assertSame("Unrelated configuration should not affect the cache", configs, gpc.getServiceGuardConfigs());
+
+        gpc.configurationEvent(new ConfigurationEvent(caRef, ConfigurationEvent.CM_UPDATED, null,
+                GuardProxyCatalog.SERVICE_ACL_PREFIX + "foo"));
+        assertNotSame("Service ACL configuration change should recompile the configurations",
+                configs, gpc.getServiceGuardConfigs());
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Test
     public void testHandleServiceUnregistering() throws Exception {
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.service.guard.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.apache.karaf.service.guard.tools.ACLConfigurationParser.Specificity;
+import org.junit.Test;
+
+public class CompiledACLTest {
+    @Test
+    public void testGetRolesForInvocation() {
+        Dictionary<String, Object> config = new Hashtable<String, Object>();
+        config.put("foo", "r1, r2");
+        config.put("bar(java.lang.String, int)[/aa/,/42/]", "ra");
+        config.put("bar(java.lang.String, int)[/bb/,/42/]", "rb");
+        config.put("bar(java.lang.String, int)[\"cc\", \"17\"]", "rc");
+        config.put("bar(java.lang.String, int)", "rd");
+        config.put("bar(java.lang.String)", "re");
+        config.put("bar", "rf");
+        config.put("ba*", "rg #Wildcard");
+        CompiledACL acl = new CompiledACL(config);
+
+        List<String> roles1 = new ArrayList<String>();
+        assertEquals(Specificity.NAME_MATCH,
+                acl.getRolesForInvocation("foo", new Object [] {}, new String [] {}, roles1));
+        assertEquals(Arrays.asList("r1", "r2"), roles1);
+
+        List<String> roles2 = new ArrayList<String>();
+        assertEquals(Specificity.NAME_MATCH,
+                acl.getRolesForInvocation("foo", new Object [] {"test"}, new String [] {"java.lang.String"}, roles2));
+        assertEquals(Arrays.asList("r1", "r2"), roles2);
+
+        List<String> roles3 = new ArrayList<String>();
+        assertEquals(Specificity.NO_MATCH,
+                acl.getRolesForInvocation("test", new Object [] {}, new String [] {}, roles3));
+        assertEquals(0, roles3.size());
+
+        List<String> roles4 = new ArrayList<String>();
+        assertEquals(Specificity.ARGUMENT_MATCH,
+                acl.getRolesForInvocation("bar", new Object [] {"aa", 42}, new String [] {"java.lang.String", "int"}, roles4));
+        assertEquals(Arrays.asList("ra"), roles4);
+
+        List<String> roles5 = new ArrayList<String>();
+        assertEquals(Specificity.ARGUMENT_MATCH,
+                acl.getRolesForInvocation("bar", new Object [] {"bb", 42}, new String [] {"java.lang.String", "int"}, roles5));
+        assertEquals(Arrays.asList("rb"), roles5);
+
+        List<String> roles6 = new ArrayList<String>();
+        assertEquals(Specificity.ARGUMENT_MATCH,
+                acl.getRolesForInvocation("bar", new Object [] {"cc", 17}, new String [] {"java.lang.String", "int"}, roles6));
+        assertEquals(Arrays.asList("rc"), roles6);
+
+        List<String> roles7 = new ArrayList<String>();
+        assertEquals(Specificity.SIGNATURE_MATCH,
+                acl.getRolesForInvocation("bar", new Object [] {"aaa", 42}, new String [] {"java.lang.String", "int"}, roles7));
+        assertEquals(Arrays.asList("rd"), roles7);
+
+        List<String> roles8 = new ArrayList<String>();
+        assertEquals(Specificity.SIGNATURE_MATCH,
+                acl.getRolesForInvocation("bar", new Object [] {"aa"}, new String [] {"java.lang.String"}, roles8));
+        assertEquals(Arrays.asList("re"), roles8);
+
+        List<String> roles9 = new ArrayList<String>();
+        assertEquals(Specificity.NAME_MATCH,
+                acl.getRolesForInvocation("bar", new Object [] {42}, new String [] {"int"}, roles9));
+        assertEquals(Arrays.asList("rf"), roles9);
+
+        List<String> roles10 = new ArrayList<String>();
+        assertEquals(Specificity.WILDCARD_MATCH,
+                acl.getRolesForInvocation("barr", new Object [] {42}, new String [] {"int"}, roles10));
+        assertEquals(Arrays.asList("rg"), roles10);
+    }
+
+    @Test
+    public void testGetRolesForInvocationWithoutParams() {
+        Dictionary<String, Object> config = new Hashtable<String, Object>();
+        config.put("bar(java.lang.String, int)[/aa/,/42/]", "ra");
+        config.put("bar(java.lang.String, int)[\"cc\", \"17\"]", "rc");
+        config.put("bar(java.lang.String, int)", "rd");
+        config.put("get*", "rg");
+        config.put("*", "rh");
+        CompiledACL acl = new CompiledACL(config);
+
+        for (String[] sig : new String [][] {{"java.lang.String", "int"}, {"int"}, {}}) {
+            for (String method : new String [] {"bar", "getFoo", "getter", "foo"}) {
+                List<String> expected = new ArrayList<String>();
+                List<String> actual = new ArrayList<String>();
+                assertEquals(ACLConfigurationParser.getRolesForInvocation(method, null, sig, config, expected),
+                        acl.getRolesForInvocation(method, null, sig, actual));
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testHasArgumentRules() {
+        Dictionary<String, Object> config = new Hashtable<String, Object>();
+        config.put("foo", "r1");
+        config.put("bar(java.lang.String)[/a.*/]", "ra");
+        config.put("baz[\"x\"]", "rb");
+        config.put("arr([Ljava.lang.String;)", "rc");
+        CompiledACL acl = new CompiledACL(config);
+
+        assertFalse(acl.hasArgumentRules("foo", new String [] {}));
+        assertTrue(acl.hasArgumentRules("bar", new String [] {"java.lang.String"}));
+        assertFalse(acl.hasArgumentRules("bar", new String [] {"int"}));
+        assertTrue(acl.hasArgumentRules("baz", new String [] {"int"}));
+        assertFalse(acl.hasArgumentRules("arr", new String [] {"[Ljava.lang.String;"}));
+    }
+}
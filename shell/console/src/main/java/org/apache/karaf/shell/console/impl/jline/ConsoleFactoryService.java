@@ -34,6 +34,7 @@ import org.apache.felix.service.threadio.ThreadIO;
 import org.apache.karaf.jaas.modules.JaasHelper;
 import org.apache.karaf.shell.console.Console;
 import org.apache.karaf.shell.console.factory.ConsoleFactory;
+import org.apache.karaf.shell.security.impl.SecuredCommandRegistry;
 import org.apache.karaf.shell.util.ShellUtil;
 import org.osgi.framework.BundleContext;
 
@@ -81,6 +82,10 @@ public class ConsoleFactoryService implements ConsoleFactory {
         return console;
     }
 
+    public void destroy() {
+        SecuredCommandRegistry.closeRegistry(bundleContext);
+    }
+
     private String getPid() {
     	String name = ManagementFactory.getRuntimeMXBean().getName();
     	String[] parts = name.split("@");
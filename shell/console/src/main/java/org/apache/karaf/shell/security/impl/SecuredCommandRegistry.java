@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.security.impl;
+
+import org.apache.felix.gogo.api.CommandSessionListener;
+import org.apache.felix.gogo.runtime.CommandProxy;
+import org.apache.felix.service.command.CommandProcessor;
+import org.apache.felix.service.command.Converter;
+import org.apache.felix.service.command.Function;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The commands, converters and session listeners available to the secured command processors, tracked once
+ * for all the shell sessions instead of once per session.<p/>
+ *
+ * The commands are indexed by the set of roles of the session users: the commands visible to a given set of
+ * roles are computed when a session with these roles is first opened, and the resulting views are updated as
+ * command services come and go. A new session just copies the view of its roles.
+ */
+public class SecuredCommandRegistry {
+
+    static final String ROLES_PROPERTY = "org.apache.karaf.service.guard.roles";
+
+    private static final Map<BundleContext, SecuredCommandRegistry> REGISTRIES = new IdentityHashMap<BundleContext, SecuredCommandRegistry>();
+
+    private final ServiceTracker<Object, List<CommandEntry>> commandTracker;
+    private final ServiceTracker<Converter, Converter> converterTracker;
+    private final ServiceTracker<CommandSessionListener, CommandSessionListener> listenerTracker;
+
+    // all the following fields are guarded by this
+    private final Map<ServiceReference<?>, List<CommandEntry>> commands = new LinkedHashMap<ServiceReference<?>, List<CommandEntry>>();
+    private final Map<Set<String>, Map<String, Function>> views = new HashMap<Set<String>, Map<String, Function>>();
+    private final Map<SecuredCommandProcessorImpl, Set<String>> processors = new IdentityHashMap<SecuredCommandProcessorImpl, Set<String>>();
+    private final List<Converter> converters = new ArrayList<Converter>();
+    private final List<CommandSessionListener> listeners = new ArrayList<CommandSessionListener>();
+
+    /**
+     * @return the registry shared by the command processors created with the given bundle context.
+     */
+    public static SecuredCommandRegistry getRegistry(BundleContext bundleContext) {
+        synchronized (REGISTRIES) {
+            SecuredCommandRegistry registry = REGISTRIES.get(bundleContext);
+            if (registry == null) {
+                registry = new SecuredCommandRegistry(bundleContext);
+                REGISTRIES.put(bundleContext, registry);
+                registry.open();
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * Close the registry of the given bundle context, if any. Must be called when the bundle stops, as the
+     * registry would otherwise keep its service trackers open.
+     */
+    public static void closeRegistry(BundleContext bundleContext) {
+        SecuredCommandRegistry registry;
+        synchronized (REGISTRIES) {
+            registry = REGISTRIES.remove(bundleContext);
+        }
+        if (registry != null) {
+            registry.close();
+        }
+    }
+
+    SecuredCommandRegistry(BundleContext bundleContext) {
+        try {
+            commandTracker = trackCommands(bundleContext);
+        } catch (InvalidSyntaxException e) {
+            throw new RuntimeException(e);
+        }
+        converterTracker = trackConverters(bundleContext);
+        listenerTracker = trackListeners(bundleContext);
+    }
+
+    void open() {
+        commandTracker.open();
+        converterTracker.open();
+        listenerTracker.open();
+    }
+
+    void close() {
+        commandTracker.close();
+        converterTracker.close();
+        listenerTracker.close();
+        synchronized (this) {
+            views.clear();
+            processors.clear();
+        }
+    }
+
+    /**
+     * Adds the commands visible to the given roles, and all the converters and listeners, to the given processor
+     * and keeps it up to date until it is {@link #detach(SecuredCommandProcessorImpl) detached}.
+     */
+    public synchronized void attach(SecuredCommandProcessorImpl processor, Set<String> roles) {
+        Set<String> key = Collections.unmodifiableSet(new HashSet<String>(roles));
+        Map<String, Function> view = views.get(key);
+        if (view == null) {
+            view = new LinkedHashMap<String, Function>();
+            for (List<CommandEntry> entries : commands.values()) {
+                for (CommandEntry entry : entries) {
+                    if (entry.isVisible(key)) {
+                        view.put(entry.name, entry.function);
+                    }
+                }
+            }
+            views.put(key, view);
+        }
+        processor.addCommands(view);
+        for (Converter converter : converters) {
+            processor.addConverter(converter);
+        }
+        for (CommandSessionListener listener : listeners) {
+            processor.addListener(listener);
+        }
+        processors.put(processor, key);
+    }
+
+    public synchronized void detach(SecuredCommandProcessorImpl processor) {
+        Set<String> key = processors.remove(processor);
+        // drop the view once no session uses these roles anymore
+        if (key != null && !processors.containsValue(key)) {
+            views.remove(key);
+        }
+    }
+
+    private synchronized void commandsAdded(ServiceReference<?> reference, List<CommandEntry> entries) {
+        commands.put(reference, entries);
+        for (Map.Entry<Set<String>, Map<String, Function>> view : views.entrySet()) {
+            for (CommandEntry entry : entries) {
+                if (entry.isVisible(view.getKey())) {
+                    view.getValue().put(entry.name, entry.function);
+                }
+            }
+        }
+        for (Map.Entry<SecuredCommandProcessorImpl, Set<String>> processor : processors.entrySet()) {
+            for (CommandEntry entry : entries) {
+                if (entry.isVisible(processor.getValue())) {
+                    processor.getKey().addCommand(entry.scope, entry.function, entry.functionName);
+                }
+            }
+        }
+    }
+
+    private synchronized void commandsRemoved(ServiceReference<?> reference) {
+        List<CommandEntry> entries = commands.remove(reference);
+        if (entries == null) {
+            return;
+        }
+        for (Map.Entry<Set<String>, Map<String, Function>> view : views.entrySet()) {
+            for (CommandEntry entry : entries) {
+                view.getValue().remove(entry.name);
+            }
+        }
+        for (SecuredCommandProcessorImpl processor : processors.keySet()) {
+            for (CommandEntry entry : entries) {
+                processor.removeCommand(entry.scope, entry.functionName);
+            }
+        }
+    }
+
+    private synchronized void converterAdded(Converter converter) {
+        converters.add(converter);
+        for (SecuredCommandProcessorImpl processor : processors.keySet()) {
+            processor.addConverter(converter);
+        }
+    }
+
+    private synchronized void converterRemoved(Converter converter) {
+        converters.remove(converter);
+        for (SecuredCommandProcessorImpl processor : processors.keySet()) {
+            processor.removeConverter(converter);
+        }
+    }
+
+    private synchronized void listenerAdded(CommandSessionListener listener) {
+        listeners.add(listener);
+        for (SecuredCommandProcessorImpl processor : processors.keySet()) {
+            processor.addListener(listener);
+        }
+    }
+
+    private synchronized void listenerRemoved(CommandSessionListener listener) {
+        listeners.remove(listener);
+        for (SecuredCommandProcessorImpl processor : processors.keySet()) {
+            processor.removeListener(listener);
+        }
+    }
+
+    private ServiceTracker<Object, List<CommandEntry>> trackCommands(final BundleContext context) throws InvalidSyntaxException {
+        Filter filter = context.createFilter(String.format("(&(%s=*)(%s=*))",
+                CommandProcessor.COMMAND_SCOPE, CommandProcessor.COMMAND_FUNCTION));
+
+        return new ServiceTracker<Object, List<CommandEntry>>(context, filter, null) {
+            @Override
+            public List<CommandEntry> addingService(ServiceReference<Object> reference) {
+                List<CommandEntry> entries = createEntries(context, reference);
+                if (entries == null) {
+                    return null;
+                }
+                commandsAdded(reference, entries);
+                return entries;
+            }
+
+            @Override
+            public void modifiedService(ServiceReference<Object> reference, List<CommandEntry> service) {
+                // the roles may have changed
+                commandsRemoved(reference);
+                List<CommandEntry> entries = createEntries(context, reference);
+                service.clear();
+                if (entries != null) {
+                    service.addAll(entries);
+                }
+                commandsAdded(reference, service);
+            }
+
+            @Override
+            public void removedService(ServiceReference<Object> reference, List<CommandEntry> service) {
+                commandsRemoved(reference);
+            }
+        };
+    }
+
+    private static List<CommandEntry> createEntries(BundleContext context, ServiceReference<?> reference) {
+        Object scope = reference.getProperty(CommandProcessor.COMMAND_SCOPE);
+        Object function = reference.getProperty(CommandProcessor.COMMAND_FUNCTION);
+        if (scope == null || function == null) {
+            return null;
+        }
+        Set<String> roles = getRoles(reference.getProperty(ROLES_PROPERTY));
+        List<CommandEntry> entries = new ArrayList<CommandEntry>();
+        if (function.getClass().isArray()) {
+            for (Object f : ((Object[]) function)) {
+                entries.add(new CommandEntry(context, reference, scope.toString(), f.toString(), roles));
+            }
+        } else {
+            entries.add(new CommandEntry(context, reference, scope.toString(), function.toString(), roles));
+        }
+        return entries;
+    }
+
+    private ServiceTracker<Converter, Converter> trackConverters(BundleContext context) {
+        return new ServiceTracker<Converter, Converter>(context, Converter.class.getName(), null) {
+            @Override
+            public Converter addingService(ServiceReference<Converter> reference) {
+                Converter converter = super.addingService(reference);
+                converterAdded(converter);
+                return converter;
+            }
+
+            @Override
+            public void removedService(ServiceReference<Converter> reference, Converter service) {
+                converterRemoved(service);
+                super.removedService(reference, service);
+            }
+        };
+    }
+
+    private ServiceTracker<CommandSessionListener, CommandSessionListener> trackListeners(BundleContext context) {
+        return new ServiceTracker<CommandSessionListener, CommandSessionListener>(context, CommandSessionListener.class.getName(), null) {
+            @Override
+            public CommandSessionListener addingService(ServiceReference<CommandSessionListener> reference) {
+                CommandSessionListener listener = super.addingService(reference);
+                listenerAdded(listener);
+                return listener;
+            }
+
+            @Override
+            public void removedService(ServiceReference<CommandSessionListener> reference, CommandSessionListener service) {
+                listenerRemoved(service);
+                super.removedService(reference, service);
+            }
+        };
+    }
+
+    /**
+     * @return the roles allowed to use a command, or {@code null} if the command is not restricted to any role.
+     */
+    static Set<String> getRoles(Object property) {
+        if (property == null) {
+            return null;
+        }
+        Set<String> roles = new HashSet<String>();
+        if (property instanceof Object[]) {
+            for (Object role : (Object[]) property) {
+                roles.add(String.valueOf(role));
+            }
+        } else if (property instanceof Collection) {
+            for (Object role : (Collection<?>) property) {
+                roles.add(String.valueOf(role));
+            }
+        } else {
+            roles.add(property.toString());
+        }
+        return roles;
+    }
+
+    static class CommandEntry {
+        final String scope;
+        final String functionName;
+        final String name;
+        final Function function;
+        final Set<String> roles;
+
+        CommandEntry(BundleContext context, ServiceReference<?> reference, String scope, String functionName, Set<String> roles) {
+            this.scope = scope;
+            this.functionName = functionName;
+            // same key as used by the command processor
+            this.name = (scope + ":" + functionName).toLowerCase();
+            this.function = new CommandProxy(context, reference, functionName);
+            this.roles = roles;
+        }
+
+        boolean isVisible(Set<String> userRoles) {
+            return roles == null || !Collections.disjoint(roles, userRoles);
+        }
+    }
+
+}
@@ -53,6 +53,7 @@ public class ConsoleImplTest {
         ServiceReference<?> cmRef = EasyMock.createMock(ServiceReference.class);
         EasyMock.expect(cmRef.getProperty(CommandProcessor.COMMAND_SCOPE)).andReturn("myscope").anyTimes();
         EasyMock.expect(cmRef.getProperty(CommandProcessor.COMMAND_FUNCTION)).andReturn("myfunction").anyTimes();
+        EasyMock.expect(cmRef.getProperty("org.apache.karaf.service.guard.roles")).andReturn("myrole").anyTimes();
         EasyMock.replay(cmRef);
         ServiceReference<?>[] cmRefs = new ServiceReference[] {cmRef};
 
@@ -61,9 +62,9 @@ public class ConsoleImplTest {
         EasyMock.expect(bc.getService((ServiceReference<?>) EasyMock.anyObject())).andReturn(null).anyTimes();
         bc.addServiceListener(EasyMock.isA(ServiceListener.class), EasyMock.isA(String.class));
         EasyMock.expectLastCall().anyTimes();
+        // the commands of all the roles are tracked once, and filtered for the session roles
         EasyMock.expect(bc.getServiceReferences((String) null,
-                "(&(osgi.command.scope=*)(osgi.command.function=*)" +
-                        "(|(org.apache.karaf.service.guard.roles=myrole)(!(org.apache.karaf.service.guard.roles=*))))")).andReturn(cmRefs).anyTimes();
+                "(&(osgi.command.scope=*)(osgi.command.function=*))")).andReturn(cmRefs).anyTimes();
         EasyMock.expect(bc.getServiceReferences(Converter.class.getName(), null)).andReturn(null).anyTimes();
         EasyMock.expect(bc.getServiceReferences(CommandSessionListener.class.getName(), null)).andReturn(null).anyTimes();
         EasyMock.expect(bc.createFilter(EasyMock.isA(String.class))).andAnswer(new IAnswer<Filter>() {
@@ -17,6 +17,7 @@
 package org.apache.karaf.shell.security.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.security.PrivilegedAction;
@@ -54,6 +55,7 @@ public class SecuredCommandProcessorImplTest {
         final BundleContext bc = EasyMock.createMock(BundleContext.class);
         EasyMock.expect(bc.getServiceReference(ThreadIO.class)).andReturn(tioRef).anyTimes();
         EasyMock.expect(bc.getService(tioRef)).andReturn(tio).anyTimes();
+        EasyMock.expect(bc.ungetService(tioRef)).andReturn(true).anyTimes();
         EasyMock.expect(bc.createFilter(EasyMock.isA(String.class))).andAnswer(new IAnswer<Filter>() {
             @Override
             public Filter answer() throws Throwable {
@@ -66,11 +68,13 @@ public class SecuredCommandProcessorImplTest {
         final Map<String, ServiceListener> listeners = new HashMap<String, ServiceListener>();
 
         // Here are the expected calls
-        final String commandFilter = "(&(osgi.command.scope=*)(osgi.command.function=*)" +
-                "(|(org.apache.karaf.service.guard.roles=aaabbbccc)(!(org.apache.karaf.service.guard.roles=*))))";
+        final String commandFilter = "(&(osgi.command.scope=*)(osgi.command.function=*))";
         expectServiceTracker(bc, commandFilter, listeners);
         expectServiceTracker(bc, "(objectClass=" + Converter.class.getName() + ")", listeners);
         expectServiceTracker(bc, "(objectClass=" + CommandSessionListener.class.getName() + ")", listeners);
+        // the three trackers are closed with the registry
+        bc.removeServiceListener(EasyMock.isA(ServiceListener.class));
+        EasyMock.expectLastCall().times(3);
         EasyMock.replay(bc);
 
         Subject subject = new Subject();
@@ -94,6 +98,7 @@ public class SecuredCommandProcessorImplTest {
                 ServiceReference<?> cdRef = EasyMock.createMock(ServiceReference.class);
                 EasyMock.expect(cdRef.getProperty(CommandProcessor.COMMAND_SCOPE)).andReturn("foo");
                 EasyMock.expect(cdRef.getProperty(CommandProcessor.COMMAND_FUNCTION)).andReturn("bar");
+                EasyMock.expect(cdRef.getProperty(SecuredCommandRegistry.ROLES_PROPERTY)).andReturn(null);
                 EasyMock.replay(cdRef);
 
                 ServiceEvent event = new ServiceEvent(ServiceEvent.REGISTERED, cdRef);
@@ -105,6 +110,7 @@ public class SecuredCommandProcessorImplTest {
                 EasyMock.expect(cd2Ref.getProperty(CommandProcessor.COMMAND_SCOPE)).andReturn("xxx");
                 EasyMock.expect(cd2Ref.getProperty(CommandProcessor.COMMAND_FUNCTION)).andReturn(
                         new String[] {"aaa", "bbb"});
+                EasyMock.expect(cd2Ref.getProperty(SecuredCommandRegistry.ROLES_PROPERTY)).andReturn("aaabbbccc");
                 EasyMock.replay(cd2Ref);
 
                 ServiceEvent event2 = new ServiceEvent(ServiceEvent.REGISTERED, cd2Ref);
@@ -113,9 +119,37 @@ public class SecuredCommandProcessorImplTest {
                 assertTrue(scp.getCommands().contains("xxx:aaa"));
                 assertTrue(scp.getCommands().contains("xxx:bbb"));
 
+                // A command for other roles only is not visible
+                ServiceReference<?> cd3Ref = EasyMock.createMock(ServiceReference.class);
+                EasyMock.expect(cd3Ref.getProperty(CommandProcessor.COMMAND_SCOPE)).andReturn("yyy");
+                EasyMock.expect(cd3Ref.getProperty(CommandProcessor.COMMAND_FUNCTION)).andReturn("ccc");
+                EasyMock.expect(cd3Ref.getProperty(SecuredCommandRegistry.ROLES_PROPERTY)).andReturn(
+                        new String[] {"dddeeefff"});
+                EasyMock.replay(cd3Ref);
+
+                ServiceEvent event3 = new ServiceEvent(ServiceEvent.REGISTERED, cd3Ref);
+                commandListener.serviceChanged(event3);
+                assertEquals(6, scp.getCommands().size());
+                assertFalse(scp.getCommands().contains("yyy:ccc"));
+
+                // A new session reuses the commands already tracked, the service trackers are only opened once
+                MySecuredCommandProcessorImpl scp2 = new MySecuredCommandProcessorImpl(bc) {};
+                assertEquals(6, scp2.getCommands().size());
+                assertTrue(scp2.getCommands().contains("xxx:aaa"));
+
+                // Once closed, a session isn't updated any more
+                scp2.close();
+                commandListener.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, cdRef));
+                assertEquals(5, scp.getCommands().size());
+                assertFalse(scp.getCommands().contains("foo:bar"));
+                assertEquals(6, scp2.getCommands().size());
+
+                scp.close();
                 return null;
             }
         });
+        SecuredCommandRegistry.closeRegistry(bc);
+        EasyMock.verify(bc);
     }
 
     void expectServiceTracker(final BundleContext bc, final String expectedFilter, final Map<String, ServiceListener> listeners) throws InvalidSyntaxException {
@@ -615,6 +615,11 @@ public class InstallKarsMojo extends MojoSupport {
             return null;
         }
 
+        @Override
+        public Feature[] getInstalledFeaturesForBundle(long bundleId) {
+            return new Feature[0];
+        }
+
         @Override
         public Repository getRepository(String repoName) {
             // TODO Auto-generated method stub
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A directory based cache of the bundles generated by the deployers, keyed by a hash of the
+ * deployed content, so that unchanged artifacts do not need to be transformed again after a restart.
+ *
+ * The least recently used entries are removed when the cache holds more than the maximum number
+ * of entries.
+ */
+public class BundleCache {
+
+    private final File directory;
+    private final int maxEntries;
+
+    public BundleCache(File directory, int maxEntries) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Compute the key of an artifact.
+     *
+     * @param name the name of the artifact, which is used when generating the bundle
+     * @param content the content of the artifact
+     * @return the SHA-1 hash of the name and content as an hexadecimal string
+     */
+    public static String key(String name, byte[] content) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        md.update(name.getBytes("UTF-8"));
+        md.update((byte) 0);
+        md.update(content);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get a cached bundle.
+     *
+     * @param key the key of the artifact
+     * @return the cached bundle, or null if it is not cached
+     */
+    public byte[] get(String key) {
+        File file = new File(directory, key + ".jar");
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] data = readFully(file);
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store a generated bundle. Failures are ignored, the bundle will simply be generated again.
+     *
+     * @param key the key of the artifact
+     * @param bundle the generated bundle
+     */
+    public void put(String key, byte[] bundle) {
+        directory.mkdirs();
+        File tmp = new File(directory, key + ".tmp");
+        File file = new File(directory, key + ".jar");
+        try {
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                os.write(bundle);
+            } finally {
+                os.close();
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+        }
+        evict();
+    }
+
+    private void evict() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= maxEntries) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long l1 = f1.lastModified();
+                long l2 = f2.lastModified();
+                return l1 < l2 ? -1 : l1 > l2 ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < files.length - maxEntries; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                os.write(buffer, 0, n);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+/**
+ * Helps caching data read from files as long as the files do not change.
+ *
+ * Some file systems only record the modification time of files with a one or two seconds precision,
+ * so a file can be modified again without its modification time changing. Data read from a file
+ * modified more recently than that must not be reused on the sole basis of the modification time.
+ */
+public final class FileTimestamps {
+
+    /**
+     * The precision of file modification times, in milliseconds.
+     */
+    public static final long MODIFICATION_GRANULARITY = 2000;
+
+    /** Private constructors to avoid instantiation */
+    private FileTimestamps() { }
+
+    /**
+     * Check if a file last modified at the given time could still be modified without its
+     * modification time changing.
+     *
+     * @param lastModified the modification time of the file, in milliseconds
+     * @return true if any further modification of the file changes its modification time
+     */
+    public static boolean isSettled(long lastModified) {
+        return System.currentTimeMillis() - lastModified >= MODIFICATION_GRANULARITY;
+    }
+
+}
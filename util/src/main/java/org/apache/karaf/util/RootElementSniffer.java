@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the root element of XML files without parsing the whole document, so that the
+ * deployers can quickly decide if they can handle a file.
+ *
+ * The root element of a file is cached as long as its size and modification time do not change.
+ * The least recently used entries are evicted once the cache is full.
+ */
+public final class RootElementSniffer {
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final Map<String, Entry> CACHE = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    private static volatile XMLInputFactory factory;
+
+    /** Private constructors to avoid instantiation */
+    private RootElementSniffer() { }
+
+    /**
+     * Get the name of the root element of an XML file.
+     *
+     * @param file the XML file
+     * @return the qualified name of the root element, or null if the document does not have any element
+     * @throws IOException if the file can not be read
+     * @throws XMLStreamException if the file is not well formed before the root element
+     */
+    public static QName getRootElement(File file) throws IOException, XMLStreamException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Entry entry = CACHE.get(path);
+        if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+            return entry.root;
+        }
+
+        QName root = readRootElement(file);
+        if (FileTimestamps.isSettled(lastModified)) {
+            CACHE.put(path, new Entry(length, lastModified, root));
+        } else {
+            CACHE.remove(path);
+        }
+        return root;
+    }
+
+    private static QName readRootElement(File file) throws IOException, XMLStreamException {
+        InputStream is = new FileInputStream(file);
+        try {
+            XMLStreamReader reader = getFactory().createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        return reader.getName();
+                    }
+                }
+                return null;
+            } finally {
+                reader.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static XMLInputFactory getFactory() {
+        if (factory == null) {
+            XMLInputFactory xif = XMLInputFactory.newInstance();
+            xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            xif.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            xif.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            factory = xif;
+        }
+        return factory;
+    }
+
+    private static class Entry {
+        final long length;
+        final long lastModified;
+        final QName root;
+
+        Entry(long length, long lastModified, QName root) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.root = root;
+        }
+    }
+
+}
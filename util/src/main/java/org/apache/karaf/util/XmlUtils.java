@@ -27,6 +27,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Utils class to manipulate XML document in a thread safe way.
@@ -54,6 +55,15 @@ public class XmlUtils {
         }
     }
 
+    public static Document parse(InputStream is) throws TransformerException, IOException, SAXException, ParserConfigurationException {
+        DocumentBuilder db = documentBuilder();
+        try {
+            return db.parse(is);
+        } finally {
+            db.reset();
+        }
+    }
+
     public static Document parse(File f, ErrorHandler errorHandler) throws TransformerException, IOException, SAXException, ParserConfigurationException {
         DocumentBuilder db = documentBuilder();
         db.setErrorHandler(errorHandler);
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util.collections;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe bounded cache whose entries expire after a fixed time. Once the cache is full, the least
+ * recently used entries are evicted first.
+ *
+ * Expired entries are removed when they are looked up, or by {@link #purge()}.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final Map<K, Entry<V>> entries;
+    private final long ttl;
+
+    /**
+     * @param ttl the time in milliseconds the entries are kept
+     * @param size the maximum number of entries
+     */
+    public ExpiringLruCache(long ttl, final int size) {
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * @return the value cached for the given key, or {@code null} if the key is not cached or its entry expired.
+     */
+    public V get(K key) {
+        long now = getCurrentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiry <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<V>(value, getCurrentTimeMillis() + ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    public void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Removes the expired entries.
+     */
+    public void purge() {
+        long now = getCurrentTimeMillis();
+        synchronized (entries) {
+            for (Iterator<Entry<V>> it = entries.values().iterator(); it.hasNext(); ) {
+                if (it.next().expiry <= now) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries, including the expired ones which have not been removed yet.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * The clock used to expire the entries, overridden by tests.
+     */
+    protected long getCurrentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiry;
+
+        Entry(V value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+
+}
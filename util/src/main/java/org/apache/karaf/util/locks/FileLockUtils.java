@@ -74,6 +74,40 @@ public final class FileLockUtils {
         }
     }
 
+    /**
+     * Execute the given callback while holding a shared lock on the file, which is opened read-only.
+     * Several readers can hold the lock at the same time, but not while a writer holds it.
+     */
+    public static <T> T executeReadOnly(File file, Callable<T> callback) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileLock lock = raf.getChannel().lock(0, Long.MAX_VALUE, true);
+            try {
+                return callback.call(raf);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Load the properties of the given file while holding a shared lock on it and pass them to the callback.
+     * Unlike {@link #execute(File, CallableWithProperties)}, the file is not written back.
+     */
+    public static <T> T executeReadOnly(File file, final CallableWithProperties<T> callback) throws IOException {
+        return executeReadOnly(file, new Callable<T>() {
+            public T call(RandomAccessFile file) throws IOException {
+                byte[] buffer = new byte[(int) file.length()];
+                file.readFully(buffer);
+                Properties props = new Properties();
+                props.load(new ByteArrayInputStream(buffer));
+                return callback.call(props);
+            }
+        });
+    }
+
     public static void execute(File file, final RunnableWithProperties callback) throws IOException {
         execute(file, new Runnable() {
             public void run(RandomAccessFile file) throws IOException {
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util.collections;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ExpiringLruCacheTest {
+
+    @Test
+    public void testExpiry() {
+        TestCache cache = new TestCache(50, 10);
+        cache.put("a", "1");
+        cache.now = 49;
+        Assert.assertEquals("1", cache.get("a"));
+        cache.now = 50;
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPurge() {
+        TestCache cache = new TestCache(50, 10);
+        cache.put("a", "1");
+        cache.now = 30;
+        cache.put("b", "2");
+        cache.now = 60;
+        cache.purge();
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("2", cache.get("b"));
+    }
+
+    @Test
+    public void testEviction() {
+        TestCache cache = new TestCache(60000, 2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        // a is now the most recently used entry
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        TestCache cache = new TestCache(60000, 10);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.remove("a");
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(1, cache.size());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private static class TestCache extends ExpiringLruCache<String, String> {
+        long now;
+
+        TestCache(long ttl, int size) {
+            super(ttl, size);
+        }
+
+        @Override
+        protected long getCurrentTimeMillis() {
+            return now;
+        }
+    }
+
+}